@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.api;
+
+import com.google.common.util.concurrent.CheckedFuture;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+
+/**
+ * Distributed transaction editing the data of its nodes in normalized form. The data isn't translated
+ * to binding objects and back, the pre-images for rollback are kept as normalized nodes as well.
+ *
+ * Nodes are still identified by their binding IID, as in {@link DTx}. The binding {@link DTx} doesn't go through
+ * this interface, the two kinds of transaction are coordinated separately.
+ */
+public interface DOMDTx {
+
+    /**
+     * Put data to a specific node and rollback of the whole distributed transaction will be performed on failure.
+     *
+     * @param logicalTXProviderType transaction provider type
+     * @param logicalDatastoreType datastore type
+     * @param path path of the data
+     * @param data data to put to the node
+     * @param nodeId IID for node to invoke put
+     *
+     * @return CheckedFuture indicating the result of the put operation.
+     * <ul>
+     * <li> set DTxException.EditFailedException to the future if put failure but rollback success</li>
+     * <li> set DTxException.RollbackFailedException if rollback failure</li>
+     * <li> set null to the future otherwise</li>
+     * </ul>
+     *
+     * @throws IllegalArgumentException thrown when the node isn't in the transaction
+     */
+    CheckedFuture<Void, DTxException> putAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType,
+            final LogicalDatastoreType logicalDatastoreType,
+            final YangInstanceIdentifier path, final NormalizedNode<?, ?> data, final InstanceIdentifier<?> nodeId);
+
+    /**
+     * Merge data to a specific node and rollback of the whole distributed transaction will be performed on failure.
+     *
+     * @param logicalTXProviderType transaction provider type
+     * @param logicalDatastoreType datastore type
+     * @param path path of the data
+     * @param data data to merge to the node
+     * @param nodeId IID for node to invoke merge
+     *
+     * @return CheckedFuture indicating the result of the merge operation.
+     * <ul>
+     * <li> set DTxException.EditFailedException to the future if merge failure but rollback success</li>
+     * <li> set DTxException.RollbackFailedException if rollback failure</li>
+     * <li> set null to the future otherwise</li>
+     * </ul>
+     *
+     * @throws IllegalArgumentException thrown when the node isn't in the transaction
+     */
+    CheckedFuture<Void, DTxException> mergeAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType,
+            final LogicalDatastoreType logicalDatastoreType,
+            final YangInstanceIdentifier path, final NormalizedNode<?, ?> data, final InstanceIdentifier<?> nodeId);
+
+    /**
+     * Delete data from a specific node and rollback of the whole distributed transaction will be performed on failure.
+     *
+     * @param logicalTXProviderType transaction provider type
+     * @param logicalDatastoreType datastore type
+     * @param path path of the data
+     * @param nodeId IID for node to invoke delete
+     *
+     * @return CheckedFuture indicating the result of the delete operation.
+     * <ul>
+     * <li> set DTxException.EditFailedException to the future if delete failure but rollback success</li>
+     * <li> set DTxException.RollbackFailedException if rollback failure</li>
+     * <li> set null to the future otherwise</li>
+     * </ul>
+     *
+     * @throws IllegalArgumentException thrown when the node isn't in the transaction
+     */
+    CheckedFuture<Void, DTxException> deleteAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType,
+            final LogicalDatastoreType logicalDatastoreType,
+            final YangInstanceIdentifier path, final InstanceIdentifier<?> nodeId);
+
+    /**
+     * Submit the edits of all the nodes. The nodes already committed are rolled back if any node fails to commit.
+     *
+     * @return CheckedFuture indicating the result of the submit operation.
+     * <ul>
+     * <li> set TransactionCommitFailedException caused by DTxException.SubmitFailedException if submit failure
+     * but rollback success</li>
+     * <li> set TransactionCommitFailedException caused by DTxException.RollbackFailedException if rollback failure</li>
+     * <li> set null to the future otherwise</li>
+     * </ul>
+     */
+    CheckedFuture<Void, TransactionCommitFailedException> submit();
+
+    /**
+     * Rollback the entire transaction. Nothing is committed yet, the edits of all the nodes are dropped.
+     *
+     * @return CheckedFuture indicating the result of the rollback operation.
+     * <ul>
+     * <li> set DTxException.RollbackFailedException if rollback failure</li>
+     * <li> set null to the future otherwise</li>
+     * </ul>
+     */
+    CheckedFuture<Void, DTxException.RollbackFailedException> rollback();
+
+    Object getIdentifier();
+}
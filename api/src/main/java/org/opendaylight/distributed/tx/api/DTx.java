@@ -8,6 +8,7 @@
 package org.opendaylight.distributed.tx.api;
 
 import com.google.common.util.concurrent.CheckedFuture;
+import java.util.List;
 import org.opendaylight.controller.md.sal.binding.api.WriteTransaction;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
@@ -307,4 +308,23 @@ public interface DTx extends WriteTransaction {
             final LogicalDatastoreType logicalDatastoreType,
             final InstanceIdentifier<?> instanceIdentifier,
             InstanceIdentifier<?> nodeId);
+
+    /**
+     * Apply a batch of edits and rollback of the whole distributed transaction will be performed on failure.
+     * Edits of the same node are applied as one unit, in the order of the list. Edits with a known pre-image,
+     * see {@link DTxEdit#withPreImage(org.opendaylight.yangtools.yang.binding.DataObject)}, skip the pre-image read.
+     *
+     * @param edits edits to apply, every edit node has to be present in the distributed transaction
+     *
+     * @return CheckedFuture indicating the result of the whole batch.
+     * <ul>
+     * <li> set DTxException.EditFailedException to the future if any edit failure but rollback success</li>
+     * <li> set DTxException.RollbackFailedException if rollback failure</li>
+     * <li> set DTxException for other failure</li>
+     * <li> set null to the future otherwise</li>
+     * </ul>
+     *
+     * @throws IllegalArgumentException thrown when a node isn't in the transaction
+     */
+    CheckedFuture<Void, DTxException> editsAndRollbackOnFailure(final List<DTxEdit> edits);
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.api;
+
+import com.google.common.base.Preconditions;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Single edit of a batch applied to a distributed transaction.
+ */
+public final class DTxEdit {
+    /**
+     * Edit operation types.
+     */
+    public enum Operation {
+        PUT, MERGE, DELETE
+    }
+
+    private final Operation operation;
+    private final DTXLogicalTXProviderType txProviderType;
+    private final LogicalDatastoreType dsType;
+    private final InstanceIdentifier<?> id;
+    private final DataObject data;
+    private final InstanceIdentifier<?> nodeId;
+    private final boolean preImageKnown;
+    private final DataObject preImage;
+
+    private DTxEdit(@Nonnull final Operation operation, @Nonnull final DTXLogicalTXProviderType txProviderType,
+        @Nonnull final LogicalDatastoreType dsType, @Nonnull final InstanceIdentifier<?> id,
+        @Nullable final DataObject data, @Nonnull final InstanceIdentifier<?> nodeId) {
+        this(operation, txProviderType, dsType, id, data, nodeId, false, null);
+    }
+
+    private DTxEdit(@Nonnull final Operation operation, @Nonnull final DTXLogicalTXProviderType txProviderType,
+        @Nonnull final LogicalDatastoreType dsType, @Nonnull final InstanceIdentifier<?> id,
+        @Nullable final DataObject data, @Nonnull final InstanceIdentifier<?> nodeId,
+        final boolean preImageKnown, @Nullable final DataObject preImage) {
+        this.operation = Preconditions.checkNotNull(operation);
+        this.txProviderType = Preconditions.checkNotNull(txProviderType);
+        this.dsType = Preconditions.checkNotNull(dsType);
+        this.id = Preconditions.checkNotNull(id);
+        this.data = data;
+        this.nodeId = Preconditions.checkNotNull(nodeId);
+        this.preImageKnown = preImageKnown;
+        this.preImage = preImage;
+    }
+
+    /**
+     * Create a put edit.
+     *
+     * @param <T> Class extends DataObject
+     * @param txProviderType transaction provider type
+     * @param dsType datastore type
+     * @param id IID for data
+     * @param data data to put to the node
+     * @param nodeId IID for node to invoke put
+     *
+     * @return put edit
+     */
+    public static <T extends DataObject> DTxEdit put(@Nonnull final DTXLogicalTXProviderType txProviderType,
+        @Nonnull final LogicalDatastoreType dsType, @Nonnull final InstanceIdentifier<T> id, @Nonnull final T data,
+        @Nonnull final InstanceIdentifier<?> nodeId) {
+        return new DTxEdit(Operation.PUT, txProviderType, dsType, id, Preconditions.checkNotNull(data), nodeId);
+    }
+
+    /**
+     * Create a merge edit.
+     *
+     * @param <T> Class extends DataObject
+     * @param txProviderType transaction provider type
+     * @param dsType datastore type
+     * @param id IID for data
+     * @param data data to merge to the node
+     * @param nodeId IID for node to invoke merge
+     *
+     * @return merge edit
+     */
+    public static <T extends DataObject> DTxEdit merge(@Nonnull final DTXLogicalTXProviderType txProviderType,
+        @Nonnull final LogicalDatastoreType dsType, @Nonnull final InstanceIdentifier<T> id, @Nonnull final T data,
+        @Nonnull final InstanceIdentifier<?> nodeId) {
+        return new DTxEdit(Operation.MERGE, txProviderType, dsType, id, Preconditions.checkNotNull(data), nodeId);
+    }
+
+    /**
+     * Create a delete edit.
+     *
+     * @param txProviderType transaction provider type
+     * @param dsType datastore type
+     * @param id IID for data
+     * @param nodeId IID for node to invoke delete
+     *
+     * @return delete edit
+     */
+    public static DTxEdit delete(@Nonnull final DTXLogicalTXProviderType txProviderType,
+        @Nonnull final LogicalDatastoreType dsType, @Nonnull final InstanceIdentifier<?> id,
+        @Nonnull final InstanceIdentifier<?> nodeId) {
+        return new DTxEdit(Operation.DELETE, txProviderType, dsType, id, null, nodeId);
+    }
+
+    /**
+     * Get a copy of this edit carrying the current data of its IID, e.g. when the caller already knows
+     * the state of the node. The edit doesn't read its pre-image from the node, the supplied data is restored
+     * on rollback instead. The pre-image captured by an earlier edit of the same data takes precedence.
+     * A wrong pre-image makes the rollback restore wrong data.
+     *
+     * @param preImage current data of the IID, null if it doesn't exist
+     *
+     * @return edit with a known pre-image
+     */
+    public DTxEdit withPreImage(@Nullable final DataObject preImage) {
+        return new DTxEdit(operation, txProviderType, dsType, id, data, nodeId, true, preImage);
+    }
+
+    /**
+     * Get a copy of this edit expected to create its data, e.g. a new list entry. The edit doesn't read its
+     * pre-image from the node, rollback deletes the data.
+     *
+     * @return edit with a known absent pre-image
+     */
+    public DTxEdit expectingAbsent() {
+        return withPreImage(null);
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public DTXLogicalTXProviderType getTxProviderType() {
+        return txProviderType;
+    }
+
+    public LogicalDatastoreType getDsType() {
+        return dsType;
+    }
+
+    public InstanceIdentifier<?> getId() {
+        return id;
+    }
+
+    /**
+     * Get the data of the edit.
+     *
+     * @return data to put or merge, null for delete.
+     */
+    @Nullable public DataObject getData() {
+        return data;
+    }
+
+    public InstanceIdentifier<?> getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return true if the pre-image of the edit was supplied by the caller
+     */
+    public boolean isPreImageKnown() {
+        return preImageKnown;
+    }
+
+    /**
+     * Get the pre-image supplied by the caller.
+     *
+     * @return current data of the edit IID, null if it doesn't exist or the pre-image isn't known.
+     */
+    @Nullable public DataObject getPreImage() {
+        return preImage;
+    }
+
+    @Override public String toString() {
+        return operation + " " + id + " on " + nodeId;
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.api;
+
+/**
+ * Mode of the lock a distributed transaction holds on its nodes.
+ */
+public enum DTxLockMode {
+    /**
+     * Shared with the other SHARED transactions of the node, for transactions needing a stable view of the nodes.
+     */
+    SHARED,
+    /**
+     * Held by a single transaction, no other transaction uses the node.
+     */
+    EXCLUSIVE
+}
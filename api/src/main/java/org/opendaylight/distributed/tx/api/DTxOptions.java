@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.api;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+/**
+ * Options of a new distributed transaction: the mode its nodes are held in, how long to wait for the nodes
+ * held by other distributed transactions and how it recovers from failures.
+ * The defaults are an exclusive lock, failing right away on a busy node, and a rollback on failure.
+ */
+public final class DTxOptions {
+    /**
+     * Default options, the ones of {@link DTxProvider#newTx(java.util.Map)}.
+     */
+    public static final DTxOptions DEFAULT = builder().build();
+
+    private final DTxLockMode lockMode;
+    private final long timeout;
+    private final TimeUnit unit;
+    private final DTxRollbackMode rollbackMode;
+
+    private DTxOptions(final Builder builder) {
+        this.lockMode = builder.lockMode;
+        this.timeout = builder.timeout;
+        this.unit = builder.unit;
+        this.rollbackMode = builder.rollbackMode;
+    }
+
+    /**
+     * @return builder of options, initialized to the defaults.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return mode the nodes are held in.
+     */
+    @Nonnull
+    public DTxLockMode getLockMode() {
+        return lockMode;
+    }
+
+    /**
+     * @return true if the busy nodes are waited for, false if they fail the creation of the tx right away.
+     */
+    public boolean isWaiting() {
+        return unit != null;
+    }
+
+    /**
+     * @return maximum time to wait for the busy nodes, in the unit of {@link #getUnit()}.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return unit of the timeout, null if the busy nodes aren't waited for.
+     */
+    public TimeUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return how the distributed tx recovers from a failed edit or submit.
+     */
+    @Nonnull
+    public DTxRollbackMode getRollbackMode() {
+        return rollbackMode;
+    }
+
+    @Override
+    public String toString() {
+        return "DTxOptions{lockMode=" + lockMode + ", timeout=" + (isWaiting() ? timeout + " " + unit : "none")
+                + ", rollbackMode=" + rollbackMode + "}";
+    }
+
+    /**
+     * Builder of distributed transaction options.
+     */
+    public static final class Builder {
+        private DTxLockMode lockMode = DTxLockMode.EXCLUSIVE;
+        private long timeout = 0;
+        private TimeUnit unit = null;
+        private DTxRollbackMode rollbackMode = DTxRollbackMode.ROLLBACK_ON_FAILURE;
+
+        private Builder() {
+        }
+
+        /**
+         * @param lockMode mode the nodes are held in, see {@link DTxProvider#newTx(java.util.Map, DTxOptions)}.
+         * @return this builder.
+         */
+        public Builder setLockMode(@Nonnull final DTxLockMode lockMode) {
+            this.lockMode = Preconditions.checkNotNull(lockMode);
+            return this;
+        }
+
+        /**
+         * Wait for the nodes held by other distributed transactions, see
+         * {@link DTxProvider#newTx(java.util.Map, DTxOptions)}.
+         *
+         * @param timeout maximum time to wait for the nodes.
+         * @param unit unit of the timeout.
+         * @return this builder.
+         */
+        public Builder setTimeout(final long timeout, @Nonnull final TimeUnit unit) {
+            Preconditions.checkArgument(timeout >= 0, "Timeout must not be negative");
+            this.timeout = timeout;
+            this.unit = Preconditions.checkNotNull(unit);
+            return this;
+        }
+
+        /**
+         * @param rollbackMode how the distributed tx recovers from a failed edit or submit.
+         * @return this builder.
+         */
+        public Builder setRollbackMode(@Nonnull final DTxRollbackMode rollbackMode) {
+            this.rollbackMode = Preconditions.checkNotNull(rollbackMode);
+            return this;
+        }
+
+        public DTxOptions build() {
+            return new DTxOptions(this);
+        }
+    }
+}
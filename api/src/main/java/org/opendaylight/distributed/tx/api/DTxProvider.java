@@ -36,6 +36,26 @@ public interface DTxProvider {
      */
     @Nonnull DTx newTx(@Nonnull Set<InstanceIdentifier<?>> nodes) throws DTxException.DTxInitializationFailedException;
 
+    /**
+     * Instantiate a new distributed transaction with only NETCONF provider and the given options,
+     * see {@link #newTx(Map, DTxOptions)}.
+     *
+     * @param nodes set of instance IDs for nodes participating in a distributed tx.
+     * @param options options of the distributed tx, see {@link DTxOptions}.
+     *
+     * @return new distributed Tx for a set of nodes.
+     * Per node transaction was successfully initialized for each node at this point.
+     *
+     * @throws DTxException.DTxInitializationFailedException if:
+     * <ul>
+     * <li> Unknown node was specified</li>
+     * <li> Node is used by other distributed transaction, or still used once the timeout of the options elapsed</li>
+     * <li> Node tx could not be initialized (node is in use by other client/is unreachable etc)</li>
+     * </ul>
+     */
+    @Nonnull DTx newTx(@Nonnull Set<InstanceIdentifier<?>> nodes, @Nonnull DTxOptions options)
+        throws DTxException.DTxInitializationFailedException;
+
     /**
      * Instantiate a new distributed transaction containing different providers.
      *
@@ -56,4 +76,114 @@ public interface DTxProvider {
      * </ul>
      */
     @Nonnull DTx newTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes) throws DTxException.DTxInitializationFailedException;
+
+    /**
+     * Instantiate a new distributed transaction with the given options: the lock mode of its nodes,
+     * how long to wait for the nodes used by other distributed transactions and how it recovers from failures.
+     * Distributed transactions holding a node shared run concurrently, they must not edit the node
+     * unless their edits commute. A node held shared fails the exclusive transactions and the other way round.
+     * Waiters of a node get it in arrival order, so readers arriving after a waiting writer don't starve it.
+     * A NO_ROLLBACK transaction applies its edits straight to the per-node transactions, without reading
+     * the data first. Its submit is still coordinated across the nodes, a failed submit reports the nodes
+     * which failed and leaves the committed ones as they are. Rolling it back only drops the edits not committed yet.
+     *
+     * @param nodes Maps of sets of instance IDs for nodes participating in a distributed tx corresponding to each tx providers.
+     * @param options options of the distributed tx, see {@link DTxOptions}.
+     *
+     * @return new distributed Tx. Per node transaction was successfully initialized for each node at this point.
+     *
+     * @throws DTxException.DTxInitializationFailedException if:
+     * <ul>
+     * <li> Unknown node was specified</li>
+     * <li> Node is held by other distributed transaction in a conflicting mode, or still held once the timeout
+     * of the options elapsed</li>
+     * <li> Waiting for the nodes was interrupted</li>
+     * <li> Node tx could not be initialized (node is in use by other client/is unreachable etc)</li>
+     * </ul>
+     */
+    @Nonnull DTx newTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes, @Nonnull DTxOptions options)
+        throws DTxException.DTxInitializationFailedException;
+
+    /**
+     * Instantiate a new optimistic distributed transaction. Its nodes aren't locked while it is edited, they are
+     * only held while it is validated and committed: the submit checks the data read before the edits is still
+     * current, the datastore nodes are checked by their own commit. A conflicting tx is replayed from its edits
+     * on new per-node transactions, so its edits have to be issued through the AndRollbackOnFailure methods.
+     * Meant for workloads where conflicts are rare.
+     *
+     * @param nodes Maps of sets of instance IDs for nodes participating in a distributed tx corresponding to each tx providers.
+     * @param maxReplays number of times a conflicting tx is replayed before its submit fails
+     *                   with an OptimisticLockFailedException.
+     *
+     * @return new distributed Tx. Per node transaction was successfully initialized for each node at this point.
+     *
+     * @throws DTxException.DTxInitializationFailedException if:
+     * <ul>
+     * <li> Unknown node was specified</li>
+     * <li> Node tx could not be initialized (node is in use by other client/is unreachable etc)</li>
+     * </ul>
+     */
+    @Nonnull DTx newOptimisticTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes, int maxReplays)
+        throws DTxException.DTxInitializationFailedException;
+
+    /**
+     * Instantiate a new distributed transaction locking only subtrees of its nodes instead of the whole nodes.
+     * Distributed transactions editing disjoint subtrees of a node run concurrently,
+     * the edits of the transaction have to stay within the subtrees it declares.
+     *
+     * @param subtrees Maps of the subtrees to lock of each node participating in a distributed tx, corresponding to each tx providers.
+     *
+     * @return new distributed Tx. Per node transaction was successfully initialized for each node at this point.
+     *
+     * @throws DTxException.DTxInitializationFailedException if:
+     * <ul>
+     * <li> Unknown node was specified</li>
+     * <li> Subtree overlaps a subtree of other distributed transaction, or its node is locked as a whole</li>
+     * <li> Node tx could not be initialized (node is in use by other client/is unreachable etc)</li>
+     * </ul>
+     */
+    @Nonnull DTx newTxForSubtrees(@Nonnull Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees)
+        throws DTxException.DTxInitializationFailedException;
+
+    /**
+     * Instantiate a new distributed transaction editing its nodes in normalized form, see {@link DOMDTx}.
+     * It isn't written to the intent log of the provider, so it isn't recovered after a crash.
+     *
+     * @param nodes Maps of sets of instance IDs for nodes participating in a distributed tx corresponding to each tx providers.
+     *
+     * @return new distributed Tx. Per node transaction was successfully initialized for each node at this point.
+     *
+     * @throws DTxException.DTxInitializationFailedException if:
+     * <ul>
+     * <li> Unknown node was specified</li>
+     * <li> Tx provider of the nodes doesn't support DOM transactions</li>
+     * <li> Node is used by other distributed transaction</li>
+     * <li> Node tx could not be initialized (node is in use by other client/is unreachable etc)</li>
+     * </ul>
+     */
+    @Nonnull DOMDTx newDOMTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes)
+        throws DTxException.DTxInitializationFailedException;
+
+    /**
+     * Instantiate a new distributed transaction editing its nodes in normalized form, with the given options,
+     * see {@link #newTx(Map, DTxOptions)}. DOM distributed transactions only support
+     * {@link DTxRollbackMode#ROLLBACK_ON_FAILURE}.
+     *
+     * @param nodes Maps of sets of instance IDs for nodes participating in a distributed tx corresponding to each tx providers.
+     * @param options options of the distributed tx, see {@link DTxOptions}.
+     *
+     * @return new distributed Tx. Per node transaction was successfully initialized for each node at this point.
+     *
+     * @throws DTxException.DTxInitializationFailedException if:
+     * <ul>
+     * <li> Unknown node was specified</li>
+     * <li> Tx provider of the nodes doesn't support DOM transactions</li>
+     * <li> Node is held by other distributed transaction in a conflicting mode, or still held once the timeout
+     * of the options elapsed</li>
+     * <li> Waiting for the nodes was interrupted</li>
+     * <li> Node tx could not be initialized (node is in use by other client/is unreachable etc)</li>
+     * </ul>
+     */
+    @Nonnull DOMDTx newDOMTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes, @Nonnull DTxOptions options)
+        throws DTxException.DTxInitializationFailedException;
 }
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.api;
+
+/**
+ * How a distributed transaction recovers from a failed edit or submit.
+ */
+public enum DTxRollbackMode {
+    /**
+     * The data is read before its first edit and restored on the nodes when the transaction fails.
+     */
+    ROLLBACK_ON_FAILURE,
+    /**
+     * Nothing is read before the edits, they go straight to the per-node transactions.
+     * A failed transaction leaves the nodes that committed as they are, for edits which are safe to replay.
+     */
+    NO_ROLLBACK
+}
@@ -9,29 +9,35 @@ package org.opendaylight.distributed.tx.impl;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
 
-import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.RejectedExecutionException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.google.common.util.concurrent.*;
+import org.opendaylight.controller.md.sal.binding.api.ReadOnlyTransaction;
 import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
 import org.opendaylight.controller.md.sal.common.api.TransactionStatus;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.distributed.tx.api.DTxEdit;
 import org.opendaylight.distributed.tx.api.DTxException;
 import org.opendaylight.distributed.tx.spi.CachedData;
-import org.opendaylight.distributed.tx.spi.DTXReadWriteTransaction;
-import org.opendaylight.distributed.tx.spi.TxCache;
+import org.opendaylight.distributed.tx.spi.PreImageSerializer;
 import org.opendaylight.yangtools.yang.binding.DataObject;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.opendaylight.yangtools.yang.common.RpcResult;
@@ -39,21 +45,102 @@ import org.opendaylight.yangtools.yang.data.api.ModifyAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Closeable {
+public class CachingReadWriteTx implements PerNodeTx {
     private static final Logger LOG = LoggerFactory.getLogger(CachingReadWriteTx.class);
     private final ReadWriteTransaction delegate;
-    public final Deque<CachedData> cache = new ConcurrentLinkedDeque<>();
-    private final ExecutorService executorPoolPerCache;
-    private AtomicInteger numOfActiveOperations;
+    /* Pre-images indexed by datastore type and path, and in the order of the first edit of their path */
+    private final Map<Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>>, PreImage> preImages = new HashMap<>();
+    private final Deque<PreImage> cache = new ArrayDeque<>();
+    private final ListeningExecutorService editExecutor;
+    /* Set when pre-images are kept serialized off-heap */
+    @Nullable private final PreImageSerializer preImageSerializer;
+    @Nullable private final OffHeapPreImageStore offHeapStore;
+    private final boolean ownsOffHeapStore;
+    /* Set when the pre-images are read from a snapshot of the node, only once they are materialized */
+    @Nullable private final ReadOnlyTransaction snapshot;
+    private final Object activeOperationsLock = new Object();
+    private int numOfActiveOperations = 0;
+    private SettableFuture<Void> activeOperationsDoneFuture = null;
 
     public CachingReadWriteTx(@Nonnull final ReadWriteTransaction delegate) {
-        numOfActiveOperations = new AtomicInteger(0);
+        this(delegate, MoreExecutors.newDirectExecutorService());
+    }
+
+    /**
+     * @param delegate per-node transaction the edits are applied to
+     * @param editExecutor executor applying the edits. It is shared with other transactions and not owned by the cache.
+     */
+    public CachingReadWriteTx(@Nonnull final ReadWriteTransaction delegate, @Nonnull final ExecutorService editExecutor) {
+        this(delegate, editExecutor, (PreImageSerializer) null);
+    }
+
+    /**
+     * @param delegate per-node transaction the edits are applied to
+     * @param editExecutor executor applying the edits. It is shared with other transactions and not owned by the cache.
+     * @param preImageSerializer serializer of the pre-images kept off-heap until rollback,
+     *                           null to keep the pre-images on the heap
+     */
+    public CachingReadWriteTx(@Nonnull final ReadWriteTransaction delegate, @Nonnull final ExecutorService editExecutor,
+                              @Nullable final PreImageSerializer preImageSerializer) {
+        this(delegate, editExecutor, preImageSerializer, preImageSerializer == null ? null : new OffHeapPreImageStore(), true);
+    }
+
+    /**
+     * @param delegate per-node transaction the edits are applied to
+     * @param editExecutor executor applying the edits. It is shared with other transactions and not owned by the cache.
+     * @param preImageSerializer serializer of the pre-images kept off-heap until rollback
+     * @param journal pre-image journal shared by the transactions of a distributed tx, not owned by the cache
+     */
+    CachingReadWriteTx(@Nonnull final ReadWriteTransaction delegate, @Nonnull final ExecutorService editExecutor,
+                       @Nonnull final PreImageSerializer preImageSerializer, @Nonnull final OffHeapPreImageStore journal) {
+        this(delegate, editExecutor, preImageSerializer, journal, false, null);
+    }
+
+    /**
+     * @param delegate per-node transaction the edits are applied to
+     * @param editExecutor executor applying the edits. It is shared with other transactions and not owned by the cache.
+     * @param snapshot snapshot of the node the pre-images are read from when they are materialized, e.g. by a rollback,
+     *                 instead of reading them through the delegate before the edits. It is owned by the cache.
+     */
+    CachingReadWriteTx(@Nonnull final ReadWriteTransaction delegate, @Nonnull final ExecutorService editExecutor,
+                       @Nonnull final ReadOnlyTransaction snapshot) {
+        this(delegate, editExecutor, null, null, false, snapshot);
+    }
+
+    private CachingReadWriteTx(final ReadWriteTransaction delegate, final ExecutorService editExecutor,
+                               @Nullable final PreImageSerializer preImageSerializer,
+                               @Nullable final OffHeapPreImageStore offHeapStore, final boolean ownsOffHeapStore) {
+        this(delegate, editExecutor, preImageSerializer, offHeapStore, ownsOffHeapStore, null);
+    }
+
+    private CachingReadWriteTx(final ReadWriteTransaction delegate, final ExecutorService editExecutor,
+                               @Nullable final PreImageSerializer preImageSerializer,
+                               @Nullable final OffHeapPreImageStore offHeapStore, final boolean ownsOffHeapStore,
+                               @Nullable final ReadOnlyTransaction snapshot) {
         this.delegate = delegate;
-        this.executorPoolPerCache = Executors.newCachedThreadPool();
+        this.editExecutor = MoreExecutors.listeningDecorator(editExecutor);
+        this.preImageSerializer = preImageSerializer;
+        this.offHeapStore = offHeapStore;
+        this.ownsOffHeapStore = ownsOffHeapStore;
+        this.snapshot = snapshot;
     }
 
+    /**
+     * Iterate the captured pre-images, one per path, from the latest to the earliest.
+     * The pre-images deferred to the snapshot have to be read first, see {@link #materializePreImages()}.
+     */
     @Override public Iterator<CachedData> iterator() {
-        return cache.descendingIterator();
+        synchronized (preImages) {
+            Preconditions.checkState(!hasDeferredPreImages(), "Pre-images deferred to the snapshot aren't read yet");
+            final List<CachedData> cachedData = new ArrayList<>(cache.size());
+            for (Iterator<PreImage> it = cache.descendingIterator(); it.hasNext(); ) {
+                final PreImage preImage = it.next();
+                if (preImage.captured) {
+                    cachedData.add(toCachedData(preImage));
+                }
+            }
+            return cachedData.iterator();
+        }
     }
 
     @Override public <T extends DataObject> CheckedFuture<Optional<T>, ReadFailedException> read(
@@ -70,30 +157,200 @@ public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Clo
         this.asyncDelete(logicalDatastoreType, instanceIdentifier);
     }
 
-    public int getSizeOfCache(){
-        return this.cache.size();
+    @Override public int getSizeOfCache(){
+        synchronized (preImages) {
+            int size = 0;
+            for (PreImage preImage : cache) {
+                if (preImage.captured) {
+                    size++;
+                }
+            }
+            return size;
+        }
     }
 
-    public CheckedFuture<Void, DTxException> asyncDelete(final LogicalDatastoreType logicalDatastoreType,
-                                      final InstanceIdentifier<?> instanceIdentifier) {
-        increaseOperation();
+    /**
+     * Reserve the pre-image of a path for an edit. Only the first edit of a path reads its pre-image,
+     * the later edits of the path reuse it.
+     *
+     * @param newPreImages collects the reserved pre-images which still have to be read
+     * @return future set once the pre-image of the path has been captured
+     */
+    private ListenableFuture<Void> reservePreImage(final LogicalDatastoreType logicalDatastoreType,
+            final InstanceIdentifier<?> instanceIdentifier, final ModifyAction operation, final List<PreImage> newPreImages) {
+        synchronized (preImages) {
+            final Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>> path = Maps.<LogicalDatastoreType, InstanceIdentifier<?>>immutableEntry(
+                    logicalDatastoreType, instanceIdentifier);
+            PreImage preImage = preImages.get(path);
+
+            if (preImage == null) {
+                preImage = new PreImage(path, operation);
+                preImages.put(path, preImage);
+                cache.add(preImage);
+                newPreImages.add(preImage);
+            } else if (preImage.operation == ModifyAction.DELETE && operation != ModifyAction.DELETE) {
+                /* The path is written after being deleted, rollback has to delete it if it didn't exist */
+                preImage.operation = operation;
+            }
+
+            return preImage.capturedFuture;
+        }
+    }
+
+    private void readPreImage(final PreImage preImage) {
+        if (snapshot != null) {
+            deferPreImage(preImage);
+            return;
+        }
         CheckedFuture<Optional<DataObject>, ReadFailedException> readFuture = null;
         try {
-            readFuture = delegate.read(logicalDatastoreType, (InstanceIdentifier<DataObject>) instanceIdentifier);
+            readFuture = delegate.read(preImage.path.getKey(), (InstanceIdentifier<DataObject>) preImage.path.getValue());
         }catch (Exception e){
-            readFuture = Futures.immediateFailedCheckedFuture(new ReadFailedException("Read exception in delete action"));
+            readFuture = Futures.immediateFailedCheckedFuture(new ReadFailedException("Read exception in " + preImage.operation + " action"));
+        }
+        capturePreImage(preImage, readFuture);
+    }
+
+    /**
+     * Capture a pre-image without reading it, it is read from the snapshot once the pre-images are materialized
+     */
+    private void deferPreImage(final PreImage preImage) {
+        synchronized (preImages) {
+            preImage.deferred = true;
+            preImage.captured = true;
         }
+        preImage.capturedFuture.set(null);
+    }
 
-        final SettableFuture<Void> retFuture = SettableFuture.create();
+    /**
+     * Read the pre-images deferred to the snapshot, with coalesced reads. The cache can be iterated once they are read.
+     *
+     * @return future set once the deferred pre-images are read, failing if they can't be read from the snapshot
+     */
+    @Override public ListenableFuture<Void> materializePreImages() {
+        final List<PreImage> deferredPreImages = new ArrayList<>();
+        final List<Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>>> paths = new ArrayList<>();
+        synchronized (preImages) {
+            for (PreImage preImage : cache) {
+                if (preImage.deferred) {
+                    deferredPreImages.add(preImage);
+                    paths.add(preImage.path);
+                }
+            }
+        }
+        if (deferredPreImages.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
 
+        return Futures.transform(Futures.allAsList(CoalescingPreImageReader.readPreImages(snapshot, paths)),
+                new Function<List<Optional<DataObject>>, Void>() {
+                    @Nullable @Override public Void apply(@Nullable final List<Optional<DataObject>> data) {
+                        synchronized (preImages) {
+                            for (int i = 0; i < deferredPreImages.size(); i++) {
+                                deferredPreImages.get(i).data = data.get(i).orNull();
+                                deferredPreImages.get(i).deferred = false;
+                            }
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Guarded by the pre-image index
+     */
+    private boolean hasDeferredPreImages() {
+        for (PreImage preImage : cache) {
+            if (preImage.deferred) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Capture the pre-image once read. A pre-image which can't be read is dropped, so the next edit of the path reads it again.
+     */
+    private void capturePreImage(final PreImage preImage, final ListenableFuture<Optional<DataObject>> readFuture) {
         Futures.addCallback(readFuture, new FutureCallback<Optional<DataObject>>() {
             @Override public void onSuccess(final Optional<DataObject> result) {
-                synchronized (this) {
-                    cache.add(new CachedData(logicalDatastoreType, instanceIdentifier, result.orNull(), ModifyAction.DELETE));
+                final OffHeapPreImageStore.Handle serializedData = result.isPresent() ? storeOffHeap(preImage, result.get()) : null;
+                synchronized (preImages) {
+                    if (serializedData == null) {
+                        preImage.data = result.orNull();
+                    }
+                    preImage.serializedData = serializedData;
+                    preImage.captured = true;
+                }
+                preImage.capturedFuture.set(null);
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                synchronized (preImages) {
+                    preImages.remove(preImage.path);
+                    cache.remove(preImage);
+                }
+                preImage.capturedFuture.setException(t);
+            }
+        });
+    }
+
+    /**
+     * Serialize a pre-image to the off-heap store, if any. Any failure keeps the pre-image on the heap, so the capture
+     * of the pre-image always completes.
+     *
+     * @return location of the pre-image, null if the pre-image is kept on the heap
+     */
+    @Nullable private OffHeapPreImageStore.Handle storeOffHeap(final PreImage preImage, final DataObject data) {
+        if (offHeapStore == null) {
+            return null;
+        }
+        try {
+            return offHeapStore.write(preImageSerializer.serialize(preImage.path.getValue(), data));
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to serialize pre-image of {}, keeping it on the heap", preImage.path.getValue(), e);
+            return null;
+        } catch (OutOfMemoryError e) {
+            /* Direct buffer memory exhausted, the heap copy is already there */
+            LOG.warn("Unable to store pre-image of {} off-heap, keeping it on the heap", preImage.path.getValue(), e);
+            return null;
+        }
+    }
+
+    private CachedData toCachedData(final PreImage preImage) {
+        final LogicalDatastoreType dsType = preImage.path.getKey();
+        final InstanceIdentifier<?> id = preImage.path.getValue();
+        final OffHeapPreImageStore.Handle serializedData = preImage.serializedData;
+
+        if (serializedData == null) {
+            return new CachedData(dsType, id, preImage.data, preImage.operation);
+        }
+        /* Decoded only when rollback restores it */
+        return CachedData.createLazy(dsType, id, new Supplier<DataObject>() {
+            @Override public DataObject get() {
+                try {
+                    return preImageSerializer.deserialize(id, offHeapStore.read(serializedData));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to deserialize pre-image of " + id, e);
                 }
+            }
+        }, preImage.operation);
+    }
 
-                final ListeningExecutorService executorService = MoreExecutors.listeningDecorator(executorPoolPerCache);
-                final ListenableFuture asyncDeleteFuture = executorService.submit(new Callable() {
+    public CheckedFuture<Void, DTxException> asyncDelete(final LogicalDatastoreType logicalDatastoreType,
+                                      final InstanceIdentifier<?> instanceIdentifier) {
+        increaseOperation();
+        final List<PreImage> newPreImages = new ArrayList<>(1);
+        final ListenableFuture<Void> preImageFuture = reservePreImage(logicalDatastoreType, instanceIdentifier, ModifyAction.DELETE, newPreImages);
+        for (PreImage preImage : newPreImages) {
+            readPreImage(preImage);
+        }
+
+        final SettableFuture<Void> retFuture = SettableFuture.create();
+
+        Futures.addCallback(preImageFuture, new FutureCallback<Void>() {
+            @Override public void onSuccess(final Void result) {
+                final ListenableFuture asyncDeleteFuture = submitEdit(editExecutor, new Callable() {
                     @Override
                     public Object call() throws Exception {
                         delegate.delete(logicalDatastoreType, instanceIdentifier);
@@ -123,15 +380,7 @@ public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Clo
             }
         });
 
-        return Futures.makeChecked(retFuture, new Function<Exception, DTxException>() {
-            @Nullable
-            @Override
-            public DTxException apply(@Nullable Exception e) {
-                e =(Exception)e.getCause();
-                return e instanceof DTxException ? (DTxException)e :
-                        new DTxException("delete operation failed ", e);
-            }
-        });
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("delete operation failed"));
     }
 
     @Override public <T extends DataObject> void merge(final LogicalDatastoreType logicalDatastoreType,
@@ -142,23 +391,17 @@ public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Clo
     public <T extends DataObject> CheckedFuture<Void, DTxException>asyncMerge(final LogicalDatastoreType logicalDatastoreType,
                                                        final InstanceIdentifier<T> instanceIdentifier, final T t) {
         increaseOperation();
-        CheckedFuture<Optional<T>, ReadFailedException> readFuture = null;
-        try{
-            readFuture = delegate.read(logicalDatastoreType, instanceIdentifier);
-        }catch (Exception e){
-            readFuture = Futures.immediateFailedCheckedFuture(new ReadFailedException("Read exception in merge action"));
+        final List<PreImage> newPreImages = new ArrayList<>(1);
+        final ListenableFuture<Void> preImageFuture = reservePreImage(logicalDatastoreType, instanceIdentifier, ModifyAction.MERGE, newPreImages);
+        for (PreImage preImage : newPreImages) {
+            readPreImage(preImage);
         }
 
         final SettableFuture<Void> retFuture = SettableFuture.create();
 
-        Futures.addCallback(readFuture, new FutureCallback<Optional<T>>() {
-            @Override public void onSuccess(final Optional<T> result) {
-                synchronized (this) {
-                    cache.add(new CachedData(logicalDatastoreType, instanceIdentifier, result.orNull(), ModifyAction.MERGE));
-                }
-
-                final ListeningExecutorService executorService = MoreExecutors.listeningDecorator(executorPoolPerCache);
-                final ListenableFuture asyncMergeFuture = executorService.submit(new Callable() {
+        Futures.addCallback(preImageFuture, new FutureCallback<Void>() {
+            @Override public void onSuccess(final Void result) {
+                final ListenableFuture asyncMergeFuture = submitEdit(editExecutor, new Callable() {
                     @Override
                     public Object call() throws Exception {
                         delegate.merge(logicalDatastoreType, instanceIdentifier, t);
@@ -188,15 +431,7 @@ public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Clo
             }
         });
 
-        return Futures.makeChecked(retFuture, new Function<Exception, DTxException>() {
-            @Nullable
-            @Override
-            public DTxException apply(@Nullable Exception e) {
-                e =(Exception)e.getCause();
-                return e instanceof DTxException ? (DTxException)e :
-                        new DTxException("merge operation failed", e);
-            }
-        });
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("merge operation failed"));
     }
 
     @Deprecated
@@ -215,23 +450,17 @@ public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Clo
         increaseOperation();
         final SettableFuture<Void> retFuture = SettableFuture.create();
 
-        CheckedFuture<Optional<T>, ReadFailedException> readFuture = null;
-        try {
-            readFuture = delegate.read(logicalDatastoreType, instanceIdentifier);
-        }catch (Exception e){
-            readFuture = Futures.immediateFailedCheckedFuture(new ReadFailedException("Read exception in put action"));
+        final List<PreImage> newPreImages = new ArrayList<>(1);
+        final ListenableFuture<Void> preImageFuture = reservePreImage(logicalDatastoreType, instanceIdentifier, ModifyAction.REPLACE, newPreImages);
+        for (PreImage preImage : newPreImages) {
+            readPreImage(preImage);
         }
 
-        Futures.addCallback(readFuture, new FutureCallback<Optional<T>>() {
+        Futures.addCallback(preImageFuture, new FutureCallback<Void>() {
 
             @Override
-            public void onSuccess(final Optional<T> result) {
-                synchronized (this) {
-                    cache.add(new CachedData(logicalDatastoreType, instanceIdentifier, result.orNull(), ModifyAction.REPLACE));
-                }
-
-                final ListeningExecutorService executorService = MoreExecutors.listeningDecorator(executorPoolPerCache);
-                final ListenableFuture asyncPutFuture = executorService.submit(new Callable() {
+            public void onSuccess(final Void result) {
+                final ListenableFuture asyncPutFuture = submitEdit(editExecutor, new Callable() {
                     @Override
                     public Object call() throws Exception {
                         delegate.put(logicalDatastoreType, instanceIdentifier, t);
@@ -262,15 +491,129 @@ public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Clo
             }
         });
 
-        return Futures.makeChecked(retFuture, new Function<Exception, DTxException>() {
-            @Nullable
-            @Override
-            public DTxException apply(@Nullable Exception e) {
-                e =(Exception)e.getCause();
-                return e instanceof DTxException ? (DTxException)e :
-                        new DTxException("put operation failed", e);
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("put operation failed"));
+    }
+
+    /**
+     * Apply a batch of edits as one unit: the pre-images of the paths not captured yet are read with coalesced reads
+     * and cached in the order of the list, then the edits are applied by a single edit executor task.
+     * The pre-images supplied by the edits are cached as they are, without reading them.
+     */
+    public CheckedFuture<Void, DTxException> asyncEdits(final List<DTxEdit> edits) {
+        increaseOperation();
+        final List<PreImage> newPreImages = new ArrayList<>();
+        final Map<PreImage, DTxEdit> knownPreImages = new HashMap<>();
+        final List<ListenableFuture<Void>> preImageFutures = new ArrayList<>(edits.size());
+
+        for (DTxEdit edit : edits) {
+            final int reserved = newPreImages.size();
+            preImageFutures.add(reservePreImage(edit.getDsType(), edit.getId(), getModifyAction(edit), newPreImages));
+            if (newPreImages.size() > reserved && edit.isPreImageKnown()) {
+                knownPreImages.put(newPreImages.remove(reserved), edit);
+            }
+        }
+
+        for (Map.Entry<PreImage, DTxEdit> knownPreImage : knownPreImages.entrySet()) {
+            capturePreImage(knownPreImage.getKey(), Futures.immediateFuture(
+                    Optional.fromNullable(knownPreImage.getValue().getPreImage())));
+        }
+
+        if (snapshot != null) {
+            for (PreImage preImage : newPreImages) {
+                deferPreImage(preImage);
+            }
+        } else {
+            final List<Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>>> paths = new ArrayList<>(newPreImages.size());
+            for (PreImage preImage : newPreImages) {
+                paths.add(preImage.path);
+            }
+            final List<ListenableFuture<Optional<DataObject>>> readFutures = CoalescingPreImageReader.readPreImages(delegate, paths);
+            for (int i = 0; i < newPreImages.size(); i++) {
+                capturePreImage(newPreImages.get(i), readFutures.get(i));
+            }
+        }
+
+        final SettableFuture<Void> retFuture = SettableFuture.create();
+
+        Futures.addCallback(Futures.allAsList(preImageFutures), new FutureCallback<List<Void>>() {
+            @Override public void onSuccess(final List<Void> result) {
+
+                final ListenableFuture<Void> asyncEditsFuture = submitEdit(editExecutor, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (DTxEdit edit : edits) {
+                            applyEdit(delegate, edit);
+                        }
+                        return null;
+                    }
+                });
+
+                Futures.addCallback(asyncEditsFuture, new FutureCallback<Void>() {
+                    @Override
+                    public void onSuccess(@Nullable Void result) {
+                        decreaseOperation();
+                        retFuture.set(null);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        decreaseOperation();
+                        LOG.trace("async batch edit failure");
+                        retFuture.setException(new DTxException.EditFailedException("async batch edit failure", t));
+                    }
+                });
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                decreaseOperation();
+                retFuture.setException(new DTxException.ReadFailedException("failed to read from node in batch edit", t));
             }
         });
+
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("batch edit operation failed"));
+    }
+
+    /**
+     * Submit an edit to the edit executor. A rejected edit fails the returned future, instead of throwing
+     * from the read callback which would leave the edit future unset and the edit counted as active.
+     */
+    static <T> ListenableFuture<T> submitEdit(final ListeningExecutorService editExecutor, final Callable<T> edit) {
+        try {
+            return editExecutor.submit(edit);
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    private static ModifyAction getModifyAction(final DTxEdit edit) {
+        switch (edit.getOperation()) {
+        case PUT:
+            return ModifyAction.REPLACE;
+        case MERGE:
+            return ModifyAction.MERGE;
+        case DELETE:
+            return ModifyAction.DELETE;
+        }
+
+        throw new IllegalStateException("Unexpected operation: " + edit.getOperation());
+    }
+
+    static void applyEdit(final ReadWriteTransaction delegate, final DTxEdit edit) {
+        final InstanceIdentifier<DataObject> dataId = (InstanceIdentifier<DataObject>) edit.getId();
+
+        switch (edit.getOperation()) {
+        case PUT:
+            delegate.put(edit.getDsType(), dataId, edit.getData());
+            break;
+        case MERGE:
+            delegate.merge(edit.getDsType(), dataId, edit.getData());
+            break;
+        case DELETE:
+            delegate.delete(edit.getDsType(), dataId);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected operation: " + edit.getOperation());
+        }
     }
 
     @Deprecated
@@ -287,18 +630,37 @@ public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Clo
         return delegate.submit();
     }
 
-    public void waitForAllActiveOperationsDone(){
-        while(numOfActiveOperations.get() > 0){
-            Thread.yield();
+    @Override public ListenableFuture<Void> getActiveOperationsDoneFuture(){
+        synchronized (activeOperationsLock) {
+            if (numOfActiveOperations == 0) {
+                return Futures.immediateFuture(null);
+            }
+            if (activeOperationsDoneFuture == null) {
+                activeOperationsDoneFuture = SettableFuture.create();
+            }
+            return activeOperationsDoneFuture;
         }
     }
 
     public void increaseOperation(){
-        numOfActiveOperations.incrementAndGet();
+        synchronized (activeOperationsLock) {
+            numOfActiveOperations++;
+        }
     }
 
     public void decreaseOperation(){
-        numOfActiveOperations.decrementAndGet();
+        SettableFuture<Void> doneFuture = null;
+        synchronized (activeOperationsLock) {
+            numOfActiveOperations--;
+            if (numOfActiveOperations == 0) {
+                doneFuture = activeOperationsDoneFuture;
+                activeOperationsDoneFuture = null;
+            }
+        }
+        /* Complete outside of the lock, listeners may issue new edits. */
+        if (doneFuture != null) {
+            doneFuture.set(null);
+        }
     }
 
     @Deprecated
@@ -306,10 +668,40 @@ public class CachingReadWriteTx implements TxCache, DTXReadWriteTransaction, Clo
         return delegate.commit();
     }
 
+    @Override public void closeSnapshot() {
+        if (snapshot != null) {
+            snapshot.close();
+        }
+    }
+
     @Override public void close() throws IOException {
         cancel();
-        synchronized (this) {
+        closeSnapshot();
+        synchronized (preImages) {
+            preImages.clear();
             cache.clear();
         }
+        if (offHeapStore != null && ownsOffHeapStore) {
+            offHeapStore.close();
+        }
+    }
+
+    /**
+     * Pre-image of a path, read before the first edit of the path or deferred to the snapshot. Guarded by the pre-image index.
+     */
+    private static final class PreImage {
+        private final Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>> path;
+        private final SettableFuture<Void> capturedFuture = SettableFuture.create();
+        private ModifyAction operation;
+        private DataObject data = null;
+        private OffHeapPreImageStore.Handle serializedData = null;
+        private boolean captured = false;
+        /* Captured, but still to be read from the snapshot */
+        private boolean deferred = false;
+
+        PreImage(final Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>> path, final ModifyAction operation) {
+            this.path = path;
+            this.operation = operation;
+        }
     }
 }
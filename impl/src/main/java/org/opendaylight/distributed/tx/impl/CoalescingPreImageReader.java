@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import org.opendaylight.controller.md.sal.binding.api.ReadTransaction;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
+import org.opendaylight.yangtools.yang.binding.Augmentable;
+import org.opendaylight.yangtools.yang.binding.Augmentation;
+import org.opendaylight.yangtools.yang.binding.DataContainer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the pre-images of a batch of paths of one node. Sibling paths of each datastore are read with a single read
+ * of their parent and every pre-image is extracted from the parent. Only direct children which aren't list entries
+ * are coalesced: sibling list entries would read the whole list, deeper paths would read arbitrarily large subtrees.
+ * The parent is read only if its binding interface declares no list nor choice anywhere in its subtree, so the read
+ * of the parent is bounded by the size of its containers and leaves. The other paths are read on their own.
+ */
+final class CoalescingPreImageReader {
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingPreImageReader.class);
+    /* Whether the subtree of a binding interface is free of lists and choices, by interface */
+    private static final ConcurrentMap<Class<?>, Boolean> BOUNDED_TYPES = new ConcurrentHashMap<>();
+
+    private CoalescingPreImageReader() {
+    }
+
+    /**
+     * @param paths datastore type and IID of the data to read
+     * @return pre-image futures, in the order of the paths
+     */
+    static List<ListenableFuture<Optional<DataObject>>> readPreImages(final ReadTransaction delegate,
+            final List<Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>>> paths) {
+        final Map<LogicalDatastoreType, Map<InstanceIdentifier<?>, ListenableFuture<Optional<DataObject>>>> readsByDsType = new HashMap<>();
+
+        for (Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>> path : paths) {
+            if (!readsByDsType.containsKey(path.getKey())) {
+                readsByDsType.put(path.getKey(), new LinkedHashMap<InstanceIdentifier<?>, ListenableFuture<Optional<DataObject>>>());
+            }
+            readsByDsType.get(path.getKey()).put(path.getValue(), null);
+        }
+
+        for (Map.Entry<LogicalDatastoreType, Map<InstanceIdentifier<?>, ListenableFuture<Optional<DataObject>>>> dsReads : readsByDsType.entrySet()) {
+            readPaths(delegate, dsReads.getKey(), dsReads.getValue());
+        }
+
+        final List<ListenableFuture<Optional<DataObject>>> preImages = new ArrayList<>(paths.size());
+        for (Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>> path : paths) {
+            preImages.add(readsByDsType.get(path.getKey()).get(path.getValue()));
+        }
+        return preImages;
+    }
+
+    /**
+     * Fill the read future of every distinct path of a datastore
+     */
+    private static void readPaths(final ReadTransaction delegate, final LogicalDatastoreType dsType,
+                                  final Map<InstanceIdentifier<?>, ListenableFuture<Optional<DataObject>>> reads) {
+        final Map<InstanceIdentifier<?>, List<InstanceIdentifier<?>>> siblingsByParent = new LinkedHashMap<>();
+
+        for (InstanceIdentifier<?> path : reads.keySet()) {
+            final InstanceIdentifier<?> parent = getCoalescingParent(path);
+            if (parent == null) {
+                reads.put(path, read(delegate, dsType, path));
+                continue;
+            }
+            if (!siblingsByParent.containsKey(parent)) {
+                siblingsByParent.put(parent, new ArrayList<InstanceIdentifier<?>>());
+            }
+            siblingsByParent.get(parent).add(path);
+        }
+
+        for (Map.Entry<InstanceIdentifier<?>, List<InstanceIdentifier<?>>> siblings : siblingsByParent.entrySet()) {
+            if (siblings.getValue().size() == 1) {
+                final InstanceIdentifier<?> path = siblings.getValue().get(0);
+                reads.put(path, read(delegate, dsType, path));
+                continue;
+            }
+
+            LOG.trace("Coalescing {} pre-image reads into a read of {}", siblings.getValue().size(), siblings.getKey());
+            final ListenableFuture<Optional<DataObject>> parentRead = read(delegate, dsType, siblings.getKey());
+            for (InstanceIdentifier<?> path : siblings.getValue()) {
+                reads.put(path, extractFromParent(delegate, dsType, parentRead, path));
+            }
+        }
+    }
+
+    /**
+     * @return parent the pre-image of the path can be extracted from, null if the path has to be read on its own
+     */
+    @Nullable private static InstanceIdentifier<?> getCoalescingParent(final InstanceIdentifier<?> path) {
+        final List<InstanceIdentifier.PathArgument> pathArguments = Lists.newArrayList(path.getPathArguments());
+        if (pathArguments.size() < 2 || Iterables.getLast(pathArguments) instanceof InstanceIdentifier.IdentifiableItem) {
+            return null;
+        }
+        if (!isBounded(pathArguments.get(pathArguments.size() - 2).getType())) {
+            return null;
+        }
+        return InstanceIdentifier.create(pathArguments.subList(0, pathArguments.size() - 1));
+    }
+
+    /**
+     * Check the subtree of a binding interface, as declared by its getters, holds no list nor leaf-list, which may
+     * be arbitrarily large, and no choice, whose cases aren't declared by the interface.
+     * Augmentations aren't declared by the interface either, they are read with the parent.
+     */
+    static boolean isBounded(final Class<?> type) {
+        Boolean bounded = BOUNDED_TYPES.get(type);
+        if (bounded == null) {
+            bounded = isBounded(type, new HashSet<Class<?>>());
+            BOUNDED_TYPES.putIfAbsent(type, bounded);
+        }
+        return bounded;
+    }
+
+    private static boolean isBounded(final Class<?> type, final Set<Class<?>> checkedTypes) {
+        if (!checkedTypes.add(type)) {
+            return true;
+        }
+        for (Method getter : type.getMethods()) {
+            if (getter.getParameterTypes().length != 0) {
+                continue;
+            }
+            final Class<?> returnType = getter.getReturnType();
+            if (List.class.isAssignableFrom(returnType)) {
+                return false;
+            }
+            if (!DataContainer.class.isAssignableFrom(returnType)) {
+                continue;
+            }
+            /* Choices are the only data containers which aren't data objects */
+            if (!DataObject.class.isAssignableFrom(returnType) || !isBounded(returnType, checkedTypes)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ListenableFuture<Optional<DataObject>> extractFromParent(final ReadTransaction delegate,
+            final LogicalDatastoreType dsType, final ListenableFuture<Optional<DataObject>> parentRead,
+            final InstanceIdentifier<?> path) {
+        final InstanceIdentifier.PathArgument pathArgument = Iterables.getLast(path.getPathArguments());
+
+        return Futures.transform(parentRead, new AsyncFunction<Optional<DataObject>, Optional<DataObject>>() {
+            @Override public ListenableFuture<Optional<DataObject>> apply(@Nullable final Optional<DataObject> input) {
+                if (!input.isPresent()) {
+                    return Futures.immediateFuture(Optional.<DataObject>absent());
+                }
+                try {
+                    return Futures.immediateFuture(Optional.fromNullable(getChild(input.get(), pathArgument.getType())));
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    LOG.warn("Unable to extract pre-image of {} from its parent, reading it", path, e);
+                    return read(delegate, dsType, path);
+                }
+            }
+        });
+    }
+
+    private static ListenableFuture<Optional<DataObject>> read(final ReadTransaction delegate,
+                                                               final LogicalDatastoreType dsType, final InstanceIdentifier<?> path) {
+        try {
+            return delegate.read(dsType, (InstanceIdentifier<DataObject>) path);
+        } catch (Exception e) {
+            return Futures.immediateFailedCheckedFuture(new ReadFailedException("Read exception in batch edit", e));
+        }
+    }
+
+    /**
+     * Get a child container or augmentation of a binding data object. The getter is looked up by its return type
+     * in the binding interface, so it doesn't depend on the mangling of the YANG name.
+     *
+     * @return null if the parent has no such child
+     * @throws NoSuchMethodException if the parent interface has no getter of the child type
+     */
+    @Nullable private static DataObject getChild(final DataContainer parent, final Class<? extends DataObject> type)
+            throws ReflectiveOperationException {
+        if (Augmentation.class.isAssignableFrom(type)) {
+            return (DataObject) ((Augmentable) parent).getAugmentation((Class<? extends Augmentation>) type);
+        }
+
+        for (Method getter : parent.getImplementedInterface().getMethods()) {
+            if (getter.getParameterTypes().length == 0 && getter.getReturnType() == type) {
+                return type.cast(getter.invoke(parent));
+            }
+        }
+        throw new NoSuchMethodException("No getter of " + type + " in " + parent.getImplementedInterface());
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataReadWriteTransaction;
+import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+
+/**
+ * Per-node DOM transaction of a DOM distributed tx. The pre-image of a path is read in normalized form
+ * before its first edit, the edits are applied to the delegate once it is captured.
+ */
+final class DOMCachingReadWriteTx {
+    private final DOMDataReadWriteTransaction delegate;
+    /* Pre-images indexed by datastore type and path, and in the order of the first edit of their path */
+    private final Map<Map.Entry<LogicalDatastoreType, YangInstanceIdentifier>, PreImage> preImages = new HashMap<>();
+    private final Deque<PreImage> cache = new ArrayDeque<>();
+    private final ListeningExecutorService editExecutor;
+    private final Object activeOperationsLock = new Object();
+    private int numOfActiveOperations = 0;
+    private SettableFuture<Void> activeOperationsDoneFuture = null;
+
+    /**
+     * @param delegate per-node DOM transaction the edits are applied to
+     * @param editExecutor executor applying the edits. It is shared with other transactions and not owned by the cache.
+     */
+    DOMCachingReadWriteTx(@Nonnull final DOMDataReadWriteTransaction delegate, @Nonnull final ExecutorService editExecutor) {
+        this.delegate = delegate;
+        this.editExecutor = MoreExecutors.listeningDecorator(editExecutor);
+    }
+
+    CheckedFuture<Void, DTxException> asyncPut(final LogicalDatastoreType logicalDatastoreType,
+                                               final YangInstanceIdentifier path, final NormalizedNode<?, ?> data) {
+        return asyncEdit(logicalDatastoreType, path, "put", new Runnable() {
+            @Override public void run() {
+                delegate.put(logicalDatastoreType, path, data);
+            }
+        });
+    }
+
+    CheckedFuture<Void, DTxException> asyncMerge(final LogicalDatastoreType logicalDatastoreType,
+                                                 final YangInstanceIdentifier path, final NormalizedNode<?, ?> data) {
+        return asyncEdit(logicalDatastoreType, path, "merge", new Runnable() {
+            @Override public void run() {
+                delegate.merge(logicalDatastoreType, path, data);
+            }
+        });
+    }
+
+    CheckedFuture<Void, DTxException> asyncDelete(final LogicalDatastoreType logicalDatastoreType,
+                                                  final YangInstanceIdentifier path) {
+        return asyncEdit(logicalDatastoreType, path, "delete", new Runnable() {
+            @Override public void run() {
+                delegate.delete(logicalDatastoreType, path);
+            }
+        });
+    }
+
+    /**
+     * Apply an edit on the edit executor, once the pre-image of its path has been captured
+     */
+    private CheckedFuture<Void, DTxException> asyncEdit(final LogicalDatastoreType logicalDatastoreType,
+                                                        final YangInstanceIdentifier path, final String operation,
+                                                        final Runnable edit) {
+        increaseOperation();
+        final SettableFuture<Void> retFuture = SettableFuture.create();
+
+        Futures.addCallback(capturePreImage(logicalDatastoreType, path), new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                final ListenableFuture<Void> editFuture = CachingReadWriteTx.submitEdit(editExecutor, new Callable<Void>() {
+                    @Override public Void call() throws Exception {
+                        edit.run();
+                        return null;
+                    }
+                });
+
+                Futures.addCallback(editFuture, new FutureCallback<Void>() {
+                    @Override public void onSuccess(@Nullable final Void result) {
+                        decreaseOperation();
+                        retFuture.set(null);
+                    }
+
+                    @Override public void onFailure(final Throwable t) {
+                        decreaseOperation();
+                        retFuture.setException(new DTxException.EditFailedException("async " + operation + " failure", t));
+                    }
+                });
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                decreaseOperation();
+                retFuture.setException(new DTxException.ReadFailedException(
+                        "failed to read from node in " + operation + " action", t));
+            }
+        });
+
+        return Futures.makeChecked(retFuture, new Function<Exception, DTxException>() {
+            @Nullable @Override public DTxException apply(@Nullable final Exception e) {
+                final Throwable cause = e.getCause();
+                return cause instanceof DTxException ? (DTxException) cause :
+                        new DTxException(operation + " operation failed", cause);
+            }
+        });
+    }
+
+    /**
+     * Capture the pre-image of a path. Only the first edit of a path reads it, the later edits of the path reuse it.
+     * A pre-image which can't be read is dropped, so the next edit of the path reads it again.
+     *
+     * @return future set once the pre-image has been captured
+     */
+    private ListenableFuture<Void> capturePreImage(final LogicalDatastoreType logicalDatastoreType,
+                                                   final YangInstanceIdentifier path) {
+        final PreImage preImage;
+        synchronized (preImages) {
+            final Map.Entry<LogicalDatastoreType, YangInstanceIdentifier> key = Maps.immutableEntry(logicalDatastoreType, path);
+            final PreImage existing = preImages.get(key);
+            if (existing != null) {
+                return existing.capturedFuture;
+            }
+            preImage = new PreImage(key);
+            preImages.put(key, preImage);
+            cache.add(preImage);
+        }
+
+        ListenableFuture<Optional<NormalizedNode<?, ?>>> readFuture;
+        try {
+            readFuture = delegate.read(logicalDatastoreType, path);
+        } catch (RuntimeException e) {
+            readFuture = Futures.immediateFailedFuture(e);
+        }
+
+        Futures.addCallback(readFuture, new FutureCallback<Optional<NormalizedNode<?, ?>>>() {
+            @Override public void onSuccess(final Optional<NormalizedNode<?, ?>> result) {
+                synchronized (preImages) {
+                    preImage.data = result.orNull();
+                }
+                preImage.capturedFuture.set(null);
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                synchronized (preImages) {
+                    preImages.remove(preImage.path);
+                    cache.remove(preImage);
+                }
+                preImage.capturedFuture.setException(t);
+            }
+        });
+        return preImage.capturedFuture;
+    }
+
+    /**
+     * Restore the captured pre-images, from the latest to the earliest: the data present before the edits
+     * is put back, the data absent before the edits is deleted.
+     *
+     * @param rollbackTx transaction of the node the pre-images are restored through
+     */
+    void restorePreImages(final DOMDataReadWriteTransaction rollbackTx) {
+        synchronized (preImages) {
+            for (Iterator<PreImage> it = cache.descendingIterator(); it.hasNext(); ) {
+                final PreImage preImage = it.next();
+                if (preImage.data != null) {
+                    rollbackTx.put(preImage.path.getKey(), preImage.path.getValue(), preImage.data);
+                } else {
+                    rollbackTx.delete(preImage.path.getKey(), preImage.path.getValue());
+                }
+            }
+        }
+    }
+
+    boolean cancel() {
+        return delegate.cancel();
+    }
+
+    CheckedFuture<Void, TransactionCommitFailedException> submit() {
+        return delegate.submit();
+    }
+
+    /**
+     * Get a future which is set once all the asynchronous edits issued so far have finished.
+     *
+     * @return ListenableFuture set when there is no active edit left. It never fails.
+     */
+    ListenableFuture<Void> getActiveOperationsDoneFuture() {
+        synchronized (activeOperationsLock) {
+            if (numOfActiveOperations == 0) {
+                return Futures.immediateFuture(null);
+            }
+            if (activeOperationsDoneFuture == null) {
+                activeOperationsDoneFuture = SettableFuture.create();
+            }
+            return activeOperationsDoneFuture;
+        }
+    }
+
+    private void increaseOperation() {
+        synchronized (activeOperationsLock) {
+            numOfActiveOperations++;
+        }
+    }
+
+    private void decreaseOperation() {
+        SettableFuture<Void> doneFuture = null;
+        synchronized (activeOperationsLock) {
+            numOfActiveOperations--;
+            if (numOfActiveOperations == 0) {
+                doneFuture = activeOperationsDoneFuture;
+                activeOperationsDoneFuture = null;
+            }
+        }
+        /* Complete outside of the lock, listeners may issue new edits. */
+        if (doneFuture != null) {
+            doneFuture.set(null);
+        }
+    }
+
+    /**
+     * Pre-image of a path in normalized form, null data if the path didn't exist. Guarded by the pre-image index.
+     */
+    private static final class PreImage {
+        private final Map.Entry<LogicalDatastoreType, YangInstanceIdentifier> path;
+        private final SettableFuture<Void> capturedFuture = SettableFuture.create();
+        private NormalizedNode<?, ?> data = null;
+
+        PreImage(final Map.Entry<LogicalDatastoreType, YangInstanceIdentifier> path) {
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataReadWriteTransaction;
+import org.opendaylight.distributed.tx.api.DOMDTx;
+import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.spi.DOMTxProvider;
+import org.opendaylight.distributed.tx.spi.TransactionLock;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Distributed tx on DOM transactions of its nodes. Nothing is applied to a node before the submit, so the tx
+ * is rolled back before the submit by cancelling the per-node transactions. The nodes committed by a failed
+ * submit are reverted by restoring their pre-images through new per-node transactions.
+ *
+ * It is a separate, minimal coordinator: the binding distributed tx doesn't delegate to it. The per-node
+ * transactions are opened one after the other, the submit always waits for all the nodes before reverting,
+ * the reverts aren't compacted and nothing is written to the intent log, so the tx isn't recovered after a crash.
+ */
+public class DOMDtxImpl implements DOMDTx {
+    private static final Logger LOG = LoggerFactory.getLogger(DOMDtxImpl.class);
+
+    private final UUID txId = UUID.randomUUID();
+    private final Map<DTXLogicalTXProviderType, DOMTxProvider> txProviders;
+    private final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap;
+    private final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, DOMCachingReadWriteTx>> perNodeTransactions = new HashMap<>();
+    private final TransactionLock txLock;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private final Object rollbackLock = new Object();
+    private CheckedFuture<Void, DTxException.RollbackFailedException> rollbackFuture = null;
+
+    /**
+     * @param txProviders DOM tx providers of the nodes
+     * @param nodesMap nodes of the distributed tx, already locked
+     * @param txLock lock the nodes are released through, once the distributed tx is done
+     * @param editExecutor executor applying the edits, not owned by the distributed tx
+     *
+     * @throws DTxException.DTxInitializationFailedException thrown when the tx of a node could not be initialized.
+     * The transactions already initialized are cancelled, the nodes are still locked.
+     */
+    public DOMDtxImpl(@Nonnull final Map<DTXLogicalTXProviderType, DOMTxProvider> txProviders,
+                      @Nonnull final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap,
+                      @Nonnull final TransactionLock txLock, @Nonnull final ExecutorService editExecutor)
+        throws DTxException.DTxInitializationFailedException {
+        Preconditions.checkArgument(!nodesMap.isEmpty(), "Cannot create distributed tx for 0 nodes");
+        Preconditions.checkArgument(txProviders.keySet().containsAll(nodesMap.keySet()), "logicalType sets of txPoviders and nodes are different");
+        this.txProviders = txProviders;
+        this.nodesMap = nodesMap;
+        this.txLock = txLock;
+
+        try {
+            for (Map.Entry<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesPerType : nodesMap.entrySet()) {
+                final Map<InstanceIdentifier<?>, DOMCachingReadWriteTx> txs = new HashMap<>();
+                perNodeTransactions.put(nodesPerType.getKey(), txs);
+                for (InstanceIdentifier<?> nodeId : nodesPerType.getValue()) {
+                    txs.put(nodeId, new DOMCachingReadWriteTx(
+                            txProviders.get(nodesPerType.getKey()).newDOMTx(nodeId), editExecutor));
+                }
+            }
+        } catch (RuntimeException e) {
+            for (DOMCachingReadWriteTx tx : getPerNodeTransactions()) {
+                tx.cancel();
+            }
+            throw new DTxException.DTxInitializationFailedException("Unable to initialize DOM transactions of nodes: " + e.getMessage());
+        }
+    }
+
+    private DOMCachingReadWriteTx getPerNodeTx(final DTXLogicalTXProviderType logicalTXProviderType,
+                                               final InstanceIdentifier<?> nodeId) {
+        final Map<InstanceIdentifier<?>, DOMCachingReadWriteTx> txs = perNodeTransactions.get(logicalTXProviderType);
+        Preconditions.checkArgument(txs != null && txs.containsKey(nodeId), "Unknown node: %s. Not in transaction", nodeId);
+        return txs.get(nodeId);
+    }
+
+    private List<DOMCachingReadWriteTx> getPerNodeTransactions() {
+        final List<DOMCachingReadWriteTx> txs = new ArrayList<>();
+        for (Map<InstanceIdentifier<?>, DOMCachingReadWriteTx> txsPerType : perNodeTransactions.values()) {
+            txs.addAll(txsPerType.values());
+        }
+        return txs;
+    }
+
+    @Override public CheckedFuture<Void, DTxException> putAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType, final LogicalDatastoreType logicalDatastoreType,
+            final YangInstanceIdentifier path, final NormalizedNode<?, ?> data, final InstanceIdentifier<?> nodeId) {
+        return rollbackOnFailure(getPerNodeTx(logicalTXProviderType, nodeId).asyncPut(logicalDatastoreType, path, data));
+    }
+
+    @Override public CheckedFuture<Void, DTxException> mergeAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType, final LogicalDatastoreType logicalDatastoreType,
+            final YangInstanceIdentifier path, final NormalizedNode<?, ?> data, final InstanceIdentifier<?> nodeId) {
+        return rollbackOnFailure(getPerNodeTx(logicalTXProviderType, nodeId).asyncMerge(logicalDatastoreType, path, data));
+    }
+
+    @Override public CheckedFuture<Void, DTxException> deleteAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType, final LogicalDatastoreType logicalDatastoreType,
+            final YangInstanceIdentifier path, final InstanceIdentifier<?> nodeId) {
+        return rollbackOnFailure(getPerNodeTx(logicalTXProviderType, nodeId).asyncDelete(logicalDatastoreType, path));
+    }
+
+    /**
+     * Roll the whole distributed tx back if the edit fails
+     */
+    private CheckedFuture<Void, DTxException> rollbackOnFailure(final CheckedFuture<Void, DTxException> editFuture) {
+        final SettableFuture<Void> retFuture = SettableFuture.create();
+
+        Futures.addCallback(editFuture, new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                retFuture.set(null);
+            }
+
+            @Override public void onFailure(final Throwable editFailure) {
+                Futures.addCallback(rollback(), new FutureCallback<Void>() {
+                    @Override public void onSuccess(@Nullable final Void result) {
+                        retFuture.setException(new DTxException.EditFailedException("Edit failed, distributed tx rolled back", editFailure));
+                    }
+
+                    @Override public void onFailure(final Throwable t) {
+                        retFuture.setException(new DTxException.RollbackFailedException(t));
+                    }
+                });
+            }
+        });
+
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("Edit failed"));
+    }
+
+    /**
+     * Roll the distributed tx back, once however many edits fail: later calls get the outcome of the first one.
+     * The per-node transactions are cancelled once their outstanding edits are applied, then the nodes are released.
+     */
+    @Override public CheckedFuture<Void, DTxException.RollbackFailedException> rollback() {
+        synchronized (rollbackLock) {
+            if (rollbackFuture == null) {
+                rollbackFuture = cancelTransactions();
+            }
+            return rollbackFuture;
+        }
+    }
+
+    private CheckedFuture<Void, DTxException.RollbackFailedException> cancelTransactions() {
+        final SettableFuture<Void> cancelFuture = SettableFuture.create();
+
+        Futures.addCallback(allTxsDone(), new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                final List<InstanceIdentifier<?>> uncancelledNodes = new ArrayList<>();
+                for (Map<InstanceIdentifier<?>, DOMCachingReadWriteTx> txsPerType : perNodeTransactions.values()) {
+                    for (Map.Entry<InstanceIdentifier<?>, DOMCachingReadWriteTx> tx : txsPerType.entrySet()) {
+                        if (!tx.getValue().cancel()) {
+                            uncancelledNodes.add(tx.getKey());
+                        }
+                    }
+                }
+                releaseNodes();
+
+                if (uncancelledNodes.isEmpty()) {
+                    cancelFuture.set(null);
+                } else {
+                    cancelFuture.setException(new DTxException.RollbackFailedException(
+                            "Unable to cancel transactions of nodes: " + uncancelledNodes));
+                }
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                releaseNodes();
+                cancelFuture.setException(t);
+            }
+        });
+
+        return Futures.makeChecked(cancelFuture, DTxFailures.toRollbackFailedException());
+    }
+
+    @Override public CheckedFuture<Void, TransactionCommitFailedException> submit() {
+        final SettableFuture<Void> distributedSubmitFuture = SettableFuture.create();
+
+        Futures.addCallback(allTxsDone(), new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                submitPerNodeTransactions(distributedSubmitFuture);
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                releaseNodes();
+                distributedSubmitFuture.setException(t);
+            }
+        });
+
+        return Futures.makeChecked(distributedSubmitFuture, DTxFailures.toCommitFailedException());
+    }
+
+    /**
+     * Submit all the per-node transactions and revert the committed nodes if any node fails
+     */
+    private void submitPerNodeTransactions(final SettableFuture<Void> distributedSubmitFuture) {
+        final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, DOMCachingReadWriteTx>> committed = new HashMap<>();
+        final Map<InstanceIdentifier<?>, Throwable> failedSubmits = new HashMap<>();
+        final List<ListenableFuture<Void>> outcomes = new ArrayList<>();
+
+        for (final Map.Entry<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, DOMCachingReadWriteTx>> txsPerType
+                : perNodeTransactions.entrySet()) {
+            for (final Map.Entry<InstanceIdentifier<?>, DOMCachingReadWriteTx> tx : txsPerType.getValue().entrySet()) {
+                /* Outcome of the node, it never fails so all the nodes are waited for */
+                final SettableFuture<Void> outcome = SettableFuture.create();
+                outcomes.add(outcome);
+
+                ListenableFuture<Void> submitFuture;
+                try {
+                    submitFuture = tx.getValue().submit();
+                } catch (RuntimeException e) {
+                    submitFuture = Futures.immediateFailedFuture(e);
+                }
+
+                Futures.addCallback(submitFuture, new FutureCallback<Void>() {
+                    @Override public void onSuccess(@Nullable final Void result) {
+                        synchronized (committed) {
+                            Map<InstanceIdentifier<?>, DOMCachingReadWriteTx> committedPerType = committed.get(txsPerType.getKey());
+                            if (committedPerType == null) {
+                                committedPerType = new HashMap<>();
+                                committed.put(txsPerType.getKey(), committedPerType);
+                            }
+                            committedPerType.put(tx.getKey(), tx.getValue());
+                        }
+                        outcome.set(null);
+                    }
+
+                    @Override public void onFailure(final Throwable t) {
+                        synchronized (committed) {
+                            failedSubmits.put(tx.getKey(), t);
+                        }
+                        outcome.set(null);
+                    }
+                });
+            }
+        }
+
+        Futures.addCallback(Futures.allAsList(outcomes), new FutureCallback<List<Void>>() {
+            @Override public void onSuccess(@Nullable final List<Void> result) {
+                if (failedSubmits.isEmpty()) {
+                    releaseNodes();
+                    distributedSubmitFuture.set(null);
+                    return;
+                }
+
+                LOG.info("Distributed tx {} failed to submit nodes {}, reverting committed nodes", txId, failedSubmits.keySet());
+                final Throwable firstFailure = failedSubmits.values().iterator().next();
+                final DTxException.SubmitFailedException submitFailure = new DTxException.SubmitFailedException(
+                        new HashSet<>(failedSubmits.keySet()),
+                        firstFailure instanceof Exception ? (Exception) firstFailure : new Exception(firstFailure));
+
+                Futures.addCallback(revertCommittedNodes(committed), new FutureCallback<Void>() {
+                    @Override public void onSuccess(@Nullable final Void result) {
+                        releaseNodes();
+                        distributedSubmitFuture.setException(submitFailure);
+                    }
+
+                    @Override public void onFailure(final Throwable t) {
+                        LOG.warn("Distributed tx {} failed. Rollback FAILED. Device(s) state is unknown", txId, t);
+                        releaseNodes();
+                        distributedSubmitFuture.setException(new DTxException.RollbackFailedException(t));
+                    }
+                });
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                releaseNodes();
+                distributedSubmitFuture.setException(t);
+            }
+        });
+    }
+
+    /**
+     * Restore the pre-images of the committed nodes, each through a new transaction of the node
+     */
+    private ListenableFuture<Void> revertCommittedNodes(
+            final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, DOMCachingReadWriteTx>> committed) {
+        final List<ListenableFuture<Void>> revertFutures = new ArrayList<>();
+
+        for (Map.Entry<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, DOMCachingReadWriteTx>> txsPerType : committed.entrySet()) {
+            for (Map.Entry<InstanceIdentifier<?>, DOMCachingReadWriteTx> tx : txsPerType.getValue().entrySet()) {
+                try {
+                    final DOMDataReadWriteTransaction rollbackTx = txProviders.get(txsPerType.getKey()).newDOMTx(tx.getKey());
+                    tx.getValue().restorePreImages(rollbackTx);
+                    revertFutures.add(rollbackTx.submit());
+                } catch (RuntimeException e) {
+                    revertFutures.add(Futures.<Void>immediateFailedFuture(e));
+                }
+            }
+        }
+
+        return Futures.transform(Futures.allAsList(revertFutures), new AsyncFunction<List<Void>, Void>() {
+            @Override public ListenableFuture<Void> apply(@Nullable final List<Void> input) {
+                return Futures.immediateFuture(null);
+            }
+        });
+    }
+
+    private ListenableFuture<Void> allTxsDone() {
+        final List<ListenableFuture<Void>> doneFutures = new ArrayList<>();
+        for (DOMCachingReadWriteTx tx : getPerNodeTransactions()) {
+            doneFutures.add(tx.getActiveOperationsDoneFuture());
+        }
+        return Futures.transform(Futures.allAsList(doneFutures), new AsyncFunction<List<Void>, Void>() {
+            @Override public ListenableFuture<Void> apply(@Nullable final List<Void> input) {
+                return Futures.immediateFuture(null);
+            }
+        });
+    }
+
+    /**
+     * Release the nodes once, whether the tx is submitted or rolled back
+     */
+    private void releaseNodes() {
+        if (released.compareAndSet(false, true)) {
+            txLock.releaseDevices(nodesMap);
+        }
+    }
+
+    @Override public Object getIdentifier() {
+        return txId;
+    }
+}
@@ -7,20 +7,30 @@
  */
 package org.opendaylight.distributed.tx.impl;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import org.opendaylight.controller.sal.binding.api.BindingAwareBroker;
 import org.opendaylight.controller.sal.binding.api.BindingAwareConsumer;
+import org.opendaylight.distributed.tx.api.DOMDTx;
 import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
 import org.opendaylight.distributed.tx.api.DTx;
 import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.api.DTxOptions;
 import org.opendaylight.distributed.tx.api.DTxProvider;
+import org.opendaylight.distributed.tx.spi.IntentLogCodec;
+import org.opendaylight.distributed.tx.spi.PreImageSerializer;
 import org.opendaylight.distributed.tx.spi.TxProvider;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionHandler;
 
 public class DTXProviderService implements DTxProvider, AutoCloseable, BindingAwareConsumer{
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(DTXProviderService.class);
@@ -29,12 +39,69 @@ public class DTXProviderService implements DTxProvider, AutoCloseable, BindingAw
     DTxProviderImpl dtxProviderImpl;
     final private Map<DTXLogicalTXProviderType, TxProvider> txProviderMap = new HashMap<>();
 
-    public DTXProviderService(TxProvider msProvider, TxProvider dsProvider) {
+    public DTXProviderService(TxProvider msProvider, TxProvider dsProvider, int editPoolSize, int editQueueDepth,
+                              RejectedExecutionHandler editRejectionHandler, boolean submitEarlyAbort) {
+        this(msProvider, dsProvider, editPoolSize, editQueueDepth, editRejectionHandler, submitEarlyAbort, null,
+                DTxProviderImpl.DEFAULT_PRE_IMAGE_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * @param preImageSerializer serializer keeping the pre-images of the transactions off-heap, null to keep them on the heap
+     * @param preImageMemoryThreshold bytes of direct memory the pre-images of all the transactions are kept in,
+     *                                the transactions spill their pre-images to disk beyond it
+     */
+    public DTXProviderService(TxProvider msProvider, TxProvider dsProvider, int editPoolSize, int editQueueDepth,
+                              RejectedExecutionHandler editRejectionHandler, boolean submitEarlyAbort,
+                              @Nullable PreImageSerializer preImageSerializer, long preImageMemoryThreshold) {
+        this(msProvider, dsProvider, editPoolSize, editQueueDepth, editRejectionHandler, submitEarlyAbort,
+                preImageSerializer, preImageMemoryThreshold, null);
+    }
+
+    /**
+     * Distributed transactions are logged to the intent log file, those left incomplete by a previous run are rolled back,
+     * retrying until their nodes are reachable.
+     *
+     * @param intentLogCodec codec of the intent log records, also keeping the pre-images off-heap
+     * @param intentLogFile file of the intent log
+     * @param groupCommitWindowMillis time the intent log waits for more records before syncing them to disk
+     */
+    public DTXProviderService(TxProvider msProvider, TxProvider dsProvider, int editPoolSize, int editQueueDepth,
+                              RejectedExecutionHandler editRejectionHandler, boolean submitEarlyAbort,
+                              @Nonnull IntentLogCodec intentLogCodec, long preImageMemoryThreshold,
+                              @Nonnull final File intentLogFile, long groupCommitWindowMillis) {
+        this(msProvider, dsProvider, editPoolSize, editQueueDepth, editRejectionHandler, submitEarlyAbort,
+                intentLogCodec, preImageMemoryThreshold, openIntentLog(intentLogFile, intentLogCodec, groupCommitWindowMillis));
+
+        /* Mount points of the nodes may not exist yet, the recovery is retried until they are reachable */
+        Futures.addCallback(this.dtxProviderImpl.recoverWithRetries(), new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable Void result) {
+                LOG.info("Distributed tx recovery from {} done", intentLogFile);
+            }
+
+            @Override public void onFailure(Throwable t) {
+                LOG.warn("Distributed tx recovery from {} abandoned", intentLogFile, t);
+            }
+        });
+    }
+
+    private DTXProviderService(TxProvider msProvider, TxProvider dsProvider, int editPoolSize, int editQueueDepth,
+                               RejectedExecutionHandler editRejectionHandler, boolean submitEarlyAbort,
+                               @Nullable PreImageSerializer preImageSerializer, long preImageMemoryThreshold,
+                               @Nullable DTxIntentLog intentLog) {
         this.mountServiceProvider = msProvider;
         this.dataStoreServiceProvider = dsProvider;
         this.txProviderMap.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, this.dataStoreServiceProvider);
         this.txProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, this.mountServiceProvider);
-        this.dtxProviderImpl = new DTxProviderImpl(this.txProviderMap);
+        this.dtxProviderImpl = new DTxProviderImpl(this.txProviderMap, editPoolSize, editQueueDepth, editRejectionHandler,
+                submitEarlyAbort, preImageSerializer, preImageMemoryThreshold, intentLog);
+    }
+
+    private static DTxIntentLog openIntentLog(File intentLogFile, IntentLogCodec codec, long groupCommitWindowMillis) {
+        try {
+            return new DTxIntentLog(intentLogFile, codec, groupCommitWindowMillis);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open intent log " + intentLogFile, e);
+        }
     }
 
     @Nonnull
@@ -43,14 +110,57 @@ public class DTXProviderService implements DTxProvider, AutoCloseable, BindingAw
         return this.dtxProviderImpl.newTx(nodes);
     }
 
+    @Nonnull
+    @Override
+    public DTx newTx(@Nonnull Set<InstanceIdentifier<?>> nodes, @Nonnull DTxOptions options)
+        throws DTxException.DTxInitializationFailedException {
+        return this.dtxProviderImpl.newTx(nodes, options);
+    }
+
     @Nonnull
     @Override
     public DTx newTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes) throws DTxException.DTxInitializationFailedException {
         return this.dtxProviderImpl.newTx(nodes);
     }
 
+    @Nonnull
+    @Override
+    public DTx newTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes, @Nonnull DTxOptions options)
+        throws DTxException.DTxInitializationFailedException {
+        return this.dtxProviderImpl.newTx(nodes, options);
+    }
+
+    @Nonnull
+    @Override
+    public DTx newOptimisticTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes, int maxReplays)
+        throws DTxException.DTxInitializationFailedException {
+        return this.dtxProviderImpl.newOptimisticTx(nodes, maxReplays);
+    }
+
+    @Nonnull
+    @Override
+    public DTx newTxForSubtrees(@Nonnull Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees)
+        throws DTxException.DTxInitializationFailedException {
+        return this.dtxProviderImpl.newTxForSubtrees(subtrees);
+    }
+
+    @Nonnull
+    @Override
+    public DOMDTx newDOMTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes)
+        throws DTxException.DTxInitializationFailedException {
+        return this.dtxProviderImpl.newDOMTx(nodes);
+    }
+
+    @Nonnull
+    @Override
+    public DOMDTx newDOMTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes, @Nonnull DTxOptions options)
+        throws DTxException.DTxInitializationFailedException {
+        return this.dtxProviderImpl.newDOMTx(nodes, options);
+    }
+
     @Override
     public void close() throws Exception {
+        this.dtxProviderImpl.close();
         this.mountServiceProvider= null;
         this.dataStoreServiceProvider= null;
     }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Function;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.distributed.tx.api.DTxException;
+
+/**
+ * Mappers of the failures of distributed tx futures to their checked exceptions, for Futures.makeChecked().
+ */
+final class DTxFailures {
+    private DTxFailures() {
+    }
+
+    /**
+     * Get the failure of a future from the exception makeChecked() maps. It is the cause of an ExecutionException,
+     * which may be an Error, and the exception itself for a cancelled or interrupted get.
+     */
+    @Nonnull static Throwable getFailure(@Nullable final Exception e) {
+        if (e == null) {
+            return new IllegalStateException("Unknown failure");
+        }
+        return e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * @param message message of the DTxException wrapping any failure other than a DTxException
+     */
+    static Function<Exception, DTxException> toDTxException(final String message) {
+        return new Function<Exception, DTxException>() {
+            @Nullable @Override public DTxException apply(@Nullable final Exception e) {
+                final Throwable failure = getFailure(e);
+                return failure instanceof DTxException ? (DTxException) failure : new DTxException(message, failure);
+            }
+        };
+    }
+
+    static Function<Exception, DTxException.RollbackFailedException> toRollbackFailedException() {
+        return new Function<Exception, DTxException.RollbackFailedException>() {
+            @Nullable @Override public DTxException.RollbackFailedException apply(@Nullable final Exception e) {
+                final Throwable failure = getFailure(e);
+                return failure instanceof DTxException.RollbackFailedException ?
+                        (DTxException.RollbackFailedException) failure : new DTxException.RollbackFailedException(failure);
+            }
+        };
+    }
+
+    static Function<Exception, TransactionCommitFailedException> toCommitFailedException() {
+        return new Function<Exception, TransactionCommitFailedException>() {
+            @Nullable @Override public TransactionCommitFailedException apply(@Nullable final Exception e) {
+                final Throwable failure = getFailure(e);
+                return failure instanceof TransactionCommitFailedException ? (TransactionCommitFailedException) failure :
+                        new TransactionCommitFailedException("Submit failed. Check nested exception for rollback status", failure);
+            }
+        };
+    }
+}
@@ -0,0 +1,725 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.spi.CachedData;
+import org.opendaylight.distributed.tx.spi.IntentLogCodec;
+import org.opendaylight.distributed.tx.spi.TxCache;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.ModifyAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable log of the distributed transactions: start, per-node pre-images, per-node commit outcomes and completion.
+ * Appends are group committed, a single writer thread writes every record queued during the batch window
+ * and syncs the file once for the whole batch. The append futures are set once their record is durable.
+ * The transactions left incomplete by a previous run are read when the log is opened, so they can be rolled back.
+ * The records of those which can't be decoded anymore are moved aside to a file next to the log, so the others
+ * are still recovered.
+ * The log is truncated once no transaction is active, and compacted to the records of the active transactions
+ * once the records of the ended ones dominate it.
+ */
+final class DTxIntentLog implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(DTxIntentLog.class);
+
+    private static final byte START = 1;
+    private static final byte PRE_IMAGE = 2;
+    private static final byte NODE_COMMIT = 3;
+    private static final byte END = 4;
+
+    private static final Record CLOSE = new Record(null, END, new byte[0]);
+    static final long DEFAULT_COMPACTION_THRESHOLD = 16L * 1024 * 1024;
+
+    private final IntentLogCodec codec;
+    private final long groupCommitWindowMillis;
+    private final long compactionThreshold;
+    private final File file;
+    /* Replaced by the compacted log. Accessed by the writer thread only, once opened */
+    private RandomAccessFile fileAccess;
+    private final BlockingQueue<Record> pendingRecords = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    /* Frames of the transactions without END record. Accessed by the writer thread only, once opened */
+    private final Map<UUID, ActiveTx> activeTxs = new LinkedHashMap<>();
+    private long activeLength = 0;
+    private final Map<UUID, IncompleteTx> incompleteTxs;
+    /* Frames of the incomplete transactions of the previous run with undecodable records, read at open only */
+    private final Map<UUID, ActiveTx> undecodableTxs = new LinkedHashMap<>();
+    /* Set by the writer once it is done, no record is written anymore */
+    private volatile boolean closed = false;
+    /* Length of the valid records read at open, a torn tail is cut off before appending */
+    private long validLength = 0;
+
+    /**
+     * Open the log and read the transactions left incomplete by the previous run
+     *
+     * @param groupCommitWindowMillis time the writer waits for more records before syncing a batch
+     */
+    DTxIntentLog(@Nonnull final File file, @Nonnull final IntentLogCodec codec, final long groupCommitWindowMillis)
+            throws IOException {
+        this(file, codec, groupCommitWindowMillis, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param compactionThreshold bytes of records of ended transactions the log holds before it is compacted,
+     *                            if they outweigh the records of the active transactions
+     */
+    DTxIntentLog(@Nonnull final File file, @Nonnull final IntentLogCodec codec, final long groupCommitWindowMillis,
+                 final long compactionThreshold) throws IOException {
+        Preconditions.checkArgument(groupCommitWindowMillis >= 0, "Group commit window can't be negative");
+        Preconditions.checkArgument(compactionThreshold >= 0, "Compaction threshold can't be negative");
+        this.codec = codec;
+        this.groupCommitWindowMillis = groupCommitWindowMillis;
+        this.compactionThreshold = compactionThreshold;
+        this.file = file;
+        this.incompleteTxs = Collections.unmodifiableMap(readIncompleteTxs());
+
+        this.fileAccess = new RandomAccessFile(file, "rw");
+        this.fileAccess.setLength(validLength);
+        this.fileAccess.seek(validLength);
+        if (!undecodableTxs.isEmpty()) {
+            moveAsideUndecodableTxs();
+        }
+        this.writer = new Thread(new Runnable() {
+            @Override public void run() {
+                writeRecords();
+            }
+        }, "dtx-intent-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return transactions left incomplete by the previous run, by their id
+     */
+    Map<UUID, IncompleteTx> getIncompleteTxs() {
+        return incompleteTxs;
+    }
+
+    ListenableFuture<Void> logStart(final UUID txId, final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            int numOfNodes = 0;
+            for (Set<InstanceIdentifier<?>> nodesPerType : nodes.values()) {
+                numOfNodes += nodesPerType.size();
+            }
+            out.writeInt(numOfNodes);
+            for (Map.Entry<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesPerType : nodes.entrySet()) {
+                for (InstanceIdentifier<?> nodeId : nodesPerType.getValue()) {
+                    out.writeUTF(nodesPerType.getKey().name());
+                    writeBytes(out, codec.serializeIdentifier(nodeId));
+                }
+            }
+            return append(new Record(txId, START, bytes.toByteArray()));
+        } catch (IOException | RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Log the pre-images of a node, they have to be durable before the node commits
+     */
+    ListenableFuture<Void> logPreImages(final UUID txId, final DTXLogicalTXProviderType type,
+                                        final InstanceIdentifier<?> nodeId, final TxCache preImages) {
+        final List<ListenableFuture<Void>> appendFutures = new ArrayList<>();
+        try {
+            final byte[] serializedNodeId = codec.serializeIdentifier(nodeId);
+            /* The cache iterates from the latest pre-image, they are logged in capture order */
+            for (CachedData cachedData : Lists.reverse(Lists.newArrayList(preImages))) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final DataOutputStream out = new DataOutputStream(bytes);
+                out.writeUTF(type.name());
+                writeBytes(out, serializedNodeId);
+                out.writeUTF(cachedData.getDsType().name());
+                out.writeUTF(cachedData.getOperation().name());
+                writeBytes(out, codec.serializeIdentifier(cachedData.getId()));
+                out.writeBoolean(cachedData.isDataPresent());
+                if (cachedData.isDataPresent()) {
+                    writeBytes(out, codec.serialize(cachedData.getId(), cachedData.getData().get()));
+                }
+                appendFutures.add(append(new Record(txId, PRE_IMAGE, bytes.toByteArray())));
+            }
+        } catch (IOException | RuntimeException e) {
+            appendFutures.add(Futures.<Void>immediateFailedFuture(e));
+        }
+        return allDone(appendFutures);
+    }
+
+    ListenableFuture<Void> logNodeCommit(final UUID txId, final InstanceIdentifier<?> nodeId, final boolean success) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            writeBytes(out, codec.serializeIdentifier(nodeId));
+            out.writeBoolean(success);
+            return append(new Record(txId, NODE_COMMIT, bytes.toByteArray()));
+        } catch (IOException | RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Log the completion of a transaction, committed or rolled back. It doesn't need rollback anymore.
+     */
+    ListenableFuture<Void> logEnd(final UUID txId) {
+        return append(new Record(txId, END, new byte[0]));
+    }
+
+    private ListenableFuture<Void> append(final Record record) {
+        if (closed) {
+            return Futures.immediateFailedFuture(new IOException("Intent log " + file + " is closed"));
+        }
+        pendingRecords.add(record);
+        /* The writer may have drained the queue for the last time meanwhile, the record is failed here then */
+        if (closed && pendingRecords.remove(record)) {
+            record.durableFuture.setException(new IOException("Intent log " + file + " is closed"));
+        }
+        return record.durableFuture;
+    }
+
+    private static ListenableFuture<Void> allDone(final List<ListenableFuture<Void>> futures) {
+        return Futures.transform(Futures.allAsList(futures), new Function<List<Void>, Void>() {
+            @Override public Void apply(final List<Void> input) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Writer loop, one sync per batch of records
+     */
+    private void writeRecords() {
+        final List<Record> batch = new ArrayList<>();
+        boolean closing = false;
+
+        while (!closing) {
+            try {
+                batch.add(pendingRecords.take());
+                if (groupCommitWindowMillis > 0) {
+                    TimeUnit.MILLISECONDS.sleep(groupCommitWindowMillis);
+                }
+            } catch (InterruptedException e) {
+                closing = true;
+            }
+            pendingRecords.drainTo(batch);
+
+            final List<Record> records = new ArrayList<>(batch.size());
+            for (Record record : batch) {
+                if (record == CLOSE) {
+                    closing = true;
+                } else {
+                    records.add(record);
+                }
+            }
+            batch.clear();
+            writeBatch(records);
+        }
+
+        /* Records appended after the close are failed, by the writer or by append() */
+        closed = true;
+        pendingRecords.drainTo(batch);
+        for (Record record : batch) {
+            record.durableFuture.setException(new IOException("Intent log " + file + " is closed"));
+        }
+    }
+
+    private void writeBatch(final List<Record> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        final FileChannel channel = fileAccess.getChannel();
+        final long[] frameOffsets = new long[records.size()];
+        final int[] frameLengths = new int[records.size()];
+        long batchStart = -1;
+        try {
+            batchStart = channel.position();
+            for (int i = 0; i < records.size(); i++) {
+                final ByteBuffer frame = records.get(i).toFrame();
+                frameOffsets[i] = channel.position();
+                frameLengths[i] = frame.remaining();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            LOG.warn("Unable to write {} records to intent log {}", records.size(), file, e);
+            discardBatch(channel, batchStart);
+            for (Record record : records) {
+                record.durableFuture.setException(e);
+            }
+            return;
+        }
+
+        /* The records are durable, only now do they start or end transactions */
+        for (int i = 0; i < records.size(); i++) {
+            trackFrame(records.get(i).type, records.get(i).txId, frameOffsets[i], frameLengths[i]);
+        }
+
+        if (activeTxs.isEmpty()) {
+            /* Nothing left to recover, the log restarts empty */
+            try {
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(false);
+            } catch (IOException e) {
+                LOG.warn("Unable to truncate intent log {}", file, e);
+            }
+        } else {
+            final long endedLength = fileLength(channel) - activeLength;
+            if (endedLength >= compactionThreshold && endedLength >= activeLength) {
+                compact();
+            }
+        }
+
+        LOG.trace("Synced {} records to intent log {}", records.size(), file);
+        for (Record record : records) {
+            record.durableFuture.set(null);
+        }
+    }
+
+    /**
+     * Account a durable frame to its transaction. Frames of a transaction are kept from its START record to its
+     * END record, which drops them.
+     */
+    private void trackFrame(final byte type, final UUID txId, final long offset, final int length) {
+        if (type == END) {
+            final ActiveTx endedTx = activeTxs.remove(txId);
+            if (endedTx != null) {
+                activeLength -= endedTx.length;
+            }
+            return;
+        }
+        if (type == START && !activeTxs.containsKey(txId)) {
+            activeTxs.put(txId, new ActiveTx());
+        }
+        final ActiveTx activeTx = activeTxs.get(txId);
+        if (activeTx != null) {
+            activeTx.addFrame(offset, length);
+            activeLength += length;
+        }
+    }
+
+    private long fileLength(final FileChannel channel) {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            LOG.debug("Unable to get the length of intent log {}", file, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Copy the frames of the active transactions to a new log replacing this one, dropping the records of the ended
+     * transactions. The new log is synced before it replaces this one, a crash leaves either of them complete.
+     */
+    private void compact() {
+        final File compactedFile = new File(file.getPath() + ".compact");
+        final Map<UUID, ActiveTx> compactedTxs = new LinkedHashMap<>();
+        RandomAccessFile compacted = null;
+        try {
+            compacted = new RandomAccessFile(compactedFile, "rw");
+            compacted.setLength(0);
+            final FileChannel from = fileAccess.getChannel();
+            final FileChannel to = compacted.getChannel();
+            for (Map.Entry<UUID, ActiveTx> activeTx : activeTxs.entrySet()) {
+                final ActiveTx compactedTx = new ActiveTx();
+                for (int i = 0; i < activeTx.getValue().frameOffsets.size(); i++) {
+                    final int frameLength = activeTx.getValue().frameLengths.get(i);
+                    compactedTx.addFrame(to.position(), frameLength);
+                    copyFrame(from, activeTx.getValue().frameOffsets.get(i), frameLength, to);
+                }
+                compactedTxs.put(activeTx.getKey(), compactedTx);
+            }
+            to.force(true);
+            Files.move(compactedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Unable to compact intent log {}, keeping it as is", file, e);
+            closeQuietly(compacted);
+            compactedFile.delete();
+            return;
+        }
+
+        LOG.debug("Compacted intent log {} to the records of {} active transactions", file, compactedTxs.size());
+        closeQuietly(fileAccess);
+        /* The handle follows the compacted file to its new name */
+        fileAccess = compacted;
+        activeTxs.clear();
+        activeTxs.putAll(compactedTxs);
+    }
+
+    private static void copyFrame(final FileChannel from, final long offset, final int length, final FileChannel to)
+            throws IOException {
+        long position = offset;
+        long remaining = length;
+        while (remaining > 0) {
+            final long copied = from.transferTo(position, remaining, to);
+            if (copied <= 0) {
+                throw new EOFException("Frame at " + offset + " is truncated");
+            }
+            position += copied;
+            remaining -= copied;
+        }
+    }
+
+    private void closeQuietly(final RandomAccessFile access) {
+        if (access == null) {
+            return;
+        }
+        try {
+            access.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close intent log {}", file, e);
+        }
+    }
+
+    /**
+     * Cut off the partially written records of a failed batch, the records of the next batches would follow them
+     * and be ignored at recovery otherwise
+     */
+    private void discardBatch(final FileChannel channel, final long batchStart) {
+        if (batchStart < 0) {
+            return;
+        }
+        try {
+            channel.truncate(batchStart);
+            channel.position(batchStart);
+        } catch (IOException e) {
+            LOG.warn("Unable to discard failed records of intent log {}", file, e);
+        }
+    }
+
+    /**
+     * Read the log, stopping at the first torn or corrupted record
+     */
+    private Map<UUID, IncompleteTx> readIncompleteTxs() throws IOException {
+        final Map<UUID, IncompleteTx> txs = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return txs;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                final byte[] frame;
+                try {
+                    final int frameLength = in.readInt();
+                    if (frameLength < 0 || frameLength > file.length() - validLength) {
+                        break;
+                    }
+                    frame = new byte[frameLength];
+                    in.readFully(frame);
+                    final CRC32 crc = new CRC32();
+                    crc.update(frame);
+                    if (in.readLong() != crc.getValue()) {
+                        LOG.warn("Corrupted record in intent log {}, ignoring the rest of the log", file);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                readFrame(frame, validLength, txs);
+                validLength += 4 + frame.length + 8;
+            }
+        }
+
+        if (!txs.isEmpty()) {
+            LOG.info("Intent log {} holds {} incomplete distributed transactions", file, txs.size());
+        }
+        return txs;
+    }
+
+    /**
+     * Decode the record of a frame. A transaction with an undecodable record isn't recovered, its frames are set
+     * aside until its END record, if any.
+     */
+    private void readFrame(final byte[] frame, final long offset, final Map<UUID, IncompleteTx> txs) {
+        final DataInputStream record = new DataInputStream(new ByteArrayInputStream(frame));
+        final byte type;
+        final UUID txId;
+        try {
+            type = record.readByte();
+            txId = new UUID(record.readLong(), record.readLong());
+        } catch (IOException e) {
+            LOG.warn("Truncated record at {} in intent log {}, ignoring it", offset, file, e);
+            return;
+        }
+
+        final int frameLength = 4 + frame.length + 8;
+        if (undecodableTxs.containsKey(txId)) {
+            if (type == END) {
+                undecodableTxs.remove(txId);
+            } else {
+                undecodableTxs.get(txId).addFrame(offset, frameLength);
+            }
+            return;
+        }
+
+        try {
+            readRecord(type, txId, record, txs);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to decode record of distributed tx {} in intent log {}", txId, file, e);
+            txs.remove(txId);
+            final ActiveTx undecodableTx = activeTxs.containsKey(txId) ? activeTxs.remove(txId) : new ActiveTx();
+            activeLength -= undecodableTx.length;
+            undecodableTx.addFrame(offset, frameLength);
+            undecodableTxs.put(txId, undecodableTx);
+            return;
+        }
+        trackFrame(type, txId, offset, frameLength);
+    }
+
+    /**
+     * Append the frames of the undecodable transactions to a file next to the log, for a manual recovery, then drop
+     * them from the log
+     */
+    private void moveAsideUndecodableTxs() {
+        final File asideFile = new File(file.getPath() + ".undecodable");
+        for (UUID txId : undecodableTxs.keySet()) {
+            LOG.error("Distributed tx {} of intent log {} can't be decoded, its nodes aren't rolled back. "
+                    + "Its records are moved to {}", txId, file, asideFile);
+        }
+
+        try (RandomAccessFile aside = new RandomAccessFile(asideFile, "rw")) {
+            final FileChannel to = aside.getChannel();
+            to.position(to.size());
+            for (ActiveTx undecodableTx : undecodableTxs.values()) {
+                for (int i = 0; i < undecodableTx.frameOffsets.size(); i++) {
+                    copyFrame(fileAccess.getChannel(), undecodableTx.frameOffsets.get(i),
+                            undecodableTx.frameLengths.get(i), to);
+                }
+            }
+            to.force(true);
+        } catch (IOException e) {
+            LOG.warn("Unable to move the undecodable records of intent log {} to {}", file, asideFile, e);
+            return;
+        }
+        undecodableTxs.clear();
+
+        if (activeTxs.isEmpty()) {
+            try {
+                fileAccess.setLength(0);
+                fileAccess.getChannel().force(false);
+            } catch (IOException e) {
+                LOG.warn("Unable to truncate intent log {}", file, e);
+            }
+        } else {
+            compact();
+        }
+    }
+
+    private void readRecord(final byte type, final UUID txId, final DataInputStream in,
+                            final Map<UUID, IncompleteTx> txs) throws IOException {
+        switch (type) {
+            case START: {
+                final IncompleteTx tx = getIncompleteTx(txs, txId);
+                final int numOfNodes = in.readInt();
+                for (int i = 0; i < numOfNodes; i++) {
+                    final DTXLogicalTXProviderType providerType = DTXLogicalTXProviderType.valueOf(in.readUTF());
+                    tx.addNode(providerType, codec.deserializeIdentifier(readBytes(in)));
+                }
+                break;
+            }
+            case PRE_IMAGE: {
+                final IncompleteTx tx = getIncompleteTx(txs, txId);
+                final DTXLogicalTXProviderType providerType = DTXLogicalTXProviderType.valueOf(in.readUTF());
+                final InstanceIdentifier<?> nodeId = codec.deserializeIdentifier(readBytes(in));
+                final LogicalDatastoreType dsType = LogicalDatastoreType.valueOf(in.readUTF());
+                final ModifyAction operation = ModifyAction.valueOf(in.readUTF());
+                final InstanceIdentifier<?> id = codec.deserializeIdentifier(readBytes(in));
+                final DataObject data = in.readBoolean() ? codec.deserialize(id, readBytes(in)) : null;
+                tx.addNode(providerType, nodeId);
+                tx.addPreImage(nodeId, new CachedData(dsType, id, data, operation));
+                break;
+            }
+            case NODE_COMMIT: {
+                final InstanceIdentifier<?> nodeId = codec.deserializeIdentifier(readBytes(in));
+                if (!in.readBoolean()) {
+                    getIncompleteTx(txs, txId).failedNodes.add(nodeId);
+                }
+                break;
+            }
+            case END: {
+                txs.remove(txId);
+                break;
+            }
+            default: {
+                throw new IOException("Unknown record type " + type + " in intent log " + file);
+            }
+        }
+    }
+
+    private static IncompleteTx getIncompleteTx(final Map<UUID, IncompleteTx> txs, final UUID txId) {
+        if (!txs.containsKey(txId)) {
+            txs.put(txId, new IncompleteTx());
+        }
+        return txs.get(txId);
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Sync the queued records and close the log
+     */
+    @Override public void close() {
+        if (!closed) {
+            pendingRecords.add(CLOSE);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeQuietly(fileAccess);
+    }
+
+    /**
+     * Transaction of a previous run without END record
+     */
+    static final class IncompleteTx {
+        private final Map<InstanceIdentifier<?>, DTXLogicalTXProviderType> nodes = new LinkedHashMap<>();
+        private final Map<InstanceIdentifier<?>, List<CachedData>> preImages = new HashMap<>();
+        private final Set<InstanceIdentifier<?>> failedNodes = new HashSet<>();
+
+        private void addNode(final DTXLogicalTXProviderType type, final InstanceIdentifier<?> nodeId) {
+            nodes.put(nodeId, type);
+        }
+
+        private void addPreImage(final InstanceIdentifier<?> nodeId, final CachedData cachedData) {
+            if (!preImages.containsKey(nodeId)) {
+                preImages.put(nodeId, new ArrayList<CachedData>());
+            }
+            preImages.get(nodeId).add(cachedData);
+        }
+
+        /**
+         * Nodes which may have committed: all the nodes with pre-images, except the ones whose commit is known to have failed
+         *
+         * @return the nodes to roll back, by provider type
+         */
+        Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> getNodesToRollback() {
+            final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesByType = new HashMap<>();
+            for (Map.Entry<InstanceIdentifier<?>, DTXLogicalTXProviderType> node : nodes.entrySet()) {
+                if (preImages.containsKey(node.getKey()) && !failedNodes.contains(node.getKey())) {
+                    if (!nodesByType.containsKey(node.getValue())) {
+                        nodesByType.put(node.getValue(), new HashSet<InstanceIdentifier<?>>());
+                    }
+                    nodesByType.get(node.getValue()).add(node.getKey());
+                }
+            }
+            return nodesByType;
+        }
+
+        /**
+         * @return cache of the logged pre-images of a node, iterating from the latest one as rollback expects
+         */
+        TxCache getCache(final InstanceIdentifier<?> nodeId) {
+            final List<CachedData> nodePreImages = preImages.containsKey(nodeId) ?
+                    preImages.get(nodeId) : Collections.<CachedData>emptyList();
+            return new TxCache() {
+                @Override public Iterator<CachedData> iterator() {
+                    return Lists.reverse(nodePreImages).iterator();
+                }
+            };
+        }
+    }
+
+    /**
+     * Frames of a transaction without END record in the log
+     */
+    private static final class ActiveTx {
+        private final List<Long> frameOffsets = new ArrayList<>();
+        private final List<Integer> frameLengths = new ArrayList<>();
+        private long length = 0;
+
+        private void addFrame(final long offset, final int length) {
+            frameOffsets.add(offset);
+            frameLengths.add(length);
+            this.length += length;
+        }
+    }
+
+    /**
+     * Record queued for the writer. A frame is the record length, the record and its CRC32.
+     */
+    private static final class Record {
+        private final UUID txId;
+        private final byte type;
+        private final byte[] payload;
+        private final SettableFuture<Void> durableFuture = SettableFuture.create();
+
+        Record(final UUID txId, final byte type, final byte[] payload) {
+            this.txId = txId;
+            this.type = type;
+            this.payload = payload;
+        }
+
+        ByteBuffer toFrame() {
+            final int recordLength = 1 + 16 + payload.length;
+            final ByteBuffer frame = ByteBuffer.allocate(4 + recordLength + 8);
+            frame.putInt(recordLength);
+            frame.put(type);
+            frame.putLong(txId.getMostSignificantBits());
+            frame.putLong(txId.getLeastSignificantBits());
+            frame.put(payload);
+
+            final CRC32 crc = new CRC32();
+            crc.update(frame.array(), 4, recordLength);
+            frame.putLong(crc.getValue());
+            frame.flip();
+            return frame;
+        }
+    }
+}
@@ -7,26 +7,54 @@
  */
 package org.opendaylight.distributed.tx.impl;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.CheckedFuture;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
 import org.opendaylight.controller.md.sal.common.api.TransactionStatus;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.distributed.tx.api.DOMDTx;
 import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
 import org.opendaylight.distributed.tx.api.DTx;
+import org.opendaylight.distributed.tx.api.DTxEdit;
 import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.distributed.tx.api.DTxOptions;
+import org.opendaylight.distributed.tx.api.DTxRollbackMode;
 import org.opendaylight.distributed.tx.api.DTxProvider;
+import org.opendaylight.distributed.tx.spi.DOMTxProvider;
+import org.opendaylight.distributed.tx.spi.PreImageSerializer;
+import org.opendaylight.distributed.tx.spi.ExtendedTransactionLock;
 import org.opendaylight.distributed.tx.spi.TransactionLock;
+import org.opendaylight.distributed.tx.spi.TxCache;
 import org.opendaylight.distributed.tx.spi.TxProvider;
 import org.opendaylight.yangtools.yang.binding.DataObject;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
@@ -36,53 +64,494 @@ import org.slf4j.LoggerFactory;
 
 public class DTxProviderImpl implements DTxProvider, AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(DTxProviderImpl.class);
-    private final Map<Object, DtxReleaseWrapper> currentTxs = Maps.newHashMap();
+    public static final int DEFAULT_EDIT_EXECUTOR_POOL_SIZE = 16;
+    public static final int DEFAULT_EDIT_EXECUTOR_QUEUE_DEPTH = 4096;
+    public static final long DEFAULT_PRE_IMAGE_MEMORY_THRESHOLD = 64L * 1024 * 1024;
+    private static final long CLOSE_ROLLBACK_TIMEOUT_SECONDS = 30;
+    static final long RECOVERY_INITIAL_BACKOFF_MILLIS = 1000;
+    static final long RECOVERY_MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+    /* Outstanding distributed transactions by their id, registered and released without a provider-wide lock */
+    private final ConcurrentMap<Object, DtxReleaseWrapper> currentTxs = new ConcurrentHashMap<>();
+    /* DOM distributed txs not done yet, by the lock of their nodes */
+    private final ConcurrentMap<Object, DOMDTx> currentDOMTxs = new ConcurrentHashMap<>();
     private final Map<DTXLogicalTXProviderType, TxProvider> txProviderMap;
-    private final TransactionLock dtxLock;
+    private final ExtendedTransactionLock dtxLock;
+    private final ExecutorService editExecutor;
+    /* Opens the per-node transactions of new distributed transactions, kept apart from the edits it would starve */
+    private final ExecutorService openExecutor;
+    /* Replays of conflicting optimistic transactions, which block while opening their per-node transactions
+     * and waiting for their nodes */
+    private final ExecutorService replayExecutor;
+    private final boolean submitEarlyAbort;
+    @Nullable private final PreImageSerializer preImageSerializer;
+    /* Direct buffers the pre-images of all the distributed txs are serialized to, null without a serializer */
+    @Nullable private final DirectSlabPool preImageSlabPool;
+    @Nullable private final DTxIntentLog intentLog;
+    /* Recoveries of the incomplete txs of the intent log, pending or done. Failed ones are removed to be retried */
+    private final ConcurrentMap<UUID, ListenableFuture<Void>> recoveries = new ConcurrentHashMap<>();
+    /* Schedules the retries of the recovery, until it succeeds or the provider is closed */
+    private final ScheduledExecutorService recoveryExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("dtx-recovery-%d").setDaemon(true).build());
 
     public DTxProviderImpl(@Nonnull final Map<DTXLogicalTXProviderType, TxProvider> txProviders){
+        this(txProviders, DEFAULT_EDIT_EXECUTOR_POOL_SIZE, DEFAULT_EDIT_EXECUTOR_QUEUE_DEPTH,
+                new ThreadPoolExecutor.CallerRunsPolicy(), false, null, DEFAULT_PRE_IMAGE_MEMORY_THRESHOLD, null);
+    }
+
+    public DTxProviderImpl(@Nonnull final Map<DTXLogicalTXProviderType, TxProvider> txProviders,
+                           final int editPoolSize, final int editQueueDepth,
+                           @Nonnull final RejectedExecutionHandler editRejectionHandler, final boolean submitEarlyAbort,
+                           @Nullable final PreImageSerializer preImageSerializer, final long preImageMemoryThreshold,
+                           @Nullable final DTxIntentLog intentLog){
+        Preconditions.checkArgument(editPoolSize > 0, "Edit executor pool size must be positive");
+        Preconditions.checkArgument(editQueueDepth > 0, "Edit executor queue depth must be positive");
         txProviderMap = txProviders;
         dtxLock = new DTxTransactionLockImpl(txProviderMap);
+        editExecutor = createEditExecutor(editPoolSize, editQueueDepth, editRejectionHandler);
+        openExecutor = createOpenExecutor(editPoolSize, editQueueDepth);
+        replayExecutor = createReplayExecutor(editPoolSize, editQueueDepth);
+        this.submitEarlyAbort = submitEarlyAbort;
+        this.preImageSerializer = preImageSerializer;
+        this.preImageSlabPool = preImageSerializer == null ? null :
+                new DirectSlabPool(DirectSlabPool.DEFAULT_SLAB_SIZE, preImageMemoryThreshold);
+        this.intentLog = intentLog;
     }
 
-    @Nonnull @Override public synchronized DTx newTx(@Nonnull final Set<InstanceIdentifier<?>> nodes)
-        throws DTxException.DTxInitializationFailedException {
-        boolean lockSucceed = dtxLock.lockDevices(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, nodes);
+    /**
+     * Create the bounded executor shared by all the distributed transactions of this provider
+     * to apply per-node edits. Idle threads time out so an unused provider holds no threads.
+     * Once the executor is shut down edits are always rejected with an exception: the JDK policies
+     * would silently drop them, leaving their futures unset.
+     */
+    private static ExecutorService createEditExecutor(final int poolSize, final int queueDepth,
+                                                      final RejectedExecutionHandler rejectionHandler) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueDepth),
+                new ThreadFactoryBuilder().setNameFormat("dtx-edit-%d").setDaemon(true).build(),
+                new RejectedExecutionHandler() {
+                    @Override public void rejectedExecution(final Runnable r, final ThreadPoolExecutor e) {
+                        if (e.isShutdown()) {
+                            throw new RejectedExecutionException("Edit executor is shut down");
+                        }
+                        rejectionHandler.rejectedExecution(r, e);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
-        if(!lockSucceed) {
-            throw new DTxException.DTxInitializationFailedException("Failed to lock devices");
-        }
+    /**
+     * Create the bounded executor shared by all the distributed transactions of this provider to open
+     * their per-node transactions concurrently. A full queue fails the creation of the distributed tx.
+     */
+    private static ExecutorService createOpenExecutor(final int poolSize, final int queueDepth) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueDepth),
+                new ThreadFactoryBuilder().setNameFormat("dtx-open-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Create the bounded executor shared by all the optimistic transactions of this provider to replay
+     * their conflicting attempts. A full queue fails the submit of the optimistic tx.
+     */
+    private static ExecutorService createReplayExecutor(final int poolSize, final int queueDepth) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueDepth),
+                new ThreadFactoryBuilder().setNameFormat("dtx-replay-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
+    @Nonnull @Override public DTx newTx(@Nonnull final Set<InstanceIdentifier<?>> nodes)
+        throws DTxException.DTxInitializationFailedException {
+        return newTx(nodes, DTxOptions.DEFAULT);
+    }
+
+    @Nonnull
+    @Override
+    public DTx newTx(@Nonnull final Set<InstanceIdentifier<?>> nodes, @Nonnull final DTxOptions options)
+        throws DTxException.DTxInitializationFailedException {
+        Preconditions.checkArgument(!nodes.isEmpty(), "Cannot create distributed tx for 0 nodes");
         Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> m = new HashMap<>();
         m.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, nodes);
-        final DtxReleaseWrapper dtxReleaseWrapper = new DtxReleaseWrapper(new DtxImpl(txProviderMap.get(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER), nodes, dtxLock), m);
-        currentTxs.put(dtxReleaseWrapper.getIdentifier(), dtxReleaseWrapper);
 
-        return dtxReleaseWrapper;
+        return newTx(m, options);
     }
 
     @Nonnull
     @Override
-    public synchronized DTx newTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap) throws DTxException.DTxInitializationFailedException {
-        boolean lockSucceed = this.dtxLock.lockDevices(nodesMap);
+    public DTx newTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap) throws DTxException.DTxInitializationFailedException {
+        return newTx(nodesMap, DTxOptions.DEFAULT);
+    }
 
-        if(!lockSucceed) {
+    @Nonnull
+    @Override
+    public DTx newTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap, @Nonnull DTxOptions options)
+        throws DTxException.DTxInitializationFailedException {
+        checkProviders(nodesMap);
+        final TxScopedLock txLock = lockOf(nodesMap, options.getLockMode());
+        lockDevices(txLock, nodesMap, options);
+
+        return newLockedTx(nodesMap, txLock, options.getRollbackMode());
+    }
+
+    /**
+     * Lock the nodes of a new distributed tx in the mode of its options, waiting for them if the options do
+     */
+    private void lockDevices(final TxScopedLock txLock, final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap,
+                             final DTxOptions options) throws DTxException.DTxInitializationFailedException {
+        if(options.isWaiting()) {
+            boolean lockSucceed;
+            try {
+                lockSucceed = this.dtxLock.lockDevices(txLock, nodesMap, options.getLockMode(),
+                        options.getTimeout(), options.getUnit());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DTxException.DTxInitializationFailedException("Interrupted while waiting for devices");
+            }
+
+            if(!lockSucceed) {
+                throw new DTxException.DTxInitializationFailedException("Timed out waiting for devices");
+            }
+        } else if(!this.dtxLock.lockDevices(txLock, nodesMap, options.getLockMode())) {
             throw new DTxException.DTxInitializationFailedException("Failed to lock devices");
         }
+    }
+
+    @Nonnull
+    @Override
+    public DTx newTxForSubtrees(@Nonnull Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees)
+        throws DTxException.DTxInitializationFailedException {
+        final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap = new HashMap<>();
+        for (Map.Entry<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtreesPerType : subtrees.entrySet()) {
+            nodesMap.put(subtreesPerType.getKey(), subtreesPerType.getValue().keySet());
+        }
+        checkProviders(nodesMap);
+
+        final SubtreeLock subtreeLock = new SubtreeLock(subtrees);
+        if(!this.dtxLock.lockSubtrees(subtreeLock, subtrees)) {
+            throw new DTxException.DTxInitializationFailedException("Failed to lock subtrees");
+        }
 
+        return newLockedTx(nodesMap, subtreeLock);
+    }
+
+    /**
+     * @return lock the nodes of a distributed tx holding them in the mode are locked for, and released through
+     */
+    private TxScopedLock lockOf(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap,
+                                final DTxLockMode mode) {
+        return mode == DTxLockMode.SHARED ? new SharedLock(nodesMap) : new ExclusiveLock(nodesMap);
+    }
+
+    @Nonnull
+    @Override
+    public DTx newOptimisticTx(@Nonnull Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap, int maxReplays)
+        throws DTxException.DTxInitializationFailedException {
+        Preconditions.checkArgument(maxReplays >= 0, "Replay budget must not be negative");
+        checkProviders(nodesMap);
+
+        final OptimisticDtx dtx = new OptimisticDtx(nodesMap, maxReplays, dtxLock, new Function<TransactionLock, DtxImpl>() {
+            @Override public DtxImpl apply(final TransactionLock attemptLock) {
+                return new DtxImpl(txProviderMap, nodesMap, attemptLock, editExecutor, openExecutor, submitEarlyAbort,
+                        preImageSerializer, preImageSlabPool, intentLog, DTxRollbackMode.ROLLBACK_ON_FAILURE);
+            }
+        }, replayExecutor);
+        return registerTx(new DtxReleaseWrapper(dtx, nodesMap, new TxScopedLock(dtxLock) {
+            @Override protected void release() {
+                dtx.releaseAttempt();
+            }
+        }));
+    }
+
+    @Nonnull
+    @Override
+    public DOMDTx newDOMTx(@Nonnull final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap)
+        throws DTxException.DTxInitializationFailedException {
+        return newDOMTx(nodesMap, DTxOptions.DEFAULT);
+    }
+
+    @Nonnull
+    @Override
+    public DOMDTx newDOMTx(@Nonnull final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap,
+                           @Nonnull final DTxOptions options) throws DTxException.DTxInitializationFailedException {
+        Preconditions.checkArgument(options.getRollbackMode() == DTxRollbackMode.ROLLBACK_ON_FAILURE,
+                "DOM distributed tx only supports rollback on failure");
+        checkProviders(nodesMap);
+        final Map<DTXLogicalTXProviderType, DOMTxProvider> domTxProviders = new HashMap<>();
+        for (DTXLogicalTXProviderType type : nodesMap.keySet()) {
+            final TxProvider txProvider = txProviderMap.get(type);
+            if (!(txProvider instanceof DOMTxProvider)) {
+                throw new DTxException.DTxInitializationFailedException("Tx provider doesn't support DOM transactions: " + type);
+            }
+            domTxProviders.put(type, (DOMTxProvider) txProvider);
+        }
+
+        final TxScopedLock txLock = new TxScopedLock(dtxLock) {
+            @Override protected void release() {
+                currentDOMTxs.remove(this);
+                dtxLock.releaseDevices(this, nodesMap, options.getLockMode());
+            }
+        };
+        lockDevices(txLock, nodesMap, options);
+
+        final DOMDtxImpl dtx;
+        try {
+            dtx = new DOMDtxImpl(domTxProviders, nodesMap, txLock, editExecutor);
+        } catch (RuntimeException e) {
+            txLock.releaseDevices(nodesMap);
+            throw e;
+        }
+
+        currentDOMTxs.put(txLock, dtx);
+        return dtx;
+    }
+
+    private void checkProviders(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap) {
         for(DTXLogicalTXProviderType type : nodesMap.keySet()){
             Preconditions.checkArgument(this.txProviderMap.containsKey(type), "Unknown node: %d. Not in transaction", type);
         }
+    }
+
+    /**
+     * @param txLock lock the nodes are released through, once the distributed tx is done
+     */
+    private DTx newLockedTx(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap,
+                            final TransactionLock txLock) {
+        return newLockedTx(nodesMap, txLock, DTxRollbackMode.ROLLBACK_ON_FAILURE);
+    }
+
+    private DTx newLockedTx(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap,
+                            final TransactionLock txLock, final DTxRollbackMode rollbackMode) {
+        final DtxImpl dtx;
+        try {
+            dtx = new DtxImpl(txProviderMap, nodesMap, txLock, editExecutor, openExecutor, submitEarlyAbort,
+                    preImageSerializer, preImageSlabPool, intentLog, rollbackMode);
+        } catch (RuntimeException e) {
+            txLock.releaseDevices(nodesMap);
+            throw e;
+        }
+
+        return registerTx(new DtxReleaseWrapper(dtx, nodesMap, txLock));
+    }
+
+    /**
+     * Lock of a distributed tx holding subtrees of its nodes. Releasing it releases its subtrees only,
+     * the nodes may be held by other transactions.
+     */
+    private final class SubtreeLock extends TxScopedLock {
+        private final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees;
+
+        private SubtreeLock(final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees) {
+            super(dtxLock);
+            this.subtrees = subtrees;
+        }
+
+        @Override protected void release() {
+            dtxLock.releaseSubtrees(this, subtrees);
+        }
+    }
+
+    /**
+     * Lock of a distributed tx sharing its nodes with other readers. Releasing it drops its share of the nodes only.
+     */
+    private final class SharedLock extends TxScopedLock {
+        private final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap;
+
+        private SharedLock(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap) {
+            super(dtxLock);
+            this.nodesMap = nodesMap;
+        }
+
+        @Override protected void release() {
+            dtxLock.releaseDevices(this, nodesMap, DTxLockMode.SHARED);
+        }
+    }
+
+    /**
+     * Lock of a distributed tx holding its nodes exclusively. Releasing it releases the nodes it holds only,
+     * a node already taken over by another tx is left to that tx.
+     */
+    private final class ExclusiveLock extends TxScopedLock {
+        private final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap;
+
+        private ExclusiveLock(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap) {
+            super(dtxLock);
+            this.nodesMap = nodesMap;
+        }
+
+        @Override protected void release() {
+            dtxLock.releaseDevices(this, nodesMap, DTxLockMode.EXCLUSIVE);
+        }
+    }
+
+    /**
+     * Roll back the distributed transactions the intent log found incomplete, left by a previous run
+     * which died before they were committed or rolled back. Nodes whose commit is known to have failed are skipped,
+     * the others are restored to their logged pre-images. A transaction which can't be rolled back stays in the log
+     * and is retried by the next recovery. Transactions already recovered, or being recovered, aren't rolled back again.
+     *
+     * @return future completing once all the incomplete transactions have been processed
+     */
+    public synchronized ListenableFuture<Void> recover() {
+        if (intentLog == null) {
+            return Futures.immediateFuture(null);
+        }
+
+        final List<ListenableFuture<Void>> recoveryFutures = new ArrayList<>();
+        for (Map.Entry<UUID, DTxIntentLog.IncompleteTx> incompleteTx : intentLog.getIncompleteTxs().entrySet()) {
+            final UUID txId = incompleteTx.getKey();
+            ListenableFuture<Void> recoveryFuture = recoveries.get(txId);
+            if (recoveryFuture == null) {
+                final ListenableFuture<Void> txRecoveryFuture = recoverTx(txId, incompleteTx.getValue());
+                recoveries.put(txId, txRecoveryFuture);
+                Futures.addCallback(txRecoveryFuture, new FutureCallback<Void>() {
+                    @Override public void onSuccess(@Nullable final Void result) {
+                    }
+
+                    @Override public void onFailure(final Throwable t) {
+                        recoveries.remove(txId, txRecoveryFuture);
+                    }
+                });
+                recoveryFuture = txRecoveryFuture;
+            }
+            recoveryFutures.add(recoveryFuture);
+        }
+        return Futures.transform(Futures.allAsList(recoveryFutures), new Function<List<Void>, Void>() {
+            @Nullable @Override public Void apply(@Nullable final List<Void> input) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Recover the incomplete transactions, retrying with an exponential backoff as long as some of them fail.
+     * The nodes of the previous run may not be reachable yet, e.g. NETCONF mount points are still connecting.
+     *
+     * @return future completing once all the incomplete transactions are recovered, failing only if the provider
+     * is closed before
+     */
+    public ListenableFuture<Void> recoverWithRetries() {
+        return recoverWithRetries(RECOVERY_INITIAL_BACKOFF_MILLIS);
+    }
+
+    ListenableFuture<Void> recoverWithRetries(final long initialBackoffMillis) {
+        final SettableFuture<Void> recovered = SettableFuture.create();
+        scheduleRecovery(recovered, 0, initialBackoffMillis);
+        return recovered;
+    }
+
+    private void scheduleRecovery(final SettableFuture<Void> recovered, final long delayMillis, final long backoffMillis) {
+        try {
+            recoveryExecutor.schedule(new Runnable() {
+                @Override public void run() {
+                    Futures.addCallback(recover(), new FutureCallback<Void>() {
+                        @Override public void onSuccess(@Nullable final Void result) {
+                            recovered.set(null);
+                        }
+
+                        @Override public void onFailure(final Throwable t) {
+                            LOG.warn("Recovery of incomplete distributed txs failed, retrying in {}ms", backoffMillis, t);
+                            scheduleRecovery(recovered, backoffMillis,
+                                    Math.min(backoffMillis * 2, RECOVERY_MAX_BACKOFF_MILLIS));
+                        }
+                    });
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            recovered.setException(new DTxException.RollbackFailedException("Provider closed before the recovery", e));
+        }
+    }
+
+    private ListenableFuture<Void> recoverTx(final UUID txId, final DTxIntentLog.IncompleteTx incompleteTx) {
+        final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap = incompleteTx.getNodesToRollback();
+        if (nodesMap.isEmpty()) {
+            LOG.info("Distributed tx {} didn't commit any node, nothing to recover", txId);
+            return intentLog.logEnd(txId);
+        }
+
+        if (!dtxLock.lockDevices(nodesMap)) {
+            return Futures.immediateFailedFuture(new DTxException.RollbackFailedException(
+                    "Unable to lock devices to recover distributed tx " + txId));
+        }
+
+        final Map<InstanceIdentifier<?>, TxCache> caches = new HashMap<>();
+        final Map<InstanceIdentifier<?>, ReadWriteTransaction> rollbackTxs = new HashMap<>();
+        try {
+            for (Map.Entry<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesPerType : nodesMap.entrySet()) {
+                final TxProvider txProvider = txProviderMap.get(nodesPerType.getKey());
+                Preconditions.checkState(txProvider != null, "No provider for %s", nodesPerType.getKey());
+                for (InstanceIdentifier<?> nodeId : nodesPerType.getValue()) {
+                    caches.put(nodeId, incompleteTx.getCache(nodeId));
+                    rollbackTxs.put(nodeId, txProvider.newTx(nodeId));
+                }
+            }
+        } catch (RuntimeException e) {
+            dtxLock.releaseDevices(nodesMap);
+            return Futures.immediateFailedFuture(new DTxException.RollbackFailedException(
+                    "Unable to open rollback transactions of distributed tx " + txId, e));
+        }
+
+        LOG.info("Rolling back {} node(s) of incomplete distributed tx {}", rollbackTxs.size(), txId);
+        final ListenableFuture<Void> recoveryFuture = Futures.transform(
+                new RollbackImpl(editExecutor).rollback(caches, rollbackTxs), new AsyncFunction<Void, Void>() {
+                    @Override public ListenableFuture<Void> apply(@Nullable final Void input) {
+                        return intentLog.logEnd(txId);
+                    }
+                });
+        Futures.addCallback(recoveryFuture, new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                dtxLock.releaseDevices(nodesMap);
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                LOG.warn("Unable to recover distributed tx {}", txId, t);
+                dtxLock.releaseDevices(nodesMap);
+            }
+        });
+        return recoveryFuture;
+    }
 
-        final DtxReleaseWrapper dtxReleaseWrapper = new DtxReleaseWrapper(new DtxImpl(txProviderMap, nodesMap, dtxLock), nodesMap);
+    private DtxReleaseWrapper registerTx(final DtxReleaseWrapper dtxReleaseWrapper) {
         currentTxs.put(dtxReleaseWrapper.getIdentifier(), dtxReleaseWrapper);
         return dtxReleaseWrapper;
     }
 
+    /**
+     * Roll back the outstanding distributed transactions, then shut the executors down. The rollbacks run
+     * on the edit executor, they are waited for before it is shut down, up to CLOSE_ROLLBACK_TIMEOUT_SECONDS.
+     */
     @Override public void close() throws Exception {
-        for (Map.Entry<Object, DtxReleaseWrapper> outstandingTx : currentTxs.entrySet()) {
-            LOG.warn("Cancelling outstanding distributed transaction: {}", outstandingTx.getKey());
-            outstandingTx.getValue().cancel();
+        final List<ListenableFuture<Void>> rollbackFutures = new ArrayList<>();
+
+        try {
+            for (DtxReleaseWrapper outstandingTx : new ArrayList<>(currentTxs.values())) {
+                LOG.warn("Rolling back outstanding distributed transaction: {}", outstandingTx.getIdentifier());
+                rollbackFutures.add(outstandingTx.rollback());
+            }
+            for (DOMDTx outstandingDOMTx : new ArrayList<>(currentDOMTxs.values())) {
+                LOG.warn("Rolling back outstanding DOM distributed transaction: {}", outstandingDOMTx.getIdentifier());
+                rollbackFutures.add(outstandingDOMTx.rollback());
+            }
+            Futures.successfulAsList(rollbackFutures).get(CLOSE_ROLLBACK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Outstanding distributed transactions not rolled back in {}s, device(s) state is unknown",
+                    CLOSE_ROLLBACK_TIMEOUT_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while rolling back outstanding distributed transactions");
+        } finally {
+            recoveryExecutor.shutdownNow();
+            editExecutor.shutdown();
+            openExecutor.shutdown();
+            replayExecutor.shutdown();
+            if (intentLog != null) {
+                intentLog.close();
+            }
         }
     }
 
@@ -90,17 +559,25 @@ public class DTxProviderImpl implements DTxProvider, AutoCloseable {
 
         private final DTx delegate;
         private Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap;
+        private final TransactionLock txLock;
 
-        private DtxReleaseWrapper(final DTx delegate, final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes) {
+        private DtxReleaseWrapper(final DTx delegate, final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodes,
+                                  final TransactionLock txLock) {
+            this.txLock = txLock;
             this.delegate = delegate;
             this.nodesMap = nodes;
         }
 
         private void releaseNodes() {
-            synchronized (DTxProviderImpl.this) {
-                Preconditions.checkNotNull(currentTxs.remove(getIdentifier()), "Unable to cleanup distributed transaction");
-                dtxLock.releaseDevices(nodesMap);
-            }
+            deregister();
+            txLock.releaseDevices(nodesMap);
+        }
+
+        /**
+         * Drop the tx from the outstanding ones, it may have been dropped already by its rollback
+         */
+        private void deregister() {
+            currentTxs.remove(getIdentifier(), this);
         }
 
         @Deprecated
@@ -185,20 +662,31 @@ public class DTxProviderImpl implements DTxProvider, AutoCloseable {
             delegate.put(logicalDatastoreType, instanceIdentifier, t, nodeId);
         }
 
+        /**
+         * The submit completes once the tx is released, a tx done is no longer outstanding
+         */
         @Override public CheckedFuture<Void, TransactionCommitFailedException> submit()
             throws DTxException.SubmitFailedException, DTxException.RollbackFailedException {
-            final CheckedFuture<Void, TransactionCommitFailedException> submit = delegate.submit();
+            final SettableFuture<Void> submitFuture = SettableFuture.create();
 
-            Futures.addCallback(submit, new FutureCallback<Void>() {
+            Futures.addCallback(delegate.submit(), new FutureCallback<Void>() {
                 @Override public void onSuccess(final Void result) {
                     releaseNodes();
+                    submitFuture.set(null);
                 }
 
                 @Override public void onFailure(final Throwable t) {
                     releaseNodes();
+                    submitFuture.setException(t);
+                }
+            });
+            return Futures.makeChecked(submitFuture, new Function<Exception, TransactionCommitFailedException>() {
+                @Nullable @Override public TransactionCommitFailedException apply(@Nullable final Exception e) {
+                    final Throwable cause = e.getCause();
+                    return cause instanceof TransactionCommitFailedException ? (TransactionCommitFailedException) cause :
+                            new TransactionCommitFailedException("Submit failed. Check nested exception for rollback status", cause);
                 }
             });
-            return submit;
         }
 
         @Deprecated
@@ -209,8 +697,32 @@ public class DTxProviderImpl implements DTxProvider, AutoCloseable {
         @Override public Object getIdentifier() {
             return delegate.getIdentifier();
         }
+        /**
+         * The delegate releases its nodes once rolled back, the rollback completes once the tx is deregistered
+         */
         @Override
-        public CheckedFuture<Void, DTxException.RollbackFailedException> rollback(){return delegate.rollback();}
+        public CheckedFuture<Void, DTxException.RollbackFailedException> rollback(){
+            final SettableFuture<Void> rollbackFuture = SettableFuture.create();
+
+            Futures.addCallback(delegate.rollback(), new FutureCallback<Void>() {
+                @Override public void onSuccess(final Void result) {
+                    deregister();
+                    rollbackFuture.set(null);
+                }
+
+                @Override public void onFailure(final Throwable t) {
+                    deregister();
+                    rollbackFuture.setException(t);
+                }
+            });
+            return Futures.makeChecked(rollbackFuture, new Function<Exception, DTxException.RollbackFailedException>() {
+                @Nullable @Override public DTxException.RollbackFailedException apply(@Nullable final Exception e) {
+                    final Throwable cause = e.getCause();
+                    return cause instanceof DTxException.RollbackFailedException ? (DTxException.RollbackFailedException) cause :
+                            new DTxException.RollbackFailedException(cause);
+                }
+            });
+        }
 
         @Override
         public <T extends DataObject> CheckedFuture<Void, DTxException> mergeAndRollbackOnFailure(
@@ -227,6 +739,11 @@ public class DTxProviderImpl implements DTxProvider, AutoCloseable {
         public CheckedFuture<Void, DTxException> deleteAndRollbackOnFailure(DTXLogicalTXProviderType logicalTXProviderType, LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<?> instanceIdentifier, InstanceIdentifier<?> nodeId) {
             return delegate.deleteAndRollbackOnFailure(logicalTXProviderType, logicalDatastoreType, instanceIdentifier, nodeId);
         }
+
+        @Override
+        public CheckedFuture<Void, DTxException> editsAndRollbackOnFailure(List<DTxEdit> edits) {
+            return delegate.editsAndRollbackOnFailure(edits);
+        }
     }
 }
 
@@ -7,20 +7,42 @@
  */
 package org.opendaylight.distributed.tx.impl;
 
+import com.google.common.collect.Maps;
 import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
-import org.opendaylight.distributed.tx.spi.TransactionLock;
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.distributed.tx.spi.DeviceOrdering;
+import org.opendaylight.distributed.tx.spi.ExtendedTransactionLock;
+import org.opendaylight.distributed.tx.spi.LockModeTxProvider;
 import org.opendaylight.distributed.tx.spi.TxProvider;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
 
-public class DTxTransactionLockImpl implements TransactionLock {
-    private volatile Set<InstanceIdentifier<?>> lockSet = new HashSet<>();
+public class DTxTransactionLockImpl implements ExtendedTransactionLock {
     private static final Logger LOG = LoggerFactory.getLogger(DTxTransactionLockImpl.class);
     private final Map<DTXLogicalTXProviderType, TxProvider>txProviderMap;
+    /* Threads waiting for a device, in arrival order. A queue only exists while it has waiters */
+    private final ConcurrentMap<Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>>, DeviceQueue> waitQueues =
+            new ConcurrentHashMap<>();
+    /* Devices with locked subtrees. A table only exists while it holds subtrees, or while subtrees are being locked */
+    private final ConcurrentMap<Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>>, SubtreeLockTable> subtreeLocks =
+            new ConcurrentHashMap<>();
+    /* Number of holders of each device locked as a whole. Providers like the datastore don't lock their devices,
+     * subtree locks check these claims instead */
+    @GuardedBy("deviceClaims")
+    private final Map<Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>>, Integer> deviceClaims = new HashMap<>();
 
     public DTxTransactionLockImpl(Map<DTXLogicalTXProviderType, TxProvider> providerMap){
         this.txProviderMap = providerMap;
@@ -31,40 +53,363 @@ public class DTxTransactionLockImpl implements TransactionLock {
         return this.txProviderMap.get(type).isDeviceLocked(device);
     }
 
+    /**
+     * Devices with waiters are handed over in arrival order, they can't be taken without waiting.
+     */
     @Override
     public boolean lockDevices(DTXLogicalTXProviderType type, Set<InstanceIdentifier<?>> deviceSet) {
-        return this.txProviderMap.get(type).lockTransactionDevices(deviceSet);
+        return lockDevices(type, deviceSet, DTxLockMode.EXCLUSIVE, null);
     }
+
+    private boolean lockDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet,
+                                final DTxLockMode mode, final Object owner) {
+        if (hasWaiters(type, deviceSet)) {
+            return false;
+        }
+        return tryLockDevices(type, deviceSet, mode, owner);
+    }
+
+    /**
+     * A device with locked subtrees can't be locked as a whole. Both kinds of lock take their claim first
+     * and check for the other kind after, so at least one of two racing attempts sees the other one.
+     */
+    private boolean tryLockDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet,
+                                   final DTxLockMode mode, final Object owner) {
+        if (!lockProviderDevices(type, deviceSet, mode, owner)) {
+            return false;
+        }
+        claimDevices(type, deviceSet);
+        for (InstanceIdentifier<?> device : deviceSet) {
+            if (subtreeLocks.containsKey(Maps.<DTXLogicalTXProviderType, InstanceIdentifier<?>>immutableEntry(type, device))) {
+                unclaimDevices(type, deviceSet);
+                releaseProviderDevices(type, deviceSet, mode, owner);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void claimDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet) {
+        synchronized (deviceClaims) {
+            for (InstanceIdentifier<?> device : deviceSet) {
+                final Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>> key =
+                        Maps.<DTXLogicalTXProviderType, InstanceIdentifier<?>>immutableEntry(type, device);
+                final Integer claims = deviceClaims.get(key);
+                deviceClaims.put(key, claims == null ? 1 : claims + 1);
+            }
+        }
+    }
+
+    private void unclaimDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet) {
+        synchronized (deviceClaims) {
+            for (InstanceIdentifier<?> device : deviceSet) {
+                final Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>> key =
+                        Maps.<DTXLogicalTXProviderType, InstanceIdentifier<?>>immutableEntry(type, device);
+                final Integer claims = deviceClaims.get(key);
+                if (claims != null && claims > 1) {
+                    deviceClaims.put(key, claims - 1);
+                } else {
+                    deviceClaims.remove(key);
+                }
+            }
+        }
+    }
+
+    private boolean isClaimed(final Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>> key) {
+        synchronized (deviceClaims) {
+            return deviceClaims.containsKey(key);
+        }
+    }
+
+    /**
+     * Providers without lock modes lock their devices exclusively in any mode, and release them whatever the owner
+     */
+    private boolean lockProviderDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet,
+                                        final DTxLockMode mode, final Object owner) {
+        final TxProvider provider = this.txProviderMap.get(type);
+        if (provider instanceof LockModeTxProvider) {
+            return ((LockModeTxProvider) provider).lockTransactionDevices(deviceSet, mode, owner);
+        }
+        return provider.lockTransactionDevices(deviceSet);
+    }
+
+    private void releaseProviderDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet,
+                                        final DTxLockMode mode, final Object owner) {
+        final TxProvider provider = this.txProviderMap.get(type);
+        if (provider instanceof LockModeTxProvider) {
+            ((LockModeTxProvider) provider).releaseTransactionDevices(deviceSet, mode, owner);
+        } else {
+            provider.releaseTransactionDevices(deviceSet);
+        }
+    }
+
+    /**
+     * Lock the devices of every provider type, all or nothing. Types are acquired in their declaration order,
+     * on conflict only the types acquired by this call are released: the conflicting devices belong to another tx.
+     */
     @Override
     public boolean lockDevices(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap) {
-        boolean allLocked = true;
+        return lockDevices(null, deviceMap, DTxLockMode.EXCLUSIVE);
+    }
+
+    /**
+     * Fail-fast: devices held in a conflicting mode, or with queued waiters, fail the call.
+     */
+    @Override
+    public boolean lockDevices(final Object owner, final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap,
+                               final DTxLockMode mode) {
+        final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> lockedDevices = new EnumMap<>(DTXLogicalTXProviderType.class);
+
+        for(Map.Entry<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> devicesPerType : inTypeOrder(deviceMap).entrySet()){
+            if(!this.lockDevices(devicesPerType.getKey(), devicesPerType.getValue(), mode, owner)){
+                LOG.debug("Failed to lock {} devices", devicesPerType.getKey());
+                this.releaseDevices(owner, lockedDevices, mode);
+                return false;
+            }
+            lockedDevices.put(devicesPerType.getKey(), devicesPerType.getValue());
+        }
+
+        return true;
+    }
+
+    /**
+     * Lock the devices one by one in the canonical order, queueing for the busy ones. Devices acquired
+     * are held while waiting for the next ones, the canonical order keeps waiting transactions from deadlocking.
+     */
+    @Override
+    public boolean lockDevices(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap,
+                               final long timeout, final TimeUnit unit) throws InterruptedException {
+        return lockDevices(null, deviceMap, DTxLockMode.EXCLUSIVE, timeout, unit);
+    }
+
+    /**
+     * Waiting: a writer waits for the readers of its devices to leave, readers queued behind a writer wait for it.
+     */
+    @Override
+    public boolean lockDevices(final Object owner, final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap,
+                               final DTxLockMode mode, final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> lockedDevices = new EnumMap<>(DTXLogicalTXProviderType.class);
+        boolean allLocked = false;
+
+        try {
+            for (Map.Entry<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> devicesPerType : inTypeOrder(deviceMap).entrySet()) {
+                final Set<InstanceIdentifier<?>> locked = new HashSet<>();
+                lockedDevices.put(devicesPerType.getKey(), locked);
+                for (InstanceIdentifier<?> device : DeviceOrdering.INSTANCE.sortedCopy(devicesPerType.getValue())) {
+                    if (!lockDevice(devicesPerType.getKey(), device, mode, owner, deadline)) {
+                        LOG.debug("Timed out waiting for {} device {}", devicesPerType.getKey(), device);
+                        return false;
+                    }
+                    locked.add(device);
+                }
+            }
+            allLocked = true;
+        } finally {
+            if (!allLocked) {
+                this.releaseDevices(owner, lockedDevices, mode);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Queue for a device until it is handed over to this thread or the deadline passes
+     */
+    private boolean lockDevice(final DTXLogicalTXProviderType type, final InstanceIdentifier<?> device,
+                               final DTxLockMode mode, final Object owner, final long deadline) throws InterruptedException {
+        final Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>> key =
+                Maps.<DTXLogicalTXProviderType, InstanceIdentifier<?>>immutableEntry(type, device);
+        final Object waiter = new Object();
+
+        while (true) {
+            DeviceQueue queue = waitQueues.get(key);
+            if (queue == null) {
+                final DeviceQueue newQueue = new DeviceQueue();
+                queue = waitQueues.putIfAbsent(key, newQueue);
+                if (queue == null) {
+                    queue = newQueue;
+                }
+            }
 
-        synchronized (DTxTransactionLockImpl.this) {
-            for(DTXLogicalTXProviderType t : deviceMap.keySet()){
-                if(!this.txProviderMap.get(t).lockTransactionDevices(deviceMap.get(t))){
-                    allLocked = false;
-                    break;
+            synchronized (queue) {
+                if (waitQueues.get(key) != queue) {
+                    /* Emptied and removed by its last waiter in the meantime */
+                    continue;
+                }
+
+                queue.waiters.addLast(waiter);
+                try {
+                    while (true) {
+                        if (queue.waiters.peekFirst() == waiter
+                                && tryLockDevices(type, Collections.<InstanceIdentifier<?>>singleton(device), mode, owner)) {
+                            return true;
+                        }
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(queue, remaining);
+                    }
+                } finally {
+                    queue.waiters.remove(waiter);
+                    if (queue.waiters.isEmpty()) {
+                        waitQueues.remove(key, queue);
+                    } else {
+                        /* The next waiter may be at the head now */
+                        queue.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean lockSubtrees(final Object owner,
+                                final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees) {
+        final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> lockedSubtrees =
+                new EnumMap<>(DTXLogicalTXProviderType.class);
+
+        for (DTXLogicalTXProviderType type : inTypeOrder(subtrees).keySet()) {
+            final Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>> locked = new HashMap<>();
+            lockedSubtrees.put(type, locked);
+            for (Map.Entry<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>> subtreesPerDevice : subtrees.get(type).entrySet()) {
+                if (!lockSubtrees(type, subtreesPerDevice.getKey(), owner, subtreesPerDevice.getValue())) {
+                    LOG.debug("Failed to lock subtrees of {} device {}", type, subtreesPerDevice.getKey());
+                    this.releaseSubtrees(owner, lockedSubtrees);
+                    return false;
+                }
+                locked.put(subtreesPerDevice.getKey(), subtreesPerDevice.getValue());
+            }
+        }
+
+        return true;
+    }
+
+    private boolean lockSubtrees(final DTXLogicalTXProviderType type, final InstanceIdentifier<?> device,
+                                 final Object owner, final Set<InstanceIdentifier<?>> deviceSubtrees) {
+        final Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>> key =
+                Maps.<DTXLogicalTXProviderType, InstanceIdentifier<?>>immutableEntry(type, device);
+
+        while (true) {
+            SubtreeLockTable table = subtreeLocks.get(key);
+            if (table == null) {
+                final SubtreeLockTable newTable = new SubtreeLockTable();
+                table = subtreeLocks.putIfAbsent(key, newTable);
+                if (table == null) {
+                    table = newTable;
                 }
             }
 
-            if(!allLocked){
-                this.releaseDevices(deviceMap);
+            synchronized (table) {
+                if (subtreeLocks.get(key) != table) {
+                    /* Emptied and removed in the meantime */
+                    continue;
+                }
+                if (!table.lock(owner, deviceSubtrees)) {
+                    removeIfEmpty(key, table);
+                    return false;
+                }
             }
+            break;
         }
 
-        return allLocked;
+        if (isClaimed(key) || this.txProviderMap.get(type).isDeviceLocked(device) || waitQueues.containsKey(key)) {
+            releaseSubtrees(type, device, owner, deviceSubtrees);
+            return false;
+        }
+        return true;
     }
 
+    @Override
+    public void releaseSubtrees(final Object owner,
+                                final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees) {
+        for (Map.Entry<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtreesPerType : subtrees.entrySet()) {
+            for (Map.Entry<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>> subtreesPerDevice : subtreesPerType.getValue().entrySet()) {
+                releaseSubtrees(subtreesPerType.getKey(), subtreesPerDevice.getKey(), owner, subtreesPerDevice.getValue());
+            }
+        }
+    }
+
+    private void releaseSubtrees(final DTXLogicalTXProviderType type, final InstanceIdentifier<?> device,
+                                 final Object owner, final Set<InstanceIdentifier<?>> deviceSubtrees) {
+        final Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>> key =
+                Maps.<DTXLogicalTXProviderType, InstanceIdentifier<?>>immutableEntry(type, device);
+        final SubtreeLockTable table = subtreeLocks.get(key);
+        if (table != null) {
+            synchronized (table) {
+                table.release(owner, deviceSubtrees);
+                removeIfEmpty(key, table);
+            }
+        }
+        /* Waiters for the whole device may take it now */
+        wakeWaiters(key);
+    }
+
+    @GuardedBy("table")
+    private void removeIfEmpty(final Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>> key, final SubtreeLockTable table) {
+        if (table.isEmpty()) {
+            subtreeLocks.remove(key, table);
+        }
+    }
+
+    private void wakeWaiters(final Map.Entry<DTXLogicalTXProviderType, InstanceIdentifier<?>> key) {
+        final DeviceQueue queue = waitQueues.get(key);
+        if (queue != null) {
+            synchronized (queue) {
+                queue.notifyAll();
+            }
+        }
+    }
+
+    private boolean hasWaiters(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet) {
+        for (InstanceIdentifier<?> device : deviceSet) {
+            if (waitQueues.containsKey(Maps.<DTXLogicalTXProviderType, InstanceIdentifier<?>>immutableEntry(type, device))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <V> Map<DTXLogicalTXProviderType, V> inTypeOrder(final Map<DTXLogicalTXProviderType, V> deviceMap) {
+        final Map<DTXLogicalTXProviderType, V> orderedDevices = new EnumMap<>(DTXLogicalTXProviderType.class);
+        orderedDevices.putAll(deviceMap);
+        return orderedDevices;
+    }
+
+    /**
+     * Waiters of the released devices are woken up, the head of each queue takes its device over.
+     */
     @Override
     public void releaseDevices(DTXLogicalTXProviderType type, Set<InstanceIdentifier<?>> deviceSet) {
-        this.txProviderMap.get(type).releaseTransactionDevices(deviceSet);
+        releaseDevices(type, deviceSet, DTxLockMode.EXCLUSIVE, null);
+    }
+
+    private void releaseDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet,
+                                final DTxLockMode mode, final Object owner) {
+        unclaimDevices(type, deviceSet);
+        releaseProviderDevices(type, deviceSet, mode, owner);
+
+        for (InstanceIdentifier<?> device : deviceSet) {
+            wakeWaiters(Maps.<DTXLogicalTXProviderType, InstanceIdentifier<?>>immutableEntry(type, device));
+        }
     }
 
     @Override
     public void releaseDevices(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap) {
+        releaseDevices(null, deviceMap, DTxLockMode.EXCLUSIVE);
+    }
+
+    @Override
+    public void releaseDevices(final Object owner, final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap,
+                               final DTxLockMode mode) {
         for(DTXLogicalTXProviderType logicalTXProviderType : deviceMap.keySet()){
-            txProviderMap.get(logicalTXProviderType).releaseTransactionDevices(deviceMap.get(logicalTXProviderType));
+            this.releaseDevices(logicalTXProviderType, deviceMap.get(logicalTXProviderType), mode, owner);
         }
     }
-}
 
+    private static final class DeviceQueue {
+        private final Deque<Object> waiters = new ArrayDeque<>();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Preconditions;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Direct buffers the pre-image journals of a provider are packed into. Slabs are allocated on demand, up to
+ * the direct memory budget of the provider, and reused once released instead of waiting for the GC to free them.
+ */
+final class DirectSlabPool {
+    static final int DEFAULT_SLAB_SIZE = 64 * 1024;
+
+    private final int slabSize;
+    private final long memoryBudget;
+    @GuardedBy("this") private final Deque<ByteBuffer> freeSlabs = new ArrayDeque<>();
+    @GuardedBy("this") private long allocatedSize = 0;
+
+    /**
+     * @param slabSize size of the buffers the pre-images are packed into
+     * @param memoryBudget bytes of direct buffers allocated at most
+     */
+    DirectSlabPool(final int slabSize, final long memoryBudget) {
+        Preconditions.checkArgument(slabSize > 0, "Slab size has to be positive");
+        Preconditions.checkArgument(memoryBudget >= 0, "Memory budget can't be negative");
+        this.slabSize = slabSize;
+        this.memoryBudget = memoryBudget;
+    }
+
+    int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Take an empty slab
+     *
+     * @return null when the budget is used up or the direct memory is exhausted
+     */
+    @Nullable synchronized ByteBuffer acquire() {
+        if (!freeSlabs.isEmpty()) {
+            return freeSlabs.pop();
+        }
+        if (allocatedSize + slabSize > memoryBudget) {
+            return null;
+        }
+
+        final ByteBuffer slab;
+        try {
+            slab = ByteBuffer.allocateDirect(slabSize);
+        } catch (OutOfMemoryError e) {
+            /* Direct memory is exhausted below the budget, callers fall back as if it was used up */
+            return null;
+        }
+        allocatedSize += slabSize;
+        return slab;
+    }
+
+    /**
+     * Give slabs back to the pool. Their content is discarded.
+     */
+    synchronized void release(final Collection<ByteBuffer> slabs) {
+        for (ByteBuffer slab : slabs) {
+            slab.clear();
+            freeSlabs.push(slab);
+        }
+    }
+
+    /**
+     * @return bytes of direct buffers allocated, in use or free
+     */
+    synchronized long getAllocatedSize() {
+        return allocatedSize;
+    }
+
+    /**
+     * @return number of slabs free for reuse
+     */
+    synchronized int getFreeSlabCount() {
+        return freeSlabs.size();
+    }
+}
@@ -13,21 +13,30 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Maps;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.google.common.util.concurrent.*;
+import org.opendaylight.controller.md.sal.binding.api.ReadOnlyTransaction;
 import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
 import org.opendaylight.controller.md.sal.common.api.TransactionStatus;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.OptimisticLockFailedException;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
 import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
 import org.opendaylight.distributed.tx.api.DTx;
+import org.opendaylight.distributed.tx.api.DTxEdit;
 import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.api.DTxRollbackMode;
 import org.opendaylight.distributed.tx.spi.*;
 import org.opendaylight.yangtools.yang.binding.DataObject;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
@@ -37,54 +46,314 @@ import org.slf4j.LoggerFactory;
 
 public class DtxImpl implements DTx {
     private static final Logger LOG = LoggerFactory.getLogger(DTxProviderImpl.class);
-    private final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, CachingReadWriteTx>> perNodeTransactionsbyLogicalType;
+    /* Ids are sequential within a run, the random prefix tells the runs apart in the intent log */
+    private static final long TX_ID_PREFIX = UUID.randomUUID().getMostSignificantBits();
+    private static final AtomicLong TX_ID_SEQUENCE = new AtomicLong();
+    /* Runs the bulk creation of the per-node transactions in the creating thread */
+    private static final ListeningExecutorService CALLER_OPEN_EXECUTOR = MoreExecutors.newDirectExecutorService();
+    private final Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, PerNodeTx>> perNodeTransactionsbyLogicalType;
     private final Map<DTXLogicalTXProviderType, TxProvider>txProviderMap;
     private final Map<InstanceIdentifier<?>, ReadWriteTransaction> readWriteTxMap= new HashMap<InstanceIdentifier<?>, ReadWriteTransaction>();
     private final TransactionLock deviceLock;
+    private final ListeningExecutorService editExecutor;
+    /* Opens the per-node transactions, which may block on the devices. Not shared with the edits */
+    private final ListeningExecutorService openExecutor;
+    private final boolean submitEarlyAbort;
+    @Nullable private final PreImageSerializer preImageSerializer;
+    /* Serialized pre-images of all the nodes, released when the distributed tx is done */
+    @Nullable private final OffHeapPreImageStore preImageJournal;
+    /* Durable log of this distributed tx, recovering it if the controller dies before it's done */
+    @Nullable private final DTxIntentLog intentLog;
+    private final DTxRollbackMode rollbackMode;
+    private final UUID txId = new UUID(TX_ID_PREFIX, TX_ID_SEQUENCE.incrementAndGet());
+    private final Object rollbackLock = new Object();
+    private CheckedFuture<Void, DTxException.RollbackFailedException> operationRollbackFuture = null;
 
-    public DtxImpl(@Nonnull final TxProvider txProvider, @Nonnull final Set<InstanceIdentifier<?>> nodes, TransactionLock lock) {
-        Preconditions.checkArgument(!nodes.isEmpty(), "Cannot create distributed tx for 0 nodes");
-        txProviderMap = new HashMap<>();
-        this.txProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, txProvider);
-        Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> internalNodeMap = new HashMap<>(1);
-        internalNodeMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, nodes);
-        this.perNodeTransactionsbyLogicalType =  initializeTransactionsPerLogicalType(this.txProviderMap, internalNodeMap);
-        this.deviceLock = lock;
-    }
-
+    /**
+     * @param lock lock the nodes are released through, once the distributed tx is done
+     * @param editExecutor executor applying the edits. It is shared with other transactions and not owned by the distributed tx.
+     * @param openExecutor executor opening the per-node transactions and snapshots of the nodes, concurrently if it has
+     *                     several threads. It is shared with other transactions and not owned by the distributed tx.
+     * @param submitEarlyAbort true to stop submitting the nodes on the first failed node
+     * @param preImageSerializer serializer keeping the pre-images in an off-heap journal, null to keep them on the heap
+     * @param preImageSlabPool direct buffers of the off-heap journal, shared by the distributed txs of the provider.
+     *                         The journal spills to disk once they are used up. Required with a serializer.
+     * @param intentLog durable log of the distributed transactions, null if they aren't recoverable
+     * @param rollbackMode NO_ROLLBACK to edit the per-node transactions directly. Without pre-images
+     *                     there is nothing to journal nor to recover, the serializer and the intent log are ignored.
+     */
     public DtxImpl(@Nonnull final Map<DTXLogicalTXProviderType, TxProvider> providerMap,
-                   @Nonnull final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap, TransactionLock lock) {
+                   @Nonnull final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap, TransactionLock lock,
+                   @Nonnull final ExecutorService editExecutor, @Nonnull final ExecutorService openExecutor,
+                   final boolean submitEarlyAbort, @Nullable final PreImageSerializer preImageSerializer,
+                   @Nullable final DirectSlabPool preImageSlabPool, @Nullable final DTxIntentLog intentLog,
+                   @Nonnull final DTxRollbackMode rollbackMode) {
         Preconditions.checkArgument(!nodesMap.values().isEmpty(), "Cannot create distributed tx for 0 nodes");
         Preconditions.checkArgument(providerMap.keySet().containsAll(nodesMap.keySet()), "logicalType sets of txPoviders and nodes are different");
+        final boolean rollbackEnabled = rollbackMode == DTxRollbackMode.ROLLBACK_ON_FAILURE;
+        this.editExecutor = MoreExecutors.listeningDecorator(editExecutor);
+        this.openExecutor = MoreExecutors.listeningDecorator(openExecutor);
+        this.submitEarlyAbort = submitEarlyAbort;
+        this.rollbackMode = rollbackMode;
+        this.preImageSerializer = rollbackEnabled ? preImageSerializer : null;
+        this.preImageJournal = createPreImageJournal(this.preImageSerializer, preImageSlabPool);
         this.txProviderMap = providerMap;
         perNodeTransactionsbyLogicalType = initializeTransactionsPerLogicalType(providerMap, nodesMap);
         this.deviceLock = lock;
+        this.intentLog = rollbackEnabled ? intentLog : null;
+        logStart(nodesMap);
+    }
+
+    private void logStart(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap) {
+        if (intentLog != null) {
+            Futures.addCallback(intentLog.logStart(txId, nodesMap), new LoggingIntentLogCallback("start"));
+        }
+    }
+
+    @Nullable private static OffHeapPreImageStore createPreImageJournal(@Nullable final PreImageSerializer preImageSerializer,
+                                                                        @Nullable final DirectSlabPool preImageSlabPool) {
+        if (preImageSerializer == null) {
+            return null;
+        }
+        Preconditions.checkArgument(preImageSlabPool != null, "Off-heap pre-images require a slab pool");
+        return new OffHeapPreImageStore(preImageSlabPool, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    private boolean isRollbackEnabled() {
+        return rollbackMode == DTxRollbackMode.ROLLBACK_ON_FAILURE;
     }
 
     private TxProvider getTxProviderByType(DTXLogicalTXProviderType type){
         return this.txProviderMap.get(type);
     }
 
-    private Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, CachingReadWriteTx>> initializeTransactionsPerLogicalType(final Map<DTXLogicalTXProviderType, TxProvider>txProviderMap,
+    private Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, PerNodeTx>> initializeTransactionsPerLogicalType(final Map<DTXLogicalTXProviderType, TxProvider>txProviderMap,
                                                                                                 Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap){
-        Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, CachingReadWriteTx>> typeCacheMap = new HashMap<>(txProviderMap.keySet().size());
+        Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, PerNodeTx>> typeCacheMap = new HashMap<>(txProviderMap.keySet().size());
+
+        /* Open the per-node transactions of all the providers concurrently, bulk providers open theirs in this thread */
+        final Map<InstanceIdentifier<?>, ReadWriteTransaction> perNodeTxs = collectTransactions(
+                openTransactions(nodesMap, CALLER_OPEN_EXECUTOR));
+        readWriteTxMap.putAll(perNodeTxs);
+        final Map<InstanceIdentifier<?>, ReadOnlyTransaction> snapshots = isRollbackEnabled() ?
+                openSnapshots(nodesMap) : Collections.<InstanceIdentifier<?>, ReadOnlyTransaction>emptyMap();
 
         for(DTXLogicalTXProviderType type : nodesMap.keySet()){
-            Set<InstanceIdentifier<?>> nodes = nodesMap.get(type);
-            final DTXLogicalTXProviderType t = type;
-            Map<InstanceIdentifier<?>, CachingReadWriteTx>tmpMap = Maps.toMap(nodes, new Function<InstanceIdentifier<?>, CachingReadWriteTx>() {
-                @Nullable @Override public CachingReadWriteTx apply(@Nullable final InstanceIdentifier<?> input) {
-                    ReadWriteTransaction tx = getTxProviderByType(t).newTx(input);
-                    readWriteTxMap.put(input, tx);
-                    return new CachingReadWriteTx(tx);
+            Map<InstanceIdentifier<?>, PerNodeTx> tmpMap = new HashMap<>(nodesMap.get(type).size());
+            for (InstanceIdentifier<?> node : nodesMap.get(type)) {
+                if (!isRollbackEnabled()) {
+                    tmpMap.put(node, new WriteThroughTx(perNodeTxs.get(node)));
+                    continue;
                 }
-            });
+                final ReadOnlyTransaction snapshot = snapshots.get(node);
+                if (snapshot != null) {
+                    tmpMap.put(node, new CachingReadWriteTx(perNodeTxs.get(node), editExecutor, snapshot));
+                    continue;
+                }
+                tmpMap.put(node, preImageJournal == null ? new CachingReadWriteTx(perNodeTxs.get(node), editExecutor) :
+                        new CachingReadWriteTx(perNodeTxs.get(node), editExecutor, preImageSerializer, preImageJournal));
+            }
             typeCacheMap.put(type, tmpMap);
         }
 
         return typeCacheMap;
     }
 
+    /**
+     * Open the snapshots the pre-images of the nodes are read from on rollback, concurrently on the open executor.
+     * The snapshots are opened once the per-node transactions are, nodes whose provider doesn't support snapshots
+     * or whose snapshot can't be opened read their pre-images before the edits instead.
+     *
+     * @return opened snapshots by node
+     */
+    private Map<InstanceIdentifier<?>, ReadOnlyTransaction> openSnapshots(
+            final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap) {
+        final Map<InstanceIdentifier<?>, ListenableFuture<ReadOnlyTransaction>> snapshotFutures = new HashMap<>();
+        for (DTXLogicalTXProviderType type : nodesMap.keySet()) {
+            final TxProvider txProvider = getTxProviderByType(type);
+            if (!(txProvider instanceof SnapshotTxProvider)) {
+                continue;
+            }
+            for (final InstanceIdentifier<?> node : nodesMap.get(type)) {
+                try {
+                    snapshotFutures.put(node, openExecutor.submit(new Callable<ReadOnlyTransaction>() {
+                        @Override public ReadOnlyTransaction call() throws Exception {
+                            return openSnapshot((SnapshotTxProvider) txProvider, node);
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Unable to open snapshot of {}, reading its pre-images before the edits", node, e);
+                }
+            }
+        }
+
+        final Map<InstanceIdentifier<?>, ReadOnlyTransaction> snapshots = new HashMap<>(snapshotFutures.size());
+        for (Map.Entry<InstanceIdentifier<?>, ListenableFuture<ReadOnlyTransaction>> snapshotFuture : snapshotFutures.entrySet()) {
+            try {
+                final ReadOnlyTransaction snapshot = Uninterruptibles.getUninterruptibly(snapshotFuture.getValue());
+                if (snapshot != null) {
+                    snapshots.put(snapshotFuture.getKey(), snapshot);
+                }
+            } catch (ExecutionException e) {
+                LOG.debug("Unable to open snapshot of {}, reading its pre-images before the edits", snapshotFuture.getKey(), e);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return null if the pre-images have to be read before the edits instead
+     */
+    @Nullable private static ReadOnlyTransaction openSnapshot(final SnapshotTxProvider txProvider, final InstanceIdentifier<?> node) {
+        try {
+            return txProvider.newSnapshot(node);
+        } catch (RuntimeException e) {
+            LOG.debug("Unable to open snapshot of {}, reading its pre-images before the edits", node, e);
+            return null;
+        }
+    }
+
+    /**
+     * Start opening new transactions for the nodes of all the providers. The transactions of every node
+     * are opened on the open executor, those of a provider supporting bulk creation by a single task.
+     *
+     * @param bulkExecutor executor running the bulk creation tasks
+     */
+    private Map<InstanceIdentifier<?>, ListenableFuture<ReadWriteTransaction>> openTransactions(
+            final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap, final ListeningExecutorService bulkExecutor) {
+        final Map<InstanceIdentifier<?>, ListenableFuture<ReadWriteTransaction>> perNodeTxFutures = new LinkedHashMap<>();
+
+        for(DTXLogicalTXProviderType type : nodesMap.keySet()){
+            final TxProvider txProvider = getTxProviderByType(type);
+            perNodeTxFutures.putAll(openTransactions(txProvider instanceof BulkTxProvider ? bulkExecutor : openExecutor,
+                    txProvider, nodesMap.get(type)));
+        }
+
+        return perNodeTxFutures;
+    }
+
+    /**
+     * Start opening the transactions of a set of nodes. Providers supporting bulk creation get a single task,
+     * every node gets its own task otherwise. Once the executor rejects a task, the nodes left fail to open.
+     */
+    private static Map<InstanceIdentifier<?>, ListenableFuture<ReadWriteTransaction>> openTransactions(
+            final ListeningExecutorService executorService, final TxProvider txProvider, final Set<InstanceIdentifier<?>> nodes) {
+        final Map<InstanceIdentifier<?>, ListenableFuture<ReadWriteTransaction>> perNodeTxFutures = new HashMap<>(nodes.size());
+
+        if (txProvider instanceof BulkTxProvider) {
+            final ListenableFuture<Map<InstanceIdentifier<?>, ReadWriteTransaction>> bulkFuture = submitOpen(executorService,
+                    new Callable<Map<InstanceIdentifier<?>, ReadWriteTransaction>>() {
+                        @Override public Map<InstanceIdentifier<?>, ReadWriteTransaction> call() throws Exception {
+                            return ((BulkTxProvider) txProvider).newTxs(nodes);
+                        }
+                    });
+
+            for (final InstanceIdentifier<?> node : nodes) {
+                perNodeTxFutures.put(node, Futures.transform(bulkFuture,
+                        new Function<Map<InstanceIdentifier<?>, ReadWriteTransaction>, ReadWriteTransaction>() {
+                            @Nullable @Override public ReadWriteTransaction apply(
+                                    @Nullable final Map<InstanceIdentifier<?>, ReadWriteTransaction> input) {
+                                final ReadWriteTransaction tx = input.get(node);
+                                if (tx == null) {
+                                    throw new TxException.TxInitiatizationFailedException("Unable to create tx for " + node);
+                                }
+                                return tx;
+                            }
+                        }));
+            }
+        } else {
+            TxException.TxInitiatizationFailedException rejection = null;
+            for (final InstanceIdentifier<?> node : nodes) {
+                if (rejection == null) {
+                    try {
+                        perNodeTxFutures.put(node, executorService.submit(new Callable<ReadWriteTransaction>() {
+                            @Override public ReadWriteTransaction call() throws Exception {
+                                return txProvider.newTx(node);
+                            }
+                        }));
+                        continue;
+                    } catch (RejectedExecutionException e) {
+                        rejection = new TxException.TxInitiatizationFailedException("Unable to open tx for " + node, e);
+                    }
+                }
+                perNodeTxFutures.put(node, Futures.<ReadWriteTransaction>immediateFailedFuture(rejection));
+            }
+        }
+
+        return perNodeTxFutures;
+    }
+
+    private static <T> ListenableFuture<T> submitOpen(final ListeningExecutorService executorService, final Callable<T> task) {
+        try {
+            return executorService.submit(task);
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(new TxException.TxInitiatizationFailedException("Unable to open txs", e));
+        }
+    }
+
+    /**
+     * Aggregate the per-node transaction futures. If any transaction can't be opened, the opened ones are cancelled
+     * and the future fails with the first failure.
+     */
+    private static ListenableFuture<Map<InstanceIdentifier<?>, ReadWriteTransaction>> aggregateTransactions(
+            final Map<InstanceIdentifier<?>, ListenableFuture<ReadWriteTransaction>> perNodeTxFutures) {
+        final List<InstanceIdentifier<?>> nodes = new ArrayList<>(perNodeTxFutures.keySet());
+        final List<ListenableFuture<ReadWriteTransaction>> txFutures = new ArrayList<>(perNodeTxFutures.values());
+
+        return Futures.transform(Futures.successfulAsList(txFutures),
+                new Function<List<ReadWriteTransaction>, Map<InstanceIdentifier<?>, ReadWriteTransaction>>() {
+                    @Nullable @Override public Map<InstanceIdentifier<?>, ReadWriteTransaction> apply(
+                            @Nullable final List<ReadWriteTransaction> input) {
+                        final Map<InstanceIdentifier<?>, ReadWriteTransaction> perNodeTxs = new HashMap<>(nodes.size());
+                        RuntimeException initFailure = null;
+
+                        for (int i = 0; i < nodes.size(); i++) {
+                            if (input.get(i) != null) {
+                                perNodeTxs.put(nodes.get(i), input.get(i));
+                            } else if (initFailure == null) {
+                                initFailure = getInitFailure(nodes.get(i), txFutures.get(i));
+                            }
+                        }
+
+                        if (initFailure != null) {
+                            LOG.warn("Unable to open per-node transactions, cancelling {} opened ones", perNodeTxs.size());
+                            for (ReadWriteTransaction tx : perNodeTxs.values()) {
+                                tx.cancel();
+                            }
+                            throw initFailure;
+                        }
+
+                        return perNodeTxs;
+                    }
+                });
+    }
+
+    private static RuntimeException getInitFailure(final InstanceIdentifier<?> node, final ListenableFuture<ReadWriteTransaction> txFuture) {
+        try {
+            Uninterruptibles.getUninterruptibly(txFuture);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                return (RuntimeException) e.getCause();
+            }
+        } catch (RuntimeException e) {
+            return e;
+        }
+        return new TxException.TxInitiatizationFailedException("Unable to create tx for " + node);
+    }
+
+    /**
+     * Wait for all the per-node transactions, throwing the first failure if any of them can't be opened.
+     */
+    private static Map<InstanceIdentifier<?>, ReadWriteTransaction> collectTransactions(
+            final Map<InstanceIdentifier<?>, ListenableFuture<ReadWriteTransaction>> perNodeTxFutures) {
+        try {
+            return Uninterruptibles.getUninterruptibly(aggregateTransactions(perNodeTxFutures));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() :
+                    new TxException.TxInitiatizationFailedException("Unable to create per-node transactions");
+        }
+    }
+
     // This is a method for unit test
     public int getSizeofCacheByNodeId(InstanceIdentifier<?> nodeId)
     {
@@ -100,12 +369,23 @@ public class DtxImpl implements DTx {
         return perNodeTransactionsbyLogicalType.get(type).get(nodeId).getSizeOfCache();
     }
 
-    private void waitForAllTxsDone(){
+    /**
+     * Get a future which is set once no per-node transaction has an active edit.
+     */
+    private ListenableFuture<Void> allTxsDone(){
+        final List<ListenableFuture<Void>> perNodeDoneFutures = new ArrayList<>(getNumberofNodes());
+
         for (DTXLogicalTXProviderType type : this.perNodeTransactionsbyLogicalType.keySet()) {
-            for (CachingReadWriteTx perNodeTx : this.perNodeTransactionsbyLogicalType.get(type).values()){
-                perNodeTx.waitForAllActiveOperationsDone();
+            for (PerNodeTx perNodeTx : this.perNodeTransactionsbyLogicalType.get(type).values()){
+                perNodeDoneFutures.add(perNodeTx.getActiveOperationsDoneFuture());
             }
         }
+
+        return Futures.transform(Futures.allAsList(perNodeDoneFutures), new Function<List<Void>, Void>() {
+            @Nullable @Override public Void apply(@Nullable final List<Void> input) {
+                return null;
+            }
+        });
     }
 
     @Deprecated
@@ -189,90 +469,308 @@ public class DtxImpl implements DTx {
     //FIXME!! Fangming add double submit comments
     @Override public CheckedFuture<Void, TransactionCommitFailedException> submit()
         throws DTxException.SubmitFailedException, DTxException.RollbackFailedException {
-        waitForAllTxsDone();
-        int totalSubmitSize = getNumberofNodes();
+        final SettableFuture<Void> distributedSubmitFuture = SettableFuture.create();
+
+        /* Per-node transactions are submitted once all the outstanding edits have been applied,
+         * and their pre-images are durable when the distributed tx is logged. */
+        Futures.addCallback(Futures.transform(allTxsDone(), new AsyncFunction<Void, Void>() {
+            @Override public ListenableFuture<Void> apply(@Nullable final Void input) {
+                return logPreImages();
+            }
+        }), new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                submitPerNodeTransactions(distributedSubmitFuture);
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                /* Nothing was submitted, the per-node transactions are dropped and the tx ends here */
+                LOG.warn("Unable to log the pre-images of distributed tx {}, aborting it", txId, t);
+                abort();
+                distributedSubmitFuture.setException(t);
+            }
+        });
+
+        return Futures.makeChecked(distributedSubmitFuture, DTxFailures.toCommitFailedException());
+    }
 
+    /**
+     * Log the pre-images of all the nodes, in a single group commit of the intent log
+     */
+    private ListenableFuture<Void> logPreImages() {
+        if (intentLog == null) {
+            return Futures.immediateFuture(null);
+        }
+
+        final List<ListenableFuture<Void>> logFutures = new ArrayList<>();
+        for (Map.Entry<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, PerNodeTx>> perType : perNodeTransactionsbyLogicalType.entrySet()) {
+            for (final Map.Entry<InstanceIdentifier<?>, PerNodeTx> perNodeTx : perType.getValue().entrySet()) {
+                final DTXLogicalTXProviderType type = perType.getKey();
+                /* Pre-images deferred to the snapshot of the node are read before they are logged */
+                logFutures.add(Futures.transform(perNodeTx.getValue().materializePreImages(), new AsyncFunction<Void, Void>() {
+                    @Override public ListenableFuture<Void> apply(@Nullable final Void input) {
+                        return intentLog.logPreImages(txId, type, perNodeTx.getKey(), perNodeTx.getValue());
+                    }
+                }));
+            }
+        }
+        return Futures.transform(Futures.allAsList(logFutures), new Function<List<Void>, Void>() {
+            @Nullable @Override public Void apply(@Nullable final List<Void> input) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Check the pre-images captured on the nodes are still current, for a distributed tx which doesn't lock
+     * its nodes while it is edited. Runs once all the outstanding edits have been applied.
+     *
+     * Netconf per-node transactions read the running configuration of the device, without their uncommitted edits,
+     * so the pre-images are read again through them. Datastore per-node transactions see their own edits instead,
+     * they are skipped here: the datastore fails their submit with an OptimisticLockFailedException
+     * if the data they touched changed meanwhile. Pre-images are compared in their normalized form if the serializer
+     * can normalize them, equivalent binding objects don't conflict then.
+     *
+     * @return future failing with an OptimisticLockFailedException if any pre-image changed
+     */
+    ListenableFuture<Void> validatePreImages() {
+        return Futures.transform(allTxsDone(), new AsyncFunction<Void, Void>() {
+            @Override public ListenableFuture<Void> apply(@Nullable final Void input) {
+                final List<ListenableFuture<Void>> validationFutures = new ArrayList<>();
+                for (Map.Entry<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, PerNodeTx>> perType : perNodeTransactionsbyLogicalType.entrySet()) {
+                    if (perType.getKey() == DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER) {
+                        continue;
+                    }
+                    for (Map.Entry<InstanceIdentifier<?>, PerNodeTx> perNodeTx : perType.getValue().entrySet()) {
+                        validationFutures.add(validatePreImages(perNodeTx.getKey(), perNodeTx.getValue()));
+                    }
+                }
+                return Futures.transform(Futures.allAsList(validationFutures), new Function<List<Void>, Void>() {
+                    @Nullable @Override public Void apply(@Nullable final List<Void> input) {
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    private ListenableFuture<Void> validatePreImages(final InstanceIdentifier<?> nodeId, final PerNodeTx perNodeTx) {
+        return Futures.transform(perNodeTx.materializePreImages(), new AsyncFunction<Void, Void>() {
+            @Override public ListenableFuture<Void> apply(@Nullable final Void input) {
+                return validateMaterializedPreImages(nodeId, perNodeTx);
+            }
+        });
+    }
+
+    private ListenableFuture<Void> validateMaterializedPreImages(final InstanceIdentifier<?> nodeId,
+                                                                 final PerNodeTx perNodeTx) {
+        final List<CachedData> preImages = new ArrayList<>();
+        final List<Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>>> paths = new ArrayList<>();
+        for (CachedData preImage : perNodeTx) {
+            preImages.add(preImage);
+            paths.add(Maps.<LogicalDatastoreType, InstanceIdentifier<?>>immutableEntry(preImage.getDsType(), preImage.getId()));
+        }
+
+        return Futures.transform(Futures.allAsList(CoalescingPreImageReader.readPreImages(perNodeTx, paths)),
+                new AsyncFunction<List<Optional<DataObject>>, Void>() {
+                    @Override public ListenableFuture<Void> apply(@Nullable final List<Optional<DataObject>> currentData) {
+                        for (int i = 0; i < preImages.size(); i++) {
+                            if (!isCurrent(preImages.get(i), currentData.get(i))) {
+                                return Futures.immediateFailedFuture(new OptimisticLockFailedException(
+                                        "Data " + preImages.get(i).getId() + " of node " + nodeId + " changed since it was read"));
+                            }
+                        }
+                        return Futures.immediateFuture(null);
+                    }
+                });
+    }
+
+    private boolean isCurrent(final CachedData preImage, final Optional<DataObject> currentData) {
+        final Optional<DataObject> preImageData = preImage.getData();
+        if (preImageData.isPresent() != currentData.isPresent()) {
+            return false;
+        }
+        if (!preImageData.isPresent() || preImageData.get() == currentData.get()) {
+            return true;
+        }
+        if (preImageSerializer instanceof NormalizingPreImageSerializer) {
+            final NormalizingPreImageSerializer normalizer = (NormalizingPreImageSerializer) preImageSerializer;
+            try {
+                return normalizer.normalize(preImage.getId(), preImageData.get())
+                        .equals(normalizer.normalize(preImage.getId(), currentData.get()));
+            } catch (IOException e) {
+                LOG.debug("Unable to normalize data of {}, comparing the binding objects", preImage.getId(), e);
+            }
+        }
+        return preImageData.get().equals(currentData.get());
+    }
+
+    /**
+     * Give up the distributed tx before its per-node transactions are submitted. Nothing was committed, they are cancelled
+     * once their outstanding edits have been applied and the devices are released.
+     */
+    void abort() {
+        allTxsDone().addListener(new Runnable() {
+            @Override public void run() {
+                for (Map<InstanceIdentifier<?>, PerNodeTx> perType : perNodeTransactionsbyLogicalType.values()) {
+                    for (PerNodeTx perNodeTx : perType.values()) {
+                        perNodeTx.cancel();
+                    }
+                }
+                dtxReleaseDevices();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void submitPerNodeTransactions(final SettableFuture<Void> distributedSubmitFuture) {
+        int totalSubmitSize = getNumberofNodes();
         final Map<InstanceIdentifier<?>, PerNodeTxState> commitStatus = Maps.newHashMapWithExpectedSize(totalSubmitSize);
-        final SettableFuture<Void> distributedSubmitFuture = SettableFuture.create();
+        final EarlyAbortState abortState = new EarlyAbortState();
 
         for(DTXLogicalTXProviderType type: this.perNodeTransactionsbyLogicalType.keySet()) {
-            Map<InstanceIdentifier<?>, CachingReadWriteTx> transactions = this.perNodeTransactionsbyLogicalType.get(type);
+            Map<InstanceIdentifier<?>, PerNodeTx> transactions = this.perNodeTransactionsbyLogicalType.get(type);
+
+            for (final Map.Entry<InstanceIdentifier<?>, PerNodeTx> perNodeTx : transactions.entrySet()) {
+                final PerNodeSubmitCallback callback = new PerNodeSubmitCallback(commitStatus, abortState, perNodeTx, distributedSubmitFuture);
+
+                /* Once aborted, the nodes not submitted yet are cancelled instead */
+                if (abortState.isAborted()) {
+                    perNodeTx.getValue().cancel();
+                    callback.failedWithException(new CancellationException("Distributed tx aborted before submit"));
+                    continue;
+                }
 
-            for (final Map.Entry<InstanceIdentifier<?>, CachingReadWriteTx> perNodeTx : transactions.entrySet()) {
                 CheckedFuture<Void, TransactionCommitFailedException> submitFuture = null;
                 try {
                     submitFuture = perNodeTx.getValue().submit();
                 }catch (Exception submitFailException){
-                    new PerNodeSubmitCallback(type, commitStatus, perNodeTx, distributedSubmitFuture).failedWithException(submitFailException);
+                    callback.failedWithException(submitFailException);
                     continue;
                 }
-                Futures.addCallback(submitFuture, new PerNodeSubmitCallback(type, commitStatus, perNodeTx, distributedSubmitFuture));
+                Futures.addCallback(submitFuture, callback);
             }
         }
-
-        return Futures.makeChecked(distributedSubmitFuture, new Function<Exception, TransactionCommitFailedException>() {
-            @Nullable @Override public TransactionCommitFailedException apply(@Nullable final Exception input) {
-                return new TransactionCommitFailedException("Submit failed. Check nested exception for rollback status", input);
-            }
-        });
     }
 
     /**
-     * Perform submit rollback with the caches and empty rollback transactions for every node
+     * Perform submit rollback with the caches of the nodes that committed successfully. Nodes whose submit failed
+     * changed nothing and are left alone.
      */
     private CheckedFuture<Void, DTxException.RollbackFailedException> rollbackUponCommitFailure(
         final Map<InstanceIdentifier<?>, PerNodeTxState> commitStatus) {
 
-        Map<InstanceIdentifier<?>, CachingReadWriteTx> perNodeCache = new HashMap<>();
+        final Set<InstanceIdentifier<?>> committedNodes = new HashSet<>();
+
+        for (Map.Entry<InstanceIdentifier<?>, PerNodeTxState> nodeStatus : commitStatus.entrySet()) {
+            if (nodeStatus.getValue().isSuccess()) {
+                committedNodes.add(nodeStatus.getKey());
+            }
+        }
+
+        LOG.debug("Rolling back {} committed node(s) out of {}", committedNodes.size(), commitStatus.size());
+        return rollbackCommittedNodes(committedNodes);
+    }
+
+    /**
+     * Revert the committed changes of a set of nodes. Rollback transactions are opened only at this point,
+     * once the distributed submit is known to have failed
+     */
+    private CheckedFuture<Void, DTxException.RollbackFailedException> rollbackCommittedNodes(
+        final Set<InstanceIdentifier<?>> nodes) {
+
+        final Map<InstanceIdentifier<?>, PerNodeTx> perNodeCache = new HashMap<>();
+        final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesByType = new HashMap<>();
 
         for(DTXLogicalTXProviderType type : this.perNodeTransactionsbyLogicalType.keySet()) {
-            Map<InstanceIdentifier<?>, CachingReadWriteTx> tmpMap = this.perNodeTransactionsbyLogicalType.get(type);
-            perNodeCache.putAll(tmpMap);
+            Set<InstanceIdentifier<?>> nodesPerType = new HashSet<>();
+            for (Map.Entry<InstanceIdentifier<?>, PerNodeTx> perNodeTx : this.perNodeTransactionsbyLogicalType.get(type).entrySet()) {
+                if (nodes.contains(perNodeTx.getKey())) {
+                    perNodeCache.put(perNodeTx.getKey(), perNodeTx.getValue());
+                    nodesPerType.add(perNodeTx.getKey());
+                }
+            }
+            if (!nodesPerType.isEmpty()) {
+                nodesByType.put(type, nodesPerType);
+            }
         }
 
-        Rollback rollback = new RollbackImpl();
-        final ListenableFuture<Void> rollbackFuture = rollback.rollback(perNodeCache,
-            Maps.transformValues(commitStatus, new Function<PerNodeTxState, ReadWriteTransaction>() {
-                @Nullable @Override public ReadWriteTransaction apply(@Nullable final PerNodeTxState input) {
-                    return input.getRollbackTx();
+        final Rollback rollback = new RollbackImpl(editExecutor);
+        final ListenableFuture<Void> rollbackFuture = Futures.transform(
+            aggregateTransactions(openTransactions(nodesByType, openExecutor)),
+            new AsyncFunction<Map<InstanceIdentifier<?>, ReadWriteTransaction>, Void>() {
+                @Override public ListenableFuture<Void> apply(
+                        @Nullable final Map<InstanceIdentifier<?>, ReadWriteTransaction> rollbackTxs) {
+                    return rollback.rollback(perNodeCache, rollbackTxs);
                 }
-            }));
+            });
 
-        return Futures.makeChecked(rollbackFuture, new Function<Exception, DTxException.RollbackFailedException>() {
-            @Nullable @Override public DTxException.RollbackFailedException apply(@Nullable final Exception input) {
-                return new DTxException.RollbackFailedException(input);
-            }
-        });
+        return Futures.makeChecked(rollbackFuture, DTxFailures.toRollbackFailedException());
     }
 
     private CheckedFuture<Void, DTxException.RollbackFailedException> rollbackUponOperationFailure(){
-        waitForAllTxsDone();
-        Rollback rollback = new RollbackImpl();
-        Map<InstanceIdentifier<?>, CachingReadWriteTx> perNodeCache = new HashMap<>();
+        final Rollback rollback = new RollbackImpl(editExecutor);
+        final Map<InstanceIdentifier<?>, PerNodeTx> perNodeCache = new HashMap<>();
 
         for(DTXLogicalTXProviderType type : this.perNodeTransactionsbyLogicalType.keySet()) {
-            Map<InstanceIdentifier<?>, CachingReadWriteTx> tmpMap = this.perNodeTransactionsbyLogicalType.get(type);
+            Map<InstanceIdentifier<?>, PerNodeTx> tmpMap = this.perNodeTransactionsbyLogicalType.get(type);
             perNodeCache.putAll(tmpMap);
         }
 
-        final ListenableFuture<Void> rollbackFuture= rollback.rollback(perNodeCache, this.readWriteTxMap);
+        /* Rollback starts once the caches are complete, i.e. all the outstanding edits have been applied. */
+        final ListenableFuture<Void> rollbackFuture = Futures.transform(allTxsDone(), new AsyncFunction<Void, Void>() {
+            @Override public ListenableFuture<Void> apply(@Nullable final Void input) {
+                return rollback.rollback(perNodeCache, readWriteTxMap);
+            }
+        }, editExecutor);
+
+        return Futures.makeChecked(rollbackFuture, DTxFailures.toRollbackFailedException());
+    }
 
-        return Futures.makeChecked(rollbackFuture, new Function<Exception, DTxException.RollbackFailedException>() {
-            @Nullable @Override public DTxException.RollbackFailedException apply(@Nullable final Exception input) {
-                return new DTxException.RollbackFailedException(input);
+    /**
+     * Rollback of a distributed tx without pre-images. The per-node transactions are cancelled once the outstanding
+     * edits have been applied, dropping the edits not committed yet. Committed nodes can't be reverted.
+     */
+    private CheckedFuture<Void, DTxException.RollbackFailedException> discardEdits() {
+        final ListenableFuture<Void> discardFuture = Futures.transform(allTxsDone(), new Function<Void, Void>() {
+            @Nullable @Override public Void apply(@Nullable final Void input) {
+                for (Map<InstanceIdentifier<?>, PerNodeTx> perType : perNodeTransactionsbyLogicalType.values()) {
+                    for (PerNodeTx perNodeTx : perType.values()) {
+                        perNodeTx.cancel();
+                    }
+                }
+                return null;
             }
         });
+
+        return Futures.makeChecked(discardFuture, DTxFailures.toRollbackFailedException());
     }
 
+    /**
+     * Release the devices once the distributed tx is done, either committed or rolled back.
+     * The pre-images aren't needed anymore, the journal is deleted and the snapshots are closed.
+     */
     private void dtxReleaseDevices(){
-        Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> devices = Maps.transformValues(perNodeTransactionsbyLogicalType, new Function<Map<InstanceIdentifier<?>, CachingReadWriteTx>, Set<InstanceIdentifier<?>>>() {
+        if (preImageJournal != null) {
+            preImageJournal.close();
+        }
+        for (Map<InstanceIdentifier<?>, PerNodeTx> perType : perNodeTransactionsbyLogicalType.values()) {
+            for (PerNodeTx perNodeTx : perType.values()) {
+                perNodeTx.closeSnapshot();
+            }
+        }
+        if (intentLog != null) {
+            Futures.addCallback(intentLog.logEnd(txId), new LoggingIntentLogCallback("end"));
+        }
+        deviceLock.releaseDevices(getNodesByType());
+    }
+
+    private Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> getNodesByType(){
+        return Maps.transformValues(perNodeTransactionsbyLogicalType, new Function<Map<InstanceIdentifier<?>, PerNodeTx>, Set<InstanceIdentifier<?>>>() {
             @Nullable
             @Override
-            public Set<InstanceIdentifier<?>> apply(@Nullable Map<InstanceIdentifier<?>, CachingReadWriteTx> input) {
+            public Set<InstanceIdentifier<?>> apply(@Nullable Map<InstanceIdentifier<?>, PerNodeTx> input) {
                 return input.keySet();
             }
         });
-        deviceLock.releaseDevices(devices);
     }
 
     @Deprecated
@@ -284,8 +782,11 @@ public class DtxImpl implements DTx {
         throw new UnsupportedOperationException("Deprecated");
     }
 
+    /**
+     * @return id of this distributed tx, unique across controller restarts
+     */
     @Override public Object getIdentifier() {
-        return getIdentifierSet();
+        return txId;
     }
 
     private Set<InstanceIdentifier<?>> getIdentifierSet(){
@@ -317,69 +818,30 @@ public class DtxImpl implements DTx {
 
     private class PerNodeSubmitCallback implements FutureCallback<Void> {
         private final Map<InstanceIdentifier<?>, PerNodeTxState> commitStatus;
-        private final Map.Entry<InstanceIdentifier<?>, CachingReadWriteTx> perNodeTx;
+        private final EarlyAbortState abortState;
+        private final Map.Entry<InstanceIdentifier<?>, PerNodeTx> perNodeTx;
         private final SettableFuture<Void> distributedSubmitFuture;
-        private final DTXLogicalTXProviderType logicalTxProviderType;
-        final ExecutorService executor = Executors.newSingleThreadExecutor();
 
-        public PerNodeSubmitCallback(DTXLogicalTXProviderType type, final Map<InstanceIdentifier<?>, PerNodeTxState> commitStatus,
-            final Map.Entry<InstanceIdentifier<?>, CachingReadWriteTx> perNodeTx,
+        public PerNodeSubmitCallback(final Map<InstanceIdentifier<?>, PerNodeTxState> commitStatus,
+            final EarlyAbortState abortState, final Map.Entry<InstanceIdentifier<?>, PerNodeTx> perNodeTx,
             final SettableFuture<Void> distributedSubmitFuture) {
             this.commitStatus = commitStatus;
+            this.abortState = abortState;
             this.perNodeTx = perNodeTx;
             this.distributedSubmitFuture = distributedSubmitFuture;
-            logicalTxProviderType = type;
         }
 
         /**
          * Callback for per-node transaction submit success
-         * Prepare potential rollback per-node transaction (rollback will be performed in a dedicated Tx)
          */
         @Override public void onSuccess(@Nullable final Void result) {
             LOG.trace("Per node tx({}/{}) executed successfully for: {}",
                     commitStatus.size(), getNumberofNodes(), perNodeTx.getKey());
-
-            final ListeningExecutorService executorService = MoreExecutors.listeningDecorator(executor);
-
-            final ListenableFuture txProviderFuture = executorService.submit(new Callable() {
-                @Override
-                public Object call() throws Exception {
-                    final ReadWriteTransaction readWriteTransaction = getTxProviderByLogicalType(logicalTxProviderType).newTx(perNodeTx.getKey());
-                    final PerNodeTxState status = PerNodeTxState.createSuccess(readWriteTransaction);
-                    synchronized (commitStatus) {
-                        commitStatus.put(perNodeTx.getKey(), status);
-                    }
-                    checkTransactionStatus();
-                    return null;
-                }
-            });
-
-            Futures.addCallback(txProviderFuture, new FutureCallback() {
-                @Override
-                public void onSuccess(@Nullable Object result) {
-                    LOG.trace("Per node new tx successfully");
-                }
-
-                @Override
-                public void onFailure(Throwable t) {
-                    LOG.trace("Per node error to relock the device. ignore");
-                }
-            });
-        }
-
-        /**
-         * Invoked when this distributed transaction cannot open a post submit transaction (for performing potential rollback)
-         */
-        private void handleRollbackTxCreationException(final TxException.TxInitiatizationFailedException e) {
-            LOG.warn("Unable to create post submit transaction for node: {}. Distributed transaction failing",
-                perNodeTx.getKey(), e);
-            distributedSubmitFuture.setException(new DTxException.SubmitFailedException(
-                Collections.<InstanceIdentifier<?>>singleton(perNodeTx.getKey()), e));
+            updateStatus(PerNodeTxState.createSuccess());
         }
 
         /**
          * Callback for per-node transaction submit FAIL
-         * Prepare rollback per-node transaction (rollback will be performed in a dedicated Tx)
          */
         @Override public void onFailure(final Throwable t) {
             failedWithException(t);
@@ -387,23 +849,95 @@ public class DtxImpl implements DTx {
 
         public void failedWithException(final Throwable t) {
             LOG.warn("Per node tx executed failed for: {}", perNodeTx.getKey(), t);
+            updateStatus(PerNodeTxState.createFailed(t));
+        }
 
-            final ListeningExecutorService executorService = MoreExecutors.listeningDecorator(executor);
+        /**
+         * Record the per-node status. Only the callback completing the last per-node submit checks the overall status.
+         * In early-abort mode, the first failure starts reverting the committed nodes, and every node committing
+         * afterwards is reverted as soon as it completes
+         */
+        private void updateStatus(final PerNodeTxState status) {
+            final boolean submitDone;
+            final Set<InstanceIdentifier<?>> nodesToRevert = new HashSet<>();
+            SettableFuture<Void> rollbackFuture = null;
+
+            if (intentLog != null) {
+                Futures.addCallback(intentLog.logNodeCommit(txId, perNodeTx.getKey(), status.isSuccess()),
+                        new LoggingIntentLogCallback("commit of " + perNodeTx.getKey()));
+            }
 
-            final ListenableFuture txProviderFuture = executorService.submit(new Callable() {
-                @Override
-                public Object call() throws Exception {
-                    try {
-                        final ReadWriteTransaction readWriteTransaction = getTxProviderByLogicalType(logicalTxProviderType).newTx(perNodeTx.getKey());
-                        synchronized (commitStatus) {
-                            commitStatus.put(perNodeTx.getKey(), PerNodeTxState.createFailed(t, readWriteTransaction));
+            synchronized (commitStatus) {
+                commitStatus.put(perNodeTx.getKey(), status);
+                submitDone = commitStatus.size() == getNumberofNodes();
+
+                if (submitEarlyAbort && !abortState.aborted && !status.isSuccess()) {
+                    LOG.debug("Distributed tx aborting on the failure of node: {}", perNodeTx.getKey());
+                    abortState.aborted = true;
+                    for (Map.Entry<InstanceIdentifier<?>, PerNodeTxState> nodeStatus : commitStatus.entrySet()) {
+                        if (nodeStatus.getValue().isSuccess() && isRollbackEnabled()) {
+                            nodesToRevert.add(nodeStatus.getKey());
                         }
-                        checkTransactionStatus();
+                    }
+                } else if (abortState.aborted && status.isSuccess() && isRollbackEnabled()) {
+                    nodesToRevert.add(perNodeTx.getKey());
+                }
+
+                /* Registered under the lock so the last callback can't miss a rollback still being started */
+                if (!nodesToRevert.isEmpty()) {
+                    rollbackFuture = SettableFuture.create();
+                    abortState.rollbackFutures.add(rollbackFuture);
+                }
+            }
 
-                    } catch (TxException.TxInitiatizationFailedException e) {
-                        handleRollbackTxCreationException(e);
+            if (rollbackFuture != null) {
+                final SettableFuture<Void> perNodesRollbackFuture = rollbackFuture;
+                Futures.addCallback(rollbackCommittedNodes(nodesToRevert), new FutureCallback<Void>() {
+                    @Override public void onSuccess(@Nullable final Void result) {
+                        perNodesRollbackFuture.set(null);
                     }
-                    return null;
+
+                    @Override public void onFailure(final Throwable t) {
+                        perNodesRollbackFuture.setException(t);
+                    }
+                });
+            }
+
+            if (submitDone) {
+                if (abortState.aborted) {
+                    completeAbortedSubmit();
+                } else {
+                    checkTransactionStatus();
+                }
+            }
+        }
+
+        /**
+         * Fail the distributed Tx once all the reverts started by the early abort are done
+         */
+        private void completeAbortedSubmit() {
+            final Set<InstanceIdentifier<?>> failedNodes = new HashSet<>();
+            final List<PerNodeTxState> failures = new ArrayList<>();
+            for (Map.Entry<InstanceIdentifier<?>, PerNodeTxState> nodeStatus : commitStatus.entrySet()) {
+                if (!nodeStatus.getValue().isSuccess()) {
+                    failedNodes.add(nodeStatus.getKey());
+                    failures.add(nodeStatus.getValue());
+                }
+            }
+            final DTxException.SubmitFailedException e = new DTxException.SubmitFailedException(failedNodes,
+                    getFirstFailure(failures));
+
+            Futures.addCallback(Futures.allAsList(abortState.rollbackFutures), new FutureCallback<List<Void>>() {
+                @Override public void onSuccess(@Nullable final List<Void> result) {
+                    LOG.trace("Distributed tx aborted for {}. Rollback was successful", failedNodes);
+                    dtxReleaseDevices();
+                    distributedSubmitFuture.setException(e);
+                }
+
+                @Override public void onFailure(final Throwable t) {
+                    LOG.warn("Distributed tx aborted. Rollback FAILED. Device(s) state is unknown", t);
+                    dtxReleaseDevices();
+                    distributedSubmitFuture.setException(t);
                 }
             });
         }
@@ -420,7 +954,6 @@ public class DtxImpl implements DTx {
                         return;
                     }
                     case SUCCESS: {
-                        this.releaseTx();
                         dtxReleaseDevices();
                         distributedSubmitFuture.set(null);
                         return;
@@ -431,6 +964,12 @@ public class DtxImpl implements DTx {
                 }
 
             } catch (final DTxException.SubmitFailedException e) {
+                if (!isRollbackEnabled()) {
+                    LOG.debug("Distributed tx failed for {}, the committed nodes are left as they are", e.getFailedSubmits());
+                    dtxReleaseDevices();
+                    distributedSubmitFuture.setException(e);
+                    return;
+                }
                 Futures.addCallback(rollbackUponCommitFailure(commitStatus), new FutureCallback<Void>() {
                     @Override public void onSuccess(@Nullable final Void result) {
                         LOG.trace("Distributed tx failed for {}. Rollback was successful", perNodeTx.getKey());
@@ -467,7 +1006,7 @@ public class DtxImpl implements DTx {
                     });
 
                 if(!failedSubmits.isEmpty()) {
-                    throw new DTxException.SubmitFailedException(failedSubmits.keySet());
+                    throw new DTxException.SubmitFailedException(failedSubmits.keySet(), getFirstFailure(failedSubmits.values()));
                 } else {
                     return DistributedSubmitState.SUCCESS;
                 }
@@ -475,12 +1014,31 @@ public class DtxImpl implements DTx {
 
             return DistributedSubmitState.WAITING;
         }
+    }
 
-        private void releaseTx(){
-            for(Map.Entry<InstanceIdentifier<?>, PerNodeTxState> e : this.commitStatus.entrySet()){
-                e.getValue().releaseStatePerNode();
+    /**
+     * @return failure of the first failed per-node submit, kept as the cause of the distributed submit failure
+     * so callers can tell e.g. a conflict from an unreachable node
+     */
+    @Nullable private static Exception getFirstFailure(final Collection<PerNodeTxState> failedStates) {
+        for (PerNodeTxState state : failedStates) {
+            if (state.getException().isPresent() && state.getException().get() instanceof Exception) {
+                return (Exception) state.getException().get();
             }
         }
+        return null;
+    }
+
+    /**
+     * Early-abort state of a distributed submit, guarded by the commit status of the submit
+     */
+    private static final class EarlyAbortState {
+        private volatile boolean aborted = false;
+        private final List<ListenableFuture<Void>> rollbackFutures = new ArrayList<>();
+
+        public boolean isAborted() {
+            return aborted;
+        }
     }
 
     public enum DistributedSubmitState {
@@ -488,22 +1046,33 @@ public class DtxImpl implements DTx {
     }
 
     /**
-     * Per-node transaction state. Generally its success or fail. This also keeps the rollback transaction
+     * Intent log records other than the pre-images don't hold the distributed tx back, failures are only logged
      */
-    private static final class PerNodeTxState {
-        private boolean success;
-        @Nullable private Throwable t;
-        private final ReadWriteTransaction rollbackTx;
-        DTXLogicalTXProviderType logicalTXProviderType;
+    private final class LoggingIntentLogCallback implements FutureCallback<Void> {
+        private final String record;
 
-        public PerNodeTxState(final boolean success, @Nullable final Throwable t, @Nonnull ReadWriteTransaction rollbackTx) {
-            this(success, rollbackTx);
-            this.t = t;
+        LoggingIntentLogCallback(final String record) {
+            this.record = record;
         }
 
-        public PerNodeTxState(final boolean success, @Nonnull ReadWriteTransaction rollbackTx) {
+        @Override public void onSuccess(@Nullable final Void result) {
+        }
+
+        @Override public void onFailure(final Throwable t) {
+            LOG.warn("Unable to log {} of distributed tx {}", record, txId, t);
+        }
+    }
+
+    /**
+     * Per-node transaction state. Generally its success or fail
+     */
+    private static final class PerNodeTxState {
+        private final boolean success;
+        @Nullable private final Throwable t;
+
+        public PerNodeTxState(final boolean success, @Nullable final Throwable t) {
             this.success = success;
-            this.rollbackTx = rollbackTx;
+            this.t = t;
         }
 
         public boolean isSuccess() {
@@ -514,20 +1083,12 @@ public class DtxImpl implements DTx {
             return Optional.fromNullable(t);
         }
 
-        public ReadWriteTransaction getRollbackTx() {
-            return rollbackTx;
+        public static PerNodeTxState createFailed(final Throwable t) {
+            return new PerNodeTxState(false, t);
         }
 
-        public static PerNodeTxState createFailed(final Throwable t, final ReadWriteTransaction readWriteTransaction) {
-            return new PerNodeTxState(false, t, readWriteTransaction);
-        }
-
-        public static PerNodeTxState createSuccess(final ReadWriteTransaction readWriteTransaction) {
-            return new PerNodeTxState(true, readWriteTransaction);
-        }
-
-        public void releaseStatePerNode(){
-            this.rollbackTx.cancel();
+        public static PerNodeTxState createSuccess() {
+            return new PerNodeTxState(true, null);
         }
     }
 
@@ -558,10 +1119,49 @@ public class DtxImpl implements DTx {
             return this.deleteAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, logicalDatastoreType, instanceIdentifier, nodeId);
     }
 
+    /**
+     * Single-flight rollback of this distributed tx. The first call starts the rollback on the edit executor,
+     * every later call, e.g. from all the failed edits against a dead device, shares its outcome.
+     * Devices are released once, when the rollback is done.
+     */
     public CheckedFuture<Void, DTxException.RollbackFailedException>  rollback(){
-        CheckedFuture<Void, DTxException.RollbackFailedException> rollbackFuture = this.rollbackUponOperationFailure();
-        this.dtxReleaseDevices();
-        return rollbackFuture;
+        synchronized (rollbackLock) {
+            if (operationRollbackFuture == null) {
+                operationRollbackFuture = isRollbackEnabled() ? this.rollbackUponOperationFailure() : discardEdits();
+                Futures.addCallback(operationRollbackFuture, new FutureCallback<Void>() {
+                    @Override public void onSuccess(@Nullable final Void result) {
+                        dtxReleaseDevices();
+                    }
+
+                    @Override public void onFailure(final Throwable t) {
+                        LOG.warn("Distributed tx rollback FAILED. Device(s) state is unknown", t);
+                        dtxReleaseDevices();
+                    }
+                });
+            }
+            return operationRollbackFuture;
+        }
+    }
+
+    /**
+     * Fail an edit with the outcome of the single-flight rollback of this distributed tx.
+     * Without rollback, the edit fails with its own failure and the distributed tx is left to the caller.
+     */
+    private void rollbackUponEditFailure(final SettableFuture<Void> editFuture, final String editFailureMessage,
+                                         final Throwable editFailure) {
+        if (!isRollbackEnabled()) {
+            editFuture.setException(editFailure);
+            return;
+        }
+        Futures.addCallback(rollback(), new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                editFuture.setException(new DTxException.EditFailedException(editFailureMessage));
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                editFuture.setException(new DTxException.RollbackFailedException(t));
+            }
+        });
     }
 
     @Override
@@ -583,38 +1183,11 @@ public class DtxImpl implements DTx {
 
             @Override
             public void onFailure(Throwable throwable) {
-                Runnable runnable = new Runnable() {
-                    @Override
-                    public void run() {
-                        CheckedFuture<Void, DTxException.RollbackFailedException> rollExcept = rollback();
-                        Futures.addCallback(rollExcept, new FutureCallback<Void>() {
-                            @Override
-                            public void onSuccess(@Nullable Void aVoid) {
-                                dtxReleaseDevices();
-                                retFuture.setException(new DTxException.EditFailedException("Failed to merge but succeed to rollback"));
-                            }
-
-                            @Override
-                            public void onFailure(Throwable throwable) {
-                                dtxReleaseDevices();
-                                retFuture.setException(new DTxException.RollbackFailedException(throwable));
-                            }
-                        });
-                    }
-                };
-
-                new Thread(runnable).start();
+                rollbackUponEditFailure(retFuture, "Failed to merge but succeed to rollback", throwable);
             }
         });
 
-        return Futures.makeChecked(retFuture, new Function<Exception, DTxException>() {
-            @Nullable
-            @Override
-            public DTxException apply(@Nullable Exception e) {
-                e = (Exception)e.getCause();
-                return e instanceof DTxException ? (DTxException)e : new DTxException("Merge failed and rollback failure", e);
-            }
-        });
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("Merge failed and rollback failure"));
     }
 
     @Override
@@ -622,7 +1195,6 @@ public class DtxImpl implements DTx {
                 LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<T> instanceIdentifier, T t, InstanceIdentifier<?> nodeId) {
         Preconditions.checkArgument(containsIid(nodeId), "Unknown node: %s. Not in transaction", nodeId);
         final DTXReadWriteTransaction transaction = this.perNodeTransactionsbyLogicalType.get(logicalTXProviderType).get(nodeId);
-        Preconditions.checkArgument(containsIid(nodeId), "Unknown node: %s. Not in transaction", nodeId);
         CheckedFuture<Void, DTxException> putFuture = transaction.asyncPut(logicalDatastoreType, instanceIdentifier, t);
 
         final SettableFuture<Void> retFuture = SettableFuture.create();
@@ -636,39 +1208,11 @@ public class DtxImpl implements DTx {
             @Override
             public void onFailure(Throwable throwable) {
                 LOG.trace("asyncput failure callback begin to roll back ");
-                Runnable rolllbackRoutine = new Runnable() {
-                    @Override
-                    public void run() {
-                        CheckedFuture<Void, DTxException.RollbackFailedException> rollExcept = rollback();
-
-                        Futures.addCallback(rollExcept, new FutureCallback<Void>() {
-                            @Override
-                            public void onSuccess(@Nullable Void result) {
-                                dtxReleaseDevices();
-                                retFuture.setException(new DTxException.EditFailedException("Failed to put but succeed to rollback"));
-                            }
-
-                            @Override
-                            public void onFailure(Throwable t) {
-                                dtxReleaseDevices();
-                                retFuture.setException(new DTxException.RollbackFailedException(t));
-                            }
-                        });
-                    }
-                };
-
-                new Thread(rolllbackRoutine).start();
+                rollbackUponEditFailure(retFuture, "Failed to put but succeed to rollback", throwable);
             }
         });
 
-        return Futures.makeChecked(retFuture, new Function<Exception, DTxException>() {
-            @Nullable
-            @Override
-            public DTxException apply(@Nullable Exception e) {
-                e = (Exception)e.getCause();
-                return e instanceof DTxException ? (DTxException)e : new DTxException("Put failed and rollback failure", e);
-            }
-        });
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("Put failed and rollback failure"));
     }
 
     @Override
@@ -689,40 +1233,49 @@ public class DtxImpl implements DTx {
 
             @Override
             public void onFailure(Throwable throwable) {
+                rollbackUponEditFailure(retFuture, "Failed to delete but succeed to rollback", throwable);
+            }
+        });
 
-                Runnable runnable = new Runnable() {
-                    @Override
-                    public void run() {
-                        CheckedFuture<Void, DTxException.RollbackFailedException> rollExcept = rollback();
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("delete failed and rollback failure"));
+    }
 
-                        Futures.addCallback(rollExcept, new FutureCallback<Void>() {
-                            @Override
-                            public void onSuccess(@Nullable Void aVoid) {
-                                dtxReleaseDevices();
-                                retFuture.setException(new DTxException.EditFailedException("Failed to delete but succeed to rollback"));
-                            }
+    @Override
+    public CheckedFuture<Void, DTxException> editsAndRollbackOnFailure(final List<DTxEdit> edits) {
+        /* Slice the batch per node, keeping the order of the edits of each node */
+        final Map<PerNodeTx, List<DTxEdit>> perNodeEdits = new LinkedHashMap<>();
+
+        for (DTxEdit edit : edits) {
+            Preconditions.checkArgument(this.perNodeTransactionsbyLogicalType.containsKey(edit.getTxProviderType())
+                    && this.perNodeTransactionsbyLogicalType.get(edit.getTxProviderType()).containsKey(edit.getNodeId()),
+                    "Unknown node: %s. Not in transaction", edit.getNodeId());
+            final PerNodeTx transaction = this.perNodeTransactionsbyLogicalType.get(edit.getTxProviderType()).get(edit.getNodeId());
+
+            if (!perNodeEdits.containsKey(transaction)) {
+                perNodeEdits.put(transaction, new ArrayList<DTxEdit>());
+            }
+            perNodeEdits.get(transaction).add(edit);
+        }
 
-                            @Override
-                            public void onFailure(Throwable throwable) {
-                                dtxReleaseDevices();
-                                retFuture.setException(new DTxException.RollbackFailedException(throwable));
-                            }
-                        });
+        final List<ListenableFuture<Void>> perNodeEditFutures = new ArrayList<>(perNodeEdits.size());
+        for (Map.Entry<PerNodeTx, List<DTxEdit>> nodeEdits : perNodeEdits.entrySet()) {
+            perNodeEditFutures.add(nodeEdits.getKey().asyncEdits(nodeEdits.getValue()));
+        }
 
-                    }
-                };
-                new Thread(runnable).start();
+        final SettableFuture<Void> retFuture = SettableFuture.create();
+
+        Futures.addCallback(Futures.allAsList(perNodeEditFutures), new FutureCallback<List<Void>>() {
+            @Override
+            public void onSuccess(@Nullable List<Void> result) {
+                retFuture.set(null);
             }
-        });
 
-        return Futures.makeChecked(retFuture, new Function<Exception, DTxException>() {
-            @Nullable
             @Override
-            public DTxException apply(@Nullable Exception e) {
-                e = (Exception) e.getCause();
-                return e instanceof DTxException ? (DTxException)e : new DTxException("delete failed and rollback failure", e);
+            public void onFailure(Throwable throwable) {
+                rollbackUponEditFailure(retFuture, "Failed to apply edits but succeed to rollback", throwable);
             }
         });
+
+        return Futures.makeChecked(retFuture, DTxFailures.toDTxException("Edits failed and rollback failure"));
     }
 }
-
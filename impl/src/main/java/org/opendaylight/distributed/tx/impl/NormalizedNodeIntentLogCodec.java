@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import org.opendaylight.controller.cluster.datastore.node.utils.stream.NormalizedNodeInputStreamReader;
+import org.opendaylight.controller.cluster.datastore.node.utils.stream.NormalizedNodeOutputStreamWriter;
+import org.opendaylight.distributed.tx.spi.IntentLogCodec;
+import org.opendaylight.distributed.tx.spi.NormalizingPreImageSerializer;
+import org.opendaylight.yangtools.binding.data.codec.api.BindingNormalizedNodeSerializer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+
+/**
+ * Intent log codec writing the binding data and IIDs in the normalized node binary stream format
+ * of the clustered datastore. Binding objects are converted to normalized nodes by the binding serializer
+ * of the controller, so the records can be decoded after a restart.
+ */
+public final class NormalizedNodeIntentLogCodec implements IntentLogCodec, NormalizingPreImageSerializer {
+    private final BindingNormalizedNodeSerializer bindingSerializer;
+
+    public NormalizedNodeIntentLogCodec(@Nonnull final BindingNormalizedNodeSerializer bindingSerializer) {
+        this.bindingSerializer = Preconditions.checkNotNull(bindingSerializer);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] serialize(@Nonnull final InstanceIdentifier<?> id, @Nonnull final DataObject data) throws IOException {
+        return serialize(normalize(id, data));
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("unchecked")
+    public NormalizedNode<?, ?> normalize(@Nonnull final InstanceIdentifier<?> id, @Nonnull final DataObject data)
+            throws IOException {
+        final Map.Entry<YangInstanceIdentifier, NormalizedNode<?, ?>> normalized;
+        try {
+            normalized = bindingSerializer.toNormalizedNode((InstanceIdentifier<DataObject>) id, data);
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to normalize data of " + id, e);
+        }
+        return normalized.getValue();
+    }
+
+    private static byte[] serialize(final NormalizedNode<?, ?> data) throws IOException {
+        final ByteArrayDataOutput output = ByteStreams.newDataOutput();
+        new NormalizedNodeOutputStreamWriter(output).writeNormalizedNode(data);
+        return output.toByteArray();
+    }
+
+    @Nonnull
+    @Override
+    public DataObject deserialize(@Nonnull final InstanceIdentifier<?> id, @Nonnull final byte[] serialized) throws IOException {
+        final NormalizedNode<?, ?> normalized = new NormalizedNodeInputStreamReader(newDataInput(serialized)).readNormalizedNode();
+        final Map.Entry<InstanceIdentifier<?>, DataObject> binding;
+        try {
+            binding = bindingSerializer.fromNormalizedNode(bindingSerializer.toYangInstanceIdentifier(id), normalized);
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to decode data of " + id, e);
+        }
+        if (binding == null) {
+            throw new IOException("No binding representation of data of " + id);
+        }
+        return binding.getValue();
+    }
+
+    @Nonnull
+    @Override
+    public byte[] serializeIdentifier(@Nonnull final InstanceIdentifier<?> id) throws IOException {
+        final YangInstanceIdentifier normalized;
+        try {
+            normalized = bindingSerializer.toYangInstanceIdentifier(id);
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to normalize " + id, e);
+        }
+
+        final ByteArrayDataOutput output = ByteStreams.newDataOutput();
+        new NormalizedNodeOutputStreamWriter(output).writeYangInstanceIdentifier(normalized);
+        return output.toByteArray();
+    }
+
+    @Nonnull
+    @Override
+    public InstanceIdentifier<?> deserializeIdentifier(@Nonnull final byte[] serialized) throws IOException {
+        final YangInstanceIdentifier normalized = new NormalizedNodeInputStreamReader(newDataInput(serialized))
+                .readYangInstanceIdentifier();
+        final InstanceIdentifier<?> id;
+        try {
+            id = bindingSerializer.fromYangInstanceIdentifier(normalized);
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to decode " + normalized, e);
+        }
+        if (id == null) {
+            throw new IOException("No binding representation of " + normalized);
+        }
+        return id;
+    }
+
+    /* Truncated records fail with an EOFException rather than the IllegalStateException of Guava's data input */
+    private static DataInput newDataInput(final byte[] serialized) {
+        return new DataInputStream(new ByteArrayInputStream(serialized));
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Preconditions;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of serialized pre-images. Pre-images are packed into slabs, so the heap only holds a handle
+ * per pre-image and a few buffer objects. Slabs are direct buffers taken from the pool of the provider until its
+ * budget is used up, the journal then spills to regions of a memory-mapped file which are unmapped, and the file
+ * deleted, when the journal is closed. Pre-images larger than a slab are spilled as well.
+ */
+final class OffHeapPreImageStore {
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapPreImageStore.class);
+
+    private final DirectSlabPool slabPool;
+    private final File spillDirectory;
+    /* Slabs and spill regions the handles point to */
+    @GuardedBy("this") private final List<ByteBuffer> slabs = new ArrayList<>();
+    /* Slabs given back to the pool on close */
+    @GuardedBy("this") private final List<ByteBuffer> pooledSlabs = new ArrayList<>();
+    @GuardedBy("this") private ByteBuffer currentSlab = null;
+    /* Mapped regions of the spill file, unmapped on close */
+    @GuardedBy("this") private final List<ByteBuffer> spillRegions = new ArrayList<>();
+    @GuardedBy("this") private File spillFile = null;
+    @GuardedBy("this") private RandomAccessFile spillFileAccess = null;
+    @GuardedBy("this") private long spillSize = 0;
+    @GuardedBy("this") private boolean closed = false;
+
+    /**
+     * Journal with a pool of its own, without any budget
+     */
+    OffHeapPreImageStore() {
+        this(new DirectSlabPool(DirectSlabPool.DEFAULT_SLAB_SIZE, Long.MAX_VALUE),
+                new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param slabPool pool of direct buffers, usually shared by all the journals of a provider
+     * @param spillDirectory directory of the spill file
+     */
+    OffHeapPreImageStore(@Nonnull final DirectSlabPool slabPool, @Nonnull final File spillDirectory) {
+        this.slabPool = Preconditions.checkNotNull(slabPool);
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Copy a serialized pre-image to the journal
+     *
+     * @throws IOException thrown when the journal can't spill to disk
+     */
+    synchronized Handle write(final byte[] serialized) throws IOException {
+        Preconditions.checkState(!closed, "Pre-image store is closed");
+
+        if (currentSlab == null || currentSlab.remaining() < serialized.length) {
+            currentSlab = allocateSlab(serialized.length);
+            slabs.add(currentSlab);
+        }
+
+        final Handle handle = new Handle(slabs.size() - 1, currentSlab.position(), serialized.length);
+        currentSlab.put(serialized);
+        return handle;
+    }
+
+    @GuardedBy("this")
+    private ByteBuffer allocateSlab(final int minSize) throws IOException {
+        if (minSize <= slabPool.getSlabSize()) {
+            final ByteBuffer slab = slabPool.acquire();
+            if (slab != null) {
+                pooledSlabs.add(slab);
+                return slab;
+            }
+        }
+
+        /* A pre-image larger than a slab gets its own region */
+        final int size = Math.max(slabPool.getSlabSize(), minSize);
+        if (spillFileAccess == null) {
+            spillFile = File.createTempFile("dtx-journal", ".bin", spillDirectory);
+            spillFileAccess = new RandomAccessFile(spillFile, "rw");
+            LOG.debug("Direct memory budget of the pre-images used up, spilling to {}", spillFile);
+        }
+        final ByteBuffer region = spillFileAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, spillSize, size);
+        spillSize += size;
+        spillRegions.add(region);
+        return region;
+    }
+
+    /**
+     * Copy a serialized pre-image back to the heap
+     */
+    synchronized byte[] read(final Handle handle) {
+        Preconditions.checkState(!closed, "Pre-image store is closed");
+
+        final ByteBuffer slab = slabs.get(handle.slab).duplicate();
+        slab.position(handle.offset);
+        final byte[] serialized = new byte[handle.length];
+        slab.get(serialized);
+        return serialized;
+    }
+
+    /**
+     * Give the slabs back to the pool, unmap the spill regions and delete the spill file
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        slabPool.release(pooledSlabs);
+        pooledSlabs.clear();
+        slabs.clear();
+        currentSlab = null;
+
+        for (ByteBuffer region : spillRegions) {
+            unmap(region);
+        }
+        spillRegions.clear();
+        if (spillFileAccess != null) {
+            try {
+                spillFileAccess.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close pre-image journal {}", spillFile, e);
+            }
+            if (!spillFile.delete()) {
+                /* Still mapped on some platforms, if a region couldn't be unmapped */
+                spillFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Unmap a region right away instead of when it is collected. There is no public API for it, the cleaner of
+     * the buffer is invoked directly, through the buffer up to Java 8 and through Unsafe since Java 9.
+     * The region must not be accessed anymore.
+     *
+     * @return false if the region is left to the GC
+     */
+    static boolean unmap(final ByteBuffer region) {
+        try {
+            final Method cleanerMethod = region.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(region);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return true;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.trace("No cleaner method on {}, trying Unsafe", region.getClass(), e);
+        }
+
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafeField.get(null), region);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Unable to unmap a region of the pre-image journal, it is unmapped once collected", e);
+            return false;
+        }
+    }
+
+    /**
+     * Location of a serialized pre-image in the journal
+     */
+    static final class Handle {
+        private final int slab;
+        private final int offset;
+        private final int length;
+
+        private Handle(final int slab, final int offset, final int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
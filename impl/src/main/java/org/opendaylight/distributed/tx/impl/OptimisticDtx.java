@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.opendaylight.controller.md.sal.common.api.TransactionStatus;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.OptimisticLockFailedException;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.api.DTx;
+import org.opendaylight.distributed.tx.api.DTxEdit;
+import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.distributed.tx.spi.ExtendedTransactionLock;
+import org.opendaylight.distributed.tx.spi.TransactionLock;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optimistic distributed tx. The edits are applied to an attempt, a distributed tx which doesn't lock
+ * its nodes until it is submitted, and recorded in an edit log. An attempt whose pre-images changed
+ * before its submit, or whose datastore commit conflicted, is dropped and the edit log is replayed
+ * on a new attempt, until the replay budget is spent.
+ */
+final class OptimisticDtx implements DTx {
+    private static final Logger LOG = LoggerFactory.getLogger(OptimisticDtx.class);
+    /* Time an attempt waits for nodes held by other distributed txs before a replay is spent on it */
+    static final long NODES_WAIT_MILLIS = 100;
+
+    private final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap;
+    private final int maxReplays;
+    private final Object identifier;
+    private final ExtendedTransactionLock dtxLock;
+    private final Function<TransactionLock, DtxImpl> attemptFactory;
+    private final Executor replayExecutor;
+    /* Edits in the order they were issued, guarded by the tx */
+    private final List<DTxEdit> editLog = new ArrayList<>();
+    private DtxImpl attempt;
+    private OptimisticLock attemptLock;
+
+    /**
+     * @param nodesMap nodes of the tx
+     * @param maxReplays number of times the tx is replayed on conflict before its submit fails
+     * @param dtxLock lock of the provider the nodes of the attempts are held in
+     * @param attemptFactory opens the distributed tx of an attempt, releasing its nodes through the given lock
+     * @param replayExecutor executor the attempts are replayed and wait for their nodes on. It is shared with
+     *                       other transactions and not owned by the tx.
+     */
+    OptimisticDtx(@Nonnull final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap, final int maxReplays,
+                  @Nonnull final ExtendedTransactionLock dtxLock, @Nonnull final Function<TransactionLock, DtxImpl> attemptFactory,
+                  @Nonnull final Executor replayExecutor) {
+        this.nodesMap = nodesMap;
+        this.maxReplays = maxReplays;
+        this.dtxLock = dtxLock;
+        this.attemptFactory = attemptFactory;
+        this.replayExecutor = replayExecutor;
+        this.identifier = newAttempt(new OptimisticLock(dtxLock, nodesMap)).getIdentifier();
+    }
+
+    private DtxImpl newAttempt(final OptimisticLock lock) {
+        final DtxImpl dtx = attemptFactory.apply(lock);
+        synchronized (this) {
+            attempt = dtx;
+            attemptLock = lock;
+        }
+        return dtx;
+    }
+
+    private synchronized DtxImpl currentAttempt() {
+        return attempt;
+    }
+
+    synchronized void releaseAttempt() {
+        attemptLock.releaseDevices(nodesMap);
+    }
+
+    /**
+     * Record an edit, replayed if the tx conflicts
+     *
+     * @return attempt the edit is applied to
+     */
+    private synchronized DtxImpl record(final DTxEdit edit) {
+        editLog.add(edit);
+        return attempt;
+    }
+
+    @Override
+    public <T extends DataObject> CheckedFuture<Void, DTxException> mergeAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType, final LogicalDatastoreType logicalDatastoreType,
+            final InstanceIdentifier<T> instanceIdentifier, final T t, final InstanceIdentifier<?> nodeId) {
+        return record(DTxEdit.merge(logicalTXProviderType, logicalDatastoreType, instanceIdentifier, t, nodeId))
+                .mergeAndRollbackOnFailure(logicalTXProviderType, logicalDatastoreType, instanceIdentifier, t, nodeId);
+    }
+
+    @Override
+    public <T extends DataObject> CheckedFuture<Void, DTxException> putAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType, final LogicalDatastoreType logicalDatastoreType,
+            final InstanceIdentifier<T> instanceIdentifier, final T t, final InstanceIdentifier<?> nodeId) {
+        return record(DTxEdit.put(logicalTXProviderType, logicalDatastoreType, instanceIdentifier, t, nodeId))
+                .putAndRollbackOnFailure(logicalTXProviderType, logicalDatastoreType, instanceIdentifier, t, nodeId);
+    }
+
+    @Override
+    public CheckedFuture<Void, DTxException> deleteAndRollbackOnFailure(
+            final DTXLogicalTXProviderType logicalTXProviderType, final LogicalDatastoreType logicalDatastoreType,
+            final InstanceIdentifier<?> instanceIdentifier, final InstanceIdentifier<?> nodeId) {
+        return record(DTxEdit.delete(logicalTXProviderType, logicalDatastoreType, instanceIdentifier, nodeId))
+                .deleteAndRollbackOnFailure(logicalTXProviderType, logicalDatastoreType, instanceIdentifier, nodeId);
+    }
+
+    @Override
+    public <T extends DataObject> CheckedFuture<Void, DTxException> mergeAndRollbackOnFailure(
+            final LogicalDatastoreType logicalDatastoreType, final InstanceIdentifier<T> instanceIdentifier,
+            final T t, final InstanceIdentifier<?> nodeId) {
+        return mergeAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, logicalDatastoreType,
+                instanceIdentifier, t, nodeId);
+    }
+
+    @Override
+    public <T extends DataObject> CheckedFuture<Void, DTxException> putAndRollbackOnFailure(
+            final LogicalDatastoreType logicalDatastoreType, final InstanceIdentifier<T> instanceIdentifier,
+            final T t, final InstanceIdentifier<?> nodeId) {
+        return putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, logicalDatastoreType,
+                instanceIdentifier, t, nodeId);
+    }
+
+    @Override
+    public CheckedFuture<Void, DTxException> deleteAndRollbackOnFailure(final LogicalDatastoreType logicalDatastoreType,
+            final InstanceIdentifier<?> instanceIdentifier, final InstanceIdentifier<?> nodeId) {
+        return deleteAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, logicalDatastoreType,
+                instanceIdentifier, nodeId);
+    }
+
+    @Override
+    public CheckedFuture<Void, DTxException> editsAndRollbackOnFailure(final List<DTxEdit> edits) {
+        final DtxImpl dtx;
+        synchronized (this) {
+            editLog.addAll(edits);
+            dtx = attempt;
+        }
+        return dtx.editsAndRollbackOnFailure(edits);
+    }
+
+    @Override public CheckedFuture<Void, TransactionCommitFailedException> submit() {
+        final SettableFuture<Void> submitFuture = SettableFuture.create();
+        final OptimisticLock lock;
+        final DtxImpl dtx;
+        synchronized (this) {
+            lock = attemptLock;
+            dtx = attempt;
+        }
+        submitAttempt(dtx, lock, maxReplays, submitFuture);
+
+        return Futures.makeChecked(submitFuture, DTxFailures.toCommitFailedException());
+    }
+
+    /**
+     * Lock the nodes of an attempt, validate its pre-images and submit it. A conflict at any of these steps
+     * replays the tx.
+     */
+    private void submitAttempt(final DtxImpl dtx, final OptimisticLock lock, final int replaysLeft,
+                               final SettableFuture<Void> submitFuture) {
+        if (lock.acquire()) {
+            submitLockedAttempt(dtx, lock, replaysLeft, submitFuture);
+        } else {
+            awaitNodes(dtx, lock, replaysLeft, submitFuture);
+        }
+    }
+
+    /**
+     * Wait for the nodes held by other distributed txs, up to NODES_WAIT_MILLIS, before a replay is spent
+     * on the attempt: its pre-images are still valid unless the holders change them, which the validation
+     * of the pre-images finds out. The wait blocks, it runs on the replay executor.
+     */
+    private void awaitNodes(final DtxImpl dtx, final OptimisticLock lock, final int replaysLeft,
+                            final SettableFuture<Void> submitFuture) {
+        try {
+            replayExecutor.execute(new Runnable() {
+                @Override public void run() {
+                    boolean acquired;
+                    try {
+                        acquired = lock.acquire(NODES_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        acquired = false;
+                    }
+
+                    if (acquired) {
+                        submitLockedAttempt(dtx, lock, replaysLeft, submitFuture);
+                    } else {
+                        dtx.abort();
+                        replay(replaysLeft, new OptimisticLockFailedException("Nodes are held by other distributed tx"),
+                                submitFuture);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dtx.abort();
+            submitFuture.setException(new TransactionCommitFailedException(
+                    "Unable to wait for the nodes of distributed tx " + identifier, e));
+        }
+    }
+
+    private void submitLockedAttempt(final DtxImpl dtx, final OptimisticLock lock, final int replaysLeft,
+                                     final SettableFuture<Void> submitFuture) {
+        Futures.addCallback(dtx.validatePreImages(), new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                Futures.addCallback(dtx.submit(), new FutureCallback<Void>() {
+                    @Override public void onSuccess(@Nullable final Void result) {
+                        submitFuture.set(null);
+                    }
+
+                    @Override public void onFailure(final Throwable t) {
+                        /* Committed nodes have been rolled back and the nodes released at this point */
+                        if (isConflict(t)) {
+                            replay(replaysLeft, t, submitFuture);
+                        } else {
+                            submitFuture.setException(t);
+                        }
+                    }
+                });
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                dtx.abort();
+                if (isConflict(t)) {
+                    replay(replaysLeft, t, submitFuture);
+                } else {
+                    submitFuture.setException(t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Replay the edit log on a new attempt and submit it, or fail the submit once the replay budget is spent
+     */
+    private void replay(final int replaysLeft, final Throwable conflict, final SettableFuture<Void> submitFuture) {
+        if (replaysLeft == 0) {
+            submitFuture.setException(new OptimisticLockFailedException(
+                    "Distributed tx " + identifier + " still conflicts after " + maxReplays + " replay(s)", conflict));
+            return;
+        }
+
+        LOG.debug("Distributed tx {} conflicts, replaying it", identifier, conflict);
+        try {
+            replayExecutor.execute(new Runnable() {
+                @Override public void run() {
+                    final OptimisticLock lock = new OptimisticLock(dtxLock, nodesMap);
+                    final DtxImpl dtx;
+                    final List<DTxEdit> edits;
+                    try {
+                        dtx = newAttempt(lock);
+                    } catch (RuntimeException e) {
+                        submitFuture.setException(e);
+                        return;
+                    }
+                    synchronized (OptimisticDtx.this) {
+                        edits = new ArrayList<>(editLog);
+                    }
+
+                    Futures.addCallback(dtx.editsAndRollbackOnFailure(edits), new FutureCallback<Void>() {
+                        @Override public void onSuccess(@Nullable final Void result) {
+                            submitAttempt(dtx, lock, replaysLeft - 1, submitFuture);
+                        }
+
+                        @Override public void onFailure(final Throwable t) {
+                            submitFuture.setException(t);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            submitFuture.setException(new TransactionCommitFailedException(
+                    "Unable to replay distributed tx " + identifier, e));
+        }
+    }
+
+    /**
+     * @return true if the tx failed on a conflict and left its nodes unchanged, i.e. it can be replayed
+     */
+    private boolean isConflict(final Throwable t) {
+        boolean conflict = false;
+        for (Throwable cause : Throwables.getCausalChain(t)) {
+            if (cause instanceof DTxException.RollbackFailedException) {
+                return false;
+            }
+            conflict |= cause instanceof OptimisticLockFailedException;
+        }
+        return conflict;
+    }
+
+    @Override public CheckedFuture<Void, DTxException.RollbackFailedException> rollback() {
+        return currentAttempt().rollback();
+    }
+
+    @Override public Object getIdentifier() {
+        return identifier;
+    }
+
+    @Deprecated
+    @Override public boolean cancel() throws DTxException.RollbackFailedException {
+        return currentAttempt().cancel();
+    }
+
+    @Deprecated
+    @Override public ListenableFuture<RpcResult<TransactionStatus>> commit() {
+        throw new UnsupportedOperationException("Deprecated");
+    }
+
+    @Deprecated
+    @Override public void delete(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<?> instanceIdentifier) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public void delete(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<?> instanceIdentifier, final InstanceIdentifier<?> nodeId) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void merge(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void merge(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t, final boolean b) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void merge(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t, final InstanceIdentifier<?> nodeId) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void merge(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t, final boolean b, final InstanceIdentifier<?> nodeId) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void put(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void put(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t, final boolean b) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void put(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t, final InstanceIdentifier<?> nodeId) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void put(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t, final boolean b, final InstanceIdentifier<?> nodeId) {
+        throw new UnsupportedOperationException("Edits of an optimistic tx have to be replayable");
+    }
+
+    /**
+     * Lock of an attempt of an optimistic distributed tx. The nodes are locked only when the attempt is submitted,
+     * releasing the lock releases them only if they were locked.
+     */
+    private static final class OptimisticLock extends TxScopedLock {
+        private final ExtendedTransactionLock dtxLock;
+        private final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap;
+        private boolean acquired = false;
+
+        private OptimisticLock(final ExtendedTransactionLock dtxLock,
+                               final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap) {
+            super(dtxLock);
+            this.dtxLock = dtxLock;
+            this.nodesMap = nodesMap;
+        }
+
+        /**
+         * @return false if any node is held by other distributed tx, or the attempt is already done
+         */
+        boolean acquire() {
+            return acquired(!isReleased() && dtxLock.lockDevices(this, nodesMap, DTxLockMode.EXCLUSIVE));
+        }
+
+        /**
+         * Wait for the nodes held by other distributed txs, the lock isn't held while waiting
+         *
+         * @return false if the timeout elapsed, or the attempt is already done
+         */
+        boolean acquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return acquired(!isReleased() && dtxLock.lockDevices(this, nodesMap, DTxLockMode.EXCLUSIVE, timeout, unit));
+        }
+
+        /**
+         * Nodes locked while the attempt was released are given back right away
+         */
+        private synchronized boolean acquired(final boolean locked) {
+            if (locked && isReleased()) {
+                dtxLock.releaseDevices(this, nodesMap, DTxLockMode.EXCLUSIVE);
+                return false;
+            }
+            acquired = locked;
+            return acquired;
+        }
+
+        @Override protected synchronized void release() {
+            if (acquired) {
+                dtxLock.releaseDevices(this, nodesMap, DTxLockMode.EXCLUSIVE);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.Closeable;
+import org.opendaylight.distributed.tx.spi.DTXReadWriteTransaction;
+import org.opendaylight.distributed.tx.spi.TxCache;
+
+/**
+ * Per-node transaction of a distributed tx: applies the edits of the distributed tx to one node
+ * and caches what the rollback of the node needs.
+ */
+interface PerNodeTx extends TxCache, DTXReadWriteTransaction, Closeable {
+    /**
+     * @return number of pre-images captured so far.
+     */
+    int getSizeOfCache();
+
+    /**
+     * Get a future which is set once all the asynchronous edits issued so far have finished.
+     *
+     * @return ListenableFuture set when there is no active edit left. It never fails.
+     */
+    ListenableFuture<Void> getActiveOperationsDoneFuture();
+
+    /**
+     * Read the pre-images deferred to the snapshot of the node, if any. The cache is iterated once they are read.
+     *
+     * @return future set once the deferred pre-images are read, failing if they can't be read from the snapshot
+     */
+    ListenableFuture<Void> materializePreImages();
+
+    /**
+     * Close the snapshot of the node, if any. The pre-images deferred to it can't be read anymore.
+     */
+    void closeSnapshot();
+}
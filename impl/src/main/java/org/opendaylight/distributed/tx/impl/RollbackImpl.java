@@ -8,20 +8,25 @@
 package org.opendaylight.distributed.tx.impl;
 
 import com.google.common.base.Function;
-import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.CheckedFuture;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
 import org.opendaylight.distributed.tx.api.DTxException;
-import org.opendaylight.distributed.tx.spi.CachedData;
 import org.opendaylight.distributed.tx.spi.Rollback;
 import org.opendaylight.distributed.tx.spi.TxCache;
 import org.opendaylight.yangtools.yang.binding.DataObject;
@@ -34,65 +39,139 @@ public class RollbackImpl implements Rollback {
 
     private static final Logger LOG = LoggerFactory.getLogger(RollbackImpl.class);
 
+    private final ListeningExecutorService executor;
+
+    public RollbackImpl() {
+        this(MoreExecutors.newDirectExecutorService());
+    }
+
+    /**
+     * @param executor executor preparing and submitting the rollback of the nodes concurrently
+     */
+    public RollbackImpl(@Nonnull final ExecutorService executor) {
+        this.executor = MoreExecutors.listeningDecorator(executor);
+    }
+
     @Override public CheckedFuture<Void, DTxException.RollbackFailedException> rollback(
             @Nonnull final Map<InstanceIdentifier<?>, ? extends TxCache> perNodeCachesByType,
             @Nonnull final Map<InstanceIdentifier<?>, ? extends ReadWriteTransaction> perNodeRollbackTxs) {
 
         final List<ListenableFuture<Void>> perNodeRollbackSubmitFutures = Lists.newArrayListWithCapacity(perNodeRollbackTxs.size());
-            for (final Map.Entry<InstanceIdentifier<?>, ? extends TxCache> perNodeCacheEntry : perNodeCachesByType.entrySet()) {
-                InstanceIdentifier<?> nodeId = perNodeCacheEntry.getKey();
-                TxCache perNodeCache = perNodeCacheEntry.getValue();
-
-                final ReadWriteTransaction perNodeRollbackTx = perNodeRollbackTxs.get(nodeId);
-                for (CachedData cachedData : perNodeCache) {
-                    final InstanceIdentifier<DataObject> dataId = (InstanceIdentifier<DataObject>) cachedData.getId();
-
-                    ModifyAction revertAction = getRevertAction(cachedData.getOperation(), cachedData.getData());
-
-                    switch (revertAction) {
-                        case REPLACE: {
-                            try {
-                                perNodeRollbackTx.put(cachedData.getDsType(), dataId, cachedData.getData().get());
-                                break;
-                            } catch (Exception e) {
-                                return Futures.immediateFailedCheckedFuture(new DTxException.RollbackFailedException(String
-                                        .format("Unable to rollback change for node: %s, %s data: %s. Node in unknown state.",
-                                                perNodeCacheEntry.getKey(), revertAction, dataId), e));
-                            }
-                        }
-                        case DELETE: {
-                            try {
-                                perNodeRollbackTx.delete(cachedData.getDsType(), dataId);
-                                break;
-                            } catch (Exception e) {
-                                return Futures.immediateFailedCheckedFuture(new DTxException.RollbackFailedException(String
-                                        .format("Unable to rollback change for node: %s, %s data: %s. Node in unknown state.",
-                                                perNodeCacheEntry.getKey(), revertAction, dataId), e));
-                            }
-                        }
-                        case NONE: {
-                            break;
-                        }
-                        default: {
-                            return Futures.immediateFailedCheckedFuture(new DTxException.RollbackFailedException(
-                                    "Unable to handle rollback for node: " + perNodeCacheEntry.getKey() +
-                                            ", revert action: " + revertAction + ". Unknown operation type"));
+        for (final Map.Entry<InstanceIdentifier<?>, ? extends TxCache> perNodeCacheEntry : perNodeCachesByType.entrySet()) {
+            final InstanceIdentifier<?> nodeId = perNodeCacheEntry.getKey();
+            final TxCache perNodeCache = perNodeCacheEntry.getValue();
+            final ReadWriteTransaction perNodeRollbackTx = perNodeRollbackTxs.get(nodeId);
+
+            final ListenableFuture<Void> perNodeRollbackSubmitFuture = Futures.transform(
+                    materializePreImages(nodeId, perNodeCache), new AsyncFunction<Void, Void>() {
+                        @Override public ListenableFuture<Void> apply(@Nullable final Void input) {
+                            return scheduleRollbackNode(nodeId, perNodeCache, perNodeRollbackTx);
                         }
+                    });
+            perNodeRollbackSubmitFutures.add(perNodeRollbackSubmitFuture);
+            Futures.addCallback(perNodeRollbackSubmitFuture, new LoggingRollbackCallback(nodeId));
+        }
+
+        return aggregateRollbackFutures(perNodeRollbackSubmitFutures);
+    }
+
+    /**
+     * Read the pre-images a per-node transaction deferred to the snapshot of its node, the node is planned once they are read
+     */
+    private static ListenableFuture<Void> materializePreImages(final InstanceIdentifier<?> nodeId, final TxCache perNodeCache) {
+        if (!(perNodeCache instanceof PerNodeTx)) {
+            return Futures.immediateFuture(null);
+        }
+
+        final SettableFuture<Void> materializedFuture = SettableFuture.create();
+        Futures.addCallback(((PerNodeTx) perNodeCache).materializePreImages(), new FutureCallback<Void>() {
+            @Override public void onSuccess(@Nullable final Void result) {
+                materializedFuture.set(null);
+            }
+
+            @Override public void onFailure(final Throwable t) {
+                materializedFuture.setException(new DTxException.RollbackFailedException(
+                        "Unable to read pre-images of node: " + nodeId, t instanceof Exception ? (Exception) t : new Exception(t)));
+            }
+        });
+        return materializedFuture;
+    }
+
+    /**
+     * Plan and submit the rollback of a node on the executor
+     */
+    private ListenableFuture<Void> scheduleRollbackNode(final InstanceIdentifier<?> nodeId, final TxCache perNodeCache,
+                                                        final ReadWriteTransaction perNodeRollbackTx) {
+        try {
+            /* Each node is prepared and submitted on its own, a large cache doesn't delay the other nodes */
+            return Futures.dereference(executor.submit(new Callable<ListenableFuture<Void>>() {
+                @Override public ListenableFuture<Void> call() throws Exception {
+                    return rollbackNode(nodeId, perNodeCache, perNodeRollbackTx);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(new DTxException.RollbackFailedException(
+                    "Unable to schedule rollback for node: " + nodeId, e));
+        }
+    }
+
+    /**
+     * Apply the rollback plan of a node to its rollback transaction and submit it
+     */
+    private static ListenableFuture<Void> rollbackNode(final InstanceIdentifier<?> nodeId, final TxCache perNodeCache,
+                                                       final ReadWriteTransaction perNodeRollbackTx) {
+        final List<RollbackPlanner.Revert> perNodeRollbackPlan;
+        try {
+            perNodeRollbackPlan = RollbackPlanner.plan(perNodeCache);
+        } catch (IllegalStateException e) {
+            /* Unknown operation type */
+            return Futures.immediateFailedCheckedFuture(new DTxException.RollbackFailedException(
+                    "Unable to plan rollback for node: " + nodeId, e));
+        }
+        LOG.trace("Rolling back node: {} with {} reverts", nodeId, perNodeRollbackPlan.size());
+
+        for (RollbackPlanner.Revert revert : perNodeRollbackPlan) {
+            final InstanceIdentifier<DataObject> dataId = (InstanceIdentifier<DataObject>) revert.getId();
+
+            ModifyAction revertAction = revert.getAction();
+
+            switch (revertAction) {
+                case REPLACE: {
+                    try {
+                        perNodeRollbackTx.put(revert.getDsType(), dataId, revert.getData().get());
+                        break;
+                    } catch (Exception e) {
+                        return Futures.immediateFailedCheckedFuture(new DTxException.RollbackFailedException(String
+                                .format("Unable to rollback change for node: %s, %s data: %s. Node in unknown state.",
+                                        nodeId, revertAction, dataId), e));
+                    }
+                }
+                case DELETE: {
+                    try {
+                        perNodeRollbackTx.delete(revert.getDsType(), dataId);
+                        break;
+                    } catch (Exception e) {
+                        return Futures.immediateFailedCheckedFuture(new DTxException.RollbackFailedException(String
+                                .format("Unable to rollback change for node: %s, %s data: %s. Node in unknown state.",
+                                        nodeId, revertAction, dataId), e));
                     }
                 }
-                CheckedFuture<Void, TransactionCommitFailedException> perNodeRollbackSumitFuture = null;
-                try{
-                    perNodeRollbackSumitFuture = perNodeRollbackTx.submit();
-                }catch (Exception submitException){
-                    perNodeRollbackSumitFuture = Futures.immediateFailedCheckedFuture(new TransactionCommitFailedException(
-                            "Rollback submit error occur", submitException));
+                default: {
+                    return Futures.immediateFailedCheckedFuture(new DTxException.RollbackFailedException(
+                            "Unable to handle rollback for node: " + nodeId +
+                                    ", revert action: " + revertAction + ". Unknown operation type"));
                 }
-                perNodeRollbackSubmitFutures.add(perNodeRollbackSumitFuture);
-                Futures.addCallback(perNodeRollbackSumitFuture, new LoggingRollbackCallback(perNodeCacheEntry.getKey()));
             }
-        //}
+        }
 
-        return aggregateRollbackFutures(perNodeRollbackSubmitFutures);
+        CheckedFuture<Void, TransactionCommitFailedException> perNodeRollbackSumitFuture = null;
+        try{
+            perNodeRollbackSumitFuture = perNodeRollbackTx.submit();
+        }catch (Exception submitException){
+            perNodeRollbackSumitFuture = Futures.immediateFailedCheckedFuture(new TransactionCommitFailedException(
+                    "Rollback submit error occur", submitException));
+        }
+        return perNodeRollbackSumitFuture;
     }
 
     private static CheckedFuture<Void, DTxException.RollbackFailedException> aggregateRollbackFutures(
@@ -104,26 +183,7 @@ public class RollbackImpl implements Rollback {
                 }
             });
 
-        return Futures.makeChecked(aggregatedRollbackSubmitFuture, new Function<Exception, DTxException.RollbackFailedException>() {
-            @Nullable @Override public DTxException.RollbackFailedException apply(final Exception input) {
-                return new DTxException.RollbackFailedException("Rollback submit failed", input);
-            }
-        });
-    }
-
-    private static ModifyAction getRevertAction(final ModifyAction operation, final Optional<DataObject> data) {
-        switch (operation) {
-        case MERGE: {
-            return data.isPresent() ? ModifyAction.REPLACE : ModifyAction.DELETE;
-        }
-        case REPLACE: {
-            return data.isPresent() ? ModifyAction.REPLACE : ModifyAction.DELETE;
-        }
-        case DELETE:
-            return data.isPresent() ? ModifyAction.REPLACE : ModifyAction.NONE;
-        }
-
-        throw new IllegalStateException("Unexpected operation: " + operation);
+        return Futures.makeChecked(aggregatedRollbackSubmitFuture, DTxFailures.toRollbackFailedException());
     }
 
     private static final class LoggingRollbackCallback implements FutureCallback<Void> {
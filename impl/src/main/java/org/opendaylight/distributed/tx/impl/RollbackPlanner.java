@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.distributed.tx.spi.CachedData;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.ModifyAction;
+
+/**
+ * Builds the compacted list of reverts rolling back the cached data of one node.
+ * A revert is dropped when it's a no-op or when an ancestor (or the path itself) is restored
+ * or deleted after it, since the later revert overwrites the whole subtree anyway.
+ */
+final class RollbackPlanner {
+
+    private RollbackPlanner() {
+    }
+
+    /**
+     * @param perNodeCache cached data of the node, in the order the reverts have to be applied
+     * @return reverts to apply, in order
+     */
+    static List<Revert> plan(final Iterable<CachedData> perNodeCache) {
+        final List<Revert> reverts = new ArrayList<>();
+        for (CachedData cachedData : perNodeCache) {
+            /* Only the presence of the pre-image is checked, it's loaded when the revert is applied */
+            final ModifyAction revertAction = getRevertAction(cachedData.getOperation(), cachedData.isDataPresent());
+            if (revertAction != ModifyAction.NONE) {
+                reverts.add(new Revert(cachedData, revertAction));
+            }
+        }
+
+        /* Walk the reverts from the last applied one, marking the subtrees they overwrite */
+        final Map<LogicalDatastoreType, PathNode> roots = new HashMap<>();
+        final List<Revert> plan = new ArrayList<>(reverts.size());
+        for (Revert revert : Lists.reverse(reverts)) {
+            if (!roots.containsKey(revert.getDsType())) {
+                roots.put(revert.getDsType(), new PathNode());
+            }
+            if (roots.get(revert.getDsType()).cover(revert.getId().getPathArguments())) {
+                plan.add(revert);
+            }
+        }
+
+        return Lists.reverse(plan);
+    }
+
+    private static ModifyAction getRevertAction(final ModifyAction operation, final boolean dataPresent) {
+        switch (operation) {
+        case MERGE: {
+            return dataPresent ? ModifyAction.REPLACE : ModifyAction.DELETE;
+        }
+        case REPLACE: {
+            return dataPresent ? ModifyAction.REPLACE : ModifyAction.DELETE;
+        }
+        case DELETE:
+            return dataPresent ? ModifyAction.REPLACE : ModifyAction.NONE;
+        }
+
+        throw new IllegalStateException("Unexpected operation: " + operation);
+    }
+
+    /**
+     * Node of the path tree of one datastore
+     */
+    private static final class PathNode {
+        private final Map<InstanceIdentifier.PathArgument, PathNode> children = new HashMap<>();
+        private boolean covered = false;
+
+        /**
+         * Mark the subtree of the path as overwritten
+         *
+         * @return false if the path was already overwritten by itself or an ancestor
+         */
+        boolean cover(final Iterable<InstanceIdentifier.PathArgument> path) {
+            PathNode current = this;
+            for (InstanceIdentifier.PathArgument pathArgument : path) {
+                if (current.covered) {
+                    return false;
+                }
+                if (!current.children.containsKey(pathArgument)) {
+                    current.children.put(pathArgument, new PathNode());
+                }
+                current = current.children.get(pathArgument);
+            }
+            if (current.covered) {
+                return false;
+            }
+            current.covered = true;
+            /* Descendants are overwritten by this path, no need to keep them */
+            current.children.clear();
+            return true;
+        }
+    }
+
+    /**
+     * Single revert of the rollback plan
+     */
+    static final class Revert {
+        private final CachedData cachedData;
+        private final ModifyAction action;
+
+        Revert(final CachedData cachedData, final ModifyAction action) {
+            this.cachedData = cachedData;
+            this.action = action;
+        }
+
+        LogicalDatastoreType getDsType() {
+            return cachedData.getDsType();
+        }
+
+        InstanceIdentifier<?> getId() {
+            return cachedData.getId();
+        }
+
+        /**
+         * @return REPLACE or DELETE
+         */
+        ModifyAction getAction() {
+            return action;
+        }
+
+        /**
+         * @return pre-image to restore, loaded by the call
+         */
+        Optional<DataObject> getData() {
+            return cachedData.getData();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Subtrees of a device locked by distributed transactions. Two subtrees conflict when one path is a prefix
+ * of the other, the subtrees of one transaction never conflict with each other.
+ */
+final class SubtreeLockTable {
+    private final PathNode root = new PathNode();
+
+    /**
+     * Lock subtrees for a transaction, all or nothing
+     *
+     * @return false if any of the subtrees overlaps a subtree of another transaction
+     */
+    synchronized boolean lock(final Object owner, final Collection<InstanceIdentifier<?>> subtrees) {
+        for (InstanceIdentifier<?> subtree : subtrees) {
+            if (conflicts(owner, subtree)) {
+                return false;
+            }
+        }
+
+        for (InstanceIdentifier<?> subtree : subtrees) {
+            PathNode current = root;
+            for (InstanceIdentifier.PathArgument pathArgument : subtree.getPathArguments()) {
+                current = current.getOrCreateChild(pathArgument);
+            }
+            current.owner = owner;
+        }
+        return true;
+    }
+
+    private boolean conflicts(final Object owner, final InstanceIdentifier<?> subtree) {
+        PathNode current = root;
+        for (InstanceIdentifier.PathArgument pathArgument : subtree.getPathArguments()) {
+            /* Ancestor locked by another transaction */
+            if (current.isLockedByOther(owner)) {
+                return true;
+            }
+            current = current.children.get(pathArgument);
+            if (current == null) {
+                return false;
+            }
+        }
+
+        /* The path itself or a descendant locked by another transaction */
+        final Deque<PathNode> subtreeNodes = new ArrayDeque<>();
+        subtreeNodes.push(current);
+        while (!subtreeNodes.isEmpty()) {
+            final PathNode node = subtreeNodes.pop();
+            if (node.isLockedByOther(owner)) {
+                return true;
+            }
+            for (PathNode child : node.children.values()) {
+                subtreeNodes.push(child);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Release subtrees of a transaction, subtrees it doesn't hold are ignored
+     */
+    synchronized void release(final Object owner, final Collection<InstanceIdentifier<?>> subtrees) {
+        for (InstanceIdentifier<?> subtree : subtrees) {
+            final List<PathNode> path = new ArrayList<>();
+            final List<InstanceIdentifier.PathArgument> pathArguments = new ArrayList<>();
+            PathNode current = root;
+            for (InstanceIdentifier.PathArgument pathArgument : subtree.getPathArguments()) {
+                path.add(current);
+                pathArguments.add(pathArgument);
+                current = current.children.get(pathArgument);
+                if (current == null) {
+                    break;
+                }
+            }
+            if (current == null || current.owner != owner) {
+                continue;
+            }
+
+            current.owner = null;
+            /* Prune the nodes left without lock and children, from the released one up */
+            for (int i = path.size() - 1; i >= 0 && current.owner == null && current.children.isEmpty(); i--) {
+                path.get(i).children.remove(pathArguments.get(i));
+                current = path.get(i);
+            }
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    private static final class PathNode {
+        private final Map<InstanceIdentifier.PathArgument, PathNode> children = new HashMap<>();
+        private Object owner = null;
+
+        PathNode getOrCreateChild(final InstanceIdentifier.PathArgument pathArgument) {
+            if (!children.containsKey(pathArgument)) {
+                children.put(pathArgument, new PathNode());
+            }
+            return children.get(pathArgument);
+        }
+
+        boolean isLockedByOther(final Object txOwner) {
+            return owner != null && owner != txOwner;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.spi.TransactionLock;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Lock of a single distributed tx, handed over to the tx once its nodes are held. The nodes are released once,
+ * whatever the number of times the tx releases them.
+ */
+abstract class TxScopedLock implements TransactionLock {
+    private final TransactionLock dtxLock;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    /**
+     * @param dtxLock lock of the provider the nodes are held in
+     */
+    TxScopedLock(@Nonnull final TransactionLock dtxLock) {
+        this.dtxLock = dtxLock;
+    }
+
+    /**
+     * Release the nodes held by the tx
+     */
+    protected abstract void release();
+
+    @Override public boolean isLocked(final DTXLogicalTXProviderType type, final InstanceIdentifier<?> device) {
+        return dtxLock.isLocked(type, device);
+    }
+
+    @Override public boolean lockDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet) {
+        throw new UnsupportedOperationException("Nodes are locked when the distributed tx is created");
+    }
+
+    @Override public boolean lockDevices(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap) {
+        throw new UnsupportedOperationException("Nodes are locked when the distributed tx is created");
+    }
+
+    @Override public void releaseDevices(final DTXLogicalTXProviderType type, final Set<InstanceIdentifier<?>> deviceSet) {
+        releaseDevices(Collections.singletonMap(type, deviceSet));
+    }
+
+    @Override public void releaseDevices(final Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap) {
+        if (released.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    protected final boolean isReleased() {
+        return released.get();
+    }
+}
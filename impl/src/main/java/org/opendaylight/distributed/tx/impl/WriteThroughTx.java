@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
+import org.opendaylight.controller.md.sal.common.api.TransactionStatus;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.distributed.tx.api.DTxEdit;
+import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.spi.CachedData;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+
+/**
+ * Per-node transaction of a distributed tx without rollback. The edits are applied to the delegate
+ * on the calling thread, no pre-image is read nor cached, so the cache is always empty.
+ */
+final class WriteThroughTx implements PerNodeTx {
+    private final ReadWriteTransaction delegate;
+
+    WriteThroughTx(@Nonnull final ReadWriteTransaction delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override public Iterator<CachedData> iterator() {
+        return Collections.emptyIterator();
+    }
+
+    @Override public int getSizeOfCache() {
+        return 0;
+    }
+
+    /**
+     * The edits are applied on the calling thread, none is ever outstanding.
+     */
+    @Override public ListenableFuture<Void> getActiveOperationsDoneFuture() {
+        return Futures.immediateFuture(null);
+    }
+
+    @Override public ListenableFuture<Void> materializePreImages() {
+        return Futures.immediateFuture(null);
+    }
+
+    @Override public void closeSnapshot() {
+    }
+
+    @Override public <T extends DataObject> CheckedFuture<Optional<T>, ReadFailedException> read(
+        final LogicalDatastoreType logicalDatastoreType, final InstanceIdentifier<T> instanceIdentifier) {
+        return delegate.read(logicalDatastoreType, instanceIdentifier);
+    }
+
+    @Override public Object getIdentifier() {
+        return delegate.getIdentifier();
+    }
+
+    @Override public CheckedFuture<Void, DTxException> asyncDelete(final LogicalDatastoreType logicalDatastoreType,
+                                                                    final InstanceIdentifier<?> instanceIdentifier) {
+        try {
+            delegate.delete(logicalDatastoreType, instanceIdentifier);
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedCheckedFuture(new DTxException.EditFailedException("delete failure", e));
+        }
+        return Futures.immediateCheckedFuture(null);
+    }
+
+    @Override public <T extends DataObject> CheckedFuture<Void, DTxException> asyncMerge(
+            final LogicalDatastoreType logicalDatastoreType, final InstanceIdentifier<T> instanceIdentifier, final T t) {
+        try {
+            delegate.merge(logicalDatastoreType, instanceIdentifier, t);
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedCheckedFuture(new DTxException.EditFailedException("merge failure", e));
+        }
+        return Futures.immediateCheckedFuture(null);
+    }
+
+    @Override public <T extends DataObject> CheckedFuture<Void, DTxException> asyncPut(
+            final LogicalDatastoreType logicalDatastoreType, final InstanceIdentifier<T> instanceIdentifier, final T t) {
+        try {
+            delegate.put(logicalDatastoreType, instanceIdentifier, t);
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedCheckedFuture(new DTxException.EditFailedException("put failure", e));
+        }
+        return Futures.immediateCheckedFuture(null);
+    }
+
+    /**
+     * Apply a batch of edits in order. The edits preceding a failed one stay applied.
+     */
+    @Override public CheckedFuture<Void, DTxException> asyncEdits(final List<DTxEdit> edits) {
+        try {
+            for (DTxEdit edit : edits) {
+                CachingReadWriteTx.applyEdit(delegate, edit);
+            }
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedCheckedFuture(new DTxException.EditFailedException("batch edit failure", e));
+        }
+        return Futures.immediateCheckedFuture(null);
+    }
+
+    @Override public void delete(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<?> instanceIdentifier) {
+        delegate.delete(logicalDatastoreType, instanceIdentifier);
+    }
+
+    @Override public <T extends DataObject> void merge(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t) {
+        delegate.merge(logicalDatastoreType, instanceIdentifier, t);
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void merge(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t, final boolean createMissingParents) {
+        delegate.merge(logicalDatastoreType, instanceIdentifier, t, createMissingParents);
+    }
+
+    @Override public <T extends DataObject> void put(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t) {
+        delegate.put(logicalDatastoreType, instanceIdentifier, t);
+    }
+
+    @Deprecated
+    @Override public <T extends DataObject> void put(final LogicalDatastoreType logicalDatastoreType,
+        final InstanceIdentifier<T> instanceIdentifier, final T t, final boolean ensureParents) {
+        delegate.put(logicalDatastoreType, instanceIdentifier, t, ensureParents);
+    }
+
+    @Override public boolean cancel() {
+        return delegate.cancel();
+    }
+
+    @Override public CheckedFuture<Void, TransactionCommitFailedException> submit() {
+        return delegate.submit();
+    }
+
+    @Deprecated
+    @Override public ListenableFuture<RpcResult<TransactionStatus>> commit() {
+        return delegate.commit();
+    }
+
+    @Override public void close() {
+        cancel();
+    }
+}
@@ -1,6 +1,12 @@
 package org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.distributed.tx.impl.rev141210;
 
+import java.io.File;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.opendaylight.controller.config.api.JmxAttributeValidationException;
 import org.opendaylight.distributed.tx.impl.DTXProviderService;
+import org.opendaylight.distributed.tx.impl.NormalizedNodeIntentLogCodec;
+import org.opendaylight.distributed.tx.spi.PreImageSerializer;
 
 public class DistributedTxImplModule extends org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.distributed.tx.impl.rev141210.AbstractDistributedTxImplModule {
     public DistributedTxImplModule(org.opendaylight.controller.config.api.ModuleIdentifier identifier, org.opendaylight.controller.config.api.DependencyResolver dependencyResolver) {
@@ -13,11 +19,38 @@ public class DistributedTxImplModule extends org.opendaylight.yang.gen.v1.urn.op
 
     @Override
     public void customValidation() {
-        // add custom validation form module attributes here.
+        JmxAttributeValidationException.checkCondition(getEditExecutorPoolSize() > 0,
+                "must be positive", editExecutorPoolSizeJmxAttribute);
+        JmxAttributeValidationException.checkCondition(getEditExecutorQueueDepth() > 0
+                && getEditExecutorQueueDepth() <= Integer.MAX_VALUE, "must be a positive int", editExecutorQueueDepthJmxAttribute);
+        JmxAttributeValidationException.checkNotNull(getEditExecutorRejectionPolicy(),
+                "is not set", editExecutorRejectionPolicyJmxAttribute);
+        JmxAttributeValidationException.checkCondition(getPreImageMemoryThreshold().signum() > 0
+                && getPreImageMemoryThreshold().bitLength() < Long.SIZE, "must be a positive long", preImageMemoryThresholdJmxAttribute);
+        JmxAttributeValidationException.checkCondition(getIntentLogFile() == null || getBindingNormalizedNodeSerializer() != null,
+                "is required by the intent log", bindingNormalizedNodeSerializerJmxAttribute);
     }
 
     @Override
     public java.lang.AutoCloseable createInstance() {
-        return new DTXProviderService(getTxProviderDependency(), getDataStoreTxProviderDependency());
+        if (getBindingNormalizedNodeSerializer() == null) {
+            return new DTXProviderService(getTxProviderDependency(), getDataStoreTxProviderDependency(),
+                    getEditExecutorPoolSize(), getEditExecutorQueueDepth().intValue(), getEditRejectionHandler(), getSubmitEarlyAbort());
+        }
+
+        final NormalizedNodeIntentLogCodec codec = new NormalizedNodeIntentLogCodec(getBindingNormalizedNodeSerializerDependency());
+        if (getIntentLogFile() == null) {
+            return new DTXProviderService(getTxProviderDependency(), getDataStoreTxProviderDependency(),
+                    getEditExecutorPoolSize(), getEditExecutorQueueDepth().intValue(), getEditRejectionHandler(), getSubmitEarlyAbort(),
+                    (PreImageSerializer) codec, getPreImageMemoryThreshold().longValue());
+        }
+        return new DTXProviderService(getTxProviderDependency(), getDataStoreTxProviderDependency(),
+                getEditExecutorPoolSize(), getEditExecutorQueueDepth().intValue(), getEditRejectionHandler(), getSubmitEarlyAbort(),
+                codec, getPreImageMemoryThreshold().longValue(), new File(getIntentLogFile()), getIntentLogGroupCommitWindow());
+    }
+
+    private RejectedExecutionHandler getEditRejectionHandler() {
+        return getEditExecutorRejectionPolicy() == RejectionPolicy.Abort ?
+                new ThreadPoolExecutor.AbortPolicy() : new ThreadPoolExecutor.CallerRunsPolicy();
     }
 }
@@ -8,14 +8,30 @@
 package org.opendaylight.distributed.tx.impl;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.opendaylight.controller.md.sal.binding.api.ReadOnlyTransaction;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.api.DTxEdit;
 import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.spi.CachedData;
+import org.opendaylight.distributed.tx.spi.PreImageSerializer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import static org.junit.Assert.fail;
 
@@ -97,7 +113,8 @@ public class CachingReadWriteTxTest {
             }
         }
 
-        Assert.assertEquals("Cache size is wrong", cacheRWTx.getSizeOfCache(), numberOfObjs);
+        /* Only the first edit of the path caches its pre-image */
+        Assert.assertEquals("Cache size is wrong", 1, cacheRWTx.getSizeOfCache());
         Assert.assertEquals("Data size is wrong", expectedDataSizeInTx, testTx.getTxDataSizeByIid(dataobjIid));
     }
 
@@ -144,7 +161,7 @@ public class CachingReadWriteTxTest {
             }
         }
 
-        Assert.assertEquals("Cache size is wrong", numberOfObjs, cacheRWTx.getSizeOfCache());
+        Assert.assertEquals("Cache size is wrong", 1, cacheRWTx.getSizeOfCache());
         Assert.assertEquals("Data size is wrong", expectedDataSizeInTx, testTx.getTxDataSizeByIid(dataobjIid));
     }
 
@@ -166,7 +183,7 @@ public class CachingReadWriteTxTest {
             }
         }
 
-        Assert.assertEquals("Cache size is wrong", numberOfObjs, cacheRWTx.getSizeOfCache());
+        Assert.assertEquals("Cache size is wrong", 1, cacheRWTx.getSizeOfCache());
         Assert.assertEquals("Data size is wrong", expectedDataSizeInTx, testTx.getTxDataSizeByIid(dataobjIid));
     }
 
@@ -219,7 +236,7 @@ public class CachingReadWriteTxTest {
             }
         }
 
-        Assert.assertEquals("Cache size is wrong", numberOfObjs, cacheRWTx.getSizeOfCache());
+        Assert.assertEquals("Cache size is wrong", 1, cacheRWTx.getSizeOfCache());
         Assert.assertEquals("Data size is wrong", expectedDataSizeInTx, testTx.getTxDataSizeByIid(dataobjIid) );
     }
 
@@ -289,6 +306,214 @@ public class CachingReadWriteTxTest {
         Assert.assertEquals("Data size is wrong", expectedDataSizeInTx, testTx.getTxDataSizeByIid(dataobjIid));
     }
 
+    /**
+     * Test getActiveOperationsDoneFuture() is set once all the asyncPut() have finished
+     */
+    @Test
+    public void testActiveOperationsDoneFuture() {
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx);
+        int numberOfObjs = (int)(Math.random() * 10) + 1;
+
+        for(int i = 0; i < numberOfObjs; i++){
+            cacheRWTx.asyncPut(LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj());
+        }
+
+        try{
+            cacheRWTx.getActiveOperationsDoneFuture().get();
+        }catch (Exception e)
+        {
+            fail("Get unexpected exception from getActiveOperationsDoneFuture()");
+        }
+
+        Assert.assertEquals("Cache size is wrong", 1, cacheRWTx.getSizeOfCache());
+        Assert.assertTrue("Future of idle cache isn't done", cacheRWTx.getActiveOperationsDoneFuture().isDone());
+    }
+
+    /**
+     * Test asyncPut() with an edit executor rejecting the edit
+     */
+    @Test
+    public void testAsyncPutWithRejectedEdit() {
+        ExecutorService editExecutor = Executors.newSingleThreadExecutor();
+        editExecutor.shutdown();
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx, editExecutor);
+
+        CheckedFuture<Void, DTxException> cf = cacheRWTx.asyncPut(LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj());
+        try {
+            cf.checkedGet();
+            fail("Can't get exception from asyncPut()");
+        } catch (Exception e) {
+            Assert.assertTrue("Can't get EditFailedException from asyncPut()", e instanceof DTxException.EditFailedException);
+        }
+
+        Assert.assertTrue("Rejected edit is still active", cacheRWTx.getActiveOperationsDoneFuture().isDone());
+        Assert.assertEquals("Data size is wrong", 0, testTx.getTxDataSizeByIid(dataobjIid));
+    }
+
+    /**
+     * Test asyncEdits() with successful tx provider put() and merge()
+     */
+    @Test
+    public void testAsyncEdits() {
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx);
+        int expectedDataSizeInTx = 1, expectedCacheDataSize = 1;
+
+        CheckedFuture<Void, DTxException> cf = cacheRWTx.asyncEdits(Lists.newArrayList(
+                DTxEdit.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj(), dataobjIid),
+                DTxEdit.merge(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj(), dataobjIid)));
+        try{
+            cf.checkedGet();
+        }catch (Exception e)
+        {
+            fail("Get unexpected exception from asyncEdits()");
+        }
+
+        Assert.assertEquals("Cache size is wrong", expectedCacheDataSize, cacheRWTx.getSizeOfCache());
+        Assert.assertEquals("Data size is wrong", expectedDataSizeInTx, testTx.getTxDataSizeByIid(dataobjIid));
+    }
+
+    /**
+     * Test asyncEdits() with failed tx provider read()
+     */
+    @Test
+    public void testAsyncEditsReadFail() {
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx);
+        int expectedDataSizeInTx = 0, expectedCacheDataSize = 0;
+        testTx.setReadExceptionByIid(dataobjIid, true);
+
+        CheckedFuture<Void, DTxException> cf = cacheRWTx.asyncEdits(Lists.newArrayList(
+                DTxEdit.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj(), dataobjIid)));
+        try{
+            cf.checkedGet();
+            fail("Can't get exception from asyncEdits()");
+        }catch (Exception e)
+        {
+            Assert.assertTrue("Can't get ReadFailedException from asyncEdits()", e instanceof DTxException.ReadFailedException);
+        }
+
+        Assert.assertEquals("Cache size is wrong", expectedCacheDataSize, cacheRWTx.getSizeOfCache());
+        Assert.assertEquals("Data size is wrong", expectedDataSizeInTx, testTx.getTxDataSizeByIid(dataobjIid));
+    }
+
+    /**
+     * Test asyncEdits() caches the pre-images supplied by the edits without reading them
+     */
+    @Test
+    public void testAsyncEditsWithKnownPreImages() {
+        InstanceIdentifier<DTXTestTransaction.myDataObj> newIid = InstanceIdentifier.create(DTXTestTransaction.myDataObj.class)
+                .child(DTXTestTransaction.myDataObj.class);
+        testTx.addInstanceIdentifiers(newIid);
+        testTx.setReadExceptionByIid(dataobjIid, true);
+        testTx.setReadExceptionByIid(newIid, true);
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx);
+        DTXTestTransaction.myDataObj preImage = new DTXTestTransaction.myDataObj();
+
+        CheckedFuture<Void, DTxException> cf = cacheRWTx.asyncEdits(Lists.newArrayList(
+                DTxEdit.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj(), dataobjIid)
+                        .withPreImage(preImage),
+                DTxEdit.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, newIid, new DTXTestTransaction.myDataObj(), dataobjIid)
+                        .expectingAbsent()));
+        try{
+            cf.checkedGet();
+        }catch (Exception e)
+        {
+            fail("Get unexpected exception from asyncEdits()");
+        }
+
+        List<CachedData> cachedData = Lists.newArrayList(cacheRWTx);
+        Assert.assertEquals("Cache size is wrong", 2, cachedData.size());
+        Assert.assertEquals("Wrong order of pre-images", newIid, cachedData.get(0).getId());
+        Assert.assertFalse("Pre-image of a created data is present", cachedData.get(0).isDataPresent());
+        Assert.assertSame("Wrong pre-image", preImage, cachedData.get(1).getData().get());
+    }
+
+    /**
+     * Snapshot of a node backed by a test transaction, counting its reads
+     */
+    private static class TestSnapshot implements ReadOnlyTransaction {
+        final DTXTestTransaction snapshotTx = new DTXTestTransaction();
+        int reads = 0;
+        boolean closed = false;
+
+        @Override
+        public <T extends DataObject> CheckedFuture<Optional<T>, ReadFailedException> read(LogicalDatastoreType logicalDatastoreType,
+                                                                                            InstanceIdentifier<T> instanceIdentifier) {
+            reads++;
+            return snapshotTx.read(logicalDatastoreType, instanceIdentifier);
+        }
+
+        @Override
+        public Object getIdentifier() {
+            return snapshotTx.getIdentifier();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Test pre-images of a cache with a snapshot are read from the snapshot only when they are materialized,
+     * the cache isn't iterated before
+     */
+    @Test
+    public void testSnapshotPreImagesAreReadOnMaterialization() throws Exception {
+        TestSnapshot snapshot = new TestSnapshot();
+        snapshot.snapshotTx.addInstanceIdentifiers(dataobjIid);
+        snapshot.snapshotTx.createObjForIdentifier(dataobjIid);
+        testTx.setReadExceptionByIid(dataobjIid, true);
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx, MoreExecutors.newDirectExecutorService(), snapshot);
+
+        CheckedFuture<Void, DTxException> cf = cacheRWTx.asyncPut(LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj());
+        try{
+            cf.checkedGet();
+        }catch (Exception e)
+        {
+            fail("Get unexpected exception from asyncPut()");
+        }
+        Assert.assertEquals("Cache size is wrong", 1, cacheRWTx.getSizeOfCache());
+        Assert.assertEquals("Pre-image read before it is materialized", 0, snapshot.reads);
+        try {
+            cacheRWTx.iterator();
+            fail("Get no exception iterating pre-images not read yet");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        cacheRWTx.materializePreImages().get(10, TimeUnit.SECONDS);
+        List<CachedData> cachedData = Lists.newArrayList(cacheRWTx);
+        Assert.assertEquals("Cache size is wrong", 1, cachedData.size());
+        Assert.assertTrue("Pre-image isn't read from the snapshot", cachedData.get(0).isDataPresent());
+        Assert.assertEquals("Pre-image isn't read once", 1, snapshot.reads);
+
+        cacheRWTx.materializePreImages().get(10, TimeUnit.SECONDS);
+        Lists.newArrayList(cacheRWTx);
+        Assert.assertEquals("Pre-image is read again", 1, snapshot.reads);
+
+        cacheRWTx.closeSnapshot();
+        Assert.assertTrue("Snapshot isn't closed", snapshot.closed);
+    }
+
+    /**
+     * Test a pre-image which can't be read from the snapshot fails the materialization instead of the iteration
+     */
+    @Test
+    public void testSnapshotReadFailureFailsMaterialization() throws Exception {
+        TestSnapshot snapshot = new TestSnapshot();
+        snapshot.snapshotTx.addInstanceIdentifiers(dataobjIid);
+        snapshot.snapshotTx.setReadExceptionByIid(dataobjIid, true);
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx, MoreExecutors.newDirectExecutorService(), snapshot);
+
+        cacheRWTx.asyncPut(LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj()).checkedGet();
+        try {
+            cacheRWTx.materializePreImages().get(10, TimeUnit.SECONDS);
+            fail("Get no exception materializing a pre-image which can't be read");
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+
     /**
      * Test submit() with successful tx provider submit()
      */
@@ -321,4 +546,77 @@ public class CachingReadWriteTxTest {
             Assert.assertTrue("Can't get the TransactionCommitFailException from submit()", e instanceof TransactionCommitFailedException);
         }
     }
+
+    /**
+     * Serializer keeping the data objects in a list, the serialized form is the index in the list
+     */
+    private static class TestPreImageSerializer implements PreImageSerializer {
+        final List<DataObject> objects = Lists.newArrayList();
+        int numOfDeserializations = 0;
+
+        @Nonnull @Override
+        public byte[] serialize(@Nonnull InstanceIdentifier<?> id, @Nonnull DataObject data) throws IOException {
+            objects.add(data);
+            return ByteBuffer.allocate(4).putInt(objects.size() - 1).array();
+        }
+
+        @Nonnull @Override
+        public DataObject deserialize(@Nonnull InstanceIdentifier<?> id, @Nonnull byte[] serialized) throws IOException {
+            numOfDeserializations++;
+            return objects.get(ByteBuffer.wrap(serialized).getInt());
+        }
+    }
+
+    /**
+     * Test asyncPut() keeping the pre-image off-heap, it's only decoded when accessed
+     */
+    @Test
+    public void testAsyncPutWithOffHeapPreImage() {
+        TestPreImageSerializer serializer = new TestPreImageSerializer();
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx, MoreExecutors.newDirectExecutorService(), serializer);
+        testTx.createObjForIdentifier(dataobjIid);
+
+        CheckedFuture<Void, DTxException> cf = cacheRWTx.asyncPut(LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj());
+        try {
+            cf.checkedGet();
+        } catch (Exception e) {
+            fail("Get unexpected exception from asyncPut()");
+        }
+
+        Assert.assertEquals("Pre-image isn't serialized", 1, serializer.objects.size());
+        Assert.assertEquals("Pre-image is decoded before rollback", 0, serializer.numOfDeserializations);
+
+        CachedData cachedData = cacheRWTx.iterator().next();
+        Assert.assertTrue("Pre-image is missing", cachedData.isDataPresent());
+        Assert.assertEquals("Pre-image is decoded before rollback", 0, serializer.numOfDeserializations);
+        Assert.assertSame("Wrong pre-image", serializer.objects.get(0), cachedData.getData().get());
+        Assert.assertEquals("Pre-image isn't decoded", 1, serializer.numOfDeserializations);
+    }
+
+    /**
+     * Test asyncPut() keeps the pre-image on the heap when direct memory is exhausted
+     */
+    @Test
+    public void testAsyncPutWithOffHeapMemoryExhausted() {
+        TestPreImageSerializer serializer = new TestPreImageSerializer() {
+            @Nonnull @Override
+            public byte[] serialize(@Nonnull InstanceIdentifier<?> id, @Nonnull DataObject data) throws IOException {
+                throw new OutOfMemoryError("Direct buffer memory");
+            }
+        };
+        CachingReadWriteTx cacheRWTx = new CachingReadWriteTx(testTx, MoreExecutors.newDirectExecutorService(), serializer);
+        testTx.createObjForIdentifier(dataobjIid);
+
+        CheckedFuture<Void, DTxException> cf = cacheRWTx.asyncPut(LogicalDatastoreType.OPERATIONAL, dataobjIid, new DTXTestTransaction.myDataObj());
+        try {
+            cf.checkedGet();
+        } catch (Exception e) {
+            fail("Get unexpected exception from asyncPut()");
+        }
+
+        Assert.assertTrue("Edit is still active", cacheRWTx.getActiveOperationsDoneFuture().isDone());
+        CachedData cachedData = cacheRWTx.iterator().next();
+        Assert.assertTrue("Pre-image is missing", cachedData.isDataPresent());
+        Assert.assertEquals("Pre-image isn't kept on the heap", 0, serializer.numOfDeserializations);
+    }
 }
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.md.sal.binding.api.ReadTransaction;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
+import org.opendaylight.yangtools.yang.binding.DataContainer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.Identifiable;
+import org.opendaylight.yangtools.yang.binding.Identifier;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import static org.junit.Assert.fail;
+
+public class CoalescingPreImageReaderTest {
+    InstanceIdentifier<Parent> parentIid = InstanceIdentifier.create(Parent.class);
+    InstanceIdentifier<ChildA> childAIid = parentIid.child(ChildA.class);
+    InstanceIdentifier<ChildB> childBIid = parentIid.child(ChildB.class);
+    InstanceIdentifier<Other> otherIid = InstanceIdentifier.create(Other.class);
+    TestReadTransaction testTx;
+
+    public static class Parent implements DataObject {
+        private final ChildA childA = new ChildA();
+
+        public ChildA getChildA() {
+            return childA;
+        }
+
+        public ChildB getChildB() {
+            return null;
+        }
+
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return Parent.class;
+        }
+    }
+
+    public static class ChildA implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return ChildA.class;
+        }
+    }
+
+    public static class ChildB implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return ChildB.class;
+        }
+    }
+
+    /**
+     * Choice of the parent, a data container but not a data object
+     */
+    public interface Choice extends DataContainer {
+    }
+
+    public static class ChoiceParent implements DataObject {
+        private final CaseA selectedCase = new CaseA();
+
+        public Choice getChoice() {
+            return selectedCase;
+        }
+
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return ChoiceParent.class;
+        }
+    }
+
+    public static class CaseA implements DataObject, Choice {
+        private final ChildA childA = new ChildA();
+
+        public ChildA getChildA() {
+            return childA;
+        }
+
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return CaseA.class;
+        }
+    }
+
+    public static class ListItem implements DataObject, Identifiable<ListItemKey> {
+        private final ListItemKey key;
+
+        public ListItem(ListItemKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public ListItemKey getKey() {
+            return key;
+        }
+
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return ListItem.class;
+        }
+    }
+
+    public static class ListItemKey implements Identifier<ListItem> {
+        private final int id;
+
+        public ListItemKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ListItemKey && ((ListItemKey) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    public static class ListParent implements DataObject {
+        public ChildA getChildA() {
+            return null;
+        }
+
+        public ChildB getChildB() {
+            return null;
+        }
+
+        public List<ListItem> getListItem() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return ListParent.class;
+        }
+    }
+
+    public static class Other implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return Other.class;
+        }
+    }
+
+    /**
+     * Read transaction counting the reads
+     */
+    private static class TestReadTransaction implements ReadTransaction {
+        final Map<InstanceIdentifier<?>, DataObject> data = new HashMap<>();
+        final List<InstanceIdentifier<?>> reads = Lists.newArrayList();
+
+        @Override
+        public <T extends DataObject> CheckedFuture<Optional<T>, ReadFailedException> read(
+                LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<T> instanceIdentifier) {
+            reads.add(instanceIdentifier);
+            return Futures.immediateCheckedFuture(Optional.fromNullable((T) data.get(instanceIdentifier)));
+        }
+
+        @Override
+        public Object getIdentifier() {
+            return this;
+        }
+    }
+
+    private static Map.Entry<LogicalDatastoreType, InstanceIdentifier<?>> path(InstanceIdentifier<?> iid) {
+        return Maps.<LogicalDatastoreType, InstanceIdentifier<?>>immutableEntry(LogicalDatastoreType.CONFIGURATION, iid);
+    }
+
+    @Before
+    public void testInit() {
+        testTx = new TestReadTransaction();
+        testTx.data.put(parentIid, new Parent());
+    }
+
+    /**
+     * Test pre-images of sibling paths are extracted from a single read of their parent
+     */
+    @Test
+    public void testReadPreImagesOfSiblings() {
+        Parent parent = (Parent) testTx.data.get(parentIid);
+        List<ListenableFuture<Optional<DataObject>>> preImages = CoalescingPreImageReader.readPreImages(testTx, Lists.newArrayList(
+                path(childAIid), path(childBIid), path(childAIid)));
+
+        try {
+            Assert.assertSame("Wrong pre-image of child A", parent.getChildA(), preImages.get(0).get().get());
+            Assert.assertFalse("Wrong pre-image of child B", preImages.get(1).get().isPresent());
+            Assert.assertSame("Wrong pre-image of child A", parent.getChildA(), preImages.get(2).get().get());
+        } catch (Exception e) {
+            fail("Get unexpected exception from readPreImages()");
+        }
+
+        Assert.assertEquals("Reads aren't coalesced", Lists.<InstanceIdentifier<?>>newArrayList(parentIid), testTx.reads);
+    }
+
+    /**
+     * Test children of a parent holding a choice are read one by one, the cases of the choice may hold lists
+     */
+    @Test
+    public void testReadPreImagesOfSiblingsInChoice() {
+        InstanceIdentifier<ChoiceParent> choiceParentIid = InstanceIdentifier.create(ChoiceParent.class);
+        InstanceIdentifier<ChildA> caseChildAIid = choiceParentIid.child(ChildA.class);
+        InstanceIdentifier<ChildB> caseChildBIid = choiceParentIid.child(ChildB.class);
+        ChoiceParent choiceParent = new ChoiceParent();
+        testTx.data.put(choiceParentIid, choiceParent);
+        testTx.data.put(caseChildAIid, ((CaseA) choiceParent.getChoice()).getChildA());
+        List<ListenableFuture<Optional<DataObject>>> preImages = CoalescingPreImageReader.readPreImages(testTx, Lists.newArrayList(
+                path(caseChildAIid), path(caseChildBIid)));
+
+        try {
+            Assert.assertSame("Wrong pre-image of child A", ((CaseA) choiceParent.getChoice()).getChildA(), preImages.get(0).get().get());
+            Assert.assertFalse("Wrong pre-image of child B", preImages.get(1).get().isPresent());
+        } catch (Exception e) {
+            fail("Get unexpected exception from readPreImages()");
+        }
+
+        Assert.assertEquals("Children aren't read one by one",
+                Lists.<InstanceIdentifier<?>>newArrayList(caseChildAIid, caseChildBIid), testTx.reads);
+    }
+
+    /**
+     * Test children of a parent holding a list are read one by one instead of reading the list with the parent
+     */
+    @Test
+    public void testReadPreImagesOfSiblingsNextToList() {
+        InstanceIdentifier<ListParent> listParentIid = InstanceIdentifier.create(ListParent.class);
+        InstanceIdentifier<ChildA> listChildAIid = listParentIid.child(ChildA.class);
+        InstanceIdentifier<ChildB> listChildBIid = listParentIid.child(ChildB.class);
+        ChildA childA = new ChildA();
+        testTx.data.put(listParentIid, new ListParent());
+        testTx.data.put(listChildAIid, childA);
+        List<ListenableFuture<Optional<DataObject>>> preImages = CoalescingPreImageReader.readPreImages(testTx, Lists.newArrayList(
+                path(listChildAIid), path(listChildBIid)));
+
+        try {
+            Assert.assertSame("Wrong pre-image of child A", childA, preImages.get(0).get().get());
+            Assert.assertFalse("Wrong pre-image of child B", preImages.get(1).get().isPresent());
+        } catch (Exception e) {
+            fail("Get unexpected exception from readPreImages()");
+        }
+
+        Assert.assertEquals("Children aren't read one by one",
+                Lists.<InstanceIdentifier<?>>newArrayList(listChildAIid, listChildBIid), testTx.reads);
+    }
+
+    /**
+     * Test sibling list entries are read one by one, instead of reading the whole list through their parent
+     */
+    @Test
+    public void testReadPreImagesOfListEntries() {
+        InstanceIdentifier<ListItem> item1Iid = parentIid.child(ListItem.class, new ListItemKey(1));
+        InstanceIdentifier<ListItem> item2Iid = parentIid.child(ListItem.class, new ListItemKey(2));
+        ListItem item1 = new ListItem(new ListItemKey(1));
+        testTx.data.put(item1Iid, item1);
+        List<ListenableFuture<Optional<DataObject>>> preImages = CoalescingPreImageReader.readPreImages(testTx, Lists.newArrayList(
+                path(item1Iid), path(item2Iid)));
+
+        try {
+            Assert.assertSame("Wrong pre-image of item 1", item1, preImages.get(0).get().get());
+            Assert.assertFalse("Wrong pre-image of item 2", preImages.get(1).get().isPresent());
+        } catch (Exception e) {
+            fail("Get unexpected exception from readPreImages()");
+        }
+
+        Assert.assertEquals("List entries aren't read one by one", Lists.<InstanceIdentifier<?>>newArrayList(item1Iid, item2Iid), testTx.reads);
+    }
+
+    /**
+     * Test a read throwing fails its pre-image with the original cause
+     */
+    @Test
+    public void testReadPreImagesReadException() {
+        final RuntimeException readException = new RuntimeException("Read exception");
+        ReadTransaction failingTx = new TestReadTransaction() {
+            @Override
+            public <T extends DataObject> CheckedFuture<Optional<T>, ReadFailedException> read(
+                    LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<T> instanceIdentifier) {
+                throw readException;
+            }
+        };
+        List<ListenableFuture<Optional<DataObject>>> preImages = CoalescingPreImageReader.readPreImages(failingTx, Lists.newArrayList(
+                path(childAIid)));
+
+        try {
+            preImages.get(0).get();
+            fail("Get no exception from a failing read");
+        } catch (Exception e) {
+            Assert.assertTrue("Can't get ReadFailedException", e.getCause() instanceof ReadFailedException);
+            Assert.assertSame("Cause of the read failure is lost", readException, e.getCause().getCause());
+        }
+    }
+
+    /**
+     * Test paths without common ancestor are read one by one
+     */
+    @Test
+    public void testReadPreImagesWithoutCommonAncestor() {
+        List<ListenableFuture<Optional<DataObject>>> preImages = CoalescingPreImageReader.readPreImages(testTx, Lists.newArrayList(
+                path(childAIid), path(otherIid)));
+
+        try {
+            Assert.assertFalse("Wrong pre-image of child A", preImages.get(0).get().isPresent());
+            Assert.assertFalse("Wrong pre-image of other", preImages.get(1).get().isPresent());
+        } catch (Exception e) {
+            fail("Get unexpected exception from readPreImages()");
+        }
+
+        Assert.assertEquals("Wrong number of reads", 2, testTx.reads.size());
+    }
+}
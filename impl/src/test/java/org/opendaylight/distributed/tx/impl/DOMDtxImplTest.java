@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
+import org.opendaylight.controller.md.sal.common.api.TransactionStatus;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataReadWriteTransaction;
+import org.opendaylight.distributed.tx.api.DOMDTx;
+import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.api.DTxOptions;
+import org.opendaylight.distributed.tx.api.DTxRollbackMode;
+import org.opendaylight.distributed.tx.spi.DOMTxProvider;
+import org.opendaylight.distributed.tx.spi.IntentLogCodec;
+import org.opendaylight.distributed.tx.spi.TxProvider;
+import org.opendaylight.yangtools.yang.binding.DataContainer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import static org.junit.Assert.fail;
+
+public class DOMDtxImplTest {
+    private static final YangInstanceIdentifier EXISTING_PATH = YangInstanceIdentifier.of("existing");
+    private static final YangInstanceIdentifier NEW_PATH = YangInstanceIdentifier.of("new");
+
+    private final InstanceIdentifier<DOMNode1> nodeId1 = InstanceIdentifier.create(DOMNode1.class);
+    private final InstanceIdentifier<DOMNode2> nodeId2 = InstanceIdentifier.create(DOMNode2.class);
+    private TestDOMTxProvider domTxProvider;
+    private DTxProviderImpl dtxProvider;
+    private Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap;
+
+    private class DOMNode1 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    private class DOMNode2 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    @Before
+    public void testInit() {
+        domTxProvider = new TestDOMTxProvider();
+        domTxProvider.data(nodeId1).put(EXISTING_PATH, new TestNode("old"));
+        domTxProvider.data(nodeId2).put(EXISTING_PATH, new TestNode("old"));
+
+        final Map<DTXLogicalTXProviderType, TxProvider> txProviders = new HashMap<>();
+        txProviders.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, domTxProvider);
+        dtxProvider = new DTxProviderImpl(txProviders);
+
+        nodesMap = new HashMap<>();
+        nodesMap.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, Sets.<InstanceIdentifier<?>>newHashSet(nodeId1, nodeId2));
+    }
+
+    /**
+     * Test submit() commits the edits of all the nodes and releases them
+     */
+    @Test
+    public void testSubmit() throws Exception {
+        final DOMDTx dtx = dtxProvider.newDOMTx(nodesMap);
+        for (InstanceIdentifier<?> nodeId : nodesMap.get(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER)) {
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.CONFIGURATION,
+                    EXISTING_PATH, new TestNode("new"), nodeId).checkedGet();
+            dtx.deleteAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.CONFIGURATION,
+                    NEW_PATH, nodeId).checkedGet();
+        }
+        dtx.submit().checkedGet();
+
+        Assert.assertEquals("new", domTxProvider.data(nodeId1).get(EXISTING_PATH).getValue());
+        Assert.assertEquals("new", domTxProvider.data(nodeId2).get(EXISTING_PATH).getValue());
+        dtxProvider.newDOMTx(nodesMap).rollback().checkedGet();
+    }
+
+    /**
+     * Test newDOMTx() with a timeout in its options waits for the nodes of another tx to be released
+     */
+    @Test
+    public void testNewDOMTxWaitsForNodes() throws Exception {
+        final DOMDTx dtx1 = dtxProvider.newDOMTx(nodesMap);
+
+        try {
+            dtxProvider.newDOMTx(nodesMap);
+            fail("newDOMTx() without timeout should not wait for the locked nodes");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+
+        final ExecutorService threadPool = Executors.newSingleThreadExecutor();
+        final Future<DOMDTx> waitingTx = threadPool.submit(new Callable<DOMDTx>() {
+            @Override public DOMDTx call() throws Exception {
+                return dtxProvider.newDOMTx(nodesMap, DTxOptions.builder().setTimeout(10, TimeUnit.SECONDS).build());
+            }
+        });
+        threadPool.shutdown();
+
+        Thread.sleep(100);
+        Assert.assertFalse("newDOMTx() didn't wait for the locked nodes", waitingTx.isDone());
+
+        dtx1.submit().checkedGet();
+        waitingTx.get(10, TimeUnit.SECONDS).rollback().checkedGet();
+        Assert.assertFalse("Node of the rolled back tx is still locked", domTxProvider.isDeviceLocked(nodeId1));
+    }
+
+    /**
+     * Test newDOMTx() rejects the options of a tx without rollback
+     */
+    @Test
+    public void testNewDOMTxWithoutRollback() throws Exception {
+        try {
+            dtxProvider.newDOMTx(nodesMap, DTxOptions.builder().setRollbackMode(DTxRollbackMode.NO_ROLLBACK).build());
+            fail("DOM tx should not support NO_ROLLBACK");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertFalse("Node of the rejected tx is locked", domTxProvider.isDeviceLocked(nodeId1));
+    }
+
+    /**
+     * Test a failed submit restores the pre-images of the committed nodes
+     */
+    @Test
+    public void testSubmitFailureRevertsCommittedNodes() throws Exception {
+        domTxProvider.failSubmit(nodeId2);
+        final DOMDTx dtx = dtxProvider.newDOMTx(nodesMap);
+        for (InstanceIdentifier<?> nodeId : nodesMap.get(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER)) {
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.CONFIGURATION,
+                    EXISTING_PATH, new TestNode("new"), nodeId).checkedGet();
+            dtx.mergeAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.CONFIGURATION,
+                    NEW_PATH, new TestNode("new"), nodeId).checkedGet();
+        }
+
+        try {
+            dtx.submit().checkedGet();
+            fail("Submit should fail");
+        } catch (TransactionCommitFailedException e) {
+            final DTxException.SubmitFailedException submitFailure = Iterables.getOnlyElement(
+                    Iterables.filter(Throwables.getCausalChain(e), DTxException.SubmitFailedException.class));
+            Assert.assertEquals(Sets.<InstanceIdentifier<?>>newHashSet(nodeId2), Sets.newHashSet(submitFailure.getFailedSubmits()));
+        }
+
+        Assert.assertEquals("old", domTxProvider.data(nodeId1).get(EXISTING_PATH).getValue());
+        Assert.assertFalse(domTxProvider.data(nodeId1).containsKey(NEW_PATH));
+        Assert.assertEquals("old", domTxProvider.data(nodeId2).get(EXISTING_PATH).getValue());
+    }
+
+    /**
+     * Test a failed edit cancels the transactions of all the nodes
+     */
+    @Test
+    public void testEditFailureRollsBack() throws Exception {
+        domTxProvider.failRead(nodeId2);
+        final DOMDTx dtx = dtxProvider.newDOMTx(nodesMap);
+        dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.CONFIGURATION,
+                EXISTING_PATH, new TestNode("new"), nodeId1).checkedGet();
+
+        try {
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.CONFIGURATION,
+                    EXISTING_PATH, new TestNode("new"), nodeId2).checkedGet();
+            fail("Put should fail");
+        } catch (DTxException.EditFailedException e) {
+            // expected
+        }
+
+        Assert.assertEquals(2, domTxProvider.cancelled.size());
+        Assert.assertEquals("old", domTxProvider.data(nodeId1).get(EXISTING_PATH).getValue());
+        dtxProvider.newDOMTx(nodesMap).rollback().checkedGet();
+    }
+
+    /**
+     * Test edits failing concurrently roll the distributed tx back once
+     */
+    @Test
+    public void testConcurrentEditFailuresRollBackOnce() throws Exception {
+        domTxProvider.failRead(nodeId1);
+        domTxProvider.failRead(nodeId2);
+        final DOMDTx dtx = dtxProvider.newDOMTx(nodesMap);
+        final List<CheckedFuture<Void, DTxException>> editFutures = new ArrayList<>();
+        for (InstanceIdentifier<?> nodeId : nodesMap.get(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER)) {
+            editFutures.add(dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER,
+                    LogicalDatastoreType.CONFIGURATION, EXISTING_PATH, new TestNode("new"), nodeId));
+        }
+
+        for (CheckedFuture<Void, DTxException> editFuture : editFutures) {
+            try {
+                editFuture.checkedGet();
+                fail("Put should fail");
+            } catch (DTxException.EditFailedException e) {
+                // expected
+            }
+        }
+
+        Assert.assertEquals(2, domTxProvider.cancelled.size());
+        Assert.assertSame(dtx.rollback(), dtx.rollback());
+        dtxProvider.newDOMTx(nodesMap).rollback().checkedGet();
+    }
+
+    /**
+     * Test a DOM distributed tx isn't written to the intent log of its provider
+     */
+    @Test
+    public void testSubmitNotLoggedToIntentLog() throws Exception {
+        final File logFile = File.createTempFile("dom-dtx-intent", ".log");
+        final DTxIntentLog intentLog = new DTxIntentLog(logFile, new BindingOnlyIntentLogCodec(), 0);
+        final Map<DTXLogicalTXProviderType, TxProvider> txProviders = new HashMap<>();
+        txProviders.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, domTxProvider);
+        final DTxProviderImpl loggingProvider = new DTxProviderImpl(txProviders, 4, 16,
+                new ThreadPoolExecutor.CallerRunsPolicy(), false, null, DTxProviderImpl.DEFAULT_PRE_IMAGE_MEMORY_THRESHOLD, intentLog);
+
+        try {
+            final DOMDTx dtx = loggingProvider.newDOMTx(nodesMap);
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.CONFIGURATION,
+                    EXISTING_PATH, new TestNode("new"), nodeId1).checkedGet();
+            dtx.submit().checkedGet();
+
+            Assert.assertEquals("new", domTxProvider.data(nodeId1).get(EXISTING_PATH).getValue());
+            Assert.assertEquals(0, logFile.length());
+            loggingProvider.newDOMTx(nodesMap).rollback().checkedGet();
+        } finally {
+            loggingProvider.close();
+            logFile.delete();
+        }
+    }
+
+    private static final class TestNode implements NormalizedNode<YangInstanceIdentifier.PathArgument, String> {
+        private final String value;
+
+        private TestNode(final String value) {
+            this.value = value;
+        }
+
+        @Override public QName getNodeType() {
+            return null;
+        }
+
+        @Override public YangInstanceIdentifier.PathArgument getIdentifier() {
+            return null;
+        }
+
+        @Override public String getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Intent log codec of binding data only, failing on any data
+     */
+    private static final class BindingOnlyIntentLogCodec implements IntentLogCodec {
+        @Nonnull @Override public byte[] serializeIdentifier(@Nonnull final InstanceIdentifier<?> id) {
+            return id.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Nonnull @Override public InstanceIdentifier<?> deserializeIdentifier(@Nonnull final byte[] serialized) throws IOException {
+            throw new IOException("Not supported");
+        }
+
+        @Nonnull @Override public byte[] serialize(@Nonnull final InstanceIdentifier<?> id, @Nonnull final DataObject data)
+            throws IOException {
+            throw new IOException("Not supported");
+        }
+
+        @Nonnull @Override public DataObject deserialize(@Nonnull final InstanceIdentifier<?> id, @Nonnull final byte[] serialized)
+            throws IOException {
+            throw new IOException("Not supported");
+        }
+    }
+
+    /**
+     * DOM tx provider of in-memory nodes. Transactions apply their edits to their node on submit.
+     */
+    private static class TestDOMTxProvider implements DOMTxProvider {
+        private final Map<InstanceIdentifier<?>, Map<YangInstanceIdentifier, NormalizedNode<?, ?>>> nodes = new HashMap<>();
+        private final Set<InstanceIdentifier<?>> failingSubmits = Sets.newHashSet();
+        private final Set<InstanceIdentifier<?>> failingReads = Sets.newHashSet();
+        private final Set<InstanceIdentifier<?>> lockedDevices = Sets.newHashSet();
+        private final List<DOMDataReadWriteTransaction> cancelled = Collections.synchronizedList(
+                new ArrayList<DOMDataReadWriteTransaction>());
+
+        synchronized Map<YangInstanceIdentifier, NormalizedNode<?, ?>> data(final InstanceIdentifier<?> nodeId) {
+            if (!nodes.containsKey(nodeId)) {
+                nodes.put(nodeId, new HashMap<YangInstanceIdentifier, NormalizedNode<?, ?>>());
+            }
+            return nodes.get(nodeId);
+        }
+
+        void failSubmit(final InstanceIdentifier<?> nodeId) {
+            failingSubmits.add(nodeId);
+        }
+
+        void failRead(final InstanceIdentifier<?> nodeId) {
+            failingReads.add(nodeId);
+        }
+
+        @Nonnull @Override public DOMDataReadWriteTransaction newDOMTx(@Nullable final InstanceIdentifier<?> nodeId) {
+            final boolean failSubmit = failingSubmits.remove(nodeId);
+            final Map<YangInstanceIdentifier, NormalizedNode<?, ?>> data = data(nodeId);
+            final Map<YangInstanceIdentifier, Optional<NormalizedNode<?, ?>>> edits = new HashMap<>();
+
+            return new DOMDataReadWriteTransaction() {
+                @Override public CheckedFuture<Optional<NormalizedNode<?, ?>>, ReadFailedException> read(
+                        final LogicalDatastoreType store, final YangInstanceIdentifier path) {
+                    if (failingReads.contains(nodeId)) {
+                        return Futures.immediateFailedCheckedFuture(new ReadFailedException("Read failed"));
+                    }
+                    synchronized (TestDOMTxProvider.this) {
+                        return Futures.immediateCheckedFuture(Optional.<NormalizedNode<?, ?>>fromNullable(data.get(path)));
+                    }
+                }
+
+                @Override public void put(final LogicalDatastoreType store, final YangInstanceIdentifier path,
+                                          final NormalizedNode<?, ?> node) {
+                    edits.put(path, Optional.<NormalizedNode<?, ?>>of(node));
+                }
+
+                @Override public void merge(final LogicalDatastoreType store, final YangInstanceIdentifier path,
+                                            final NormalizedNode<?, ?> node) {
+                    edits.put(path, Optional.<NormalizedNode<?, ?>>of(node));
+                }
+
+                @Override public void delete(final LogicalDatastoreType store, final YangInstanceIdentifier path) {
+                    edits.put(path, Optional.<NormalizedNode<?, ?>>absent());
+                }
+
+                @Override public boolean cancel() {
+                    cancelled.add(this);
+                    return true;
+                }
+
+                @Override public CheckedFuture<Void, TransactionCommitFailedException> submit() {
+                    if (failSubmit) {
+                        return Futures.immediateFailedCheckedFuture(new TransactionCommitFailedException("Submit failed"));
+                    }
+                    synchronized (TestDOMTxProvider.this) {
+                        for (Map.Entry<YangInstanceIdentifier, Optional<NormalizedNode<?, ?>>> edit : edits.entrySet()) {
+                            if (edit.getValue().isPresent()) {
+                                data.put(edit.getKey(), edit.getValue().get());
+                            } else {
+                                data.remove(edit.getKey());
+                            }
+                        }
+                    }
+                    return Futures.immediateCheckedFuture(null);
+                }
+
+                @Deprecated
+                @Override public ListenableFuture<RpcResult<TransactionStatus>> commit() {
+                    throw new UnsupportedOperationException("Deprecated");
+                }
+
+                @Override public Object getIdentifier() {
+                    return nodeId;
+                }
+            };
+        }
+
+        @Override public ReadWriteTransaction newTx(final InstanceIdentifier<?> nodeId) {
+            throw new UnsupportedOperationException("DOM transactions only");
+        }
+
+        @Override public synchronized boolean isDeviceLocked(final InstanceIdentifier<?> device) {
+            return lockedDevices.contains(device);
+        }
+
+        @Override public synchronized boolean lockTransactionDevices(final Set<InstanceIdentifier<?>> deviceSet) {
+            for (InstanceIdentifier<?> device : deviceSet) {
+                if (lockedDevices.contains(device)) {
+                    return false;
+                }
+            }
+            lockedDevices.addAll(deviceSet);
+            return true;
+        }
+
+        @Override public synchronized void releaseTransactionDevices(final Set<InstanceIdentifier<?>> deviceSet) {
+            lockedDevices.removeAll(deviceSet);
+        }
+    }
+}
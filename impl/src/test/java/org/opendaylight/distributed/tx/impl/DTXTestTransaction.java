@@ -26,6 +26,7 @@ import javax.annotation.Nullable;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
 
 public class DTXTestTransaction implements ReadWriteTransaction {
     Map<InstanceIdentifier<?>, Boolean> readExceptionMap = new ConcurrentHashMap<>();
@@ -34,6 +35,8 @@ public class DTXTestTransaction implements ReadWriteTransaction {
     Map<InstanceIdentifier<?>, Boolean> deleteExceptionMap = new ConcurrentHashMap<>();
     boolean  submitException = false;
     static int delayTime = 20;
+    /* Reads complete only once the gate is open, if set */
+    private volatile CountDownLatch readGate = null;
 
     private Map<InstanceIdentifier<?>,ConcurrentLinkedDeque<DataObject>> txDataMap = new ConcurrentHashMap<>();
 
@@ -52,6 +55,10 @@ public class DTXTestTransaction implements ReadWriteTransaction {
     {
         this.deleteExceptionMap.put(instanceIdentifier, exception);
     }
+    public void setReadGate(CountDownLatch readGate)
+    {
+        this.readGate = readGate;
+    }
     public void setSubmitException( boolean exception)
     {
         this.submitException = exception;
@@ -95,11 +102,15 @@ public class DTXTestTransaction implements ReadWriteTransaction {
         final Optional<T> retOpt = Optional.fromNullable(obj);
 
         final SettableFuture<Optional<T>> retFuture = SettableFuture.create();
+        final CountDownLatch gate = readGate;
         Runnable readResult = new Runnable() {
             @Override
             public void run() {
                 try {
                     Thread.sleep(delayTime);
+                    if (gate != null) {
+                        gate.await();
+                    }
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.spi.CachedData;
+import org.opendaylight.distributed.tx.spi.IntentLogCodec;
+import org.opendaylight.distributed.tx.spi.TxCache;
+import org.opendaylight.yangtools.yang.binding.DataContainer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.ModifyAction;
+import static org.junit.Assert.fail;
+
+public class DTxIntentLogTest {
+    InstanceIdentifier<TestData1> identifier1 = InstanceIdentifier.create(TestData1.class);
+    InstanceIdentifier<TestData2> identifier2 = InstanceIdentifier.create(TestData2.class);
+    InstanceIdentifier<TestNode1> node1 = InstanceIdentifier.create(TestNode1.class);
+    InstanceIdentifier<TestNode2> node2 = InstanceIdentifier.create(TestNode2.class);
+    TestIntentLogCodec codec;
+    File logFile;
+
+    private class TestData1 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    private class TestData2 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    private class TestNode1 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    private class TestNode2 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    /**
+     * Codec of a single JVM, the objects are registered and serialized as their index
+     */
+    private static class TestIntentLogCodec implements IntentLogCodec {
+        final List<Object> objects = Lists.newArrayList();
+
+        private byte[] register(Object object) {
+            int index = objects.indexOf(object);
+            if (index < 0) {
+                objects.add(object);
+                index = objects.size() - 1;
+            }
+            return ByteBuffer.allocate(4).putInt(index).array();
+        }
+
+        private Object lookup(byte[] serialized) {
+            return objects.get(ByteBuffer.wrap(serialized).getInt());
+        }
+
+        @Nonnull @Override
+        public byte[] serializeIdentifier(@Nonnull InstanceIdentifier<?> id) throws IOException {
+            return register(id);
+        }
+
+        @Nonnull @Override
+        public InstanceIdentifier<?> deserializeIdentifier(@Nonnull byte[] serialized) throws IOException {
+            return (InstanceIdentifier<?>) lookup(serialized);
+        }
+
+        @Nonnull @Override
+        public byte[] serialize(@Nonnull InstanceIdentifier<?> id, @Nonnull DataObject data) throws IOException {
+            return register(data);
+        }
+
+        @Nonnull @Override
+        public DataObject deserialize(@Nonnull InstanceIdentifier<?> id, @Nonnull byte[] serialized) throws IOException {
+            return (DataObject) lookup(serialized);
+        }
+    }
+
+    @Before
+    public void testInit() throws IOException {
+        codec = new TestIntentLogCodec();
+        logFile = Files.createTempFile("dtx-intent-log-test", ".log").toFile();
+    }
+
+    @After
+    public void testCleanUp() {
+        logFile.delete();
+        new File(logFile.getPath() + ".undecodable").delete();
+    }
+
+    private Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> getNodesMap() {
+        Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap = new HashMap<>();
+        nodesMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, Sets.<InstanceIdentifier<?>>newHashSet(node1, node2));
+        return nodesMap;
+    }
+
+    private static TxCache createCache(final CachedData... cachedData) {
+        return new TxCache() {
+            @Override
+            public Iterator<CachedData> iterator() {
+                return Lists.reverse(Lists.newArrayList(cachedData)).iterator();
+            }
+        };
+    }
+
+    /**
+     * Test a tx logged up to the commit of its nodes is incomplete after a restart.
+     * Its nodes with pre-images and without failed commit have to be rolled back.
+     */
+    @Test
+    public void testIncompleteTxAfterRestart() {
+        UUID txId = UUID.randomUUID();
+        TestData1 preImage1 = new TestData1();
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            intentLog.logStart(txId, getNodesMap()).get();
+            intentLog.logPreImages(txId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node1, createCache(
+                    new CachedData(LogicalDatastoreType.OPERATIONAL, identifier1, preImage1, ModifyAction.REPLACE),
+                    new CachedData(LogicalDatastoreType.OPERATIONAL, identifier2, null, ModifyAction.MERGE))).get();
+            intentLog.logPreImages(txId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node2, createCache(
+                    new CachedData(LogicalDatastoreType.OPERATIONAL, identifier1, null, ModifyAction.REPLACE))).get();
+            intentLog.logNodeCommit(txId, node2, false).get();
+            intentLog.close();
+        } catch (Exception e) {
+            fail("Get unexpected exception from the intent log");
+        }
+
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            Assert.assertEquals("Wrong number of incomplete txs", 1, intentLog.getIncompleteTxs().size());
+            DTxIntentLog.IncompleteTx incompleteTx = intentLog.getIncompleteTxs().get(txId);
+            Assert.assertNotNull("Tx isn't incomplete", incompleteTx);
+
+            Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesToRollback = incompleteTx.getNodesToRollback();
+            Assert.assertEquals("Wrong nodes to roll back", Sets.<InstanceIdentifier<?>>newHashSet(node1),
+                    nodesToRollback.get(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER));
+
+            List<CachedData> cachedData = Lists.newArrayList(incompleteTx.getCache(node1));
+            Assert.assertEquals("Wrong number of pre-images", 2, cachedData.size());
+            Assert.assertEquals("Wrong order of pre-images", identifier2, cachedData.get(0).getId());
+            Assert.assertFalse("Unexpected pre-image", cachedData.get(0).isDataPresent());
+            Assert.assertEquals("Wrong order of pre-images", identifier1, cachedData.get(1).getId());
+            Assert.assertEquals("Wrong operation", ModifyAction.REPLACE, cachedData.get(1).getOperation());
+            Assert.assertSame("Wrong pre-image", preImage1, cachedData.get(1).getData().get());
+            intentLog.close();
+        } catch (Exception e) {
+            fail("Get unexpected exception from the intent log");
+        }
+    }
+
+    /**
+     * Test a completed tx isn't recovered and the log is truncated once no tx is active
+     */
+    @Test
+    public void testCompleteTxIsNotRecovered() {
+        UUID txId = UUID.randomUUID();
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            intentLog.logStart(txId, getNodesMap()).get();
+            intentLog.logPreImages(txId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node1, createCache(
+                    new CachedData(LogicalDatastoreType.OPERATIONAL, identifier1, new TestData1(), ModifyAction.REPLACE))).get();
+            intentLog.logNodeCommit(txId, node1, true).get();
+            intentLog.logEnd(txId).get();
+            intentLog.close();
+        } catch (Exception e) {
+            fail("Get unexpected exception from the intent log");
+        }
+
+        Assert.assertEquals("Intent log isn't truncated", 0, logFile.length());
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            Assert.assertTrue("Unexpected incomplete tx", intentLog.getIncompleteTxs().isEmpty());
+            intentLog.close();
+        } catch (IOException e) {
+            fail("Get unexpected exception from the intent log");
+        }
+    }
+
+    /**
+     * Test the records of ended txs are compacted away while a tx stays incomplete, the incomplete tx is recovered
+     */
+    @Test
+    public void testLogCompactedWhileTxIncomplete() {
+        UUID incompleteTxId = UUID.randomUUID();
+        TestData1 preImage1 = new TestData1();
+        long lengthAfterFirstTx = 0;
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0, 0);
+            intentLog.logStart(incompleteTxId, getNodesMap()).get();
+            intentLog.logPreImages(incompleteTxId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node1, createCache(
+                    new CachedData(LogicalDatastoreType.OPERATIONAL, identifier1, preImage1, ModifyAction.REPLACE))).get();
+            for (int i = 0; i < 100; i++) {
+                UUID txId = UUID.randomUUID();
+                intentLog.logStart(txId, getNodesMap()).get();
+                intentLog.logPreImages(txId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node2, createCache(
+                        new CachedData(LogicalDatastoreType.OPERATIONAL, identifier2, new TestData2(), ModifyAction.MERGE))).get();
+                intentLog.logNodeCommit(txId, node2, true).get();
+                intentLog.logEnd(txId).get();
+                if (i == 0) {
+                    lengthAfterFirstTx = logFile.length();
+                }
+            }
+            Assert.assertTrue("Intent log isn't compacted", logFile.length() <= lengthAfterFirstTx);
+            intentLog.close();
+        } catch (Exception e) {
+            fail("Get unexpected exception from the intent log");
+        }
+
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            Assert.assertEquals("Wrong incomplete txs", Sets.newHashSet(incompleteTxId), intentLog.getIncompleteTxs().keySet());
+            List<CachedData> cachedData = Lists.newArrayList(intentLog.getIncompleteTxs().get(incompleteTxId).getCache(node1));
+            Assert.assertEquals("Wrong number of pre-images", 1, cachedData.size());
+            Assert.assertSame("Wrong pre-image", preImage1, cachedData.get(0).getData().get());
+            intentLog.close();
+        } catch (IOException e) {
+            fail("Get unexpected exception from the intent log");
+        }
+        Assert.assertFalse("Compacted log is left behind", new File(logFile.getPath() + ".compact").exists());
+    }
+
+    /**
+     * Test a tx with an undecodable record is moved aside, the other incomplete txs are still recovered
+     */
+    @Test
+    public void testUndecodableTxIsMovedAside() {
+        TestIntentLogCodec failingCodec = new TestIntentLogCodec() {
+            @Nonnull @Override
+            public DataObject deserialize(@Nonnull InstanceIdentifier<?> id, @Nonnull byte[] serialized) throws IOException {
+                if (identifier2.equals(id)) {
+                    throw new IOException("Unknown schema");
+                }
+                return super.deserialize(id, serialized);
+            }
+        };
+        UUID undecodableTxId = UUID.randomUUID();
+        UUID txId = UUID.randomUUID();
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, failingCodec, 0);
+            intentLog.logStart(undecodableTxId, getNodesMap()).get();
+            intentLog.logPreImages(undecodableTxId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node1, createCache(
+                    new CachedData(LogicalDatastoreType.OPERATIONAL, identifier2, new TestData2(), ModifyAction.REPLACE))).get();
+            intentLog.logStart(txId, getNodesMap()).get();
+            intentLog.logPreImages(txId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node1, createCache(
+                    new CachedData(LogicalDatastoreType.OPERATIONAL, identifier1, new TestData1(), ModifyAction.REPLACE))).get();
+            intentLog.close();
+        } catch (Exception e) {
+            fail("Get unexpected exception from the intent log");
+        }
+
+        File asideFile = new File(logFile.getPath() + ".undecodable");
+        long asideLength = 0;
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, failingCodec, 0);
+            Assert.assertEquals("Wrong incomplete txs", Sets.newHashSet(txId), intentLog.getIncompleteTxs().keySet());
+            intentLog.close();
+            asideLength = asideFile.length();
+            Assert.assertTrue("Undecodable records aren't moved aside", asideLength > 0);
+        } catch (IOException e) {
+            fail("Get unexpected exception from the intent log");
+        }
+
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, failingCodec, 0);
+            Assert.assertEquals("Wrong incomplete txs", Sets.newHashSet(txId), intentLog.getIncompleteTxs().keySet());
+            intentLog.close();
+            Assert.assertEquals("Undecodable records are left in the log", asideLength, asideFile.length());
+        } catch (IOException e) {
+            fail("Get unexpected exception from the intent log");
+        }
+    }
+
+    /**
+     * Test a record torn by a crash is ignored, the records before it are recovered
+     */
+    @Test
+    public void testTornRecordIsIgnored() {
+        UUID txId = UUID.randomUUID();
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            intentLog.logStart(txId, getNodesMap()).get();
+            intentLog.logPreImages(txId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node1, createCache(
+                    new CachedData(LogicalDatastoreType.OPERATIONAL, identifier1, new TestData1(), ModifyAction.REPLACE))).get();
+            intentLog.logNodeCommit(txId, node1, false).get();
+            intentLog.close();
+
+            /* Cut the last record, as if the controller died while writing it */
+            java.io.RandomAccessFile file = new java.io.RandomAccessFile(logFile, "rw");
+            file.setLength(file.length() - 3);
+            file.close();
+        } catch (Exception e) {
+            fail("Get unexpected exception from the intent log");
+        }
+
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            DTxIntentLog.IncompleteTx incompleteTx = intentLog.getIncompleteTxs().get(txId);
+            Assert.assertNotNull("Tx isn't incomplete", incompleteTx);
+            Assert.assertEquals("Failed commit of a torn record is recovered", Sets.<InstanceIdentifier<?>>newHashSet(node1),
+                    incompleteTx.getNodesToRollback().get(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER));
+            intentLog.close();
+        } catch (IOException e) {
+            fail("Get unexpected exception from the intent log");
+        }
+    }
+
+    /**
+     * Test records appended once the log is closed fail instead of waiting forever
+     */
+    @Test
+    public void testAppendAfterClose() {
+        UUID txId = UUID.randomUUID();
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            intentLog.logStart(txId, getNodesMap()).get();
+            intentLog.close();
+
+            try {
+                intentLog.logEnd(txId).get(10, TimeUnit.SECONDS);
+                fail("Get no exception from a record appended after close");
+            } catch (ExecutionException e) {
+                Assert.assertTrue("Can't get IOException", e.getCause() instanceof IOException);
+            }
+        } catch (Exception e) {
+            fail("Get unexpected exception from the intent log");
+        }
+    }
+}
@@ -7,24 +7,63 @@
  */
 package org.opendaylight.distributed.tx.impl;
 
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.internal.util.collections.Sets;
 import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
+import org.opendaylight.controller.md.sal.common.api.TransactionStatus;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.common.api.data.OptimisticLockFailedException;
+import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
+import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
 import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.api.DTx;
 import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.distributed.tx.api.DTxOptions;
+import org.opendaylight.distributed.tx.api.DTxRollbackMode;
+import org.opendaylight.distributed.tx.spi.CachedData;
+import org.opendaylight.distributed.tx.spi.IntentLogCodec;
+import org.opendaylight.distributed.tx.spi.LockModeTxProvider;
+import org.opendaylight.distributed.tx.spi.NormalizingPreImageSerializer;
+import org.opendaylight.distributed.tx.spi.TxCache;
 import org.opendaylight.distributed.tx.spi.TxException;
 import org.opendaylight.distributed.tx.spi.TxProvider;
 import org.opendaylight.yangtools.yang.binding.DataContainer;
 import org.opendaylight.yangtools.yang.binding.DataObject;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.opendaylight.yangtools.yang.data.api.ModifyAction;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import static org.junit.Assert.fail;
 
 public class DistributedTxProviderTest {
     private TxProvider txProvider;
@@ -37,10 +76,13 @@ public class DistributedTxProviderTest {
     InstanceIdentifier<TestClassNode3> node3 = InstanceIdentifier.create(TestClassNode3.class);
     InstanceIdentifier<TestClassNode4> node4 = InstanceIdentifier.create(TestClassNode4.class);
     InstanceIdentifier<TestClassNode5> node5 = InstanceIdentifier.create(TestClassNode5.class);
+    InstanceIdentifier<TestData> dataId = InstanceIdentifier.create(TestData.class);
     Map<DTXLogicalTXProviderType, TxProvider> m = new HashMap<>();
 
-    private class myTxProvider implements TxProvider{
-        private final Set<InstanceIdentifier<?>> nodeSet = new HashSet<>();
+    private class myTxProvider implements LockModeTxProvider{
+        /* Exclusively locked devices, by the owner of their lock */
+        private final Map<InstanceIdentifier<?>, Object> owners = new HashMap<>();
+        private final Map<InstanceIdentifier<?>, Integer> readers = new HashMap<>();
 
         @Override
         public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
@@ -51,7 +93,7 @@ public class DistributedTxProviderTest {
         public boolean isDeviceLocked(InstanceIdentifier<?> device) {
             boolean lock = false;
             synchronized (this){
-                if (nodeSet.contains(device))
+                if (owners.containsKey(device) || readers.containsKey(device))
                     lock = true;
             }
             return lock;
@@ -59,29 +101,133 @@ public class DistributedTxProviderTest {
 
         @Override
         public boolean lockTransactionDevices(Set<InstanceIdentifier<?>> deviceSet) {
-            boolean ret = true;
+            return lockTransactionDevices(deviceSet, DTxLockMode.EXCLUSIVE, null);
+        }
 
-            synchronized (this) {
-                Set<InstanceIdentifier<?>> s = new HashSet<>();
-                s.addAll(nodeSet);
+        @Override
+        public void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet) {
+            releaseTransactionDevices(deviceSet, DTxLockMode.EXCLUSIVE, null);
+        }
 
-                s.retainAll(deviceSet);
+        @Override
+        public boolean lockTransactionDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner) {
+            synchronized (this) {
+                for (InstanceIdentifier<?> device : deviceSet) {
+                    if (owners.containsKey(device) || (mode == DTxLockMode.EXCLUSIVE && readers.containsKey(device)))
+                        return false;
+                }
+                for (InstanceIdentifier<?> device : deviceSet) {
+                    if (mode == DTxLockMode.EXCLUSIVE)
+                        owners.put(device, owner != null ? owner : new Object());
+                    else
+                        readers.put(device, readers.containsKey(device) ? readers.get(device) + 1 : 1);
+                }
+            }
+            return true;
+        }
 
-                if(s.size() > 0)
-                    ret = false;
-                else {
-                    nodeSet.addAll(deviceSet);
+        @Override
+        public void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner) {
+            synchronized (this) {
+                for (InstanceIdentifier<?> device : deviceSet) {
+                    if (mode == DTxLockMode.EXCLUSIVE) {
+                        if (owner == null || owners.get(device) == owner)
+                            owners.remove(device);
+                    } else if (readers.containsKey(device) && readers.get(device) > 1)
+                        readers.put(device, readers.get(device) - 1);
+                    else
+                        readers.remove(device);
                 }
             }
+        }
+    }
+
+    /**
+     * Provider of transactions to devices holding their data, see {@link DeviceTx}
+     */
+    private class DeviceTxProvider extends myTxProvider {
+        private final Map<InstanceIdentifier<?>, DataObject> deviceData = new ConcurrentHashMap<>();
+
+        @Override
+        public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
+            return new DeviceTx(deviceData);
+        }
+    }
+
+    /**
+     * Transaction to a device reading its committed data, the edits are applied to the device on submit
+     */
+    private static class DeviceTx implements ReadWriteTransaction {
+        private final Map<InstanceIdentifier<?>, DataObject> deviceData;
+        private final Map<InstanceIdentifier<?>, DataObject> edits = new HashMap<>();
 
-            return ret;
+        DeviceTx(Map<InstanceIdentifier<?>, DataObject> deviceData) {
+            this.deviceData = deviceData;
         }
 
         @Override
-        public void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet) {
-            synchronized (this) {
-                nodeSet.removeAll(deviceSet);
+        public <T extends DataObject> CheckedFuture<Optional<T>, ReadFailedException> read(LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<T> instanceIdentifier) {
+            return Futures.immediateCheckedFuture(Optional.fromNullable((T) deviceData.get(instanceIdentifier)));
+        }
+
+        @Override
+        public synchronized <T extends DataObject> void put(LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<T> instanceIdentifier, T t) {
+            edits.put(instanceIdentifier, t);
+        }
+
+        @Override
+        public <T extends DataObject> void put(LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<T> instanceIdentifier, T t, boolean b) {
+            put(logicalDatastoreType, instanceIdentifier, t);
+        }
+
+        @Override
+        public <T extends DataObject> void merge(LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<T> instanceIdentifier, T t) {
+            put(logicalDatastoreType, instanceIdentifier, t);
+        }
+
+        @Override
+        public <T extends DataObject> void merge(LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<T> instanceIdentifier, T t, boolean b) {
+            put(logicalDatastoreType, instanceIdentifier, t);
+        }
+
+        @Override
+        public synchronized void delete(LogicalDatastoreType logicalDatastoreType, InstanceIdentifier<?> instanceIdentifier) {
+            edits.put(instanceIdentifier, null);
+        }
+
+        @Override
+        public synchronized boolean cancel() {
+            edits.clear();
+            return true;
+        }
+
+        @Override
+        public synchronized CheckedFuture<Void, TransactionCommitFailedException> submit() {
+            for (Map.Entry<InstanceIdentifier<?>, DataObject> edit : edits.entrySet()) {
+                if (edit.getValue() == null) {
+                    deviceData.remove(edit.getKey());
+                } else {
+                    deviceData.put(edit.getKey(), edit.getValue());
+                }
             }
+            return Futures.immediateCheckedFuture(null);
+        }
+
+        @Override
+        public ListenableFuture<RpcResult<TransactionStatus>> commit() {
+            throw new UnsupportedOperationException("Deprecated");
+        }
+
+        @Override
+        public Object getIdentifier() {
+            return this;
+        }
+    }
+
+    private class TestData implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return TestData.class;
         }
     }
 
@@ -177,6 +323,402 @@ public class DistributedTxProviderTest {
           Assert.assertEquals("Should only get one exception", expectedExceptionOccurNum, exceptionOccurNum);
     }
 
+    private Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> getNodesMap(InstanceIdentifier<?>... nodes) {
+        Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap = new HashMap<>();
+        nodesMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, Sets.<InstanceIdentifier<?>>newSet(nodes));
+        return nodesMap;
+    }
+
+    /**
+     * Test newTx() with timeout waits for the devices of another tx to be released
+     */
+    @Test
+    public void testNewTxWaitsForDevices() throws Exception {
+        DTx dtx1 = dTxProvider.newTx(getNodesMap(node1, node2));
+
+        threadPool = Executors.newSingleThreadExecutor();
+        Future<DTx> waitingTx = threadPool.submit(new Callable<DTx>() {
+            @Override
+            public DTx call() throws Exception {
+                return dTxProvider.newTx(getNodesMap(node2, node3), DTxOptions.builder().setTimeout(10, TimeUnit.SECONDS).build());
+            }
+        });
+        threadPool.shutdown();
+
+        Thread.sleep(100);
+        Assert.assertFalse("newTx() didn't wait for the locked device", waitingTx.isDone());
+        Assert.assertTrue("Device isn't locked", txProvider.isDeviceLocked(node1));
+
+        dtx1.submit().checkedGet();
+        Assert.assertNotNull("newTx() didn't get the released device", waitingTx.get(10, TimeUnit.SECONDS));
+        Assert.assertFalse("Device of the submitted tx is still locked", txProvider.isDeviceLocked(node1));
+        Assert.assertTrue("Device isn't locked", txProvider.isDeviceLocked(node3));
+    }
+
+    /**
+     * Test newTx() with timeout fails once the timeout elapses, leaving none of its devices locked
+     */
+    @Test
+    public void testNewTxTimesOut() throws Exception {
+        dTxProvider.newTx(getNodesMap(node2));
+
+        try {
+            dTxProvider.newTx(getNodesMap(node1, node2, node3), DTxOptions.builder().setTimeout(50, TimeUnit.MILLISECONDS).build());
+            fail("Get no exception from newTx()");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+
+        Assert.assertFalse("Device of the timed out tx is locked", txProvider.isDeviceLocked(node1));
+        Assert.assertFalse("Device of the timed out tx is locked", txProvider.isDeviceLocked(node3));
+    }
+
+    /**
+     * Test distributed transactions get distinct ids, also when they use the same devices one after another
+     */
+    @Test
+    public void testNewTxIdentifiers() throws Exception {
+        DTx dtx1 = dTxProvider.newTx(getNodesMap(node1, node2));
+        DTx dtx2 = dTxProvider.newTx(getNodesMap(node3));
+        Assert.assertFalse("Same id for distinct txs", dtx1.getIdentifier().equals(dtx2.getIdentifier()));
+
+        dtx1.submit().checkedGet();
+        DTx dtx3 = dTxProvider.newTx(getNodesMap(node1, node2), DTxOptions.builder().setTimeout(10, TimeUnit.SECONDS).build());
+        Assert.assertFalse("Same id for txs of the same devices", dtx1.getIdentifier().equals(dtx3.getIdentifier()));
+    }
+
+    /**
+     * Test txs holding a device shared run concurrently, an exclusive tx fails or waits until all of them are done
+     */
+    @Test
+    public void testNewTxSharedMode() throws Exception {
+        DTx reader1 = dTxProvider.newTx(getNodesMap(node1), DTxOptions.builder().setLockMode(DTxLockMode.SHARED).build());
+        DTx reader2 = dTxProvider.newTx(getNodesMap(node1, node2), DTxOptions.builder().setLockMode(DTxLockMode.SHARED).build());
+
+        try {
+            dTxProvider.newTx(getNodesMap(node1));
+            fail("Get no exception from newTx() of a shared device");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+
+        threadPool = Executors.newSingleThreadExecutor();
+        Future<DTx> writer = threadPool.submit(new Callable<DTx>() {
+            @Override
+            public DTx call() throws Exception {
+                return dTxProvider.newTx(getNodesMap(node1), DTxOptions.builder().setTimeout(10, TimeUnit.SECONDS).build());
+            }
+        });
+        threadPool.shutdown();
+
+        reader1.submit().checkedGet();
+        Thread.sleep(100);
+        Assert.assertFalse("newTx() didn't wait for the remaining reader", writer.isDone());
+
+        reader2.submit().checkedGet();
+        Assert.assertNotNull("newTx() didn't get the released device", writer.get(10, TimeUnit.SECONDS));
+        Assert.assertFalse("Device of the submitted readers is still locked", txProvider.isDeviceLocked(node2));
+    }
+
+    /**
+     * Test the options of newTx() apply to the set of NETCONF nodes as well: shared readers coexist,
+     * a writer waits for them up to its timeout
+     */
+    @Test
+    public void testNewTxWithOptions() throws Exception {
+        final DTxOptions shared = DTxOptions.builder().setLockMode(DTxLockMode.SHARED).build();
+        DTx reader1 = dTxProvider.newTx(Collections.<InstanceIdentifier<?>>singleton(node1), shared);
+        DTx reader2 = dTxProvider.newTx(Collections.<InstanceIdentifier<?>>singleton(node1), shared);
+
+        try {
+            dTxProvider.newTx(Collections.<InstanceIdentifier<?>>singleton(node1),
+                    DTxOptions.builder().setTimeout(50, TimeUnit.MILLISECONDS).build());
+            fail("Get no exception from newTx() of a shared device");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+
+        reader1.submit().checkedGet();
+        reader2.submit().checkedGet();
+        DTx writer = dTxProvider.newTx(Collections.<InstanceIdentifier<?>>singleton(node1),
+                DTxOptions.builder().setTimeout(10, TimeUnit.SECONDS)
+                        .setRollbackMode(DTxRollbackMode.NO_ROLLBACK).build());
+        Assert.assertTrue("Device of the writer isn't locked", txProvider.isDeviceLocked(node1));
+        writer.submit().checkedGet();
+        Assert.assertFalse("Device of the submitted writer is still locked", txProvider.isDeviceLocked(node1));
+    }
+
+    /**
+     * Test an exclusive tx releases its devices once. A second release could drop the lock of another tx
+     * taking the devices over in between.
+     */
+    @Test
+    public void testExclusiveTxReleasesOnce() throws Exception {
+        final AtomicInteger releases = new AtomicInteger();
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, new myTxProvider() {
+            @Override
+            public void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner) {
+                releases.incrementAndGet();
+                super.releaseTransactionDevices(deviceSet, mode, owner);
+            }
+        });
+        DTxProviderImpl provider = new DTxProviderImpl(providers);
+
+        provider.newTx(getNodesMap(node1)).submit().checkedGet();
+        Assert.assertEquals("Devices of the submitted tx released more than once", 1, releases.get());
+
+        provider.newTx(Collections.<InstanceIdentifier<?>>singleton(node1)).submit().checkedGet();
+        Assert.assertEquals("Devices of the submitted tx released more than once", 2, releases.get());
+
+        provider.newTx(getNodesMap(node1), DTxOptions.builder().setRollbackMode(DTxRollbackMode.NO_ROLLBACK).build())
+                .submit().checkedGet();
+        Assert.assertEquals("Devices of the submitted tx released more than once", 3, releases.get());
+        provider.close();
+    }
+
+    /**
+     * Test shared txs of a provider without lock modes hold their devices exclusively
+     */
+    @Test
+    public void testNewTxSharedModeWithoutLockModes() throws Exception {
+        final myTxProvider exclusiveProvider = new myTxProvider();
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, new TxProvider() {
+            @Override
+            public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
+                return exclusiveProvider.newTx(nodeId);
+            }
+
+            @Override
+            public boolean isDeviceLocked(InstanceIdentifier<?> device) {
+                return exclusiveProvider.isDeviceLocked(device);
+            }
+
+            @Override
+            public boolean lockTransactionDevices(Set<InstanceIdentifier<?>> deviceSet) {
+                return exclusiveProvider.lockTransactionDevices(deviceSet);
+            }
+
+            @Override
+            public void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet) {
+                exclusiveProvider.releaseTransactionDevices(deviceSet);
+            }
+        });
+        DTxProviderImpl provider = new DTxProviderImpl(providers);
+
+        DTx reader = provider.newTx(getNodesMap(node1), DTxOptions.builder().setLockMode(DTxLockMode.SHARED).build());
+        try {
+            provider.newTx(getNodesMap(node1), DTxOptions.builder().setLockMode(DTxLockMode.SHARED).build());
+            fail("Get no exception from newTx() of a device held by another reader");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+
+        reader.submit().checkedGet();
+        Assert.assertFalse("Device of the submitted reader is still locked", exclusiveProvider.isDeviceLocked(node1));
+        provider.close();
+    }
+
+    /**
+     * Test an optimistic tx doesn't lock its nodes, and is replayed when the data it read changes before its submit
+     */
+    @Test
+    public void testOptimisticTxReplaysOnConflict() throws Exception {
+        DeviceTxProvider deviceTxProvider = new DeviceTxProvider();
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, deviceTxProvider);
+        DTxProviderImpl provider = new DTxProviderImpl(providers);
+
+        DTx dtx = provider.newOptimisticTx(getNodesMap(node1), 1);
+        Assert.assertFalse("Optimistic tx locked its node", deviceTxProvider.isDeviceLocked(node1));
+
+        TestData txData = new TestData();
+        TestData concurrentData = new TestData();
+        dtx.putAndRollbackOnFailure(LogicalDatastoreType.CONFIGURATION, dataId, txData, node1).checkedGet();
+        deviceTxProvider.deviceData.put(dataId, concurrentData);
+
+        dtx.submit().checkedGet();
+        Assert.assertSame("Edit of the replayed tx isn't committed", txData, deviceTxProvider.deviceData.get(dataId));
+        Assert.assertFalse("Node of the submitted tx is still locked", deviceTxProvider.isDeviceLocked(node1));
+        provider.close();
+    }
+
+    /**
+     * Test an optimistic tx isn't replayed when the data it read was replaced by equivalent data
+     */
+    @Test
+    public void testOptimisticTxComparesNormalizedPreImages() throws Exception {
+        DeviceTxProvider deviceTxProvider = new DeviceTxProvider();
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, deviceTxProvider);
+        DTxProviderImpl provider = new DTxProviderImpl(providers, DTxProviderImpl.DEFAULT_EDIT_EXECUTOR_POOL_SIZE,
+                DTxProviderImpl.DEFAULT_EDIT_EXECUTOR_QUEUE_DEPTH, new ThreadPoolExecutor.CallerRunsPolicy(), false,
+                new TestNormalizingSerializer(), DTxProviderImpl.DEFAULT_PRE_IMAGE_MEMORY_THRESHOLD, null);
+
+        deviceTxProvider.deviceData.put(dataId, new TestData());
+        DTx dtx = provider.newOptimisticTx(getNodesMap(node1), 0);
+        TestData txData = new TestData();
+        dtx.putAndRollbackOnFailure(LogicalDatastoreType.CONFIGURATION, dataId, txData, node1).checkedGet();
+        deviceTxProvider.deviceData.put(dataId, new TestData());
+
+        dtx.submit().checkedGet();
+        Assert.assertSame("Edit of the tx isn't committed", txData, deviceTxProvider.deviceData.get(dataId));
+        provider.close();
+    }
+
+    /**
+     * Test an optimistic tx whose node is held by another tx on submit waits for it, rather than spending a replay
+     */
+    @Test
+    public void testOptimisticTxWaitsForBusyNode() throws Exception {
+        DeviceTxProvider deviceTxProvider = new DeviceTxProvider();
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, deviceTxProvider);
+        final DTxProviderImpl provider = new DTxProviderImpl(providers);
+
+        DTx dtx = provider.newOptimisticTx(getNodesMap(node1), 0);
+        TestData txData = new TestData();
+        dtx.putAndRollbackOnFailure(LogicalDatastoreType.CONFIGURATION, dataId, txData, node1).checkedGet();
+
+        final DTx holder = provider.newTx(getNodesMap(node1));
+        threadPool = Executors.newSingleThreadExecutor();
+        threadPool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Thread.sleep(OptimisticDtx.NODES_WAIT_MILLIS / 4);
+                holder.submit().checkedGet();
+                return null;
+            }
+        });
+        threadPool.shutdown();
+
+        dtx.submit().checkedGet();
+        Assert.assertSame("Edit of the tx isn't committed", txData, deviceTxProvider.deviceData.get(dataId));
+        Assert.assertFalse("Node of the submitted tx is still locked", deviceTxProvider.isDeviceLocked(node1));
+        provider.close();
+    }
+
+    /**
+     * Test an optimistic tx still conflicting once its replays are spent fails, leaving the node unchanged
+     */
+    @Test
+    public void testOptimisticTxGivesUpAfterReplays() throws Exception {
+        DeviceTxProvider deviceTxProvider = new DeviceTxProvider();
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, deviceTxProvider);
+        DTxProviderImpl provider = new DTxProviderImpl(providers);
+
+        DTx dtx = provider.newOptimisticTx(getNodesMap(node1), 0);
+        TestData concurrentData = new TestData();
+        dtx.putAndRollbackOnFailure(LogicalDatastoreType.CONFIGURATION, dataId, new TestData(), node1).checkedGet();
+        deviceTxProvider.deviceData.put(dataId, concurrentData);
+
+        try {
+            dtx.submit().checkedGet();
+            fail("Get no exception from submit() of a conflicting tx");
+        } catch (TransactionCommitFailedException e) {
+            Assert.assertTrue("Get wrong exception", e instanceof OptimisticLockFailedException);
+        }
+        Assert.assertSame("Node changed by the failed tx", concurrentData, deviceTxProvider.deviceData.get(dataId));
+        Assert.assertFalse("Node of the failed tx is still locked", deviceTxProvider.isDeviceLocked(node1));
+        provider.close();
+    }
+
+    /**
+     * Test txs locking disjoint subtrees of a node run concurrently, overlapping subtrees and whole node locks conflict
+     */
+    @Test
+    public void testNewTxForSubtrees() throws Exception {
+        Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees1 = new HashMap<>();
+        subtrees1.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER,
+                Collections.<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>singletonMap(node1, Sets.<InstanceIdentifier<?>>newSet(node2)));
+        Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees2 = new HashMap<>();
+        subtrees2.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER,
+                Collections.<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>singletonMap(node1, Sets.<InstanceIdentifier<?>>newSet(node3)));
+
+        DTx dtx1 = dTxProvider.newTxForSubtrees(subtrees1);
+        dTxProvider.newTxForSubtrees(subtrees2);
+        try {
+            dTxProvider.newTxForSubtrees(subtrees1);
+            fail("Get no exception from newTxForSubtrees() with a locked subtree");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+        try {
+            dTxProvider.newTx(getNodesMap(node1));
+            fail("Get no exception from newTx() with locked subtrees");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+
+        dtx1.submit().checkedGet();
+        Assert.assertNotNull("Released subtree isn't locked again", dTxProvider.newTxForSubtrees(subtrees1));
+    }
+
+    /**
+     * Test whole node and subtree locks of the datastore conflict, though the datastore provider doesn't lock its nodes
+     */
+    @Test
+    public void testNewTxForSubtreesOfDatastore() throws Exception {
+        TxProvider dataStoreTxProvider = new TxProvider() {
+            @Override
+            public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
+                return new DTXTestTransaction();
+            }
+
+            @Override
+            public boolean isDeviceLocked(InstanceIdentifier<?> device) {
+                return false;
+            }
+
+            @Override
+            public boolean lockTransactionDevices(Set<InstanceIdentifier<?>> deviceSet) {
+                return true;
+            }
+
+            @Override
+            public void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet) {
+            }
+        };
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, dataStoreTxProvider);
+        DTxProviderImpl provider = new DTxProviderImpl(providers);
+
+        Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> nodesMap = new HashMap<>();
+        nodesMap.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, Sets.<InstanceIdentifier<?>>newSet(node1));
+        Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees = new HashMap<>();
+        subtrees.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER,
+                Collections.<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>singletonMap(node1, Sets.<InstanceIdentifier<?>>newSet(node2)));
+
+        DTx wholeNodeTx = provider.newTx(nodesMap);
+        try {
+            provider.newTxForSubtrees(subtrees);
+            fail("Get no exception from newTxForSubtrees() with the whole node locked");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+        DTx sharingTx = provider.newTx(nodesMap);
+
+        wholeNodeTx.submit().checkedGet();
+        try {
+            provider.newTxForSubtrees(subtrees);
+            fail("Get no exception from newTxForSubtrees() with the whole node still locked by another tx");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+
+        sharingTx.submit().checkedGet();
+        Assert.assertNotNull("Released node isn't locked by subtrees", provider.newTxForSubtrees(subtrees));
+        try {
+            provider.newTx(nodesMap);
+            fail("Get no exception from newTx() with locked subtrees");
+        } catch (DTxException.DTxInitializationFailedException e) {
+            // expected
+        }
+        provider.close();
+    }
+
     @Test
     public void testClose() throws Exception {
         m.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, txProvider);
@@ -184,4 +726,144 @@ public class DistributedTxProviderTest {
         // Ensure no exceptions
         provider.close();
     }
+
+    /**
+     * Test close() rolls back the outstanding txs and releases their nodes
+     */
+    @Test
+    public void testCloseRollsBackOutstandingTxs() throws Exception {
+        DeviceTxProvider deviceTxProvider = new DeviceTxProvider();
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, deviceTxProvider);
+        DTxProviderImpl provider = new DTxProviderImpl(providers);
+
+        DTx dtx = provider.newTx(getNodesMap(node1));
+        dtx.putAndRollbackOnFailure(LogicalDatastoreType.CONFIGURATION, dataId, new TestData(), node1).checkedGet();
+
+        provider.close();
+        Assert.assertFalse("Node of the outstanding tx is still locked", deviceTxProvider.isDeviceLocked(node1));
+        Assert.assertNull("Edit of the outstanding tx is committed", deviceTxProvider.deviceData.get(dataId));
+    }
+
+    /**
+     * Codec of a single JVM, the objects are registered and serialized as their index
+     */
+    private static class TestIntentLogCodec implements IntentLogCodec {
+        final List<Object> objects = new ArrayList<>();
+
+        private byte[] register(Object object) {
+            int index = objects.indexOf(object);
+            if (index < 0) {
+                objects.add(object);
+                index = objects.size() - 1;
+            }
+            return ByteBuffer.allocate(4).putInt(index).array();
+        }
+
+        @Nonnull @Override
+        public byte[] serializeIdentifier(@Nonnull InstanceIdentifier<?> id) throws IOException {
+            return register(id);
+        }
+
+        @Nonnull @Override
+        public InstanceIdentifier<?> deserializeIdentifier(@Nonnull byte[] serialized) throws IOException {
+            return (InstanceIdentifier<?>) objects.get(ByteBuffer.wrap(serialized).getInt());
+        }
+
+        @Nonnull @Override
+        public byte[] serialize(@Nonnull InstanceIdentifier<?> id, @Nonnull DataObject data) throws IOException {
+            return register(data);
+        }
+
+        @Nonnull @Override
+        public DataObject deserialize(@Nonnull InstanceIdentifier<?> id, @Nonnull byte[] serialized) throws IOException {
+            return (DataObject) objects.get(ByteBuffer.wrap(serialized).getInt());
+        }
+    }
+
+    /**
+     * Test the recovery of an incomplete tx is retried until its node is reachable
+     */
+    @Test
+    public void testRecoveryRetriedUntilNodeReachable() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        DeviceTxProvider deviceTxProvider = new DeviceTxProvider() {
+            @Override
+            public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new TxException.TxInitiatizationFailedException("Mount point of " + nodeId + " isn't ready");
+                }
+                return super.newTx(nodeId);
+            }
+        };
+        deviceTxProvider.deviceData.put(dataId, new TestData());
+        Map<DTXLogicalTXProviderType, TxProvider> providers = new HashMap<>();
+        providers.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, deviceTxProvider);
+
+        TestIntentLogCodec codec = new TestIntentLogCodec();
+        File logFile = File.createTempFile("dtx-intent-log-test", ".log");
+        try {
+            UUID txId = UUID.randomUUID();
+            DTxIntentLog previousRun = new DTxIntentLog(logFile, codec, 0);
+            previousRun.logStart(txId, getNodesMap(node1)).get();
+            previousRun.logPreImages(txId, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, node1, new TxCache() {
+                @Override
+                public Iterator<CachedData> iterator() {
+                    return Collections.singletonList(
+                            new CachedData(LogicalDatastoreType.CONFIGURATION, dataId, null, ModifyAction.REPLACE)).iterator();
+                }
+            }).get();
+            previousRun.close();
+
+            DTxProviderImpl provider = new DTxProviderImpl(providers, DTxProviderImpl.DEFAULT_EDIT_EXECUTOR_POOL_SIZE,
+                    DTxProviderImpl.DEFAULT_EDIT_EXECUTOR_QUEUE_DEPTH, new ThreadPoolExecutor.CallerRunsPolicy(), false,
+                    null, DTxProviderImpl.DEFAULT_PRE_IMAGE_MEMORY_THRESHOLD, new DTxIntentLog(logFile, codec, 0));
+            provider.recoverWithRetries(10).get(5, TimeUnit.SECONDS);
+
+            Assert.assertEquals("Wrong number of recovery attempts", 3, attempts.get());
+            Assert.assertNull("Incomplete tx isn't rolled back", deviceTxProvider.deviceData.get(dataId));
+            Assert.assertFalse("Node of the recovered tx is still locked", deviceTxProvider.isDeviceLocked(node1));
+            provider.close();
+        } finally {
+            logFile.delete();
+        }
+    }
+
+    /**
+     * Serializer normalizing all the test data to equal nodes, as equivalent binding objects
+     */
+    private static class TestNormalizingSerializer extends TestIntentLogCodec implements NormalizingPreImageSerializer {
+        @Nonnull @Override
+        public NormalizedNode<?, ?> normalize(@Nonnull InstanceIdentifier<?> id, @Nonnull DataObject data) throws IOException {
+            return new TestNormalizedNode(data.getImplementedInterface().getSimpleName());
+        }
+    }
+
+    private static final class TestNormalizedNode implements NormalizedNode<YangInstanceIdentifier.PathArgument, String> {
+        private final String value;
+
+        private TestNormalizedNode(final String value) {
+            this.value = value;
+        }
+
+        @Override public QName getNodeType() {
+            return null;
+        }
+
+        @Override public YangInstanceIdentifier.PathArgument getIdentifier() {
+            return null;
+        }
+
+        @Override public String getValue() {
+            return value;
+        }
+
+        @Override public boolean equals(final Object obj) {
+            return obj instanceof TestNormalizedNode && value.equals(((TestNormalizedNode) obj).value);
+        }
+
+        @Override public int hashCode() {
+            return value.hashCode();
+        }
+    }
 }
@@ -8,10 +8,14 @@
 package org.opendaylight.distributed.tx.impl;
 
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -20,21 +24,36 @@ import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
 import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
 import org.opendaylight.distributed.tx.api.DTx;
+import org.opendaylight.distributed.tx.api.DTxEdit;
 import org.opendaylight.distributed.tx.api.DTxException;
+import org.opendaylight.distributed.tx.api.DTxRollbackMode;
+import org.opendaylight.distributed.tx.spi.BulkTxProvider;
+import org.opendaylight.distributed.tx.spi.IntentLogCodec;
 import org.opendaylight.distributed.tx.spi.TxException;
 import org.opendaylight.distributed.tx.spi.TxProvider;
 import org.opendaylight.yangtools.yang.binding.DataContainer;
 import org.opendaylight.yangtools.yang.binding.DataObject;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.fail;
 import java.util.List;
 import java.util.Map;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Set;
 
 public class DtxImplTest{
@@ -430,20 +449,31 @@ public class DtxImplTest{
                 internalDtxDataStoreTestTx1.createObjForIdentifier(iid1);
             }
             if (providerType == ProviderType.NETCONF){
+                /* Edits of the same iid share a single pre-image read. It fails once all the edits are issued,
+                 * so every edit shares the failed read and fails. */
+                final boolean sharedReadFailure = errorType == OperationType.READ;
+                final CountDownLatch editsIssued = new CountDownLatch(numOfThreads);
+                if (sharedReadFailure) {
+                    setException(internalDtxNetconfTestTx1, iid1, errorType);
+                    internalDtxNetconfTestTx1.setReadGate(editsIssued);
+                }
                 for (int i = 0; i < numOfThreads; i++){
                     final int finalI = i;
                     threadPool.execute(new Runnable() {
                         @Override
                         public void run() {
-                            if (finalI == errorOccur){
+                            if (finalI == errorOccur && !sharedReadFailure){
                                 setException(internalDtxNetconfTestTx1, iid1, errorType);
                             }
                             CheckedFuture<Void, DTxException> writeFuture = writeData(netConfOnlyDTx, DTXLogicalTXProviderType.NETCONF_TX_PROVIDER,
                                     operationType, iid1, netConfNodeId1, new TestIid1());
+                            editsIssued.countDown();
                             try{
                                 writeFuture.checkedGet();
+                                if (sharedReadFailure)
+                                    fail("Edit sharing the failed read succeeded");
                             }catch (DTxException e){
-                                if (finalI != errorOccur)
+                                if (finalI != errorOccur && !sharedReadFailure)
                                     fail("Caught unexpected exception");
                                 else
                                     Assert.assertTrue("Can't get EditFailedException", e instanceof DTxException.EditFailedException);
@@ -637,7 +667,10 @@ public class DtxImplTest{
         Map<DTXLogicalTXProviderType, TxProvider> netconfTxProviderMap = new HashMap<>();
         TxProvider netconfTxProvider = new myNetconfTxProvider();
         netconfTxProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, netconfTxProvider);
-        netConfOnlyDTx = new DtxImpl(netconfTxProvider, netconfNodes, new DTxTransactionLockImpl(netconfTxProviderMap));
+        netConfOnlyDTx = new DtxImpl(netconfTxProviderMap,
+                Collections.<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>>singletonMap(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, netconfNodes),
+                new DTxTransactionLockImpl(netconfTxProviderMap), MoreExecutors.newDirectExecutorService(),
+                MoreExecutors.newDirectExecutorService(), false, null, null, null, DTxRollbackMode.ROLLBACK_ON_FAILURE);
 
         testClass = new TestClass();
 
@@ -670,7 +703,8 @@ public class DtxImplTest{
             }
         });
 
-        mixedDTx = new DtxImpl(txProviderMap, nodesMap, new DTxTransactionLockImpl(txProviderMap));
+        mixedDTx = new DtxImpl(txProviderMap, nodesMap, new DTxTransactionLockImpl(txProviderMap), MoreExecutors.newDirectExecutorService(),
+                MoreExecutors.newDirectExecutorService(), false, null, null, null, DTxRollbackMode.ROLLBACK_ON_FAILURE);
     }
 
     /**
@@ -887,7 +921,8 @@ public class DtxImplTest{
         int numOfThreads = (int)(Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 0;
         testClass.testConcurrentWriteToSameIidRollbackSucceed(ProviderType.NETCONF, OperationType.PUT, OperationType.READ, numOfThreads);
-        Assert.assertEquals("Wrong cache size", numOfThreads - 1, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
+        /* Every edit shares the failed pre-image read, nothing is cached */
+        Assert.assertEquals("Wrong cache size", 0, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
         Assert.assertEquals("Wrong data size ", expectedDataSizeInIdentifier, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
     }
     /**
@@ -898,7 +933,8 @@ public class DtxImplTest{
         int numOfThreads = (int)(Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 0;
         testClass.testConcurrentWriteToSameIidRollbackSucceed(ProviderType.NETCONF, OperationType.PUT, OperationType.PUT, numOfThreads);
-        Assert.assertEquals("Wrong cache size", numOfThreads, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
+        /* Edits of the same iid share one pre-image */
+        Assert.assertEquals("Wrong cache size", 1, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
         Assert.assertEquals("Wrong data size ", expectedDataSizeInIdentifier, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
     }
 
@@ -1141,7 +1177,8 @@ public class DtxImplTest{
         int expectedDataSizeInIdentifier = 0;
         testClass.testConcurrentWriteToSameIidRollbackSucceed(ProviderType.NETCONF, OperationType.MERGE,
                 OperationType.READ, numOfThreads);
-        Assert.assertEquals("Wrong cache size", numOfThreads - 1, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
+        /* Every edit shares the failed pre-image read, nothing is cached */
+        Assert.assertEquals("Wrong cache size", 0, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
         Assert.assertEquals("Wrong data size", expectedDataSizeInIdentifier, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
     }
 
@@ -1154,7 +1191,8 @@ public class DtxImplTest{
         int expectedDataSizeInIdentifier = 0;
         testClass.testConcurrentWriteToSameIidRollbackSucceed(ProviderType.NETCONF, OperationType.MERGE,
                 OperationType.MERGE, numOfThreads);
-        Assert.assertEquals("Wrong cache size", numOfThreads, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
+        /* Edits of the same iid share one pre-image */
+        Assert.assertEquals("Wrong cache size", 1, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
         Assert.assertEquals("Wrong data size", expectedDataSizeInIdentifier, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
     }
 
@@ -1389,11 +1427,12 @@ public class DtxImplTest{
      */
     @Test
     public void testConcurrentDeleteToSameIidReadFailRollbackSucceedInNetConfDTx(){
-        int numOfThreads = (int) (Math.random() * 3) + 1;
+        int numOfThreads = (int)(Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 1;
         testClass.testConcurrentWriteToSameIidRollbackSucceed(ProviderType.NETCONF, OperationType.DELETE,
                 OperationType.READ, numOfThreads);
-        Assert.assertEquals("Wrong cache size", numOfThreads - 1 , netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
+        /* Every edit shares the failed pre-image read, nothing is cached */
+        Assert.assertEquals("Wrong cache size", 0, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
         Assert.assertEquals("Wrong data size", expectedDataSizeInIdentifier, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
     }
 
@@ -1420,7 +1459,8 @@ public class DtxImplTest{
         int expectedDataSizeInIdentifier = 1;
         testClass.testConcurrentWriteToSameIidRollbackSucceed(ProviderType.NETCONF, OperationType.DELETE,
                 OperationType.DELETE, numOfThreads);
-        Assert.assertEquals("Wrong cache size", numOfThreads, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
+        /* Edits of the same iid share one pre-image */
+        Assert.assertEquals("Wrong cache size", 1, netConfOnlyDTx.getSizeofCacheByNodeId(netConfNodeId1));
         Assert.assertEquals("Wrong data size", expectedDataSizeInIdentifier, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
     }
 
@@ -1446,7 +1486,12 @@ public class DtxImplTest{
         int numOfThreads = (int)(Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 1;
         testClass.testConcurrentWriteAndSubmit(ProviderType.NETCONF, OperationType.PUT, numOfThreads);
-        netConfOnlyDTx.submit();
+        CheckedFuture<Void, TransactionCommitFailedException> f = netConfOnlyDTx.submit();
+        try {
+            f.checkedGet();
+        }catch (Exception e) {
+            fail("Get exception");
+        }
         for (final InstanceIdentifier<?> nodeIid : netconfNodes) {
             Assert.assertEquals("Wrong cache size", numOfThreads, netConfOnlyDTx.getSizeofCacheByNodeId(nodeIid));
             for (int i = 0; i < numOfThreads; i++) {
@@ -1463,7 +1508,12 @@ public class DtxImplTest{
         int numOfThreads = (int)(Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 1;
         testClass.testConcurrentWriteAndSubmit(ProviderType.MIX, OperationType.PUT, numOfThreads);
-        mixedDTx.submit();
+        CheckedFuture<Void, TransactionCommitFailedException> f = mixedDTx.submit();
+        try {
+            f.checkedGet();
+        }catch (Exception e) {
+            fail("Get exception");
+        }
         for (InstanceIdentifier<?> nodeId : netconfNodes){
             Assert.assertEquals("Wrong cache size in netConf tx", numOfThreads, mixedDTx.getSizeofCacheByNodeIdAndType(
                     DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, nodeId
@@ -1490,7 +1540,12 @@ public class DtxImplTest{
         int numOfThreads = (int)(Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 1;
         testClass.testConcurrentWriteAndSubmit(ProviderType.NETCONF, OperationType.MERGE, numOfThreads);
-        netConfOnlyDTx.submit();
+        CheckedFuture<Void, TransactionCommitFailedException> f = netConfOnlyDTx.submit();
+        try {
+            f.checkedGet();
+        }catch (Exception e) {
+            fail("Get exception");
+        }
         for (final InstanceIdentifier<?> nodeIid : netconfNodes) {
             Assert.assertEquals("Wrong cache size", numOfThreads, netConfOnlyDTx.getSizeofCacheByNodeId(nodeIid));
             for (int i = 0; i < numOfThreads; i++) {
@@ -1507,7 +1562,12 @@ public class DtxImplTest{
         int numOfThreads = (int)(Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 1;
         testClass.testConcurrentWriteAndSubmit(ProviderType.MIX, OperationType.MERGE, numOfThreads);
-        mixedDTx.submit();
+        CheckedFuture<Void, TransactionCommitFailedException> f = mixedDTx.submit();
+        try {
+            f.checkedGet();
+        }catch (Exception e) {
+            fail("Get exception");
+        }
         for (InstanceIdentifier<?> nodeId : netconfNodes){
             Assert.assertEquals("Wrong cache size in netConf tx", numOfThreads, mixedDTx.getSizeofCacheByNodeIdAndType(
                     DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, nodeId
@@ -1534,7 +1594,12 @@ public class DtxImplTest{
         int numOfThreads = (int)(Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 0;
         testClass.testConcurrentWriteAndSubmit(ProviderType.NETCONF, OperationType.DELETE, numOfThreads);
-        netConfOnlyDTx.submit();
+        CheckedFuture<Void, TransactionCommitFailedException> f = netConfOnlyDTx.submit();
+        try {
+            f.checkedGet();
+        }catch (Exception e) {
+            fail("Get exception");
+        }
         for (final InstanceIdentifier<?> nodeIid : netconfNodes) {
             Assert.assertEquals("Wrong cache size", numOfThreads, netConfOnlyDTx.getSizeofCacheByNodeId(nodeIid));
         }
@@ -1552,7 +1617,12 @@ public class DtxImplTest{
         int numOfThreads = (int) (Math.random() * 3) + 1;
         int expectedDataSizeInIdentifier = 0;
         testClass.testConcurrentWriteAndSubmit(ProviderType.MIX, OperationType.DELETE, numOfThreads);
-        mixedDTx.submit();
+        CheckedFuture<Void, TransactionCommitFailedException> f = mixedDTx.submit();
+        try {
+            f.checkedGet();
+        }catch (Exception e) {
+            fail("Get exception");
+        }
         for (InstanceIdentifier<?> nodeId : netconfNodes){
             Assert.assertEquals("Wrong cache size in netConf tx", numOfThreads,mixedDTx.getSizeofCacheByNodeIdAndType(
                     DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, nodeId
@@ -1571,6 +1641,57 @@ public class DtxImplTest{
         }
     }
 
+    /**
+     * Test mixed providers editsAndRollbackOnFailure() with successful edits
+     */
+    @Test
+    public void testEditsInMixedDTx() {
+        int expectedDataSizeInIdentifier = 1;
+        List<DTxEdit> edits = new ArrayList<>();
+        for (InstanceIdentifier<?> nodeId : Lists.newArrayList(netConfNodeId1, netConfNodeId2)) {
+            edits.add(DTxEdit.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), nodeId));
+            edits.add(DTxEdit.merge(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid2, new TestIid2(), nodeId));
+        }
+        for (InstanceIdentifier<?> nodeId : Lists.newArrayList(dataStoreNodeId1, dataStoreNodeId2)) {
+            edits.add(DTxEdit.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), nodeId));
+        }
+
+        CheckedFuture<Void, DTxException> f = mixedDTx.editsAndRollbackOnFailure(edits);
+        try {
+            f.checkedGet();
+        }catch (Exception e) {
+            fail("Caught unexpected exception");
+        }
+
+        Assert.assertEquals("Wrong cache size in netConf tx1", 2, mixedDTx.getSizeofCacheByNodeIdAndType(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, netConfNodeId1));
+        Assert.assertEquals("Wrong cache size in dataStore tx1", 1, mixedDTx.getSizeofCacheByNodeIdAndType(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, dataStoreNodeId1));
+        Assert.assertEquals("Wrong data size in netConf tx1", expectedDataSizeInIdentifier, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid2));
+        Assert.assertEquals("Wrong data size in dataStore tx2", expectedDataSizeInIdentifier, internalDtxDataStoreTestTx2.getTxDataSizeByIid(iid1));
+    }
+
+    /**
+     * Test netconf editsAndRollbackOnFailure() with failed edit and successful rollback
+     */
+    @Test
+    public void testEditsRollbackInNetConfOnlyDTx() {
+        int expectedDataSizeInTx1 = 0, expectedDataSizeInTx2 = 0;
+        internalDtxNetconfTestTx2.setPutExceptionByIid(iid1, true);
+        List<DTxEdit> edits = Lists.newArrayList(
+                DTxEdit.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId1),
+                DTxEdit.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId2));
+
+        CheckedFuture<Void, DTxException> f = netConfOnlyDTx.editsAndRollbackOnFailure(edits);
+        try {
+            f.checkedGet();
+            fail("Can't get exception");
+        }catch (Exception e) {
+            Assert.assertTrue("Can't get EditFailedException", e instanceof DTxException.EditFailedException);
+        }
+
+        Assert.assertEquals("Wrong data size in netConf tx1", expectedDataSizeInTx1, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in netConf tx2", expectedDataSizeInTx2, internalDtxNetconfTestTx2.getTxDataSizeByIid(iid1));
+    }
+
     /**
      * Test netconf rollback() with successful rollback
      */
@@ -1597,6 +1718,28 @@ public class DtxImplTest{
         }
     }
 
+    /**
+     * Test repeated rollback() calls share a single rollback
+     */
+    @Test
+    public void testRollbackIsSingleFlightInNetConfOnlyDTx() {
+        CheckedFuture<Void, DTxException> f1 = netConfOnlyDTx.putAndRollbackOnFailure(LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId1);
+        try {
+            f1.checkedGet();
+        }catch (Exception e) {
+            fail("Caught unexpected exception");
+        }
+
+        CheckedFuture<Void, DTxException.RollbackFailedException> f = netConfOnlyDTx.rollback();
+        Assert.assertSame("Rollback started twice", f, netConfOnlyDTx.rollback());
+        try{
+            f.checkedGet();
+            Assert.assertEquals("Wrong data size in netConf tx1", 0, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
+        }catch (Exception e) {
+            fail("Get rollback exception");
+        }
+    }
+
     /**
      * Test mixed providers rollback() with successful rollback
      */
@@ -1843,7 +1986,8 @@ public class DtxImplTest{
      */
     @Test
     public void testSubmitRollbackSucceedInNetConfOnlyDTx()  {
-        int expectedDataSizeInTx1 = 0, expectedDataSizeInTx2 = 0;
+        /* Only the committed node is rolled back, the test tx of the failed node keeps the data it failed to submit */
+        int expectedDataSizeInTx1 = 0, expectedDataSizeInTx2 = 1;
         CheckedFuture<Void, DTxException> f1 = netConfOnlyDTx.putAndRollbackOnFailure(LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId1);
         CheckedFuture<Void, DTxException> f2 = netConfOnlyDTx.putAndRollbackOnFailure(LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId2);
         try {
@@ -1870,7 +2014,8 @@ public class DtxImplTest{
      */
     @Test
     public void testSubmitRollbackSucceedInMixedDTx()  {
-        int expectedDataSizeInNetConfTx1 = 0, expectedDataSizeInNetConfTx2 = 0, expectedDataSizeInDataStoreTx1 = 0, expectedDataSizeInDataStoreTx2 = 0;
+        /* Only the committed nodes are rolled back, the test tx of the failed node keeps the data it failed to submit */
+        int expectedDataSizeInNetConfTx1 = 0, expectedDataSizeInNetConfTx2 = 0, expectedDataSizeInDataStoreTx1 = 0, expectedDataSizeInDataStoreTx2 = 1;
         CheckedFuture<Void, DTxException> f1 = mixedDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId1);
         CheckedFuture<Void, DTxException> f2 = mixedDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId2);
         CheckedFuture<Void, DTxException> f3 = mixedDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), dataStoreNodeId1);
@@ -1897,6 +2042,89 @@ public class DtxImplTest{
         Assert.assertEquals("Wrong data size in dataStore tx2", expectedDataSizeInDataStoreTx2, internalDtxDataStoreTestTx2.getTxDataSizeByIid(iid1));
     }
 
+    /**
+     * Test mixed providers submit() with failed submit in early-abort mode
+     */
+    @Test
+    public void testSubmitEarlyAbortInMixedDTx()  {
+        int expectedDataSizeInNetConfTx1 = 0, expectedDataSizeInNetConfTx2 = 0, expectedDataSizeInDataStoreTx1 = 0, expectedDataSizeInDataStoreTx2 = 1;
+        Map<DTXLogicalTXProviderType, TxProvider> txProviderMap = new HashMap<>();
+        txProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, new myNetconfTxProvider());
+        txProviderMap.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, new myDataStoreTxProvider());
+        DTx earlyAbortDTx = new DtxImpl(txProviderMap, nodesMap, new DTxTransactionLockImpl(txProviderMap),
+                MoreExecutors.newDirectExecutorService(), MoreExecutors.newDirectExecutorService(), true, null, null,
+                null, DTxRollbackMode.ROLLBACK_ON_FAILURE);
+
+        CheckedFuture<Void, DTxException> f1 = earlyAbortDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId1);
+        CheckedFuture<Void, DTxException> f2 = earlyAbortDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId2);
+        CheckedFuture<Void, DTxException> f3 = earlyAbortDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), dataStoreNodeId1);
+        CheckedFuture<Void, DTxException> f4 = earlyAbortDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), dataStoreNodeId2);
+        try{
+            f1.checkedGet();
+            f2.checkedGet();
+            f3.checkedGet();
+            f4.checkedGet();
+        }catch (Exception e) {
+            fail("Get exception");
+        }
+        internalDtxDataStoreTestTx2.setSubmitException(true);
+        CheckedFuture<Void, TransactionCommitFailedException> f = earlyAbortDTx.submit();
+        try{
+            f.checkedGet();
+            fail("Can't get exception");
+        }catch (Exception e) {
+            Assert.assertTrue("Can't get TransactionCommitFailedException", e instanceof TransactionCommitFailedException);
+        }
+        Assert.assertEquals("Wrong data size in netConf tx1", expectedDataSizeInNetConfTx1, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in netConf tx2", expectedDataSizeInNetConfTx2, internalDtxNetconfTestTx2.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in dataStore tx1", expectedDataSizeInDataStoreTx1, internalDtxDataStoreTestTx1.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in dataStore tx2", expectedDataSizeInDataStoreTx2, internalDtxDataStoreTestTx2.getTxDataSizeByIid(iid1));
+    }
+
+    /**
+     * Test mixed providers submit() with failed submit without rollback.
+     * The edits don't read the nodes, the failed node is reported and the committed nodes keep their data.
+     */
+    @Test
+    public void testSubmitWithoutRollbackInMixedDTx()  {
+        Map<DTXLogicalTXProviderType, TxProvider> txProviderMap = new HashMap<>();
+        txProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, new myNetconfTxProvider());
+        txProviderMap.put(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, new myDataStoreTxProvider());
+        DTx noRollbackDTx = new DtxImpl(txProviderMap, nodesMap, new DTxTransactionLockImpl(txProviderMap),
+                MoreExecutors.newDirectExecutorService(), MoreExecutors.newDirectExecutorService(), false, null, null,
+                null, DTxRollbackMode.NO_ROLLBACK);
+
+        internalDtxNetconfTestTx1.setReadExceptionByIid(iid1, true);
+        CheckedFuture<Void, DTxException> f1 = noRollbackDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId1);
+        CheckedFuture<Void, DTxException> f2 = noRollbackDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId2);
+        CheckedFuture<Void, DTxException> f3 = noRollbackDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), dataStoreNodeId1);
+        CheckedFuture<Void, DTxException> f4 = noRollbackDTx.putAndRollbackOnFailure(DTXLogicalTXProviderType.DATASTORE_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), dataStoreNodeId2);
+        try{
+            f1.checkedGet();
+            f2.checkedGet();
+            f3.checkedGet();
+            f4.checkedGet();
+        }catch (Exception e) {
+            fail("Get exception");
+        }
+        internalDtxDataStoreTestTx2.setSubmitException(true);
+        CheckedFuture<Void, TransactionCommitFailedException> f = noRollbackDTx.submit();
+        try{
+            f.checkedGet();
+            fail("Can't get exception");
+        }catch (Exception e) {
+            Assert.assertTrue("Can't get TransactionCommitFailedException", e instanceof TransactionCommitFailedException);
+            DTxException.SubmitFailedException submitFailure = Iterables.getOnlyElement(
+                    Iterables.filter(Throwables.getCausalChain(e), DTxException.SubmitFailedException.class));
+            Assert.assertEquals("Wrong failed nodes", Sets.<InstanceIdentifier<?>>newHashSet(dataStoreNodeId2),
+                    Sets.newHashSet(submitFailure.getFailedSubmits()));
+        }
+        Assert.assertEquals("Wrong data size in netConf tx1", 1, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in netConf tx2", 1, internalDtxNetconfTestTx2.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in dataStore tx1", 1, internalDtxDataStoreTestTx1.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in dataStore tx2", 1, internalDtxDataStoreTestTx2.getTxDataSizeByIid(iid1));
+    }
+
     /**
      * Test netconf submit() with failed rollback
      */
@@ -1945,5 +2173,230 @@ public class DtxImplTest{
             Assert.assertTrue("Can't get TransactionCommitFailedException", e instanceof TransactionCommitFailedException);
         }
     }
+
+    /**
+     * Test the per-node txs of a provider are opened concurrently on the open executor
+     */
+    @Test
+    public void testOpenPerNodeTxsInParallel() throws Exception {
+        final CountDownLatch opening = new CountDownLatch(netconfNodes.size());
+        Map<DTXLogicalTXProviderType, TxProvider> txProviderMap = new HashMap<>();
+        txProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, new myNetconfTxProvider() {
+            @Override
+            public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
+                opening.countDown();
+                try {
+                    if (!opening.await(10, TimeUnit.SECONDS)) {
+                        throw new TxException.TxInitiatizationFailedException("Per-node txs aren't opened in parallel");
+                    }
+                } catch (InterruptedException e) {
+                    throw new TxException.TxInitiatizationFailedException("Interrupted");
+                }
+                return super.newTx(nodeId);
+            }
+        });
+        ExecutorService openExecutor = Executors.newFixedThreadPool(netconfNodes.size());
+
+        try {
+            DTx dtx = new DtxImpl(txProviderMap, Collections.singletonMap(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, netconfNodes),
+                    new DTxTransactionLockImpl(txProviderMap), MoreExecutors.newDirectExecutorService(), openExecutor, false,
+                    null, null, null, DTxRollbackMode.ROLLBACK_ON_FAILURE);
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId1).checkedGet();
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId2).checkedGet();
+        } finally {
+            openExecutor.shutdown();
+        }
+        Assert.assertEquals("Wrong data size in tx1", 1, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in tx2", 1, internalDtxNetconfTestTx2.getTxDataSizeByIid(iid1));
+    }
+
+    /**
+     * Test the per-node txs of a bulk provider are opened by a single call in the calling thread
+     */
+    @Test
+    public void testOpenPerNodeTxsInBulk() throws Exception {
+        final List<Thread> bulkCallers = new ArrayList<>();
+        Map<DTXLogicalTXProviderType, TxProvider> txProviderMap = new HashMap<>();
+        txProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, new BulkNetconfTxProvider() {
+            @Override
+            public Map<InstanceIdentifier<?>, ReadWriteTransaction> newTxs(Set<InstanceIdentifier<?>> nodeIds) {
+                bulkCallers.add(Thread.currentThread());
+                return super.newTxs(nodeIds);
+            }
+        });
+        ExecutorService openExecutor = Executors.newSingleThreadExecutor();
+
+        try {
+            DTx dtx = new DtxImpl(txProviderMap, Collections.singletonMap(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, netconfNodes),
+                    new DTxTransactionLockImpl(txProviderMap), MoreExecutors.newDirectExecutorService(), openExecutor, false,
+                    null, null, null, DTxRollbackMode.ROLLBACK_ON_FAILURE);
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId1).checkedGet();
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL, iid1, new TestIid1(), netConfNodeId2).checkedGet();
+        } finally {
+            openExecutor.shutdown();
+        }
+        Assert.assertEquals("Per-node txs aren't opened by a single bulk call in the calling thread",
+                Collections.singletonList(Thread.currentThread()), bulkCallers);
+        Assert.assertEquals("Wrong data size in tx1", 1, internalDtxNetconfTestTx1.getTxDataSizeByIid(iid1));
+        Assert.assertEquals("Wrong data size in tx2", 1, internalDtxNetconfTestTx2.getTxDataSizeByIid(iid1));
+    }
+
+    /**
+     * Test the per-node txs already opened are cancelled when the open executor rejects the opening of another node
+     */
+    @Test
+    public void testOpenRejectedCancelsOpenedTxs() {
+        final CountDownLatch rejected = new CountDownLatch(1);
+        final List<CancelTrackingTransaction> openedTxs = new ArrayList<>();
+        Map<DTXLogicalTXProviderType, TxProvider> txProviderMap = new HashMap<>();
+        txProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, new myNetconfTxProvider() {
+            @Override
+            public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
+                /* Keep the only open thread busy until the next node is rejected */
+                Uninterruptibles.awaitUninterruptibly(rejected, 10, TimeUnit.SECONDS);
+                CancelTrackingTransaction tx = new CancelTrackingTransaction();
+                synchronized (openedTxs) {
+                    openedTxs.add(tx);
+                }
+                return tx;
+            }
+        });
+        ExecutorService openExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        rejected.countDown();
+                        throw new RejectedExecutionException("Open executor is busy");
+                    }
+                });
+
+        try {
+            new DtxImpl(txProviderMap, Collections.singletonMap(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, netconfNodes),
+                    new DTxTransactionLockImpl(txProviderMap), MoreExecutors.newDirectExecutorService(), openExecutor, false,
+                    null, null, null, DTxRollbackMode.ROLLBACK_ON_FAILURE);
+            fail("Can't get exception from a rejected tx opening");
+        } catch (Exception e) {
+            Assert.assertTrue("Can't get TxInitiatizationFailedException", e instanceof TxException.TxInitiatizationFailedException);
+        } finally {
+            openExecutor.shutdown();
+        }
+        Assert.assertEquals("Wrong number of opened txs", 1, openedTxs.size());
+        Assert.assertTrue("Opened tx isn't cancelled", openedTxs.get(0).cancelled);
+    }
+
+    /**
+     * Test a submit whose pre-images can't be logged aborts the distributed tx: nothing is submitted,
+     * the per-node txs are cancelled, the devices are released and the tx ends in the intent log
+     */
+    @Test
+    public void testSubmitAbortsWhenPreImagesCantBeLogged() throws IOException {
+        final CancelTrackingTransaction netconfTx = new CancelTrackingTransaction();
+        netconfTx.addInstanceIdentifiers(iid1);
+        netconfTx.createObjForIdentifier(iid1);
+        Map<DTXLogicalTXProviderType, TxProvider> txProviderMap = new HashMap<>();
+        txProviderMap.put(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, new myNetconfTxProvider() {
+            @Override
+            public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
+                return netconfTx;
+            }
+        });
+        final List<Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>>> releasedDevices = new ArrayList<>();
+        DTxTransactionLockImpl lock = new DTxTransactionLockImpl(txProviderMap) {
+            @Override
+            public void releaseDevices(Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap) {
+                releasedDevices.add(deviceMap);
+                super.releaseDevices(deviceMap);
+            }
+        };
+        Set<InstanceIdentifier<?>> nodes = Sets.<InstanceIdentifier<?>>newHashSet(netConfNodeId1);
+        File logFile = Files.createTempFile("dtx-intent-log-test", ".log").toFile();
+        IntentLogCodec codec = new IntentLogCodec() {
+            final List<InstanceIdentifier<?>> ids = new ArrayList<>();
+
+            @Override
+            public synchronized byte[] serializeIdentifier(InstanceIdentifier<?> id) {
+                if (!ids.contains(id)) {
+                    ids.add(id);
+                }
+                return ByteBuffer.allocate(4).putInt(ids.indexOf(id)).array();
+            }
+
+            @Override
+            public synchronized InstanceIdentifier<?> deserializeIdentifier(byte[] serialized) {
+                return ids.get(ByteBuffer.wrap(serialized).getInt());
+            }
+
+            @Override
+            public byte[] serialize(InstanceIdentifier<?> id, DataObject data) throws IOException {
+                throw new IOException("Unable to serialize");
+            }
+
+            @Override
+            public DataObject deserialize(InstanceIdentifier<?> id, byte[] serialized) throws IOException {
+                throw new IOException("Unable to deserialize");
+            }
+        };
+
+        try {
+            DTxIntentLog intentLog = new DTxIntentLog(logFile, codec, 0);
+            DTx dtx = new DtxImpl(txProviderMap, Collections.singletonMap(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, nodes),
+                    lock, MoreExecutors.newDirectExecutorService(), MoreExecutors.newDirectExecutorService(), false, null,
+                    null, intentLog, DTxRollbackMode.ROLLBACK_ON_FAILURE);
+            dtx.putAndRollbackOnFailure(DTXLogicalTXProviderType.NETCONF_TX_PROVIDER, LogicalDatastoreType.OPERATIONAL,
+                    iid1, new TestIid1(), netConfNodeId1).checkedGet();
+            try {
+                dtx.submit().checkedGet();
+                fail("Can't get exception from a submit whose pre-images can't be logged");
+            } catch (TransactionCommitFailedException e) {
+                Assert.assertTrue("Wrong cause of the submit failure", Throwables.getRootCause(e) instanceof IOException);
+            }
+            intentLog.close();
+
+            Assert.assertTrue("Per-node tx isn't cancelled", netconfTx.cancelled);
+            Assert.assertFalse("Per-node tx is submitted", netconfTx.submitted);
+            Assert.assertEquals("Devices aren't released once", 1, releasedDevices.size());
+
+            intentLog = new DTxIntentLog(logFile, codec, 0);
+            Assert.assertTrue("Aborted tx isn't ended in the intent log", intentLog.getIncompleteTxs().isEmpty());
+            intentLog.close();
+        } catch (DTxException e) {
+            fail("Get unexpected exception from putAndRollbackOnFailure()");
+        } finally {
+            logFile.delete();
+        }
+    }
+
+    private class BulkNetconfTxProvider extends myNetconfTxProvider implements BulkTxProvider {
+        @Override
+        public ReadWriteTransaction newTx(InstanceIdentifier<?> nodeId) throws TxException.TxInitiatizationFailedException {
+            throw new UnsupportedOperationException("Per-node txs of a bulk provider are opened in bulk");
+        }
+
+        @Override
+        public Map<InstanceIdentifier<?>, ReadWriteTransaction> newTxs(Set<InstanceIdentifier<?>> nodeIds) {
+            Map<InstanceIdentifier<?>, ReadWriteTransaction> txs = new HashMap<>();
+            for (InstanceIdentifier<?> nodeId : nodeIds) {
+                txs.put(nodeId, super.newTx(nodeId));
+            }
+            return txs;
+        }
+    }
+
+    private static class CancelTrackingTransaction extends DTXTestTransaction {
+        private volatile boolean cancelled = false;
+        private volatile boolean submitted = false;
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+            return true;
+        }
+
+        @Override
+        public CheckedFuture<Void, TransactionCommitFailedException> submit() {
+            submitted = true;
+            return super.submit();
+        }
+    }
     /* TODO: Test rollback() error cases */
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.fail;
+
+public class OffHeapPreImageStoreTest {
+    File spillDirectory;
+
+    @Before
+    public void testInit() throws IOException {
+        spillDirectory = Files.createTempDirectory("dtx-journal-test").toFile();
+    }
+
+    @After
+    public void testCleanUp() {
+        for (File file : spillDirectory.listFiles()) {
+            file.delete();
+        }
+        spillDirectory.delete();
+    }
+
+    /**
+     * Test pre-images stay in memory within the budget
+     */
+    @Test
+    public void testWriteBelowThreshold() {
+        OffHeapPreImageStore store = new OffHeapPreImageStore(new DirectSlabPool(16, 16), spillDirectory);
+        try {
+            OffHeapPreImageStore.Handle handle = store.write(new byte[]{1, 2, 3});
+            Assert.assertArrayEquals("Wrong pre-image", new byte[]{1, 2, 3}, store.read(handle));
+        } catch (IOException e) {
+            fail("Get unexpected exception from write()");
+        }
+
+        Assert.assertEquals("Pre-images spilled to disk", 0, spillDirectory.listFiles().length);
+        store.close();
+    }
+
+    /**
+     * Test pre-images beyond the budget spill to a file, which is deleted on close
+     */
+    @Test
+    public void testWriteBeyondThreshold() {
+        OffHeapPreImageStore store = new OffHeapPreImageStore(new DirectSlabPool(4, 4), spillDirectory);
+        try {
+            OffHeapPreImageStore.Handle handle1 = store.write(new byte[]{1, 2, 3});
+            OffHeapPreImageStore.Handle handle2 = store.write(new byte[]{4, 5, 6});
+            OffHeapPreImageStore.Handle handle3 = store.write(new byte[]{7, 8, 9, 10, 11});
+
+            Assert.assertEquals("Pre-images didn't spill to disk", 1, spillDirectory.listFiles().length);
+            Assert.assertArrayEquals("Wrong pre-image", new byte[]{7, 8, 9, 10, 11}, store.read(handle3));
+            Assert.assertArrayEquals("Wrong pre-image", new byte[]{4, 5, 6}, store.read(handle2));
+            Assert.assertArrayEquals("Wrong pre-image", new byte[]{1, 2, 3}, store.read(handle1));
+        } catch (IOException e) {
+            fail("Get unexpected exception from write()");
+        }
+
+        store.close();
+        Assert.assertEquals("Spill file isn't deleted", 0, spillDirectory.listFiles().length);
+    }
+
+    /**
+     * Test the slabs of a closed journal are reused by the next one, within the budget shared by both
+     */
+    @Test
+    public void testSlabsReusedAcrossJournals() {
+        DirectSlabPool pool = new DirectSlabPool(4, 8);
+        OffHeapPreImageStore store1 = new OffHeapPreImageStore(pool, spillDirectory);
+        OffHeapPreImageStore store2 = new OffHeapPreImageStore(pool, spillDirectory);
+        try {
+            store1.write(new byte[]{1, 2, 3});
+            store2.write(new byte[]{4, 5, 6});
+            Assert.assertEquals("Wrong direct memory allocated", 8, pool.getAllocatedSize());
+
+            store1.close();
+            Assert.assertEquals("Slab isn't given back to the pool", 1, pool.getFreeSlabCount());
+
+            OffHeapPreImageStore store3 = new OffHeapPreImageStore(pool, spillDirectory);
+            OffHeapPreImageStore.Handle handle = store3.write(new byte[]{7, 8});
+            Assert.assertEquals("Slab isn't reused", 8, pool.getAllocatedSize());
+            Assert.assertEquals("Pre-images spilled to disk", 0, spillDirectory.listFiles().length);
+            Assert.assertArrayEquals("Wrong pre-image", new byte[]{7, 8}, store3.read(handle));
+            store3.close();
+        } catch (IOException e) {
+            fail("Get unexpected exception from write()");
+        }
+
+        store2.close();
+        Assert.assertEquals("Slabs aren't given back to the pool", 2, pool.getFreeSlabCount());
+    }
+
+    /**
+     * Test a spill region is unmapped right away
+     */
+    @Test
+    public void testUnmapSpillRegion() throws IOException {
+        File file = File.createTempFile("dtx-journal", ".bin", spillDirectory);
+        try (RandomAccessFile fileAccess = new RandomAccessFile(file, "rw")) {
+            ByteBuffer region = fileAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 4);
+            Assert.assertTrue("Spill region isn't unmapped", OffHeapPreImageStore.unmap(region));
+        }
+        Assert.assertTrue("Spill file isn't deleted", file.delete());
+    }
+}
@@ -22,6 +22,9 @@ import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import javax.annotation.Nullable;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.fail;
 
 public class RollbackImplTest {
@@ -185,4 +188,53 @@ public class RollbackImplTest {
             Assert.assertTrue("Can't get RollbackFailedException", e instanceof DTxException.RollbackFailedException);
         }
     }
+
+    /**
+     * Test rollback() on an executor, a failing node doesn't prevent the rollback of the other node
+     */
+    @Test
+    public void testRollbackOnExecutorWithOneNodeFailing() {
+        int expectedDataNumInNodeIdentifier = 0;
+        DTXTestTransaction testTransaction1 = new DTXTestTransaction();
+        DTXTestTransaction testTransaction2 = new DTXTestTransaction();
+        testTransaction1.addInstanceIdentifiers(identifier1);
+        testTransaction2.addInstanceIdentifiers(identifier1);
+        CachingReadWriteTx cachingReadWriteTx1 = new CachingReadWriteTx(testTransaction1);
+        CachingReadWriteTx cachingReadWriteTx2 = new CachingReadWriteTx(testTransaction2);
+
+        try {
+            cachingReadWriteTx1.asyncPut(LogicalDatastoreType.OPERATIONAL, identifier1, new TestData1()).checkedGet();
+            cachingReadWriteTx2.asyncPut(LogicalDatastoreType.OPERATIONAL, identifier1, new TestData1()).checkedGet();
+        }catch (Exception e) {
+            fail("Caught unexpected exception");
+        }
+
+        Map<InstanceIdentifier<?>, CachingReadWriteTx> perNodeCaches = Maps.newHashMap();
+        perNodeCaches.put(node1, cachingReadWriteTx1);
+        perNodeCaches.put(node2, cachingReadWriteTx2);
+        Map<InstanceIdentifier<?>, ReadWriteTransaction> perNodeRollbackTxs = Maps.newHashMap();
+        perNodeRollbackTxs.put(node1, testTransaction1);
+        perNodeRollbackTxs.put(node2, testTransaction2);
+
+        testTransaction1.setDeleteExceptionByIid(identifier1, true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        RollbackImpl testRollback = new RollbackImpl(executor);
+        CheckedFuture<Void, DTxException.RollbackFailedException> rollbackFuture = testRollback.rollback(perNodeCaches, perNodeRollbackTxs);
+
+        try{
+            rollbackFuture.checkedGet();
+            fail("Can't get rollback exception");
+        }catch (Exception e) {
+            Assert.assertTrue("Can't get RollbackFailedException", e instanceof DTxException.RollbackFailedException);
+        }
+
+        /* The other node is rolled back once its rollback has run on the executor */
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }catch (InterruptedException e) {
+            fail("Interrupted while waiting for the rollback");
+        }
+        Assert.assertEquals("Data size in tx2 is wrong", expectedDataNumInNodeIdentifier, testTransaction2.getTxDataSizeByIid(identifier1));
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.distributed.tx.spi.CachedData;
+import org.opendaylight.yangtools.yang.binding.DataContainer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.ModifyAction;
+
+public class RollbackPlannerTest {
+    InstanceIdentifier<Parent> parentIid = InstanceIdentifier.create(Parent.class);
+    InstanceIdentifier<Child> childIid = parentIid.child(Child.class);
+
+    public static class Parent implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return Parent.class;
+        }
+    }
+
+    public static class Child implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return Child.class;
+        }
+    }
+
+    /**
+     * Test a child revert is dropped when its parent is restored after it
+     */
+    @Test
+    public void testPlanDropsRevertsCoveredByAncestor() {
+        List<RollbackPlanner.Revert> plan = RollbackPlanner.plan(Lists.newArrayList(
+                new CachedData(LogicalDatastoreType.CONFIGURATION, childIid, new Child(), ModifyAction.REPLACE),
+                new CachedData(LogicalDatastoreType.CONFIGURATION, parentIid, new Parent(), ModifyAction.MERGE)));
+
+        Assert.assertEquals("Wrong size of rollback plan", 1, plan.size());
+        Assert.assertEquals("Wrong revert path", parentIid, plan.get(0).getId());
+        Assert.assertEquals("Wrong revert action", ModifyAction.REPLACE, plan.get(0).getAction());
+    }
+
+    /**
+     * Test a child revert applied after its parent's revert is kept
+     */
+    @Test
+    public void testPlanKeepsRevertsAfterAncestor() {
+        List<RollbackPlanner.Revert> plan = RollbackPlanner.plan(Lists.newArrayList(
+                new CachedData(LogicalDatastoreType.CONFIGURATION, parentIid, null, ModifyAction.REPLACE),
+                new CachedData(LogicalDatastoreType.CONFIGURATION, childIid, new Child(), ModifyAction.REPLACE)));
+
+        Assert.assertEquals("Wrong size of rollback plan", 2, plan.size());
+        Assert.assertEquals("Wrong revert path", parentIid, plan.get(0).getId());
+        Assert.assertEquals("Wrong revert action", ModifyAction.DELETE, plan.get(0).getAction());
+        Assert.assertEquals("Wrong revert path", childIid, plan.get(1).getId());
+    }
+
+    /**
+     * Test no-op reverts and reverts of other datastores
+     */
+    @Test
+    public void testPlanDropsNoOpReverts() {
+        List<RollbackPlanner.Revert> plan = RollbackPlanner.plan(Lists.newArrayList(
+                new CachedData(LogicalDatastoreType.OPERATIONAL, childIid, new Child(), ModifyAction.REPLACE),
+                new CachedData(LogicalDatastoreType.CONFIGURATION, childIid, null, ModifyAction.DELETE),
+                new CachedData(LogicalDatastoreType.CONFIGURATION, parentIid, null, ModifyAction.MERGE)));
+
+        Assert.assertEquals("Wrong size of rollback plan", 2, plan.size());
+        Assert.assertEquals("Wrong revert datastore", LogicalDatastoreType.OPERATIONAL, plan.get(0).getDsType());
+        Assert.assertEquals("Wrong revert path", parentIid, plan.get(1).getId());
+    }
+}
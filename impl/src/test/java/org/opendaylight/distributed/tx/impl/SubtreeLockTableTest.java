@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.impl;
+
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opendaylight.yangtools.yang.binding.DataContainer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+public class SubtreeLockTableTest {
+    InstanceIdentifier<Parent> parentIid = InstanceIdentifier.create(Parent.class);
+    InstanceIdentifier<ChildA> childAIid = parentIid.child(ChildA.class);
+    InstanceIdentifier<ChildB> childBIid = parentIid.child(ChildB.class);
+    Object tx1 = new Object();
+    Object tx2 = new Object();
+
+    public static class Parent implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return Parent.class;
+        }
+    }
+
+    public static class ChildA implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return ChildA.class;
+        }
+    }
+
+    public static class ChildB implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return ChildB.class;
+        }
+    }
+
+    /**
+     * Test disjoint subtrees are locked by different txs
+     */
+    @Test
+    public void testLockDisjointSubtrees() {
+        SubtreeLockTable table = new SubtreeLockTable();
+        Assert.assertTrue("Failed to lock subtree", table.lock(tx1, Sets.<InstanceIdentifier<?>>newHashSet(childAIid)));
+        Assert.assertTrue("Failed to lock disjoint subtree", table.lock(tx2, Sets.<InstanceIdentifier<?>>newHashSet(childBIid)));
+    }
+
+    /**
+     * Test subtrees overlapping a subtree of another tx, from above or below, are not locked
+     */
+    @Test
+    public void testLockOverlappingSubtrees() {
+        SubtreeLockTable table = new SubtreeLockTable();
+        Assert.assertTrue("Failed to lock subtree", table.lock(tx1, Sets.<InstanceIdentifier<?>>newHashSet(childAIid)));
+        Assert.assertFalse("Locked ancestor of a locked subtree", table.lock(tx2, Sets.<InstanceIdentifier<?>>newHashSet(parentIid)));
+        Assert.assertFalse("Locked a locked subtree", table.lock(tx2, Sets.<InstanceIdentifier<?>>newHashSet(childAIid)));
+        Assert.assertFalse("Lock isn't all or nothing", table.lock(tx2, Sets.<InstanceIdentifier<?>>newHashSet(childBIid, childAIid)));
+        Assert.assertTrue("Subtree of the failed lock is left locked", table.lock(tx2, Sets.<InstanceIdentifier<?>>newHashSet(childBIid)));
+
+        table = new SubtreeLockTable();
+        Assert.assertTrue("Failed to lock subtree", table.lock(tx1, Sets.<InstanceIdentifier<?>>newHashSet(parentIid)));
+        Assert.assertFalse("Locked descendant of a locked subtree", table.lock(tx2, Sets.<InstanceIdentifier<?>>newHashSet(childBIid)));
+        Assert.assertTrue("Failed to lock overlapping subtrees of the same tx",
+                table.lock(tx1, Sets.<InstanceIdentifier<?>>newHashSet(childBIid)));
+    }
+
+    /**
+     * Test released subtrees are locked again, a tx doesn't release subtrees of another tx
+     */
+    @Test
+    public void testReleaseSubtrees() {
+        SubtreeLockTable table = new SubtreeLockTable();
+        Assert.assertTrue("Failed to lock subtree", table.lock(tx1, Sets.<InstanceIdentifier<?>>newHashSet(childAIid)));
+
+        table.release(tx2, Sets.<InstanceIdentifier<?>>newHashSet(childAIid));
+        Assert.assertFalse("Subtree released by another tx", table.lock(tx2, Sets.<InstanceIdentifier<?>>newHashSet(parentIid)));
+
+        table.release(tx1, Sets.<InstanceIdentifier<?>>newHashSet(childAIid));
+        Assert.assertTrue("Lock table isn't empty", table.isEmpty());
+        Assert.assertTrue("Failed to lock released subtree", table.lock(tx2, Sets.<InstanceIdentifier<?>>newHashSet(parentIid)));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.distributed.tx.impl.rev141210;
+
+import java.math.BigInteger;
+import javax.management.ObjectName;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.config.api.JmxAttributeValidationException;
+import org.opendaylight.controller.config.api.ModuleIdentifier;
+import static org.junit.Assert.fail;
+
+public class DistributedTxImplModuleTest {
+    private DistributedTxImplModule module;
+
+    @Before
+    public void testInit() {
+        module = new DistributedTxImplModule(new ModuleIdentifier("distributed-tx-impl", "distributed-tx"), null);
+        module.setEditExecutorPoolSize(16);
+        module.setEditExecutorQueueDepth(4096L);
+        module.setEditExecutorRejectionPolicy(RejectionPolicy.CallerRuns);
+    }
+
+    /**
+     * Test the edit executor configuration with both rejection policies passes validation
+     */
+    @Test
+    public void testValidExecutorConfig() {
+        module.customValidation();
+
+        module.setEditExecutorRejectionPolicy(RejectionPolicy.Abort);
+        module.customValidation();
+    }
+
+    /**
+     * Test an edit executor without threads fails validation
+     */
+    @Test
+    public void testZeroPoolSize() {
+        module.setEditExecutorPoolSize(0);
+        try {
+            module.customValidation();
+            fail("Get no exception from customValidation() with pool size 0");
+        } catch (JmxAttributeValidationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test an edit executor queue depth not fitting an int fails validation
+     */
+    @Test
+    public void testQueueDepthBeyondInt() {
+        module.setEditExecutorQueueDepth((long) Integer.MAX_VALUE + 1);
+        try {
+            module.customValidation();
+            fail("Get no exception from customValidation() with queue depth beyond int");
+        } catch (JmxAttributeValidationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test an unset rejection policy fails validation
+     */
+    @Test
+    public void testMissingRejectionPolicy() {
+        module.setEditExecutorRejectionPolicy(null);
+        try {
+            module.customValidation();
+            fail("Get no exception from customValidation() without rejection policy");
+        } catch (JmxAttributeValidationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test a pre-image memory threshold not fitting a long fails validation
+     */
+    @Test
+    public void testPreImageMemoryThresholdBeyondLong() {
+        module.setPreImageMemoryThreshold(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE));
+        try {
+            module.customValidation();
+            fail("Get no exception from customValidation() with pre-image memory threshold beyond long");
+        } catch (JmxAttributeValidationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test an intent log without binding normalized node serializer fails validation
+     */
+    @Test
+    public void testIntentLogWithoutSerializer() {
+        module.setIntentLogFile("dtx-intent.log");
+        try {
+            module.customValidation();
+            fail("Get no exception from customValidation() with intent log but without serializer");
+        } catch (JmxAttributeValidationException e) {
+            // expected
+        }
+
+        module.setBindingNormalizedNodeSerializer(ObjectName.WILDCARD);
+        module.customValidation();
+    }
+}
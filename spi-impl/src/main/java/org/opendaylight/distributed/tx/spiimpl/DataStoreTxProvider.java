@@ -12,19 +12,38 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.controller.md.sal.binding.api.ReadOnlyTransaction;
 import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataReadWriteTransaction;
 import org.opendaylight.controller.sal.binding.api.BindingAwareBroker;
 import org.opendaylight.controller.sal.binding.api.BindingAwareConsumer;
-import org.opendaylight.distributed.tx.spi.TxProvider;
+import org.opendaylight.distributed.tx.spi.BulkTxProvider;
+import org.opendaylight.distributed.tx.spi.DOMTxProvider;
+import org.opendaylight.distributed.tx.spi.SnapshotTxProvider;
+import org.opendaylight.distributed.tx.spi.TxException;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Data store transaction provider SPI which implements interface TxProvider.
  */
-public class DataStoreTxProvider implements TxProvider, AutoCloseable, BindingAwareConsumer {
+public class DataStoreTxProvider implements BulkTxProvider, SnapshotTxProvider, DOMTxProvider, AutoCloseable, BindingAwareConsumer {
     private DataBroker dataBroker = null;
+    private DOMDataBroker domDataBroker = null;
+
+    public DataStoreTxProvider() {
+    }
+
+    /**
+     * @param domDataBroker broker the DOM transactions are opened with, null if the provider doesn't support them
+     */
+    public DataStoreTxProvider(@Nullable final DOMDataBroker domDataBroker) {
+        this.domDataBroker = domDataBroker;
+    }
 
     @Nonnull
     @Override
@@ -32,6 +51,37 @@ public class DataStoreTxProvider implements TxProvider, AutoCloseable, BindingAw
         return dataBroker.newReadWriteTransaction();
     }
 
+    /* Data store transactions are cheap to create, open them all in the caller thread. */
+    @Nonnull
+    @Override
+    public Map<InstanceIdentifier<?>, ReadWriteTransaction> newTxs(@Nonnull Set<InstanceIdentifier<?>> paths) {
+        Map<InstanceIdentifier<?>, ReadWriteTransaction> txs = new HashMap<>(paths.size());
+
+        for (InstanceIdentifier<?> path : paths) {
+            txs.put(path, dataBroker.newReadWriteTransaction());
+        }
+
+        return txs;
+    }
+
+    /* A read-only transaction reads the data store as of its creation. The per node transaction
+     * fails to commit data changed since it was created, so the data it commits is the same in the snapshot. */
+    @Nonnull
+    @Override
+    public ReadOnlyTransaction newSnapshot(@Nullable InstanceIdentifier<?> path) {
+        return dataBroker.newReadOnlyTransaction();
+    }
+
+    @Nonnull
+    @Override
+    public DOMDataReadWriteTransaction newDOMTx(@Nullable InstanceIdentifier<?> path)
+        throws TxException.TxInitiatizationFailedException {
+        if (domDataBroker == null) {
+            throw new TxException.TxInitiatizationFailedException("No DOM data broker configured for data store");
+        }
+        return domDataBroker.newReadWriteTransaction();
+    }
+
     /* No lock for data store. */
     @Override
     public boolean isDeviceLocked(InstanceIdentifier<?> device) {
@@ -50,6 +100,7 @@ public class DataStoreTxProvider implements TxProvider, AutoCloseable, BindingAw
     @Override
     public void close() throws Exception {
         dataBroker = null;
+        domDataBroker = null;
     }
 
     @Override
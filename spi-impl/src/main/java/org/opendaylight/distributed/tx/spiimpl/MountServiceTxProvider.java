@@ -16,8 +16,9 @@ import org.opendaylight.controller.md.sal.binding.api.MountPointService;
 import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
 import org.opendaylight.controller.sal.binding.api.BindingAwareBroker;
 import org.opendaylight.controller.sal.binding.api.BindingAwareConsumer;
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.distributed.tx.spi.LockModeTxProvider;
 import org.opendaylight.distributed.tx.spi.TxException;
-import org.opendaylight.distributed.tx.spi.TxProvider;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +28,7 @@ import java.util.Set;
 /**
  * Netconf transaction provider SPI which implements interface TxProvider.
  */
-public class MountServiceTxProvider implements TxProvider, AutoCloseable, BindingAwareConsumer {
+public class MountServiceTxProvider implements LockModeTxProvider, AutoCloseable, BindingAwareConsumer {
 
     private volatile MountPointService mountService;
     private static final Logger LOG = LoggerFactory.getLogger(MountServiceTxProvider.class);
@@ -61,11 +62,21 @@ public class MountServiceTxProvider implements TxProvider, AutoCloseable, Bindin
         return txLock.lockDevices(deviceSet);
     }
 
+    @Override
+    public boolean lockTransactionDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner) {
+        return txLock.lockDevices(deviceSet, mode, owner);
+    }
+
     @Override
     public void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet) {
         txLock.releaseDevices(deviceSet);
     }
 
+    @Override
+    public void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner) {
+        txLock.releaseDevices(deviceSet, mode, owner);
+    }
+
     @Override public void close() throws Exception {
         mountService = null;
     }
@@ -7,49 +7,132 @@
  */
 package org.opendaylight.distributed.tx.spiimpl;
 
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.distributed.tx.spi.DeviceOrdering;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Created by cisco on 3/7/16.
+ * Lock table of the devices of a provider. Each device is locked on its own with a CAS
+ * on its entry of a concurrent map, so a lock attempt costs O(devices requested) and
+ * acquisitions of disjoint device sets never block each other.
+ *
+ * A device is held either exclusively by one acquisition or shared by a count of readers.
+ * Readers coexist, a writer conflicts with the readers and the readers with a writer.
+ *
+ * A device set is locked all or nothing: the devices are acquired in the canonical DeviceOrdering and
+ * the ones already acquired are released as soon as one of them is found locked.
  */
 public class TxProviderLock {
-    final private Set<InstanceIdentifier<?>> lockSet = new HashSet<>();
+    /* Locked devices, mapped to the exclusive acquisition holding them or to their readers */
+    final private ConcurrentMap<InstanceIdentifier<?>, Object> lockTable = new ConcurrentHashMap<>();
 
     public boolean isDeviceLocked(InstanceIdentifier<?> device) {
-
-        boolean ret ;
-        synchronized (TxProviderLock.this) {
-            ret = lockSet.contains(device);
-        }
-
-        return ret;
+        return lockTable.containsKey(device);
     }
 
     public boolean lockDevices(Set<InstanceIdentifier<?>> deviceSet) {
-        boolean ret = true;
+        return lockDevices(deviceSet, DTxLockMode.EXCLUSIVE);
+    }
 
-        synchronized (TxProviderLock.this) {
-            Set<InstanceIdentifier<?>> s = new HashSet<>();
-            s.addAll(this.lockSet);
+    public boolean lockDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode) {
+        return lockDevices(deviceSet, mode, null);
+    }
 
-            s.retainAll(deviceSet);
+    /**
+     * @param owner acquisition the exclusive locks belong to, null for an anonymous one
+     */
+    public boolean lockDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner) {
+        final Object acquisition = owner != null ? owner : new Object();
+        final List<InstanceIdentifier<?>> devices = DeviceOrdering.INSTANCE.sortedCopy(deviceSet);
 
-            if(s.size() > 0)
-                ret = false;
-            else {
-                lockSet.addAll(deviceSet);
+        for (int i = 0; i < devices.size(); i++) {
+            if (!lockDevice(devices.get(i), mode, acquisition)) {
+                /* Undo the devices acquired by this attempt only */
+                for (int j = 0; j < i; j++) {
+                    releaseDevice(devices.get(j), mode, acquisition);
+                }
+                return false;
             }
         }
 
-        return ret;
+        return true;
+    }
+
+    private boolean lockDevice(InstanceIdentifier<?> device, DTxLockMode mode, Object owner) {
+        if (mode == DTxLockMode.EXCLUSIVE) {
+            return lockTable.putIfAbsent(device, owner) == null;
+        }
+
+        while (true) {
+            final Object current = lockTable.get(device);
+            if (current == null) {
+                if (lockTable.putIfAbsent(device, new Readers(1)) == null) {
+                    return true;
+                }
+            } else if (current instanceof Readers) {
+                if (lockTable.replace(device, current, new Readers(((Readers) current).count + 1))) {
+                    return true;
+                }
+            } else {
+                return false;
+            }
+        }
     }
 
     public void releaseDevices(Set<InstanceIdentifier<?>> deviceSet) {
-        synchronized (TxProviderLock.this) {
-            this.lockSet.removeAll(deviceSet);
+        releaseDevices(deviceSet, DTxLockMode.EXCLUSIVE);
+    }
+
+    public void releaseDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode) {
+        releaseDevices(deviceSet, mode, null);
+    }
+
+    /**
+     * Exclusive locks held by another acquisition are left alone, a device released twice by its owner
+     * can't drop the lock of the next acquisition of the device.
+     *
+     * @param owner acquisition releasing the exclusive locks, null for any
+     */
+    public void releaseDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner) {
+        for (InstanceIdentifier<?> device : deviceSet) {
+            releaseDevice(device, mode, owner);
+        }
+    }
+
+    private void releaseDevice(InstanceIdentifier<?> device, DTxLockMode mode, Object owner) {
+        while (true) {
+            final Object current = lockTable.get(device);
+            if (current == null || (current instanceof Readers) != (mode == DTxLockMode.SHARED)
+                    || (owner != null && mode == DTxLockMode.EXCLUSIVE && current != owner)) {
+                /* Not held in this mode */
+                return;
+            }
+
+            final boolean released;
+            if (mode == DTxLockMode.SHARED && ((Readers) current).count > 1) {
+                released = lockTable.replace(device, current, new Readers(((Readers) current).count - 1));
+            } else {
+                released = lockTable.remove(device, current);
+            }
+            if (released) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Readers of a device. Immutable, the count is changed by replacing the entry.
+     */
+    private static final class Readers {
+        private final int count;
+
+        private Readers(int count) {
+            this.count = count;
         }
     }
 }
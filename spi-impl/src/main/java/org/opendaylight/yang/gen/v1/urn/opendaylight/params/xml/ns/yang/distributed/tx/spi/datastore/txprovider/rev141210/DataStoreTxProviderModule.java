@@ -17,7 +17,7 @@ public class DataStoreTxProviderModule extends org.opendaylight.yang.gen.v1.urn.
 
     @Override
     public java.lang.AutoCloseable createInstance() {
-        final DataStoreTxProvider txProviderDataStore = new DataStoreTxProvider();
+        final DataStoreTxProvider txProviderDataStore = new DataStoreTxProvider(getDomBrokerDependency());
         getBrokerDependency().registerConsumer(txProviderDataStore);
         return txProviderDataStore;
     }
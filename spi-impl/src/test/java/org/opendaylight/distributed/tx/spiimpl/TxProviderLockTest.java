@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spiimpl;
+
+import com.google.common.collect.Sets;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.yangtools.yang.binding.DataContainer;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import static org.junit.Assert.fail;
+
+public class TxProviderLockTest {
+    InstanceIdentifier<Device1> device1 = InstanceIdentifier.create(Device1.class);
+    InstanceIdentifier<Device2> device2 = InstanceIdentifier.create(Device2.class);
+    InstanceIdentifier<Device3> device3 = InstanceIdentifier.create(Device3.class);
+    TxProviderLock lock;
+
+    private class Device1 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    private class Device2 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    private class Device3 implements DataObject {
+        @Override
+        public Class<? extends DataContainer> getImplementedInterface() {
+            return null;
+        }
+    }
+
+    private Set<InstanceIdentifier<?>> devices(InstanceIdentifier<?>... devices) {
+        return Sets.<InstanceIdentifier<?>>newHashSet(devices);
+    }
+
+    @Before
+    public void testInit() {
+        lock = new TxProviderLock();
+    }
+
+    /**
+     * Test a device set with a locked device isn't locked at all, the devices acquired by the attempt are undone
+     */
+    @Test
+    public void testLockDevicesAllOrNothing() {
+        Assert.assertTrue("Unable to lock free device", lock.lockDevices(devices(device2)));
+        Assert.assertFalse("Device set with locked device is locked", lock.lockDevices(devices(device1, device2, device3)));
+
+        Assert.assertFalse("Device 1 acquired by the failed attempt isn't undone", lock.isDeviceLocked(device1));
+        Assert.assertFalse("Device 3 acquired by the failed attempt isn't undone", lock.isDeviceLocked(device3));
+        Assert.assertTrue("Device 2 locked by another acquisition is released", lock.isDeviceLocked(device2));
+        Assert.assertTrue("Unable to lock the free devices", lock.lockDevices(devices(device1, device3)));
+    }
+
+    /**
+     * Test undoing a failed shared attempt only drops its own readers
+     */
+    @Test
+    public void testUndoKeepsOtherReaders() {
+        Assert.assertTrue("Unable to share free device", lock.lockDevices(devices(device1), DTxLockMode.SHARED));
+        Assert.assertTrue("Unable to lock free device", lock.lockDevices(devices(device2)));
+        Assert.assertFalse("Device set with exclusive device is shared",
+                lock.lockDevices(devices(device1, device2), DTxLockMode.SHARED));
+
+        Assert.assertTrue("Reader of device 1 is dropped by the failed attempt", lock.isDeviceLocked(device1));
+        lock.releaseDevices(devices(device1), DTxLockMode.SHARED);
+        Assert.assertFalse("Failed attempt left a reader on device 1", lock.isDeviceLocked(device1));
+    }
+
+    /**
+     * Test readers coexist and are counted, the device is free for a writer once the last reader is gone
+     */
+    @Test
+    public void testReaderCounts() {
+        Assert.assertTrue("Unable to share free device", lock.lockDevices(devices(device1), DTxLockMode.SHARED));
+        Assert.assertTrue("Readers don't coexist", lock.lockDevices(devices(device1), DTxLockMode.SHARED));
+        Assert.assertFalse("Writer coexists with readers", lock.lockDevices(devices(device1)));
+
+        lock.releaseDevices(devices(device1), DTxLockMode.SHARED);
+        Assert.assertTrue("Device is released with a reader left", lock.isDeviceLocked(device1));
+        Assert.assertFalse("Writer coexists with a reader", lock.lockDevices(devices(device1)));
+
+        lock.releaseDevices(devices(device1), DTxLockMode.SHARED);
+        Assert.assertFalse("Device isn't released by its last reader", lock.isDeviceLocked(device1));
+        Assert.assertTrue("Unable to lock released device", lock.lockDevices(devices(device1)));
+        Assert.assertFalse("Reader coexists with a writer", lock.lockDevices(devices(device1), DTxLockMode.SHARED));
+    }
+
+    /**
+     * Test an exclusive lock isn't released as shared and the other way around
+     */
+    @Test
+    public void testReleaseInOtherMode() {
+        Assert.assertTrue("Unable to lock free device", lock.lockDevices(devices(device1)));
+        lock.releaseDevices(devices(device1), DTxLockMode.SHARED);
+        Assert.assertTrue("Exclusive lock is released as shared", lock.isDeviceLocked(device1));
+        lock.releaseDevices(devices(device1));
+
+        Assert.assertTrue("Unable to share free device", lock.lockDevices(devices(device1), DTxLockMode.SHARED));
+        lock.releaseDevices(devices(device1));
+        Assert.assertTrue("Shared lock is released as exclusive", lock.isDeviceLocked(device1));
+    }
+
+    /**
+     * Test an exclusive lock is only released by its owner, or by a release for any owner
+     */
+    @Test
+    public void testReleaseByOwner() {
+        final Object owner1 = new Object();
+        final Object owner2 = new Object();
+
+        Assert.assertTrue("Unable to lock free device", lock.lockDevices(devices(device1), DTxLockMode.EXCLUSIVE, owner1));
+        lock.releaseDevices(devices(device1), DTxLockMode.EXCLUSIVE, owner1);
+        Assert.assertTrue("Unable to lock released device", lock.lockDevices(devices(device1), DTxLockMode.EXCLUSIVE, owner2));
+
+        lock.releaseDevices(devices(device1), DTxLockMode.EXCLUSIVE, owner1);
+        Assert.assertTrue("Late release of the previous owner drops the lock", lock.isDeviceLocked(device1));
+        lock.releaseDevices(devices(device1));
+        Assert.assertFalse("Release for any owner keeps the lock", lock.isDeviceLocked(device1));
+    }
+
+    /**
+     * Test concurrent readers of a device, whose count is updated with CAS retries, are all counted
+     */
+    @Test
+    public void testConcurrentReaders() {
+        final int numOfThreads = 8;
+        final int locksPerThread = 1000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failedLocks = new AtomicInteger();
+        ExecutorService threadPool = Executors.newFixedThreadPool(numOfThreads);
+
+        for (int i = 0; i < numOfThreads; i++) {
+            threadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int j = 0; j < locksPerThread; j++) {
+                        if (!lock.lockDevices(devices(device1), DTxLockMode.SHARED)) {
+                            failedLocks.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        start.countDown();
+        threadPool.shutdown();
+        try {
+            Assert.assertTrue("Readers didn't finish", threadPool.awaitTermination(30, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            fail("Interrupted waiting for the readers");
+        }
+        Assert.assertEquals("Readers failed to share the device", 0, failedLocks.get());
+
+        for (int i = 0; i < numOfThreads * locksPerThread - 1; i++) {
+            lock.releaseDevices(devices(device1), DTxLockMode.SHARED);
+        }
+        Assert.assertTrue("Readers are lost", lock.isDeviceLocked(device1));
+        lock.releaseDevices(devices(device1), DTxLockMode.SHARED);
+        Assert.assertFalse("Device isn't released by its last reader", lock.isDeviceLocked(device1));
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import java.util.Map;
+import java.util.Set;
+import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Optional extension of TxProvider for providers able to initialize the transactions of a set of nodes at once.
+ * Distributed tx uses it instead of invoking newTx() for every node.
+ */
+public interface BulkTxProvider extends TxProvider {
+
+    /**
+     * Initialize per node transactions for a set of nodes.
+     *
+     * @param nodeIds set of IID of nodes
+     * @return per node tx for every node in the set
+     * @throws TxException.TxInitiatizationFailedException thrown when unable to initialize the tx of any node.
+     * Transactions already initialized by the call have to be cancelled.
+     */
+    Map<InstanceIdentifier<?>, ReadWriteTransaction> newTxs(Set<InstanceIdentifier<?>> nodeIds)
+        throws TxException.TxInitiatizationFailedException;
+}
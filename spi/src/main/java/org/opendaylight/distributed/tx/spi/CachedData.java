@@ -8,6 +8,8 @@
 package org.opendaylight.distributed.tx.spi;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
@@ -21,24 +23,53 @@ import org.opendaylight.yangtools.yang.data.api.ModifyAction;
 public final class CachedData {
     private final LogicalDatastoreType logicalDsType;
     private final InstanceIdentifier<?> id;
-    private final DataObject data;
+    private final Supplier<? extends DataObject> data;
     private final ModifyAction operation;
 
     public CachedData(@Nonnull final LogicalDatastoreType datastoreType, @Nonnull final InstanceIdentifier<?> id,
         @Nullable final DataObject data, @Nonnull final ModifyAction operation) {
+        this(datastoreType, id, data == null ? null : Suppliers.ofInstance(data), operation);
+    }
+
+    private CachedData(@Nonnull final LogicalDatastoreType datastoreType, @Nonnull final InstanceIdentifier<?> id,
+        @Nullable final Supplier<? extends DataObject> data, @Nonnull final ModifyAction operation) {
         this.logicalDsType = datastoreType;
         this.id = id;
         this.data = data;
         this.operation = operation;
     }
 
+    /**
+     * Create cache data whose data object exists but is only loaded when accessed.
+     *
+     * @param datastoreType logical data store type of the data.
+     * @param id IID of the data.
+     * @param data supplier loading the data object, invoked by every getData() call.
+     * @param operation operation type on the data.
+     *
+     * @return cache data.
+     */
+    public static CachedData createLazy(@Nonnull final LogicalDatastoreType datastoreType, @Nonnull final InstanceIdentifier<?> id,
+        @Nonnull final Supplier<? extends DataObject> data, @Nonnull final ModifyAction operation) {
+        return new CachedData(datastoreType, id, data, operation);
+    }
+
     /**
      * Get the data from cache.
      *
      * @return optional of the data object.
      */
     public Optional<DataObject> getData() {
-        return Optional.fromNullable(data);
+        return data == null ? Optional.<DataObject>absent() : Optional.<DataObject>of(data.get());
+    }
+
+    /**
+     * Check if the cache data has a data object, without loading it.
+     *
+     * @return true if the data object exists.
+     */
+    public boolean isDataPresent() {
+        return data != null;
     }
 
     /**
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataReadWriteTransaction;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Optional extension of TxProvider for providers able to initialize DOM transactions of their nodes.
+ * Distributed txs created by DTxProvider.newDOMTx() require it from the providers of all their nodes.
+ */
+public interface DOMTxProvider extends TxProvider {
+
+    /**
+     * Initialize per node DOM transaction. Its edits stay invisible to other transactions until it is submitted
+     * and cancelling it drops them.
+     *
+     * @param nodeId IID for particular node
+     * @return per node DOM tx
+     * @throws TxException.TxInitiatizationFailedException thrown when unable to initialize the tx
+     */
+    @Nonnull DOMDataReadWriteTransaction newDOMTx(@Nullable InstanceIdentifier<?> nodeId)
+        throws TxException.TxInitiatizationFailedException;
+}
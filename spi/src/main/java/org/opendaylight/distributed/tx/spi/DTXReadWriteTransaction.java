@@ -13,6 +13,8 @@ import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.controller.md.sal.common.api.data.ReadFailedException;
 import org.opendaylight.controller.md.sal.common.api.data.TransactionCommitFailedException;
+import java.util.List;
+import org.opendaylight.distributed.tx.api.DTxEdit;
 import org.opendaylight.distributed.tx.api.DTxException;
 import org.opendaylight.yangtools.yang.binding.DataObject;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
@@ -70,6 +72,19 @@ public interface  DTXReadWriteTransaction extends  ReadWriteTransaction{
     CheckedFuture<Void, DTxException> asyncDelete(final LogicalDatastoreType logicalDatastoreType,
                                                                 final InstanceIdentifier<?> instanceIdentifier) ;
 
+    /**
+     * Asynchronous batch edit API and required by DTX.
+     * The edits are applied to the node as one unit, in the order of the list.
+     *
+     * @param edits edits of this node
+     *
+     * @return CheckedFuture indicating the result of the whole batch.
+     * <ul>
+     * <li> Exceptions should be set to the future. </li>
+     * </ul>
+     */
+    CheckedFuture<Void, DTxException> asyncEdits(final List<DTxEdit> edits) ;
+
     /**
      * Inherited from ReadWriteTransaction. Deprecated in DTX.
      *
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import com.google.common.collect.Ordering;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Canonical order of the devices of a provider. The devices of a set are locked in this order, both by the lock
+ * tables of the providers and by the distributed tx lock waiting for busy devices, so two acquisitions
+ * never wait on each other's devices.
+ */
+public final class DeviceOrdering extends Ordering<InstanceIdentifier<?>> {
+    public static final DeviceOrdering INSTANCE = new DeviceOrdering();
+
+    private DeviceOrdering() {
+    }
+
+    /* Any total order works, as long as all the acquisitions use the same one */
+    @Override public int compare(final InstanceIdentifier<?> left, final InstanceIdentifier<?> right) {
+        final int byHash = Integer.compare(left.hashCode(), right.hashCode());
+        return byHash != 0 ? byHash : left.toString().compareTo(right.toString());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.opendaylight.distributed.tx.api.DTXLogicalTXProviderType;
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Optional extension of TransactionLock for locks supporting lock modes, waiting for busy devices
+ * and locking subtrees of devices. Devices locked for a given owner are released by that owner only,
+ * so a transaction releasing its devices late can't drop the locks of the next transaction holding them.
+ */
+public interface ExtendedTransactionLock extends TransactionLock {
+    /**
+     * Lock sets of devices of each DTX provider in the given mode, all or nothing. It is thread-safe.
+     * Shared locks of a device coexist, any other combination conflicts and fails the call.
+     *
+     * @param owner transaction locking the devices, null for an anonymous one.
+     * @param deviceMap Map of set of devices to lock of each DTX provider type.
+     * @param mode lock mode.
+     *
+     * @return true if the devices are locked. False otherwise, no device is left locked by the call then.
+     */
+    boolean lockDevices(Object owner, Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap, DTxLockMode mode);
+    /**
+     * Lock sets of devices of each DTX provider, waiting for the busy devices to be released. It is thread-safe
+     *
+     * @param deviceMap Map of set of devices to lock of each DTX provider type.
+     * @param timeout maximum time to wait for the devices.
+     * @param unit unit of the timeout.
+     *
+     * @return true if the devices are locked. False if the timeout elapsed, no device is left locked then.
+     *
+     * @throws InterruptedException thrown when interrupted while waiting, no device is left locked then.
+     */
+    boolean lockDevices(Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap, long timeout, TimeUnit unit)
+        throws InterruptedException;
+    /**
+     * Lock sets of devices of each DTX provider in the given mode, waiting for the devices held in a conflicting mode
+     * to be released. It is thread-safe
+     *
+     * @param owner transaction locking the devices, null for an anonymous one.
+     * @param deviceMap Map of set of devices to lock of each DTX provider type.
+     * @param mode lock mode.
+     * @param timeout maximum time to wait for the devices.
+     * @param unit unit of the timeout.
+     *
+     * @return true if the devices are locked. False if the timeout elapsed, no device is left locked then.
+     *
+     * @throws InterruptedException thrown when interrupted while waiting, no device is left locked then.
+     */
+    boolean lockDevices(Object owner, Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap, DTxLockMode mode,
+                        long timeout, TimeUnit unit) throws InterruptedException;
+    /**
+     * Lock subtrees of devices of each DTX provider for a transaction, all or nothing. It is thread-safe.
+     * Subtrees of different transactions conflict when one path is a prefix of the other,
+     * or when their device is locked as a whole.
+     *
+     * @param owner transaction locking the subtrees.
+     * @param subtrees Map of the subtrees to lock of each device, of each DTX provider type.
+     *
+     * @return true if the subtrees are locked. False otherwise, no subtree is left locked then.
+     */
+    boolean lockSubtrees(Object owner, Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees);
+    /**
+     * Unlock subtrees of devices of each DTX provider. It is thread-safe,
+     * subtrees not held by the transaction are left alone.
+     *
+     * @param owner transaction holding the subtrees.
+     * @param subtrees Map of the subtrees to unlock of each device, of each DTX provider type.
+     */
+    void releaseSubtrees(Object owner, Map<DTXLogicalTXProviderType, Map<InstanceIdentifier<?>, Set<InstanceIdentifier<?>>>> subtrees);
+    /**
+     * Unlock sets of devices of each DTX provider locked in the given mode. It is thread-safe,
+     * devices held exclusively by another owner are left locked.
+     *
+     * @param owner transaction holding the devices, null for any.
+     * @param deviceMap Map of set of devices to unlock of each DTX provider type.
+     * @param mode mode the devices were locked in.
+     */
+    void releaseDevices(Object owner, Map<DTXLogicalTXProviderType, Set<InstanceIdentifier<?>>> deviceMap, DTxLockMode mode);
+}
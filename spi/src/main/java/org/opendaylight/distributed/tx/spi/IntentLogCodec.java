@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Binary form of the records of the distributed tx intent log. On top of the pre-images,
+ * the log holds the IIDs of the nodes and of the data, which have to survive a controller restart.
+ */
+public interface IntentLogCodec extends PreImageSerializer {
+
+    /**
+     * Serialize an IID.
+     *
+     * @param id IID to serialize
+     * @return binary form of the IID
+     * @throws IOException thrown when the IID can't be serialized
+     */
+    @Nonnull byte[] serializeIdentifier(@Nonnull InstanceIdentifier<?> id) throws IOException;
+
+    /**
+     * Deserialize an IID.
+     *
+     * @param serialized binary form returned by serializeIdentifier()
+     * @return the IID
+     * @throws IOException thrown when the IID can't be deserialized
+     */
+    @Nonnull InstanceIdentifier<?> deserializeIdentifier(@Nonnull byte[] serialized) throws IOException;
+}
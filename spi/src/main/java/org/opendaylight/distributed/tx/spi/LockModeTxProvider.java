@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import java.util.Set;
+import org.opendaylight.distributed.tx.api.DTxLockMode;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Optional extension of TxProvider for providers able to lock their nodes in shared mode, and to release
+ * the exclusive locks of a given owner only. Distributed tx locks the nodes of other providers exclusively,
+ * whatever the mode requested.
+ */
+public interface LockModeTxProvider extends TxProvider {
+
+    /**
+     * Lock a set of nodes in the given mode. Shared locks of a node coexist,
+     * an exclusive lock conflicts with any other lock of the node.
+     *
+     * @param deviceSet set of IID of devices.
+     * @param mode lock mode.
+     * @param owner transaction the exclusive locks belong to, null for an anonymous one.
+     * @return true if the devices are locked. False otherwise, no device is left locked by the call then.
+     */
+    boolean lockTransactionDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner);
+
+    /**
+     * Unlock a set of nodes locked in the given mode. Nodes held exclusively by another owner are left locked.
+     *
+     * @param deviceSet iid set of devices.
+     * @param mode mode the devices were locked in.
+     * @param owner transaction releasing the exclusive locks, null for any.
+     */
+    void releaseTransactionDevices(Set<InstanceIdentifier<?>> deviceSet, DTxLockMode mode, Object owner);
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+
+/**
+ * Optional extension of PreImageSerializer for serializers able to normalize the binding data. Pre-images are
+ * compared in their normalized form then, which doesn't depend on the binding implementation classes,
+ * on how augmentations are held, nor on the order of the entries of unordered lists.
+ */
+public interface NormalizingPreImageSerializer extends PreImageSerializer {
+
+    /**
+     * Normalize binding data.
+     *
+     * @param id IID of the data
+     * @param data data to normalize
+     * @return normalized form of the data
+     * @throws IOException thrown when the data can't be normalized
+     */
+    @Nonnull NormalizedNode<?, ?> normalize(@Nonnull InstanceIdentifier<?> id, @Nonnull DataObject data) throws IOException;
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import org.opendaylight.yangtools.yang.binding.DataObject;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Binary form of the pre-images cached by distributed tx. When provided, pre-images are kept serialized
+ * outside of the heap and decoded only if the transaction is rolled back.
+ * Implementations are expected to write the normalized node binary stream of the binding data.
+ */
+public interface PreImageSerializer {
+
+    /**
+     * Serialize a pre-image.
+     *
+     * @param id IID of the data
+     * @param data data to serialize
+     * @return binary form of the data
+     * @throws IOException thrown when the data can't be serialized
+     */
+    @Nonnull byte[] serialize(@Nonnull InstanceIdentifier<?> id, @Nonnull DataObject data) throws IOException;
+
+    /**
+     * Deserialize a pre-image.
+     *
+     * @param id IID of the data
+     * @param serialized binary form returned by serialize()
+     * @return the data
+     * @throws IOException thrown when the data can't be deserialized
+     */
+    @Nonnull DataObject deserialize(@Nonnull InstanceIdentifier<?> id, @Nonnull byte[] serialized) throws IOException;
+}
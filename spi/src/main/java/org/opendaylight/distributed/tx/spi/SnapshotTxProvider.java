@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015 Cisco Systems, Inc. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.distributed.tx.spi;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.opendaylight.controller.md.sal.binding.api.ReadOnlyTransaction;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * Optional extension of TxProvider for providers able to open read-only snapshots of their nodes.
+ * Distributed tx doesn't read the pre-images of the edits of such nodes, they are read from the snapshot
+ * only if the nodes are rolled back.
+ */
+public interface SnapshotTxProvider extends TxProvider {
+
+    /**
+     * Open a read-only snapshot of a node, after its per node transaction has been initialized.
+     * Data the per node transaction commits must not have changed between the two, e.g. because the
+     * commit of the per node transaction fails if it was changed meanwhile.
+     *
+     * @param nodeId IID of the node
+     * @return snapshot of the node. It is closed by the distributed tx once done.
+     * @throws TxException.TxInitiatizationFailedException thrown when unable to open the snapshot.
+     */
+    @Nonnull ReadOnlyTransaction newSnapshot(@Nullable InstanceIdentifier<?> nodeId)
+        throws TxException.TxInitiatizationFailedException;
+}